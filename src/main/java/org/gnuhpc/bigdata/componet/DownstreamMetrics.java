@@ -0,0 +1,126 @@
+package org.gnuhpc.bigdata.componet;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.gnuhpc.bigdata.model.LatencyStats;
+import org.gnuhpc.bigdata.utils.TimerMetric;
+import org.springframework.stereotype.Component;
+
+/**
+ * Latency registry of the I/O this service does against ZooKeeper, the brokers and JMX.
+ *
+ * <p>Besides the per target histograms, the time spent on the current request thread is summed
+ * per target between {@link #beginRequest()} and {@link #endRequest()}, so that
+ * {@link RestMetricsAspect} can report where a slow request spent its time. Calls fanned out to
+ * other threads are counted in the histograms only.
+ */
+@Component
+public class DownstreamMetrics {
+  public static final String ZOOKEEPER = "zookeeper";
+  public static final String BROKER_METADATA = "broker.metadata";
+  public static final String BROKER_OFFSET = "broker.offset";
+  public static final String ADMIN_CLIENT = "broker.adminclient";
+  public static final String JMX_CONNECT = "jmx.connect";
+  public static final String JMX_QUERY = "jmx.query";
+
+  private final Map<String, TimerMetric> targetMetrics = new ConcurrentHashMap<>();
+  private final ThreadLocal<Map<String, long[]>> requestBreakdown = new ThreadLocal<>();
+
+  public <T> T record(String target, Supplier<T> call) {
+    long start = startCall(target);
+    boolean failed = true;
+    try {
+      T result = call.get();
+      failed = false;
+      return result;
+    } finally {
+      stopCall(target, start, failed);
+    }
+  }
+
+  public <T> T recordCall(String target, Callable<T> call) throws Exception {
+    long start = startCall(target);
+    boolean failed = true;
+    try {
+      T result = call.call();
+      failed = false;
+      return result;
+    } finally {
+      stopCall(target, start, failed);
+    }
+  }
+
+  public long startCall(String target) {
+    return metric(target).start();
+  }
+
+  public void stopCall(String target, long start, boolean failed) {
+    long elapsed = metric(target).stop(start, failed);
+    Map<String, long[]> breakdown = requestBreakdown.get();
+    if (breakdown != null) {
+      long[] countAndNanos = breakdown.computeIfAbsent(target, t -> new long[2]);
+      countAndNanos[0]++;
+      countAndNanos[1] += elapsed;
+    }
+  }
+
+  /** Returns false if a breakdown is already being collected on this thread. */
+  public boolean beginRequest() {
+    if (requestBreakdown.get() != null) {
+      return false;
+    }
+    requestBreakdown.set(new LinkedHashMap<>());
+    return true;
+  }
+
+  /**
+   * Ends the breakdown of the current thread and renders it in the Server-Timing header format,
+   * e.g. {@code zookeeper;dur=3.2;desc="2 calls", broker.offset;dur=40.1;desc="8 calls"}.
+   */
+  public String endRequest() {
+    Map<String, long[]> breakdown = requestBreakdown.get();
+    requestBreakdown.remove();
+    if (breakdown == null || breakdown.isEmpty()) {
+      return null;
+    }
+    StringBuilder builder = new StringBuilder();
+    breakdown.forEach(
+        (target, countAndNanos) -> {
+          if (builder.length() > 0) {
+            builder.append(", ");
+          }
+          builder
+              .append(target)
+              .append(";dur=")
+              .append(
+                  String.format(
+                      Locale.ROOT,
+                      "%.1f",
+                      countAndNanos[1] / (double) TimeUnit.MILLISECONDS.toNanos(1)))
+              .append(";desc=\"")
+              .append(countAndNanos[0])
+              .append(" calls\"");
+        });
+    return builder.toString();
+  }
+
+  public Map<String, LatencyStats> snapshot() {
+    Map<String, LatencyStats> result = new TreeMap<>();
+    targetMetrics.forEach((target, metric) -> result.put(target, metric.toStats()));
+    return result;
+  }
+
+  public void reset() {
+    targetMetrics.values().forEach(TimerMetric::reset);
+  }
+
+  private TimerMetric metric(String target) {
+    return targetMetrics.computeIfAbsent(target, t -> new TimerMetric());
+  }
+}
@@ -0,0 +1,322 @@
+package org.gnuhpc.bigdata.componet;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.TreeCache;
+import org.apache.curator.framework.recipes.cache.TreeCacheEvent;
+import org.apache.curator.utils.ZKPaths;
+import org.gnuhpc.bigdata.model.TopicState;
+import org.gnuhpc.bigdata.model.ZkTopicConfig;
+import org.gnuhpc.bigdata.utils.ZookeeperUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Mirrors the topic metadata kafka keeps in ZooKeeper: {@code /brokers/topics/<topic>} (replica
+ * assignment) and {@code /brokers/topics/<topic>/partitions/<partition>/state} (leader and ISR).
+ *
+ * <p>The parsed {@link TopicState} of every topic is kept up to date from the watch events, so
+ * listings and analytics are served from memory. Registered listeners are told which topic or
+ * partition changed, so that caches of broker metadata can be invalidated instead of being
+ * refetched on every request. {@link #getVersion()} changes whenever any topic state changed.
+ *
+ * <p>The topic config overrides under {@code /config/topics} are cached as well.
+ */
+@Log4j
+@Component
+public class MetadataCache {
+  public static final String TOPICS_PATH = "/brokers/topics";
+  public static final String TOPIC_CONFIGS_PATH = "/config/topics";
+  public static final int ALL_PARTITIONS = -1;
+
+  private static final int TOPIC_DEPTH = 1;
+  private static final int PARTITION_STATE_DEPTH = 4;
+
+  @Autowired
+  private ZookeeperUtils zookeeperUtils;
+
+  private final List<TopicChangeListener> listeners = new CopyOnWriteArrayList<>();
+  private final Map<String, TopicState> topicStates = new ConcurrentHashMap<>();
+  private final AtomicLong version = new AtomicLong();
+  private final JsonParser jsonParser = new JsonParser();
+  private final Object changeMonitor = new Object();
+  private volatile boolean initialized = false;
+  private volatile boolean configsInitialized = false;
+  private TreeCache topicsCache;
+  private TreeCache configsCache;
+
+  public interface TopicChangeListener {
+    /**
+     * Called from the ZooKeeper event thread after the topic state has been updated, so
+     * implementations must not block.
+     *
+     * @param topic the changed topic, or null when the cache finished loading or the ZooKeeper
+     *     session reconnected and any topic may have changed
+     * @param partition the partition whose state changed, or {@link #ALL_PARTITIONS} when the
+     *     assignment or the config overrides of the topic changed or the topic was created or
+     *     deleted
+     */
+    void topicChanged(String topic, int partition);
+  }
+
+  @PostConstruct
+  public void start() throws Exception {
+    CuratorFramework curator = zookeeperUtils.getCuratorClient();
+    topicsCache =
+        TreeCache.newBuilder(curator, TOPICS_PATH)
+            .setMaxDepth(PARTITION_STATE_DEPTH)
+            .setCacheData(true)
+            .build();
+    topicsCache.getListenable().addListener((client, event) -> onEvent(event));
+    topicsCache.start();
+
+    configsCache =
+        TreeCache.newBuilder(curator, TOPIC_CONFIGS_PATH).setMaxDepth(1).setCacheData(true).build();
+    configsCache
+        .getListenable()
+        .addListener(
+            (client, event) -> onConfigEvent(event));
+    configsCache.start();
+  }
+
+  @PreDestroy
+  public void close() {
+    if (topicsCache != null) {
+      topicsCache.close();
+    }
+    if (configsCache != null) {
+      configsCache.close();
+    }
+  }
+
+  public void addListener(TopicChangeListener listener) {
+    listeners.add(listener);
+  }
+
+  public boolean isInitialized() {
+    return initialized && configsInitialized;
+  }
+
+  public long getVersion() {
+    return version.get();
+  }
+
+  /** Read-only view of the state of all topics. */
+  public Map<String, TopicState> getTopicStates() {
+    return Collections.unmodifiableMap(topicStates);
+  }
+
+  public TopicState getTopicState(String topic) {
+    return topicStates.get(topic);
+  }
+
+  /** The cached config overrides of the topic, parsed on every call. */
+  public ZkTopicConfig getTopicConfig(String topic) {
+    Map<String, String> config = new TreeMap<>();
+    ChildData data = configsCache.getCurrentData(TOPIC_CONFIGS_PATH + "/" + topic);
+    if (data == null) {
+      return new ZkTopicConfig(config, -1);
+    }
+    if (data.getData() != null) {
+      // {"version":1,"config":{"retention.ms":"3600000"}}
+      JsonObject overrides = parse(data.getData()).getAsJsonObject().getAsJsonObject("config");
+      if (overrides != null) {
+        overrides.entrySet().forEach(e -> config.put(e.getKey(), e.getValue().getAsString()));
+      }
+    }
+    return new ZkTopicConfig(config, data.getStat().getVersion());
+  }
+
+  /**
+   * Blocks until the condition holds, re-checking it after every topic state change instead of
+   * polling. Returns false if it still does not hold after the timeout.
+   */
+  public boolean await(BooleanSupplier condition, long timeoutMs) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+    synchronized (changeMonitor) {
+      while (!condition.getAsBoolean()) {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+          return false;
+        }
+        TimeUnit.NANOSECONDS.timedWait(changeMonitor, remaining);
+      }
+      return true;
+    }
+  }
+
+  private void onEvent(TreeCacheEvent event) {
+    switch (event.getType()) {
+      case INITIALIZED:
+        rebuildAll();
+        initialized = true;
+        log.info("Topic metadata cache of " + TOPICS_PATH + " initialized with "
+            + topicStates.size() + " topics.");
+        notifyListeners(null, ALL_PARTITIONS);
+        return;
+      case NODE_ADDED:
+      case NODE_UPDATED:
+      case NODE_REMOVED:
+        if (initialized) {
+          onPathChanged(event.getData().getPath());
+        }
+        return;
+      case CONNECTION_RECONNECTED:
+        if (initialized) {
+          // Changes may have been missed while disconnected
+          rebuildAll();
+          notifyListeners(null, ALL_PARTITIONS);
+        }
+        return;
+      default:
+        return;
+    }
+  }
+
+  private void onConfigEvent(TreeCacheEvent event) {
+    switch (event.getType()) {
+      case INITIALIZED:
+        configsInitialized = true;
+        notifyListeners(null, ALL_PARTITIONS);
+        return;
+      case NODE_ADDED:
+      case NODE_UPDATED:
+      case NODE_REMOVED:
+        String path = event.getData().getPath();
+        if (configsInitialized && path.length() > TOPIC_CONFIGS_PATH.length()) {
+          notifyListeners(ZKPaths.getNodeFromPath(path), ALL_PARTITIONS);
+        }
+        return;
+      default:
+        return;
+    }
+  }
+
+  private void onPathChanged(String path) {
+    if (path.length() <= TOPICS_PATH.length()) {
+      return;
+    }
+    List<String> parts = ZKPaths.split(path.substring(TOPICS_PATH.length()));
+    String topic;
+    int partition;
+    if (parts.size() == TOPIC_DEPTH) {
+      topic = parts.get(0);
+      partition = ALL_PARTITIONS;
+    } else if (parts.size() == PARTITION_STATE_DEPTH && "state".equals(parts.get(3))) {
+      topic = parts.get(0);
+      partition = Integer.parseInt(parts.get(2));
+    } else {
+      return;
+    }
+    rebuild(topic);
+    notifyListeners(topic, partition);
+  }
+
+  private void notifyListeners(String topic, int partition) {
+    for (TopicChangeListener listener : listeners) {
+      try {
+        listener.topicChanged(topic, partition);
+      } catch (RuntimeException e) {
+        log.warn("Topic change listener failed for topic " + topic, e);
+      }
+    }
+  }
+
+  private void rebuildAll() {
+    Map<String, ChildData> children = topicsCache.getCurrentChildren(TOPICS_PATH);
+    if (children == null) {
+      topicStates.clear();
+    } else {
+      topicStates.keySet().retainAll(children.keySet());
+      children.keySet().forEach(this::rebuild);
+    }
+    stateChanged();
+  }
+
+  private void rebuild(String topic) {
+    ChildData topicData = topicsCache.getCurrentData(TOPICS_PATH + "/" + topic);
+    TopicState state = topicData == null ? null : parseTopicState(topic, topicData.getData());
+    if (state == null) {
+      topicStates.remove(topic);
+    } else {
+      topicStates.put(topic, state);
+    }
+    stateChanged();
+  }
+
+  private void stateChanged() {
+    version.incrementAndGet();
+    synchronized (changeMonitor) {
+      changeMonitor.notifyAll();
+    }
+  }
+
+  private TopicState parseTopicState(String topic, byte[] assignmentData) {
+    if (assignmentData == null) {
+      return null;
+    }
+    try {
+      // {"version":1,"partitions":{"0":[1,2],"1":[2,3]}}
+      JsonObject partitions =
+          parse(assignmentData).getAsJsonObject().getAsJsonObject("partitions");
+      if (partitions == null) {
+        return null;
+      }
+      int partitionCount = partitions.entrySet().size();
+      int[][] replicas = new int[partitionCount][];
+      int[] leaders = new int[partitionCount];
+      int[][] isr = new int[partitionCount][];
+      Arrays.fill(leaders, TopicState.NO_LEADER);
+      Arrays.fill(isr, new int[0]);
+
+      for (Map.Entry<String, JsonElement> entry : partitions.entrySet()) {
+        int partition = Integer.parseInt(entry.getKey());
+        replicas[partition] = toIntArray(entry.getValue().getAsJsonArray());
+
+        // {"controller_epoch":1,"leader":1,"version":1,"leader_epoch":0,"isr":[1,2]}
+        ChildData stateData =
+            topicsCache.getCurrentData(
+                TOPICS_PATH + "/" + topic + "/partitions/" + entry.getKey() + "/state");
+        if (stateData != null && stateData.getData() != null) {
+          JsonObject partitionState = parse(stateData.getData()).getAsJsonObject();
+          leaders[partition] = partitionState.get("leader").getAsInt();
+          isr[partition] = toIntArray(partitionState.getAsJsonArray("isr"));
+        }
+      }
+      return new TopicState(topic, replicas, leaders, isr);
+    } catch (RuntimeException e) {
+      log.warn("Could not parse the metadata of topic " + topic + " from zookeeper", e);
+      return null;
+    }
+  }
+
+  private JsonElement parse(byte[] data) {
+    return jsonParser.parse(new String(data, StandardCharsets.UTF_8));
+  }
+
+  private static int[] toIntArray(JsonArray array) {
+    int[] result = new int[array.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = array.get(i).getAsInt();
+    }
+    return result;
+  }
+}
@@ -2,46 +2,62 @@ package org.gnuhpc.bigdata.componet;
 
 
 import lombok.extern.log4j.Log4j;
-import org.aspectj.lang.JoinPoint;
-import org.aspectj.lang.annotation.AfterReturning;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
-import org.aspectj.lang.annotation.Before;
 import org.aspectj.lang.annotation.Pointcut;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
 
 import javax.servlet.http.HttpServletRequest;
 import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
 
+/**
+ * Request logging. Timing is collected by {@link RestMetricsAspect}; this aspect only writes a
+ * one-line summary at DEBUG, and the arguments and response body only when body logging is enabled
+ * and the request is sampled, because rendering large topic or JMX responses as strings costs more
+ * than serving them.
+ */
 @Aspect
 @Component
 @Log4j
 public class RestLogAspect {
-    ThreadLocal<Long> startTime = new ThreadLocal<>();
+    @Value("${server.restlog.body.enabled:false}")
+    private boolean bodyLogEnabled;
+
+    @Value("${server.restlog.body.sample-rate:0.01}")
+    private double bodyLogSampleRate;
+
     @Pointcut("execution(public * org.gnuhpc.bigdata.controller..*.*(..))")
     public void restServiceLog(){}
 
-    @Before("restServiceLog()")
-    public void doBefore(JoinPoint joinPoint) throws Throwable {
-        startTime.set(System.currentTimeMillis());
-        // 接收到请求，记录请求内容
-        ServletRequestAttributes attributes = (ServletRequestAttributes) RequestContextHolder.getRequestAttributes();
-        HttpServletRequest request = attributes.getRequest();
-        // 记录下请求内容
-        log.info("===================== Controller Request ====================");
-        log.info("URL : " + request.getRequestURL().toString());
-        log.info("HTTP_METHOD : " + request.getMethod());
-        log.info("IP : " + request.getRemoteAddr());
-        log.info("CLASS_METHOD : " + joinPoint.getSignature().getDeclaringTypeName() + "." + joinPoint.getSignature().getName());
-        log.info("ARGS : " + Arrays.toString(joinPoint.getArgs()));
-    }
+    @Around("restServiceLog()")
+    public Object doAround(ProceedingJoinPoint joinPoint) throws Throwable {
+        boolean logBody = bodyLogEnabled && ThreadLocalRandom.current().nextDouble() < bodyLogSampleRate;
+        if (!logBody && !log.isDebugEnabled()) {
+            return joinPoint.proceed();
+        }
+
+        long startTime = System.currentTimeMillis();
+        String classMethod = joinPoint.getSignature().getDeclaringTypeName() + "." + joinPoint.getSignature().getName();
+        Object ret = joinPoint.proceed();
+        long spendTime = System.currentTimeMillis() - startTime;
 
-    @AfterReturning(returning = "ret", pointcut = "restServiceLog()")
-    public void doAfterReturning(Object ret) throws Throwable {
-        // 处理完请求，返回内容
-        log.info("===================== Controller Response =================");
-        log.info("SPEND TIME : " + (System.currentTimeMillis() - startTime.get()));
-        log.info("RESPONSE : " + ret);
+        ServletRequestAttributes attributes = (ServletRequestAttributes) RequestContextHolder.getRequestAttributes();
+        String requestLine = "";
+        if (attributes != null) {
+            HttpServletRequest request = attributes.getRequest();
+            requestLine = request.getMethod() + " " + request.getRequestURL().toString() + " from " + request.getRemoteAddr() + " ";
+        }
+        if (logBody) {
+            log.info(requestLine + classMethod + " SPEND TIME : " + spendTime
+                    + " ARGS : " + Arrays.toString(joinPoint.getArgs()) + " RESPONSE : " + ret);
+        } else {
+            log.debug(requestLine + classMethod + " SPEND TIME : " + spendTime);
+        }
+        return ret;
     }
 }
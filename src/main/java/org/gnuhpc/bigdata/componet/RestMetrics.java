@@ -0,0 +1,30 @@
+package org.gnuhpc.bigdata.componet;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import org.gnuhpc.bigdata.model.LatencyStats;
+import org.gnuhpc.bigdata.utils.TimerMetric;
+import org.springframework.stereotype.Component;
+
+/**
+ * Per controller method latency registry, filled by {@link RestMetricsAspect}.
+ */
+@Component
+public class RestMetrics {
+  private final Map<String, TimerMetric> endpointMetrics = new ConcurrentHashMap<>();
+
+  public TimerMetric metric(String endpoint) {
+    return endpointMetrics.computeIfAbsent(endpoint, e -> new TimerMetric());
+  }
+
+  public Map<String, LatencyStats> snapshot() {
+    Map<String, LatencyStats> result = new TreeMap<>();
+    endpointMetrics.forEach((endpoint, metric) -> result.put(endpoint, metric.toStats()));
+    return result;
+  }
+
+  public void reset() {
+    endpointMetrics.values().forEach(TimerMetric::reset);
+  }
+}
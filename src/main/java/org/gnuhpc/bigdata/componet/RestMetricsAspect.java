@@ -0,0 +1,65 @@
+package org.gnuhpc.bigdata.componet;
+
+import javax.servlet.http.HttpServletResponse;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Pointcut;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.gnuhpc.bigdata.utils.TimerMetric;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+/**
+ * Records the latency distribution, in-flight count and error count of every controller method,
+ * and reports the downstream time of the request in the Server-Timing response header.
+ */
+@Aspect
+@Component
+public class RestMetricsAspect {
+  public static final String SERVER_TIMING_HEADER = "Server-Timing";
+
+  @Autowired
+  private RestMetrics restMetrics;
+
+  @Autowired
+  private DownstreamMetrics downstreamMetrics;
+
+  @Pointcut("execution(public * org.gnuhpc.bigdata.controller..*.*(..))")
+  public void restService() {}
+
+  @Around("restService()")
+  public Object doAround(ProceedingJoinPoint joinPoint) throws Throwable {
+    MethodSignature signature = (MethodSignature) joinPoint.getSignature();
+    TimerMetric metric =
+        restMetrics.metric(
+            signature.getDeclaringType().getSimpleName() + "." + signature.getName());
+    boolean outermost = downstreamMetrics.beginRequest();
+    long start = metric.start();
+    boolean failed = true;
+    try {
+      Object ret = joinPoint.proceed();
+      failed = false;
+      return ret;
+    } finally {
+      metric.stop(start, failed);
+      if (outermost) {
+        addServerTiming(downstreamMetrics.endRequest());
+      }
+    }
+  }
+
+  private void addServerTiming(String serverTiming) {
+    if (serverTiming == null) {
+      return;
+    }
+    ServletRequestAttributes attributes =
+        (ServletRequestAttributes) RequestContextHolder.getRequestAttributes();
+    HttpServletResponse response = (attributes == null) ? null : attributes.getResponse();
+    if (response != null && !response.isCommitted()) {
+      response.addHeader(SERVER_TIMING_HEADER, serverTiming);
+    }
+  }
+}
@@ -0,0 +1,7 @@
+package org.gnuhpc.bigdata.constant;
+
+public enum ExportCompression {
+    NONE,
+    GZIP,
+    LZ4
+}
@@ -0,0 +1,6 @@
+package org.gnuhpc.bigdata.constant;
+
+public enum ExportFormat {
+    NDJSON,
+    BINARY
+}
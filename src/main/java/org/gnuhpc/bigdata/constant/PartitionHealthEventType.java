@@ -0,0 +1,12 @@
+package org.gnuhpc.bigdata.constant;
+
+public enum PartitionHealthEventType {
+    ISR_SHRINK,
+    ISR_EXPAND,
+    UNDER_REPLICATED,
+    FULLY_REPLICATED,
+    UNDER_MIN_ISR,
+    MIN_ISR_RESTORED,
+    OFFLINE,
+    ONLINE
+}
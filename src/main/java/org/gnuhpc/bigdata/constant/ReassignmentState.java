@@ -0,0 +1,10 @@
+package org.gnuhpc.bigdata.constant;
+
+public enum ReassignmentState {
+    PENDING,
+    RUNNING,
+    PAUSED,
+    CANCELLED,
+    COMPLETED,
+    FAILED
+}
@@ -0,0 +1,7 @@
+package org.gnuhpc.bigdata.constant;
+
+public enum SearchMatchType {
+    SUBSTRING,
+    REGEX,
+    JSON_PATH
+}
@@ -0,0 +1,9 @@
+package org.gnuhpc.bigdata.constant;
+
+public enum SearchStopReason {
+    COMPLETED,
+    MAX_MATCHES,
+    BYTE_BUDGET,
+    TIME_BUDGET,
+    CANCELLED
+}
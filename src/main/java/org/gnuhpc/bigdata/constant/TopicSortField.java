@@ -0,0 +1,7 @@
+package org.gnuhpc.bigdata.constant;
+
+public enum TopicSortField {
+    NAME,
+    PARTITIONS,
+    ISR_RATE
+}
@@ -1,5 +1,6 @@
 package org.gnuhpc.bigdata.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
@@ -10,19 +11,48 @@ import lombok.extern.log4j.Log4j;
 import org.apache.kafka.common.errors.ApiException;
 import org.apache.kafka.common.errors.InvalidTopicException;
 import org.gnuhpc.bigdata.constant.ConsumerType;
+import org.gnuhpc.bigdata.constant.ExportCompression;
+import org.gnuhpc.bigdata.constant.ExportFormat;
 import org.gnuhpc.bigdata.constant.GeneralResponseState;
+import org.gnuhpc.bigdata.constant.RecordEncoding;
+import org.gnuhpc.bigdata.constant.TailOverflowPolicy;
+import org.gnuhpc.bigdata.constant.TopicSortField;
+import org.gnuhpc.bigdata.decoder.DecoderRegistry;
+import org.gnuhpc.bigdata.decoder.RecordDecoder;
 import org.gnuhpc.bigdata.model.*;
 import org.gnuhpc.bigdata.service.KafkaAdminService;
 import org.gnuhpc.bigdata.service.KafkaProducerService;
+import org.gnuhpc.bigdata.service.LiveTailService;
+import org.gnuhpc.bigdata.service.MessageBrowseService;
+import org.gnuhpc.bigdata.service.MessageSearchService;
+import org.gnuhpc.bigdata.service.MirrorCheckService;
+import org.gnuhpc.bigdata.service.PartitionHealthMonitor;
+import org.gnuhpc.bigdata.service.PlacementAnalyzer;
+import org.gnuhpc.bigdata.service.PreferredLeaderService;
+import org.gnuhpc.bigdata.service.RecordExportService;
+import org.gnuhpc.bigdata.service.ReassignmentExecutor;
+import org.gnuhpc.bigdata.service.ReassignmentPlanner;
+import org.gnuhpc.bigdata.service.ReassignmentTracker;
+import org.gnuhpc.bigdata.service.TimestampOffsetService;
+import org.gnuhpc.bigdata.service.TopicSamplingService;
+import org.gnuhpc.bigdata.utils.ChunkedJsonWriter;
+import org.gnuhpc.bigdata.utils.NdjsonWriter;
 import org.gnuhpc.bigdata.validator.ConsumerGroupExistConstraint;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.function.Predicate;
+import javax.servlet.http.HttpServletRequest;
 
 /**
  * Created by gnuhpc on 2017/7/16.
@@ -37,18 +67,84 @@ public class KafkaController {
     @Autowired
     private KafkaProducerService kafkaProducerService;
 
+    @Autowired
+    private MessageBrowseService messageBrowseService;
+
+    @Autowired
+    private MessageSearchService messageSearchService;
+
+    @Autowired
+    private DecoderRegistry decoderRegistry;
+
+    @Autowired
+    private LiveTailService liveTailService;
+
+    @Autowired
+    private TimestampOffsetService timestampOffsetService;
+
+    @Autowired
+    private TopicSamplingService topicSamplingService;
+
+    @Autowired
+    private RecordExportService recordExportService;
+
+    @Autowired
+    private MirrorCheckService mirrorCheckService;
+
+    @Autowired
+    private ReassignmentPlanner reassignmentPlanner;
+
+    @Autowired
+    private ReassignmentExecutor reassignmentExecutor;
+
+    @Autowired
+    private ReassignmentTracker reassignmentTracker;
+
+    @Autowired
+    private PreferredLeaderService preferredLeaderService;
+
+    @Autowired
+    private PartitionHealthMonitor partitionHealthMonitor;
+
+    @Autowired
+    private PlacementAnalyzer placementAnalyzer;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
     @GetMapping("/topics")
     @ApiOperation(value = "List topics")
     public List<String> listTopics() {
         return kafkaAdminService.listTopics();
     }
 
+    @GetMapping(value = "/topics", params = "limit")
+    @ApiOperation(value = "List topics page by page in name order, optionally filtered by name prefix or regex")
+    public Page<String> listTopics(@RequestParam int limit,
+                                   @RequestParam(required = false) String cursor,
+                                   @RequestParam(required = false) String prefix,
+                                   @RequestParam(required = false) String regex) {
+        return kafkaAdminService.listTopics(prefix, regex, cursor, limit);
+    }
+
     @GetMapping("/topicsbrief")
     @ApiOperation(value = "List topics Brief")
     public List<TopicBrief> listTopicBrief() {
         return kafkaAdminService.listTopicBrief();
     }
 
+    @GetMapping(value = "/topicsbrief", params = "limit")
+    @ApiOperation(value = "List topics brief page by page, sorted by name, partition count or ISR rate " +
+            "and optionally filtered by name prefix or regex")
+    public Page<TopicBrief> listTopicBrief(@RequestParam int limit,
+                                           @RequestParam(required = false) String cursor,
+                                           @RequestParam(required = false) String prefix,
+                                           @RequestParam(required = false) String regex,
+                                           @RequestParam(required = false) TopicSortField sort,
+                                           @RequestParam(defaultValue = "false") boolean desc) {
+        return kafkaAdminService.listTopicBrief(prefix, regex, sort, desc, cursor, limit);
+    }
+
     @PostMapping(value = "/topics/create", consumes = "application/json")
     @ResponseStatus(HttpStatus.CREATED)
     @ApiOperation(value = "Create a topic")
@@ -57,6 +153,20 @@ public class KafkaController {
         return kafkaAdminService.createTopic(topic, reassignStr);
     }
 
+    @PostMapping(value = "/topics/create/batch", consumes = "application/json")
+    @ApiOperation(value = "Create many topics at once and wait until all their partitions have a leader. " +
+            "Returns the result per topic.")
+    public Map<String, GeneralResponse> createTopics(@RequestBody List<TopicDetail> topics) {
+        return kafkaAdminService.createTopics(topics);
+    }
+
+    @DeleteMapping(value = "/topics", consumes = "application/json")
+    @ApiOperation(value = "Delete many topics at once (you should enable topic deletion). " +
+            "Returns the result per topic.")
+    public Map<String, GeneralResponse> deleteTopics(@RequestBody List<String> topics) {
+        return kafkaAdminService.deleteTopics(topics);
+    }
+
     @ApiOperation(value = "Tell if a topic exists")
     @GetMapping(value = "/topics/{topic}/exist")
     public boolean existTopic(@PathVariable String topic) {
@@ -71,13 +181,206 @@ public class KafkaController {
         return new GeneralResponse(GeneralResponseState.success, message + " has been sent");
     }
 
+    @PostMapping(value = "/topics/{topic}/write/batch", consumes = "application/json")
+    @ApiOperation(value = "Write a JSON array of records with value and optional key and partition, as UTF8 text " +
+            "or BASE64. The records are sent together and the partition and offset of every record is returned")
+    public ProduceBatchResult writeMessages(@PathVariable String topic,
+                                            @RequestParam(defaultValue = "UTF8") RecordEncoding encoding,
+                                            HttpServletRequest request) throws IOException {
+        return kafkaProducerService.sendBatch(topic, kafkaProducerService.parseJsonArray(request.getInputStream()),
+                encoding);
+    }
+
+    @PostMapping(value = "/topics/{topic}/write/batch", consumes = NdjsonWriter.CONTENT_TYPE)
+    @ApiOperation(value = "Write records given one JSON object per line, like the JSON array variant")
+    public ProduceBatchResult writeMessagesNdjson(@PathVariable String topic,
+                                                  @RequestParam(defaultValue = "UTF8") RecordEncoding encoding,
+                                                  HttpServletRequest request) throws IOException {
+        return kafkaProducerService.sendBatch(topic, kafkaProducerService.parseNdjson(request.getInputStream()),
+                encoding);
+    }
+
     @GetMapping(value = "/consumer/{topic}/{partition}/{offset}")
-    @ApiOperation(value = "Get the message from the offset of the partition in the topic" +
-            ", decoder is not supported yet")
+    @ApiOperation(value = "Get the message from the offset of the partition in the topic. decoder is one of " +
+            "utf8 (default), hex, base64, json, length-prefixed, avro or avro-confluent, the avro decoders " +
+            "need the schema JSON in avroSchema")
     public String getMessage(@PathVariable String topic,
                              @PathVariable int partition,
-                             @PathVariable long offset, @RequestParam(required = false) String decoder) {
-        return kafkaAdminService.getMessage(topic, partition, offset, decoder,"");
+                             @PathVariable long offset, @RequestParam(required = false) String decoder,
+                             @RequestParam(required = false) String avroSchema) {
+        return kafkaAdminService.getMessage(topic, partition, offset, decoder, avroSchema);
+    }
+
+    @GetMapping(value = "/topics/{topic}/partitions/{partition}/messages")
+    @ApiOperation(value = "Stream the records of a partition from the offset on, bounded by count and bytes. " +
+            "format=ndjson writes one record per line and the result with the continuation offset last, " +
+            "format=json writes {\"records\":[...],\"result\":{...}}. Keys and values are rendered by " +
+            "keyDecoder and valueDecoder, utf8 by default. Instead of the offset, a timestamp in ms starts at the " +
+            "first record at or after it")
+    public ResponseEntity<StreamingResponseBody> browseMessages(@PathVariable String topic,
+                                                                @PathVariable int partition,
+                                                                @RequestParam(required = false) Long offset,
+                                                                @RequestParam(required = false) Long timestamp,
+                                                                @RequestParam(defaultValue = "100") int count,
+                                                                @RequestParam(defaultValue = "1048576") long maxBytes,
+                                                                @RequestParam(defaultValue = "ndjson") String format,
+                                                                @RequestParam(required = false) String keyDecoder,
+                                                                @RequestParam(required = false) String valueDecoder,
+                                                                @RequestParam(required = false) String avroSchema) {
+        messageBrowseService.checkRange(topic, partition, count, maxBytes);
+        RecordDecoder decoder = decoderRegistry.recordDecoder(keyDecoder, valueDecoder, avroSchema);
+        if ((offset == null) == (timestamp == null)) {
+            throw new ApiException("Either offset or timestamp must be given");
+        }
+        long startOffset = offset != null ? offset : timestampOffsetService.resolve(topic, partition, timestamp);
+        StreamingResponseBody body;
+        String contentType;
+        if ("json".equals(format)) {
+            contentType = ChunkedJsonWriter.CONTENT_TYPE;
+            body = out -> {
+                ChunkedJsonWriter writer = new ChunkedJsonWriter(objectMapper, out, "records");
+                BrowseResult result = messageBrowseService.browse(topic, partition, startOffset, count, maxBytes,
+                        decoder, writer::append, writer::flush);
+                writer.finish("result", result);
+            };
+        } else if ("ndjson".equals(format)) {
+            contentType = NdjsonWriter.CONTENT_TYPE;
+            body = out -> {
+                NdjsonWriter writer = new NdjsonWriter(objectMapper, out);
+                writer.write(messageBrowseService.browse(topic, partition, startOffset, count, maxBytes,
+                        decoder, writer::append, writer::flush));
+            };
+        } else {
+            throw new ApiException("Unknown format " + format + ", use ndjson or json");
+        }
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(contentType)).body(body);
+    }
+
+    @PostMapping(value = "/topics/{topic}/search", consumes = "application/json", produces = NdjsonWriter.CONTENT_TYPE)
+    @ApiOperation(value = "Search the partitions of a topic in parallel for a substring, regex or JSON path value. " +
+            "Matches are streamed one per line as they are found, the result with the offsets to continue from " +
+            "is the last line.")
+    public StreamingResponseBody searchMessages(@PathVariable String topic, @RequestBody MessageSearchRequest request) {
+        messageSearchService.checkRequest(topic, request);
+        return out -> {
+            NdjsonWriter writer = new NdjsonWriter(objectMapper, out);
+            writer.write(messageSearchService.search(topic, request, writer::write));
+        };
+    }
+
+    @GetMapping(value = "/topics/{topic}/tail", produces = "text/event-stream")
+    @ApiOperation(value = "Follow the partitions of a topic, all by default, as server-sent record events from " +
+            "latest or the offset on. Slow clients lose the oldest records (DROP_OLDEST) or get a sample of them " +
+            "(SAMPLE, every sampleRate-th record once the backlog is half full), reported by dropped events. " +
+            "Reconnecting with Last-Event-ID resumes every partition.")
+    public SseEmitter tailTopic(@PathVariable String topic,
+                                @RequestParam(required = false) List<Integer> partitions,
+                                @RequestParam(defaultValue = "latest") String offset,
+                                @RequestParam(defaultValue = "DROP_OLDEST") TailOverflowPolicy policy,
+                                @RequestParam(defaultValue = "10") int sampleRate,
+                                @RequestParam(required = false) String keyDecoder,
+                                @RequestParam(required = false) String valueDecoder,
+                                @RequestParam(required = false) String avroSchema,
+                                @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
+                                HttpServletRequest request) {
+        RecordDecoder decoder = decoderRegistry.recordDecoder(keyDecoder, valueDecoder, avroSchema);
+        String user = request.getUserPrincipal() == null ? request.getRemoteAddr()
+                : request.getUserPrincipal().getName();
+        return liveTailService.subscribe(topic, partitions, offset, lastEventId, policy, sampleRate, decoder, user);
+    }
+
+    @GetMapping(value = "/tail/streams")
+    @ApiOperation(value = "List the open live tail streams with their backlog and dropped records")
+    public List<TailStreamInfo> getTailStreams() {
+        return liveTailService.getStreams();
+    }
+
+    @GetMapping(value = "/topics/{topic}/offsets")
+    @ApiOperation(value = "The offset of the first record at or after the timestamp in ms of every partition, " +
+            "the end offset where there is none")
+    public Map<Integer, Long> getOffsetsForTime(@PathVariable String topic, @RequestParam long timestamp) {
+        return timestampOffsetService.resolve(topic, timestamp);
+    }
+
+    @GetMapping(value = "/topics/{topic}/sample")
+    @ApiOperation(value = "Sample the fraction of the records of every partition for record size histograms, " +
+            "distinct and heaviest keys and the partition skew. Samples are cached per topic unless refresh is set")
+    public TopicSample sampleTopic(@PathVariable String topic,
+                                   @RequestParam(defaultValue = "0.01") double fraction,
+                                   @RequestParam(defaultValue = "false") boolean refresh) {
+        return topicSamplingService.sample(topic, fraction, refresh);
+    }
+
+    @GetMapping(value = "/topics/{topic}/partitions/{partition}/export")
+    @ApiOperation(value = "Download the records of a partition from the offset, or the first record at or after " +
+            "the timestamp, up to endOffset or the current end, at most count. format=NDJSON encodes keys and " +
+            "values as BASE64 or UTF8 text, format=BINARY keeps the bytes. compression is NONE, GZIP or LZ4")
+    public ResponseEntity<StreamingResponseBody> exportMessages(@PathVariable String topic,
+                                                                @PathVariable int partition,
+                                                                @RequestParam(required = false) Long offset,
+                                                                @RequestParam(required = false) Long timestamp,
+                                                                @RequestParam(required = false) Long endOffset,
+                                                                @RequestParam(defaultValue = "1000000") long count,
+                                                                @RequestParam(defaultValue = "NDJSON") ExportFormat format,
+                                                                @RequestParam(defaultValue = "GZIP")
+                                                                        ExportCompression compression,
+                                                                @RequestParam(defaultValue = "BASE64")
+                                                                        RecordEncoding encoding) {
+        recordExportService.checkExport(topic, partition, count);
+        if (offset != null && timestamp != null) {
+            throw new ApiException("Only one of offset and timestamp can be given");
+        }
+        long startOffset = timestamp != null ? timestampOffsetService.resolve(topic, partition, timestamp)
+                : offset != null ? offset : 0L;
+        String filename = topic + "-" + partition + "-" + startOffset
+                + (format == ExportFormat.BINARY ? ".bin" : ".ndjson")
+                + (compression == ExportCompression.GZIP ? ".gz" : compression == ExportCompression.LZ4 ? ".lz4" : "");
+        StreamingResponseBody body = out -> recordExportService.export(topic, partition, startOffset, endOffset,
+                count, format, compression, encoding, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .header("Content-Disposition", "attachment; filename=\"" + filename + "\"")
+                .body(body);
+    }
+
+    @PostMapping(value = "/topics/{topic}/import")
+    @ApiOperation(value = "Write the records of an export, the request body, to the topic. format, compression " +
+            "and encoding must match the export. keepPartitions writes every record to its exported partition, " +
+            "keepTimestamps keeps the exported timestamps")
+    public ImportResult importMessages(@PathVariable String topic,
+                                       @RequestParam(defaultValue = "NDJSON") ExportFormat format,
+                                       @RequestParam(defaultValue = "GZIP") ExportCompression compression,
+                                       @RequestParam(defaultValue = "BASE64") RecordEncoding encoding,
+                                       @RequestParam(defaultValue = "true") boolean keepPartitions,
+                                       @RequestParam(defaultValue = "true") boolean keepTimestamps,
+                                       HttpServletRequest request) throws IOException {
+        return recordExportService.importRecords(topic, request.getInputStream(), format, compression, encoding,
+                keepPartitions, keepTimestamps);
+    }
+
+    @PostMapping(value = "/mirror-checks", consumes = "application/json")
+    @ApiOperation(value = "Start comparing the records of a mirrored topic with its source by order-independent " +
+            "digests, narrowing the ranges that differ by bisection")
+    public MirrorCheckJob startMirrorCheck(@RequestBody MirrorCheckRequest request) {
+        return mirrorCheckService.submit(request);
+    }
+
+    @GetMapping(value = "/mirror-checks")
+    @ApiOperation(value = "List the running and the recent mirror checks")
+    public List<MirrorCheckJob> listMirrorChecks() {
+        return mirrorCheckService.getJobs();
+    }
+
+    @GetMapping(value = "/mirror-checks/{id}")
+    @ApiOperation(value = "Get the progress and the differing ranges of a mirror check")
+    public MirrorCheckJob getMirrorCheck(@PathVariable String id) {
+        return mirrorCheckService.getJob(id);
+    }
+
+    @DeleteMapping(value = "/mirror-checks/{id}")
+    @ApiOperation(value = "Cancel a running mirror check")
+    public MirrorCheckJob cancelMirrorCheck(@PathVariable String id) {
+        return mirrorCheckService.cancel(id);
     }
 
     @GetMapping(value = "/topics/{topic}")
@@ -86,6 +389,14 @@ public class KafkaController {
         return kafkaAdminService.describeTopic(topic);
     }
 
+    @PostMapping(value = "/topics/describe", consumes = "application/json", produces = NdjsonWriter.CONTENT_TYPE)
+    @ApiOperation(value = "Describe the topics picked by name list and/or regex. One line of JSON is streamed " +
+            "per topic as soon as it is described.")
+    public StreamingResponseBody describeTopics(@RequestBody TopicSelector selector) {
+        Predicate<String> topicFilter = selector.toPredicate();
+        return out -> kafkaAdminService.describeTopics(topicFilter, new NdjsonWriter(objectMapper, out)::write);
+    }
+
     @GetMapping(value = "/brokers")
     @ApiOperation(value = "List brokers in this cluster")
     public List<BrokerInfo> listBrokers() {
@@ -105,6 +416,13 @@ public class KafkaController {
         return kafkaAdminService.createTopicConf(topic, prop);
     }
 
+    @PutMapping(value = "/topics/conf", consumes = "application/json")
+    @ApiOperation(value = "Set and delete config overrides on all topics picked by name list and/or regex. " +
+            "Only the topics whose config changes are written, the before/after of each is returned.")
+    public TopicConfigReport patchTopicConfigs(@RequestBody TopicConfigPatch patch) {
+        return kafkaAdminService.patchTopicConfigs(patch);
+    }
+
     @PutMapping(value = "/topics/{topic}/conf")
     @ApiOperation(value = "Update topic configs")
     public Properties updateTopicConfig(@PathVariable String topic,
@@ -179,6 +497,13 @@ public class KafkaController {
 
     }
 
+    @PostMapping(value = "/partitions/reassign/plan")
+    @ApiOperation(value = "Plan a reassignment that balances partition sizes and bytes-in rates over the brokers " +
+            "with as little data moved as possible")
+    public ReassignPlan planReassignPartitions(@RequestBody ReassignPlanRequest request) {
+        return reassignmentPlanner.plan(request);
+    }
+
     @PutMapping(value = "/partitions/reassign/execute")
     @ApiOperation(value = "Execute the partition reassignment")
     public Map<TopicAndPartition, Integer> executeReassignPartitions(
@@ -195,6 +520,95 @@ public class KafkaController {
         return kafkaAdminService.checkReassignStatus(reassignStr);
     }
 
+    @GetMapping(value = "/partitions/reassign/progress")
+    @ApiOperation(value = "Get completed and remaining partitions, copied bytes and ETA of the running reassignment")
+    public ReassignmentProgress getReassignProgress(@RequestParam(defaultValue = "true") boolean partitions) {
+        return reassignmentTracker.getProgress(partitions);
+    }
+
+    @GetMapping(value = "/partitions/health")
+    @ApiOperation(value = "Under-replicated, under-min-ISR and offline partitions of the cluster")
+    public PartitionHealthReport getPartitionHealth(@RequestParam(defaultValue = "true") boolean details) {
+        return partitionHealthMonitor.getReport(details);
+    }
+
+    @GetMapping(value = "/partitions/health/events")
+    @ApiOperation(value = "ISR shrink and expand events and partition health changes after the given sequence number")
+    public List<PartitionHealthEvent> getPartitionHealthEvents(@RequestParam(defaultValue = "0") long since,
+                                                               @RequestParam(defaultValue = "1000") int limit) {
+        return partitionHealthMonitor.getEvents(since, limit);
+    }
+
+    @GetMapping(value = "/partitions/health/stream", produces = "text/event-stream")
+    @ApiOperation(value = "Stream ISR and partition health changes as server-sent events")
+    public SseEmitter streamPartitionHealth(@RequestHeader(value = "Last-Event-ID", required = false)
+                                                    Long lastEventId) {
+        return partitionHealthMonitor.subscribe(lastEventId);
+    }
+
+    @GetMapping(value = "/partitions/placement")
+    @ApiOperation(value = "Replicas, leaders and partitions per broker and rack, topics concentrated on few brokers " +
+            "and rack-awareness violations")
+    public PlacementSummary getPlacement(@RequestParam(defaultValue = "2") double concentrationRatio,
+                                         @RequestParam(defaultValue = "100") int limit) {
+        return placementAnalyzer.getSummary(concentrationRatio, limit);
+    }
+
+    @GetMapping(value = "/partitions/leaders/skew")
+    @ApiOperation(value = "Leaders, preferred leaders and replicas per broker, with the skew before and after " +
+            "a preferred replica election")
+    public LeaderSkewReport getLeaderSkew() {
+        return preferredLeaderService.getLeaderSkew();
+    }
+
+    @PostMapping(value = "/partitions/leaders/preferred-election")
+    @ApiOperation(value = "Elect the preferred replicas in throttled batches, or only project the result with dryRun")
+    public PreferredElectionJob electPreferredLeaders(@RequestBody PreferredElectionRequest request) {
+        return preferredLeaderService.elect(request);
+    }
+
+    @GetMapping(value = "/partitions/leaders/preferred-election")
+    @ApiOperation(value = "Get the progress of the preferred replica election")
+    public PreferredElectionJob getPreferredElection() {
+        return preferredLeaderService.getJob();
+    }
+
+    @DeleteMapping(value = "/partitions/leaders/preferred-election")
+    @ApiOperation(value = "Cancel the remaining batches of the preferred replica election")
+    public PreferredElectionJob cancelPreferredElection() {
+        return preferredLeaderService.cancel();
+    }
+
+    @PostMapping(value = "/partitions/reassign/waves")
+    @ApiOperation(value = "Execute the partition reassignment in waves bounded by partitions and bytes to copy")
+    public ReassignmentJob executeReassignWaves(@RequestBody ReassignWavesRequest request) {
+        return reassignmentExecutor.submit(request);
+    }
+
+    @GetMapping(value = "/partitions/reassign/waves")
+    @ApiOperation(value = "Get the progress of the reassignment executed in waves")
+    public ReassignmentJob getReassignWaves() {
+        return reassignmentExecutor.getJob();
+    }
+
+    @PutMapping(value = "/partitions/reassign/waves/pause")
+    @ApiOperation(value = "Stop starting new waves, the wave in flight still completes")
+    public ReassignmentJob pauseReassignWaves() {
+        return reassignmentExecutor.pause();
+    }
+
+    @PutMapping(value = "/partitions/reassign/waves/resume")
+    @ApiOperation(value = "Resume a paused reassignment")
+    public ReassignmentJob resumeReassignWaves() {
+        return reassignmentExecutor.resume();
+    }
+
+    @PutMapping(value = "/partitions/reassign/waves/cancel")
+    @ApiOperation(value = "Cancel the remaining waves, the wave in flight still completes")
+    public ReassignmentJob cancelReassignWaves() {
+        return reassignmentExecutor.cancel();
+    }
+
     @GetMapping(value = "/consumergroups")
     @ApiOperation(value = "List all consumer groups from zk and kafka")
     public Map<String, Set<String>> listAllConsumerGroups(
@@ -208,6 +622,17 @@ public class KafkaController {
         }
     }
 
+    @GetMapping(value = "/consumergroups", params = "limit")
+    @ApiOperation(value = "List consumer groups page by page in name order, optionally filtered by type, " +
+            "name prefix or regex")
+    public Page<ConsumerGroupBrief> listAllConsumerGroups(@RequestParam int limit,
+                                                          @RequestParam(required = false) String cursor,
+                                                          @RequestParam(required = false) ConsumerType type,
+                                                          @RequestParam(required = false) String prefix,
+                                                          @RequestParam(required = false) String regex) {
+        return kafkaAdminService.listAllConsumerGroups(type, prefix, regex, cursor, limit);
+    }
+
     @GetMapping(value = "/consumergroups/{consumerGroup}/{type}/topic")
     @ApiOperation(value = "Get the topics involved of the specify consumer group")
     public Set<String> listTopicByCG(@PathVariable String consumerGroup,
@@ -252,6 +677,16 @@ public class KafkaController {
         return kafkaAdminService.resetOffset(topic, partition, consumergroup, type, offset);
     }
 
+    @PutMapping(value = "/consumergroup/{consumergroup}/{type}/topic/{topic}/offsets")
+    @ApiOperation(value = "Reset the consumer group offsets of all partitions of the topic to the first record at " +
+            "or after the timestamp in ms, returns the offsets reset to")
+    public Map<Integer, Long> resetOffsetsToTime(@PathVariable String topic,
+                                                 @PathVariable String consumergroup,
+                                                 @PathVariable ConsumerType type,
+                                                 @RequestParam long timestamp) {
+        return kafkaAdminService.resetOffsetsToTime(topic, consumergroup, type, timestamp);
+    }
+
     @GetMapping(value = "/consumergroup/{consumergroup}/{type}/topic/{topic}/lastcommittime")
     public Map<String, Map<Integer, Long>> getLastCommitTimestamp(
             @PathVariable String consumergroup,
@@ -0,0 +1,70 @@
+package org.gnuhpc.bigdata.controller;
+
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.gnuhpc.bigdata.componet.DownstreamMetrics;
+import org.gnuhpc.bigdata.componet.RestMetrics;
+import org.gnuhpc.bigdata.constant.GeneralResponseState;
+import org.gnuhpc.bigdata.model.GeneralResponse;
+import org.gnuhpc.bigdata.model.LatencyStats;
+import org.gnuhpc.bigdata.model.PoolStats;
+import org.gnuhpc.bigdata.utils.KafkaUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/metrics")
+@Api(value = "/metrics", description = "Latency and error metrics of this service")
+public class MetricsController {
+  @Autowired
+  private RestMetrics restMetrics;
+
+  @Autowired
+  private DownstreamMetrics downstreamMetrics;
+
+  @Autowired
+  private KafkaUtils kafkaUtils;
+
+  @GetMapping("/rest")
+  @ApiOperation(value = "Latency distribution, in-flight and error count per REST endpoint")
+  public Map<String, LatencyStats> restMetrics() {
+    return restMetrics.snapshot();
+  }
+
+  @DeleteMapping("/rest")
+  @ApiOperation(value = "Reset the REST endpoint metrics")
+  public GeneralResponse resetRestMetrics() {
+    restMetrics.reset();
+    return new GeneralResponse(GeneralResponseState.success, "REST metrics have been reset.");
+  }
+
+  @GetMapping("/downstream")
+  @ApiOperation(value = "Latency distribution, call and error count per downstream target "
+      + "(zookeeper, broker metadata/offset/adminclient, jmx). The per-request breakdown is "
+      + "returned in the Server-Timing response header of every call.")
+  public Map<String, LatencyStats> downstreamMetrics() {
+    return downstreamMetrics.snapshot();
+  }
+
+  @DeleteMapping("/downstream")
+  @ApiOperation(value = "Reset the downstream metrics")
+  public GeneralResponse resetDownstreamMetrics() {
+    downstreamMetrics.reset();
+    return new GeneralResponse(GeneralResponseState.success, "Downstream metrics have been reset.");
+  }
+
+  @GetMapping("/pools")
+  @ApiOperation(value = "Usage of the pooled AdminClients, metadata consumers and browse consumers")
+  public List<PoolStats> poolMetrics() {
+    return Arrays.asList(
+        kafkaUtils.getAdminClientPool().stats(),
+        kafkaUtils.getMetadataConsumerPool().stats(),
+        kafkaUtils.getBrowseConsumerPool().stats());
+  }
+}
@@ -0,0 +1,45 @@
+package org.gnuhpc.bigdata.decoder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.io.DecoderFactory;
+
+/**
+ * Decodes Avro binary data written with a known schema, optionally behind the 5 byte header
+ * (magic byte and schema id) of the Confluent serializers. The datum reader is built once per
+ * schema and shared, only the lightweight binary decoder is created per record.
+ */
+public class AvroDecoder implements MessageDecoder {
+  private static final int CONFLUENT_HEADER_SIZE = 5;
+
+  private final GenericDatumReader<Object> reader;
+  private final boolean confluentHeader;
+  private final ObjectMapper mapper;
+
+  public AvroDecoder(Schema schema, boolean confluentHeader, ObjectMapper mapper) {
+    this.reader = new GenericDatumReader<>(schema);
+    this.confluentHeader = confluentHeader;
+    this.mapper = mapper;
+  }
+
+  @Override
+  public Object decode(byte[] bytes) throws IOException {
+    int offset = confluentHeader ? CONFLUENT_HEADER_SIZE : 0;
+    if (bytes.length < offset) {
+      throw new IOException("Only " + bytes.length + " bytes, shorter than the header");
+    }
+    Object datum =
+        reader.read(
+            null, DecoderFactory.get().binaryDecoder(bytes, offset, bytes.length - offset, null));
+    // GenericData renders records, maps and arrays as JSON
+    String json = GenericData.get().toString(datum);
+    try {
+      return mapper.readTree(json);
+    } catch (IOException e) {
+      return json;
+    }
+  }
+}
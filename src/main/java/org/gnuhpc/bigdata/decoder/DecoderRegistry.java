@@ -0,0 +1,127 @@
+package org.gnuhpc.bigdata.decoder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import javax.annotation.PostConstruct;
+import org.apache.avro.Schema;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.kafka.common.errors.ApiException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * The decoders records can be browsed and searched with, by name:
+ *
+ * <ul>
+ *   <li>utf8 (the default) and string: the bytes as UTF-8 text
+ *   <li>hex and base64: the raw bytes
+ *   <li>json: the bytes parsed as JSON, rendered as JSON instead of an escaped string
+ *   <li>avro and avro-confluent: Avro binary of the supplied schema, the latter behind the 5 byte
+ *       header of the Confluent serializers
+ *   <li>length-prefixed: frames that each start with a 4 byte length, rendered as UTF-8 text or
+ *       as hex when they are not valid UTF-8
+ * </ul>
+ *
+ * <p>Avro decoders are cached by schema text, so a schema is parsed and its reader built once
+ * for all the records and requests that use it.
+ */
+@Component
+public class DecoderRegistry {
+  public static final String DEFAULT = "utf8";
+  private static final String AVRO = "avro";
+  private static final String AVRO_CONFLUENT = "avro-confluent";
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  @Autowired private ObjectMapper objectMapper;
+
+  @Value("${kafka.decoder.avro-schema-cache-size:256}")
+  private int avroSchemaCacheSize;
+
+  private final Map<String, MessageDecoder> decoders = new LinkedHashMap<>();
+  private Cache<String, MessageDecoder> avroDecoders;
+
+  @PostConstruct
+  public void init() {
+    MessageDecoder utf8 = bytes -> new String(bytes, StandardCharsets.UTF_8);
+    decoders.put(DEFAULT, utf8);
+    decoders.put("string", utf8);
+    decoders.put("hex", DecoderRegistry::toHex);
+    decoders.put("base64", bytes -> Base64.getEncoder().encodeToString(bytes));
+    decoders.put("json", bytes -> objectMapper.readTree(bytes));
+    decoders.put("length-prefixed", new LengthPrefixedDecoder(DecoderRegistry::utf8OrHex));
+    avroDecoders = CacheBuilder.newBuilder().maximumSize(avroSchemaCacheSize).build();
+  }
+
+  /**
+   * The decoder of the name, utf8 when no name is given.
+   *
+   * @param avroSchema the schema JSON, required by the avro decoders only
+   * @throws ApiException for unknown names and invalid schemas
+   */
+  public MessageDecoder get(String name, String avroSchema) {
+    if (StringUtils.isEmpty(name)) {
+      return decoders.get(DEFAULT);
+    }
+    if (AVRO.equals(name) || AVRO_CONFLUENT.equals(name)) {
+      if (StringUtils.isEmpty(avroSchema)) {
+        throw new ApiException("The " + name + " decoder needs an avroSchema");
+      }
+      try {
+        return avroDecoders.get(
+            name + ':' + avroSchema,
+            () ->
+                new AvroDecoder(
+                    new Schema.Parser().parse(avroSchema),
+                    AVRO_CONFLUENT.equals(name),
+                    objectMapper));
+      } catch (ExecutionException | UncheckedExecutionException e) {
+        throw new ApiException("Invalid avro schema: " + e.getCause().getMessage());
+      }
+    }
+    MessageDecoder decoder = decoders.get(name);
+    if (decoder == null) {
+      throw new ApiException(
+          "Unknown decoder " + name + ", use one of " + decoders.keySet() + ", " + AVRO + " or "
+              + AVRO_CONFLUENT);
+    }
+    return decoder;
+  }
+
+  public RecordDecoder recordDecoder(String keyDecoder, String valueDecoder, String avroSchema) {
+    return new RecordDecoder(get(keyDecoder, avroSchema), get(valueDecoder, avroSchema));
+  }
+
+  private static String toHex(byte[] bytes) {
+    char[] chars = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; i++) {
+      chars[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+      chars[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xf];
+    }
+    return new String(chars);
+  }
+
+  /** The bytes as UTF-8 text, or as hex if they are not valid UTF-8. */
+  public static String utf8OrHex(byte[] bytes) {
+    try {
+      return StandardCharsets.UTF_8
+          .newDecoder()
+          .onMalformedInput(CodingErrorAction.REPORT)
+          .onUnmappableCharacter(CodingErrorAction.REPORT)
+          .decode(ByteBuffer.wrap(bytes))
+          .toString();
+    } catch (CharacterCodingException e) {
+      return toHex(bytes);
+    }
+  }
+}
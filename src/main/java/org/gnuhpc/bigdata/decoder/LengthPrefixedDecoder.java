@@ -0,0 +1,41 @@
+package org.gnuhpc.bigdata.decoder;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Splits values made of frames that each start with their length as a 4 byte big-endian int, and
+ * decodes every frame with the frame decoder.
+ */
+public class LengthPrefixedDecoder implements MessageDecoder {
+  private final MessageDecoder frameDecoder;
+
+  public LengthPrefixedDecoder(MessageDecoder frameDecoder) {
+    this.frameDecoder = frameDecoder;
+  }
+
+  @Override
+  public Object decode(byte[] bytes) throws Exception {
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    List<Object> frames = new ArrayList<>();
+    try {
+      while (buffer.hasRemaining()) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+          throw new IllegalArgumentException(
+              "Frame length " + length + " at byte " + (buffer.position() - 4)
+                  + " exceeds the remaining " + buffer.remaining() + " bytes");
+        }
+        int start = buffer.position();
+        frames.add(frameDecoder.decode(Arrays.copyOfRange(bytes, start, start + length)));
+        buffer.position(start + length);
+      }
+    } catch (BufferUnderflowException e) {
+      throw new IllegalArgumentException("Truncated frame length at byte " + buffer.position());
+    }
+    return frames;
+  }
+}
@@ -0,0 +1,11 @@
+package org.gnuhpc.bigdata.decoder;
+
+/**
+ * Turns the serialized key or value of a record into something the REST responses can render:
+ * a String, or a Jackson tree for formats that are JSON themselves. Implementations are shared by
+ * all requests and must be thread safe. The bytes are never null.
+ */
+@FunctionalInterface
+public interface MessageDecoder {
+  Object decode(byte[] bytes) throws Exception;
+}
@@ -0,0 +1,42 @@
+package org.gnuhpc.bigdata.decoder;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.gnuhpc.bigdata.model.BrowsedRecord;
+
+/**
+ * Converts consumed records with the decoders picked for their keys and values. A key or value
+ * that does not decode is left out and the error is reported on the record instead, both errors
+ * if neither decodes.
+ */
+public class RecordDecoder {
+  private final MessageDecoder keyDecoder;
+  private final MessageDecoder valueDecoder;
+
+  public RecordDecoder(MessageDecoder keyDecoder, MessageDecoder valueDecoder) {
+    this.keyDecoder = keyDecoder;
+    this.valueDecoder = valueDecoder;
+  }
+
+  public BrowsedRecord decode(ConsumerRecord<byte[], byte[]> record, int size) {
+    BrowsedRecord browsed = new BrowsedRecord();
+    browsed.setPartition(record.partition());
+    browsed.setOffset(record.offset());
+    browsed.setTimestamp(record.timestamp());
+    browsed.setTimestampType(record.timestampType().name);
+    browsed.setSize(size);
+    String keyError = null;
+    try {
+      browsed.setKey(record.key() == null ? null : keyDecoder.decode(record.key()));
+    } catch (Exception e) {
+      keyError = "key: " + e.getMessage();
+    }
+    try {
+      browsed.setValue(record.value() == null ? null : valueDecoder.decode(record.value()));
+      browsed.setDecodeError(keyError);
+    } catch (Exception e) {
+      String valueError = "value: " + e.getMessage();
+      browsed.setDecodeError(keyError == null ? valueError : keyError + "; " + valueError);
+    }
+    return browsed;
+  }
+}
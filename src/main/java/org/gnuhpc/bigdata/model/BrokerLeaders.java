@@ -0,0 +1,18 @@
+package org.gnuhpc.bigdata.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Leadership of one broker. projectedLeaders is the leader count after a preferred replica
+ * election of all partitions whose preferred replica is in sync.
+ */
+@Data
+@NoArgsConstructor
+public class BrokerLeaders {
+  private int id;
+  private int replicas;
+  private int leaders;
+  private int preferredLeaders;
+  private int projectedLeaders;
+}
@@ -0,0 +1,17 @@
+package org.gnuhpc.bigdata.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** Load of one broker, counted over the planned partitions only. */
+@Data
+@NoArgsConstructor
+public class BrokerLoad {
+  private int id;
+  private String rack;
+  private int replicas;
+  private int preferredLeaders;
+  private long sizeBytes;
+  private double bytesInRate;
+  private double score;
+}
@@ -0,0 +1,29 @@
+package org.gnuhpc.bigdata.model;
+
+import java.util.HashMap;
+import java.util.Map;
+import lombok.Getter;
+import lombok.Setter;
+import org.apache.kafka.common.TopicPartition;
+
+/**
+ * Load figures read from the JMX beans of one broker: the log size of every replica it hosts and
+ * the one minute bytes-in rate of every topic it leads partitions of.
+ */
+@Getter
+@Setter
+public class BrokerLoadSample {
+  private int brokerId;
+  private String host;
+  private long timestamp;
+  private boolean collected;
+  private String msg;
+  private Map<TopicPartition, Long> logSizes = new HashMap<>();
+  private Map<String, Double> topicBytesInRates = new HashMap<>();
+
+  public BrokerLoadSample(int brokerId, String host) {
+    this.brokerId = brokerId;
+    this.host = host;
+    this.timestamp = System.currentTimeMillis();
+  }
+}
@@ -0,0 +1,16 @@
+package org.gnuhpc.bigdata.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** Replicas placed on one broker. Brokers that are assigned replicas but not alive are included. */
+@Data
+@NoArgsConstructor
+public class BrokerPlacement {
+  private int id;
+  private String rack;
+  private boolean alive;
+  private int replicas;
+  private int leaders;
+  private int topics;
+}
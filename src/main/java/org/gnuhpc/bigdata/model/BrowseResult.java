@@ -0,0 +1,22 @@
+package org.gnuhpc.bigdata.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Summary of a range read from a partition. nextOffset is where the next read should continue,
+ * endReached tells whether it had caught up with the end of the partition seen at the start.
+ */
+@Data
+@NoArgsConstructor
+public class BrowseResult {
+  private String topic;
+  private int partition;
+  private long startOffset;
+  private long nextOffset;
+  private long beginningOffset;
+  private long endOffset;
+  private int records;
+  private long bytes;
+  private boolean endReached;
+}
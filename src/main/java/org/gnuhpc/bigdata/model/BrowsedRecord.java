@@ -0,0 +1,21 @@
+package org.gnuhpc.bigdata.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One record read from a partition, size is the serialized size of its key and value. Key and
+ * value are rendered by the decoders asked for, decodeError tells why one of them is missing.
+ */
+@Data
+@NoArgsConstructor
+public class BrowsedRecord {
+  private int partition;
+  private long offset;
+  private long timestamp;
+  private String timestampType;
+  private Object key;
+  private Object value;
+  private int size;
+  private String decodeError;
+}
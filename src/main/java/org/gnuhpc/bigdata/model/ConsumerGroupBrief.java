@@ -0,0 +1,14 @@
+package org.gnuhpc.bigdata.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.gnuhpc.bigdata.constant.ConsumerType;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ConsumerGroupBrief {
+  private String consumerGroup;
+  private ConsumerType type;
+}
@@ -0,0 +1,20 @@
+package org.gnuhpc.bigdata.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One line of an NDJSON export, key and value encoded as base64 or UTF-8 text. On import,
+ * missing partitions are left to the partitioner and missing timestamps to the producer.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ExportedRecord {
+  private Integer partition;
+  private Long offset;
+  private Long timestamp;
+  private String key;
+  private String value;
+}
@@ -0,0 +1,18 @@
+package org.gnuhpc.bigdata.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A frequent key among the sampled records, as UTF-8 or as hex if it is not valid UTF-8. The
+ * count may be overestimated, share is its part of the sampled records with a key.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class HeavyKey {
+  private String key;
+  private long estimatedCount;
+  private double share;
+}
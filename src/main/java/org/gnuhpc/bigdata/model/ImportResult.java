@@ -0,0 +1,17 @@
+package org.gnuhpc.bigdata.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** Outcome of replaying an export into a topic, firstError tells why records failed. */
+@Data
+@NoArgsConstructor
+public class ImportResult {
+  private String topic;
+  private long read;
+  private long written;
+  private long failed;
+  private long bytes;
+  private String firstError;
+  private long elapsedMs;
+}
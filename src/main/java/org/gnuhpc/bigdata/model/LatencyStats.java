@@ -0,0 +1,22 @@
+package org.gnuhpc.bigdata.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Snapshot of a timed operation. Latencies are reported in milliseconds.
+ */
+@Data
+@NoArgsConstructor
+public class LatencyStats {
+  private long count;
+  private long errors;
+  private long inFlight;
+  private double minMs;
+  private double meanMs;
+  private double p50Ms;
+  private double p90Ms;
+  private double p99Ms;
+  private double p999Ms;
+  private double maxMs;
+}
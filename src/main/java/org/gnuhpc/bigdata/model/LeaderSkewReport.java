@@ -0,0 +1,21 @@
+package org.gnuhpc.bigdata.model;
+
+import java.util.List;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Leader distribution over the brokers. The skew is how far the broker with the most leaders is
+ * above the average, relative to the average; 0 is perfectly even.
+ */
+@Data
+@NoArgsConstructor
+public class LeaderSkewReport {
+  private int partitions;
+  private int leaderless;
+  private int notOnPreferred;
+  private int electable;
+  private double skew;
+  private double projectedSkew;
+  private List<BrokerLeaders> brokers;
+}
@@ -0,0 +1,40 @@
+package org.gnuhpc.bigdata.model;
+
+import java.util.List;
+import java.util.Map;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.gnuhpc.bigdata.constant.SearchMatchType;
+
+/**
+ * A content search over the partitions of a topic. Partitions are scanned from fromOffset, or
+ * from the beginning, up to toOffset exclusive, or the end seen when the search started.
+ * startOffsets overrides fromOffset per partition, to continue from the nextOffsets of a previous
+ * search. fromTimestamp and toTimestamp narrow that range to the offsets of the first records at
+ * or after them, and records outside the timestamp range are skipped without being matched.
+ *
+ * <p>pattern is the substring or regex to find, or the expected value at the JSON path; with a
+ * JSON path and no pattern, records that have the path match. Patterns are matched against the
+ * raw bytes; keyDecoder and valueDecoder only render the matches.
+ */
+@Data
+@NoArgsConstructor
+public class MessageSearchRequest {
+  private List<Integer> partitions;
+  private Long fromOffset;
+  private Long toOffset;
+  private Map<Integer, Long> startOffsets;
+  private Long fromTimestamp;
+  private Long toTimestamp;
+  private SearchMatchType matchType = SearchMatchType.SUBSTRING;
+  private String pattern;
+  private String path;
+  private boolean searchKey = false;
+  private int maxMatches = 100;
+  private long maxBytes = 256L * 1024 * 1024;
+  private long timeoutMs = 30000;
+  private int parallelism = 4;
+  private String keyDecoder;
+  private String valueDecoder;
+  private String avroSchema;
+}
@@ -0,0 +1,18 @@
+package org.gnuhpc.bigdata.model;
+
+import java.util.List;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.gnuhpc.bigdata.constant.SearchStopReason;
+
+@Data
+@NoArgsConstructor
+public class MessageSearchResult {
+  private String topic;
+  private int matches;
+  private long scannedRecords;
+  private long scannedBytes;
+  private long elapsedMs;
+  private SearchStopReason stopReason;
+  private List<PartitionScan> partitions;
+}
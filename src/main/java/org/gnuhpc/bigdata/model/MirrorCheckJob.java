@@ -0,0 +1,27 @@
+package org.gnuhpc.bigdata.model;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.gnuhpc.bigdata.constant.ReassignmentState;
+
+/**
+ * A running or finished comparison of two topics. partitions holds the digest of the whole range
+ * of every compared partition once it is known, mismatches the narrowed ranges that differ.
+ * truncated is set when more mismatches were found than requested.
+ */
+@Data
+@NoArgsConstructor
+public class MirrorCheckJob {
+  private String id;
+  private ReassignmentState state;
+  private MirrorCheckRequest request;
+  private long startTime;
+  private long endTime;
+  private long scannedRecords;
+  private List<MirrorRangeDiff> partitions = new CopyOnWriteArrayList<>();
+  private List<MirrorRangeDiff> mismatches = new CopyOnWriteArrayList<>();
+  private boolean truncated;
+  private String msg;
+}
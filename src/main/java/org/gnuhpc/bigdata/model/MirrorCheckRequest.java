@@ -0,0 +1,35 @@
+package org.gnuhpc.bigdata.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.gnuhpc.bigdata.constant.MirrorCheckRange;
+import org.gnuhpc.bigdata.constant.MirrorPartitioning;
+
+/**
+ * Compares the records of sourceTopic and targetTopic in [from, to), timestamps in ms or offsets
+ * depending on range. Without from and to, timestamps cover everything up to the time of the
+ * request, and offsets the range both partitions still have.
+ *
+ * <p>An OFFSET range means the same offsets in both topics, which only holds for copies that kept
+ * the offsets of the source, e.g. a topic restored from a full export into an empty topic.
+ * MirrorMaker does not keep them, so OFFSET ranges are refused unless offsetsPreserved is set;
+ * mirrors are compared by TIMESTAMP ranges.
+ *
+ * <p>ALIGNED partitioning compares partition p of the source with partition p of the target,
+ * TOPIC compares all partitions of one topic with all of the other, for mirrors that repartition.
+ * Mismatching ranges are halved until they are no wider than minRange, or the default of the
+ * range type, and at most maxMismatches of them are reported.
+ */
+@Data
+@NoArgsConstructor
+public class MirrorCheckRequest {
+  private String sourceTopic;
+  private String targetTopic;
+  private MirrorCheckRange range = MirrorCheckRange.TIMESTAMP;
+  private MirrorPartitioning partitioning = MirrorPartitioning.ALIGNED;
+  private Long from;
+  private Long to;
+  private Long minRange;
+  private boolean offsetsPreserved;
+  private int maxMismatches = 100;
+}
@@ -0,0 +1,20 @@
+package org.gnuhpc.bigdata.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A range [from, to) whose records differ between the source and the target topic. partition is
+ * null when all partitions are compared as one.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MirrorRangeDiff {
+  private Integer partition;
+  private long from;
+  private long to;
+  private RecordDigest source;
+  private RecordDigest target;
+}
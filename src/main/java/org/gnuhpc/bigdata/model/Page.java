@@ -0,0 +1,15 @@
+package org.gnuhpc.bigdata.model;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** One page of a listing. Pass nextCursor back to get the next page, it is null on the last. */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class Page<T> {
+  private List<T> items;
+  private String nextCursor;
+}
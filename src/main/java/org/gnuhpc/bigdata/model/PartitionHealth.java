@@ -0,0 +1,20 @@
+package org.gnuhpc.bigdata.model;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** Replication state of one partition, since is when it entered the reported state. */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PartitionHealth {
+  private String topic;
+  private int partition;
+  private int leader;
+  private List<Integer> replicas;
+  private List<Integer> isr;
+  private int minIsr;
+  private long since;
+}
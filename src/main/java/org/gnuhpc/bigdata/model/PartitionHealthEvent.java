@@ -0,0 +1,25 @@
+package org.gnuhpc.bigdata.model;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.gnuhpc.bigdata.constant.PartitionHealthEventType;
+
+/**
+ * An ISR change or a partition entering or leaving the under-replicated, under-min-ISR or offline
+ * set. The sequence number increases by one per event.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PartitionHealthEvent {
+  private long seq;
+  private long time;
+  private PartitionHealthEventType type;
+  private String topic;
+  private int partition;
+  private int leader;
+  private List<Integer> previousIsr;
+  private List<Integer> isr;
+}
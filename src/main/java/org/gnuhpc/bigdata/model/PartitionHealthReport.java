@@ -0,0 +1,20 @@
+package org.gnuhpc.bigdata.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+public class PartitionHealthReport {
+  private int topicCount;
+  private int partitionCount;
+  private int underReplicatedCount;
+  private int underMinIsrCount;
+  private int offlineCount;
+  private long lastEventSeq;
+  private List<PartitionHealth> underReplicated = new ArrayList<>();
+  private List<PartitionHealth> underMinIsr = new ArrayList<>();
+  private List<PartitionHealth> offline = new ArrayList<>();
+}
@@ -0,0 +1,17 @@
+package org.gnuhpc.bigdata.model;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** One partition of a reassignment, with the bytes its new replicas have to copy. */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class PartitionMove {
+  private String topic;
+  private int partition;
+  private List<Integer> replicas;
+  private long bytes;
+}
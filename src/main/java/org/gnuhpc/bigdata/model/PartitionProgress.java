@@ -0,0 +1,32 @@
+package org.gnuhpc.bigdata.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.gnuhpc.bigdata.constant.ReassignmentState;
+
+/**
+ * Progress of one partition being reassigned. The new replicas are the target replicas that were
+ * not in sync when the reassignment was first seen, catchingUp those of them still out of sync.
+ */
+@Data
+@NoArgsConstructor
+public class PartitionProgress {
+  private String topic;
+  private int partition;
+  private ReassignmentState state;
+  private List<Integer> targetReplicas;
+  private List<Integer> newReplicas;
+  private List<Integer> catchingUp = new ArrayList<>();
+  private long bytesToCopy;
+  private long copiedBytes;
+  private long startTime;
+  private long endTime;
+
+  /** Share of the leader log each new replica has, from the log end offsets. */
+  @JsonIgnore private Map<Integer, Double> replicaProgress = new HashMap<>();
+}
@@ -0,0 +1,26 @@
+package org.gnuhpc.bigdata.model;
+
+import java.util.List;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * What the sampled records of one partition tell. estimatedBytes extrapolates the mean sampled
+ * size to all records between the beginning and the end offset. complete is false if the time
+ * budget ran out before the partition was sampled.
+ */
+@Data
+@NoArgsConstructor
+public class PartitionSample {
+  private int partition;
+  private long beginningOffset;
+  private long endOffset;
+  private long sampledRecords;
+  private long sampledBytes;
+  private long estimatedBytes;
+  private long nullKeys;
+  private long distinctKeys;
+  private SizeHistogram sizes;
+  private List<HeavyKey> heavyKeys;
+  private boolean complete;
+}
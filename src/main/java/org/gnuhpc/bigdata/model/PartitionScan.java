@@ -0,0 +1,17 @@
+package org.gnuhpc.bigdata.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** How far a search got in one partition, nextOffset is where to continue. */
+@Data
+@NoArgsConstructor
+public class PartitionScan {
+  private int partition;
+  private long startOffset;
+  private long nextOffset;
+  private long endOffset;
+  private long scannedRecords;
+  private int matches;
+  private boolean done;
+}
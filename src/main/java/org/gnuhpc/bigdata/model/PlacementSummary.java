@@ -0,0 +1,30 @@
+package org.gnuhpc.bigdata.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Replica placement over the whole cluster. The skews are how far the fullest broker is above the
+ * average, relative to the average. Rack violations are only checked when brokers have racks.
+ */
+@Data
+@NoArgsConstructor
+public class PlacementSummary {
+  private long metadataVersion;
+  private long computeTimeMs;
+  private int topics;
+  private int partitions;
+  private int replicas;
+  private int leaderless;
+  private boolean rackAware;
+  private double replicaSkew;
+  private double leaderSkew;
+  private List<BrokerPlacement> brokers = new ArrayList<>();
+  private List<RackPlacement> racks = new ArrayList<>();
+  private int concentratedTopicCount;
+  private List<TopicConcentration> concentratedTopics = new ArrayList<>();
+  private int rackViolationCount;
+  private List<RackViolation> rackViolations = new ArrayList<>();
+}
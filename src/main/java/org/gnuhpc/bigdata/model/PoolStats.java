@@ -0,0 +1,20 @@
+package org.gnuhpc.bigdata.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+public class PoolStats {
+  private String name;
+  private int active;
+  private int idle;
+  private int maxTotal;
+  private long created;
+  private long destroyed;
+  private long destroyedByEvictor;
+  private long borrowed;
+  private long returned;
+  private long meanBorrowWaitMs;
+  private long maxBorrowWaitMs;
+}
@@ -0,0 +1,20 @@
+package org.gnuhpc.bigdata.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.gnuhpc.bigdata.constant.ReassignmentState;
+
+/** A preferred replica election running in batches, or the plan of one for a dry run. */
+@Data
+@NoArgsConstructor
+public class PreferredElectionJob {
+  private ReassignmentState state;
+  private boolean dryRun;
+  private int partitions;
+  private int batches;
+  private int completedBatches;
+  private long startTime;
+  private long endTime;
+  private String msg;
+  private LeaderSkewReport report;
+}
@@ -0,0 +1,17 @@
+package org.gnuhpc.bigdata.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Elects the preferred replica of the selected topics, or of all topics without a selector, in
+ * batches of batchSize partitions with batchIntervalMs between them.
+ */
+@Data
+@NoArgsConstructor
+public class PreferredElectionRequest {
+  private TopicSelector selector;
+  private int batchSize = 100;
+  private long batchIntervalMs = 1000;
+  private boolean dryRun;
+}
@@ -0,0 +1,16 @@
+package org.gnuhpc.bigdata.model;
+
+import java.util.List;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** The outcome of a batch write, results in the order of the records of the request. */
+@Data
+@NoArgsConstructor
+public class ProduceBatchResult {
+  private String topic;
+  private int written;
+  private int failed;
+  private long elapsedMs;
+  private List<ProduceResult> results;
+}
@@ -0,0 +1,16 @@
+package org.gnuhpc.bigdata.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A record to write, key and value as UTF-8 text or base64. Without a partition the producer's
+ * partitioner picks one from the key, a null value is a tombstone on compacted topics.
+ */
+@Data
+@NoArgsConstructor
+public class ProduceRecord {
+  private String key;
+  private String value;
+  private Integer partition;
+}
@@ -0,0 +1,13 @@
+package org.gnuhpc.bigdata.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** Where a record of a batch was written, or the error if it was not. */
+@Data
+@NoArgsConstructor
+public class ProduceResult {
+  private int partition = -1;
+  private long offset = -1;
+  private String error;
+}
@@ -0,0 +1,15 @@
+package org.gnuhpc.bigdata.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** Replicas placed in one rack, partitions counts those with at least one replica in the rack. */
+@Data
+@NoArgsConstructor
+public class RackPlacement {
+  private String rack;
+  private int brokers;
+  private int replicas;
+  private int leaders;
+  private int partitions;
+}
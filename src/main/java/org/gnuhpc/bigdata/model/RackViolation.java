@@ -0,0 +1,17 @@
+package org.gnuhpc.bigdata.model;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** A partition whose replicas span fewer racks than its replication factor allows. */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RackViolation {
+  private String topic;
+  private int partition;
+  private List<Integer> replicas;
+  private int racks;
+}
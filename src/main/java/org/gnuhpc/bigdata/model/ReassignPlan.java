@@ -0,0 +1,24 @@
+package org.gnuhpc.bigdata.model;
+
+import java.util.List;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Result of the load aware reassignment planner. The current and proposed assignments only list
+ * the moved partitions and are in the json format of the execute endpoint, so the current one can
+ * be used to roll back.
+ */
+@Data
+@NoArgsConstructor
+public class ReassignPlan {
+  private int partitions;
+  private int movedReplicas;
+  private long movedBytes;
+  private long planMs;
+  private List<BrokerLoad> before;
+  private List<BrokerLoad> after;
+  private String current;
+  private String proposed;
+  private List<String> warnings;
+}
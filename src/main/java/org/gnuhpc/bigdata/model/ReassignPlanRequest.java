@@ -0,0 +1,21 @@
+package org.gnuhpc.bigdata.model;
+
+import java.util.List;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Input of the load aware reassignment planner. Without a selector all topics are planned, without
+ * brokers all live brokers are targets. Replicas on brokers that are not targets are moved off.
+ */
+@Data
+@NoArgsConstructor
+public class ReassignPlanRequest {
+  private TopicSelector selector;
+  private List<Integer> brokers;
+  private double tolerance = 0.05;
+  private double sizeWeight = 1;
+  private double bytesInWeight = 1;
+  private double replicaWeight = 0.1;
+  private int maxMoves;
+}
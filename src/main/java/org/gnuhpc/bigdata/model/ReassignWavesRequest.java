@@ -0,0 +1,17 @@
+package org.gnuhpc.bigdata.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A reassignment plan in the json format of the execute endpoint, to be executed in waves of at
+ * most maxWavePartitions partitions and maxWaveBytes bytes to copy. A partition bigger than
+ * maxWaveBytes gets a wave of its own.
+ */
+@Data
+@NoArgsConstructor
+public class ReassignWavesRequest {
+  private String plan;
+  private long maxWaveBytes = 10L * 1024 * 1024 * 1024;
+  private int maxWavePartitions = 50;
+}
@@ -0,0 +1,22 @@
+package org.gnuhpc.bigdata.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.gnuhpc.bigdata.constant.ReassignmentState;
+
+/** A reassignment plan executed wave by wave. This is what is persisted between restarts. */
+@Data
+@NoArgsConstructor
+public class ReassignmentJob {
+  private String id;
+  private ReassignmentState state;
+  private long maxWaveBytes;
+  private int maxWavePartitions;
+  private long totalBytes;
+  private long createTime;
+  private long updateTime;
+  private String msg;
+  private List<ReassignmentWave> waves = new ArrayList<>();
+}
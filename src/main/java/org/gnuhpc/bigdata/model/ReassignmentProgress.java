@@ -0,0 +1,23 @@
+package org.gnuhpc.bigdata.model;
+
+import java.util.List;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Progress of the partition reassignment in {@code /admin/reassign_partitions}. Completed
+ * partitions are kept until the next reassignment starts. etaMs is -1 while no copy rate is known.
+ */
+@Data
+@NoArgsConstructor
+public class ReassignmentProgress {
+  private boolean inProgress;
+  private long startTime;
+  private int completed;
+  private int remaining;
+  private long bytesToCopy;
+  private long copiedBytes;
+  private double bytesPerSec;
+  private long etaMs;
+  private List<PartitionProgress> partitions;
+}
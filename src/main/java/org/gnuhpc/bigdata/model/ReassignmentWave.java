@@ -0,0 +1,19 @@
+package org.gnuhpc.bigdata.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.gnuhpc.bigdata.constant.ReassignmentState;
+
+/** A batch of partition moves that is handed to the kafka controller at once. */
+@Data
+@NoArgsConstructor
+public class ReassignmentWave {
+  private int index;
+  private ReassignmentState state = ReassignmentState.PENDING;
+  private long bytes;
+  private long startTime;
+  private long endTime;
+  private List<PartitionMove> partitions = new ArrayList<>();
+}
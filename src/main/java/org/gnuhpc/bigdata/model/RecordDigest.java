@@ -0,0 +1,51 @@
+package org.gnuhpc.bigdata.model;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A digest of a set of records that does not depend on their order: the count, the bytes of keys
+ * and values, and the sum and xor of a 64 bit hash of every key and value. Digests of disjoint
+ * sets merge into the digest of their union, so partitions and offset ranges can be digested
+ * separately and in parallel.
+ */
+@Data
+@NoArgsConstructor
+public class RecordDigest {
+  private static final HashFunction HASH = Hashing.murmur3_128();
+
+  private long count;
+  private long bytes;
+  private long hashSum;
+  private long hashXor;
+
+  public void add(byte[] key, byte[] value) {
+    Hasher hasher = HASH.newHasher();
+    putBytes(hasher, key);
+    putBytes(hasher, value);
+    long hash = hasher.hash().asLong();
+    count++;
+    bytes += (key == null ? 0 : key.length) + (value == null ? 0 : value.length);
+    hashSum += hash;
+    hashXor ^= hash;
+  }
+
+  public void merge(RecordDigest other) {
+    count += other.count;
+    bytes += other.bytes;
+    hashSum += other.hashSum;
+    hashXor ^= other.hashXor;
+  }
+
+  /** The length first, so null and empty differ and bytes cannot move between key and value. */
+  private static void putBytes(Hasher hasher, byte[] bytes) {
+    if (bytes == null) {
+      hasher.putInt(-1);
+    } else {
+      hasher.putInt(bytes.length).putBytes(bytes);
+    }
+  }
+}
@@ -0,0 +1,15 @@
+package org.gnuhpc.bigdata.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** Records of at least from and less than to bytes. */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SizeBucket {
+  private long from;
+  private long to;
+  private long count;
+}
@@ -0,0 +1,20 @@
+package org.gnuhpc.bigdata.model;
+
+import java.util.List;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** Distribution of the serialized sizes of sampled records, key and value, in bytes. */
+@Data
+@NoArgsConstructor
+public class SizeHistogram {
+  private long count;
+  private long min;
+  private double mean;
+  private long p50;
+  private long p90;
+  private long p99;
+  private long max;
+  /** Counts per power of two, empty ones left out. */
+  private List<SizeBucket> buckets;
+}
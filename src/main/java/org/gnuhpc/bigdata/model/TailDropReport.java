@@ -0,0 +1,20 @@
+package org.gnuhpc.bigdata.model;
+
+import java.util.Map;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The records of a live tail the client did not get since the last report because it read too
+ * slowly, per partition. Sampled records were skipped on purpose while the backlog was high,
+ * dropped ones were evicted from a full backlog.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TailDropReport {
+  private long time;
+  private Map<Integer, Long> dropped;
+  private Map<Integer, Long> sampled;
+}
@@ -0,0 +1,22 @@
+package org.gnuhpc.bigdata.model;
+
+import java.util.List;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.gnuhpc.bigdata.constant.TailOverflowPolicy;
+
+/** An open live tail stream, backlog is the number of records waiting to be sent. */
+@Data
+@NoArgsConstructor
+public class TailStreamInfo {
+  private long id;
+  private String user;
+  private String topic;
+  private List<Integer> partitions;
+  private TailOverflowPolicy policy;
+  private long startTime;
+  private long sent;
+  private long dropped;
+  private long sampled;
+  private int backlog;
+}
@@ -0,0 +1,20 @@
+package org.gnuhpc.bigdata.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A topic whose replicas pile up on few brokers. ratio is the replica count of the fullest broker
+ * over the count an even spread over the cluster would give it.
+ */
+@Data
+@NoArgsConstructor
+public class TopicConcentration {
+  private String topic;
+  private int partitions;
+  private int replicas;
+  private int brokers;
+  private int maxBroker;
+  private int maxBrokerReplicas;
+  private double ratio;
+}
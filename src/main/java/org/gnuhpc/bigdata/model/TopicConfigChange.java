@@ -0,0 +1,18 @@
+package org.gnuhpc.bigdata.model;
+
+import java.util.Map;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.gnuhpc.bigdata.constant.GeneralResponseState;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TopicConfigChange {
+  private String topic;
+  private Map<String, String> before;
+  private Map<String, String> after;
+  private GeneralResponseState state;
+  private String msg;
+}
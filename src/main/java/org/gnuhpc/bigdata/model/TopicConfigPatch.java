@@ -0,0 +1,16 @@
+package org.gnuhpc.bigdata.model;
+
+import java.util.List;
+import java.util.Map;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** Config overrides to set and to remove on every topic picked by the selector. */
+@Data
+@NoArgsConstructor
+public class TopicConfigPatch {
+  private TopicSelector selector;
+  private Map<String, String> set;
+  private List<String> delete;
+  private boolean dryRun;
+}
@@ -0,0 +1,16 @@
+package org.gnuhpc.bigdata.model;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** Result of a bulk config patch. Only the topics whose config differs are listed in changes. */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TopicConfigReport {
+  private int matched;
+  private int unchanged;
+  private List<TopicConfigChange> changes;
+}
@@ -0,0 +1,27 @@
+package org.gnuhpc.bigdata.model;
+
+import java.util.List;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Key distribution and record sizes of a topic, from a sample of its partitions. skew is how far
+ * the partition with the most estimated bytes is above the average, relative to the average; 0
+ * is perfectly even. Distinct and heavy keys are over all partitions.
+ */
+@Data
+@NoArgsConstructor
+public class TopicSample {
+  private String topic;
+  private long sampledAt;
+  private double fraction;
+  private long elapsedMs;
+  private long sampledRecords;
+  private long sampledBytes;
+  private long estimatedBytes;
+  private long distinctKeys;
+  private double skew;
+  private SizeHistogram sizes;
+  private List<HeavyKey> heavyKeys;
+  private List<PartitionSample> partitions;
+}
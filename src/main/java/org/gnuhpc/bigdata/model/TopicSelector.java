@@ -0,0 +1,38 @@
+package org.gnuhpc.bigdata.model;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.kafka.common.errors.ApiException;
+
+/** Picks topics by exact name, by a regex on the name, or both. */
+@Data
+@NoArgsConstructor
+public class TopicSelector {
+  private List<String> topics;
+  private String regex;
+
+  public Predicate<String> toPredicate() {
+    Set<String> names = topics == null ? new HashSet<>() : new HashSet<>(topics);
+    if (StringUtils.isEmpty(regex)) {
+      if (names.isEmpty()) {
+        throw new ApiException("Either topics or regex must be given");
+      }
+      return names::contains;
+    }
+
+    Pattern pattern;
+    try {
+      pattern = Pattern.compile(regex);
+    } catch (PatternSyntaxException e) {
+      throw new ApiException("Invalid topic regex " + regex + ": " + e.getDescription());
+    }
+    return topic -> names.contains(topic) || pattern.matcher(topic).matches();
+  }
+}
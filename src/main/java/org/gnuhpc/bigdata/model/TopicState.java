@@ -0,0 +1,46 @@
+package org.gnuhpc.bigdata.model;
+
+import lombok.Getter;
+
+/**
+ * Replica assignment, leader and ISR of every partition of a topic, as last seen in ZooKeeper.
+ * Arrays are indexed by partition id and are never modified after construction. A partition
+ * without state yet has leader -1 and an empty ISR.
+ */
+@Getter
+public class TopicState {
+  public static final int NO_LEADER = -1;
+
+  private final String topic;
+  private final int[][] replicas;
+  private final int[] leaders;
+  private final int[][] isr;
+  private final double isrRate;
+
+  public TopicState(String topic, int[][] replicas, int[] leaders, int[][] isr) {
+    this.topic = topic;
+    this.replicas = replicas;
+    this.leaders = leaders;
+    this.isr = isr;
+
+    long replicaCount = 0;
+    long isrCount = 0;
+    for (int p = 0; p < replicas.length; p++) {
+      replicaCount += replicas[p].length;
+      isrCount += isr[p].length;
+    }
+    this.isrRate = replicaCount == 0 ? 0 : (double) isrCount / replicaCount;
+  }
+
+  public int getPartitionCount() {
+    return replicas.length;
+  }
+
+  public int getReplicationFactor() {
+    return replicas.length == 0 ? 0 : replicas[0].length;
+  }
+
+  public TopicBrief toBrief() {
+    return new TopicBrief(topic, getPartitionCount(), isrRate);
+  }
+}
@@ -0,0 +1,16 @@
+package org.gnuhpc.bigdata.model;
+
+import java.util.Map;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * The overridden configs of a topic as stored in ZooKeeper, with the znode version they were read
+ * at (-1 when the topic has no config node).
+ */
+@Data
+@AllArgsConstructor
+public class ZkTopicConfig {
+  private Map<String, String> config;
+  private int version;
+}
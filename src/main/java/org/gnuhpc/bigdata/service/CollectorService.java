@@ -1,11 +1,14 @@
 package org.gnuhpc.bigdata.service;
 
 import lombok.extern.log4j.Log4j;
+import org.gnuhpc.bigdata.componet.DownstreamMetrics;
 import org.gnuhpc.bigdata.config.JMXConfig;
 import org.gnuhpc.bigdata.exception.CollectorException;
 import org.gnuhpc.bigdata.model.*;
 import org.gnuhpc.bigdata.utils.CommonUtils;
+import org.apache.kafka.common.TopicPartition;
 import org.json.JSONObject;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.validation.annotation.Validated;
 
@@ -30,6 +33,13 @@ public class CollectorService {
   private final static List<String> COMPOSED_TYPES = Arrays.asList("javax.management.openmbean.CompositeData", "java.util.HashMap", "java.util.Map");
   private final static List<String> MULTI_TYPES = Arrays.asList("javax.management.openmbean.TabularData");
 
+  private static final String LOG_SIZE_BEANS = "kafka.log:type=Log,name=Size,*";
+  private static final String TOPIC_BYTES_IN_BEANS =
+          "kafka.server:type=BrokerTopicMetrics,name=BytesInPerSec,*";
+
+  @Autowired
+  private DownstreamMetrics downstreamMetrics;
+
   public List<JMXMetricDataV1> collectJMXData(String jmxurl) {
     LinkedList<JMXMetricDataV1> jmxMetricDataList = new LinkedList<>();
     String[] hostList = jmxurl.split(",");
@@ -39,12 +49,19 @@ public class CollectorService {
       JMXMetricDataV1 jmxMetricData = new JMXMetricDataV1(host, metricData);
       try {
         log.info("Start to collect JMXServiceURL:" + jmxClient.getJmxServiceURL());
-        jmxClient.connectWithTimeout();
+        downstreamMetrics.recordCall(DownstreamMetrics.JMX_CONNECT, jmxClient::connectWithTimeout);
         MBeanServerConnection mBeanServerConnection = jmxClient.getJmxConnector().getMBeanServerConnection();
-        Set<ObjectName> objectNames = mBeanServerConnection.queryNames(null, null);
-        for (ObjectName objectName : objectNames) {
-          Map<String, String> attributeInfoMap = getAttributeInfoByObjectName(mBeanServerConnection, objectName);
-          metricData.put(objectName.toString(), attributeInfoMap);
+        long start = downstreamMetrics.startCall(DownstreamMetrics.JMX_QUERY);
+        boolean failed = true;
+        try {
+          Set<ObjectName> objectNames = mBeanServerConnection.queryNames(null, null);
+          for (ObjectName objectName : objectNames) {
+            Map<String, String> attributeInfoMap = getAttributeInfoByObjectName(mBeanServerConnection, objectName);
+            metricData.put(objectName.toString(), attributeInfoMap);
+          }
+          failed = false;
+        } finally {
+          downstreamMetrics.stopCall(DownstreamMetrics.JMX_QUERY, start, failed);
         }
         jmxMetricData.setCollected(true);
       } catch (Exception e) {
@@ -85,15 +102,22 @@ public class CollectorService {
       metrics.clear();
       JMXMetricData jmxMetricData = new JMXMetricData(host, metrics);
       try {
-        jmxClient.connectWithTimeout();
+        downstreamMetrics.recordCall(DownstreamMetrics.JMX_CONNECT, jmxClient::connectWithTimeout);
         MBeanServerConnection mBeanServerConnection = jmxClient.getJmxConnector().getMBeanServerConnection();
-        for (String scope : beanScopes) {
-          ObjectName name = new ObjectName(scope);
-          beans.addAll(mBeanServerConnection.queryNames(name, null));
+        long start = downstreamMetrics.startCall(DownstreamMetrics.JMX_QUERY);
+        boolean failed = true;
+        try {
+          for (String scope : beanScopes) {
+            ObjectName name = new ObjectName(scope);
+            beans.addAll(mBeanServerConnection.queryNames(name, null));
+          }
+          beans = (beans.isEmpty()) ? mBeanServerConnection.queryNames(null, null) : beans;
+          getMatchingAttributes(matchingAttributes, mBeanServerConnection, beans, configurationList);
+          jmxMetricData.setMetrics(getMetrics(matchingAttributes));
+          failed = false;
+        } finally {
+          downstreamMetrics.stopCall(DownstreamMetrics.JMX_QUERY, start, failed);
         }
-        beans = (beans.isEmpty()) ? mBeanServerConnection.queryNames(null, null) : beans;
-        getMatchingAttributes(matchingAttributes, mBeanServerConnection, beans, configurationList);
-        jmxMetricData.setMetrics(getMetrics(matchingAttributes));
         jmxMetricData.setCollected(true);
       } catch (Exception e) {
         jmxMetricData.setCollected(false);
@@ -115,6 +139,60 @@ public class CollectorService {
     return jmxMetricDataList;
   }
 
+  /**
+   * Reads the replica log sizes and the per topic bytes-in rates of one broker. Only the beans of
+   * these two metrics are queried, so this stays cheap on brokers with many partitions.
+   */
+  public BrokerLoadSample collectBrokerLoad(int brokerId, String host) {
+    BrokerLoadSample sample = new BrokerLoadSample(brokerId, host);
+    JMXClient jmxClient = new JMXClient(host);
+    try {
+      downstreamMetrics.recordCall(DownstreamMetrics.JMX_CONNECT, jmxClient::connectWithTimeout);
+      MBeanServerConnection mBeanServerConnection = jmxClient.getJmxConnector().getMBeanServerConnection();
+      long start = downstreamMetrics.startCall(DownstreamMetrics.JMX_QUERY);
+      boolean failed = true;
+      try {
+        for (ObjectName bean : mBeanServerConnection.queryNames(new ObjectName(LOG_SIZE_BEANS), null)) {
+          String topic = bean.getKeyProperty("topic");
+          String partition = bean.getKeyProperty("partition");
+          if (topic == null || partition == null) {
+            continue;
+          }
+          Object value = mBeanServerConnection.getAttribute(bean, "Value");
+          sample.getLogSizes().put(new TopicPartition(topic, Integer.parseInt(partition)),
+                  ((Number) value).longValue());
+        }
+        for (ObjectName bean : mBeanServerConnection.queryNames(new ObjectName(TOPIC_BYTES_IN_BEANS), null)) {
+          String topic = bean.getKeyProperty("topic");
+          if (topic == null) {
+            continue;
+          }
+          Object value = mBeanServerConnection.getAttribute(bean, "OneMinuteRate");
+          sample.getTopicBytesInRates().put(topic, ((Number) value).doubleValue());
+        }
+        failed = false;
+      } finally {
+        downstreamMetrics.stopCall(DownstreamMetrics.JMX_QUERY, start, failed);
+      }
+      sample.setCollected(true);
+    } catch (Exception e) {
+      sample.setCollected(false);
+      CollectorException ce = new CollectorException(String.format("%s occurred. URL: %s. Reason: %s",
+              e.getClass().getCanonicalName(), jmxClient.getJmxServiceURL(), e.getCause()), e);
+      sample.setMsg(ce.getLocalizedMessage());
+      log.error("Failed to collect broker load from " + jmxClient.getJmxServiceURL(), ce);
+    } finally {
+      try {
+        if (jmxClient.getJmxConnector() != null) {
+          jmxClient.close();
+        }
+      } catch (Throwable t) {
+        log.error("Connection close error occurred. ", t);
+      }
+    }
+    return sample;
+  }
+
   private void getMatchingAttributes(LinkedList<JMXAttribute> matchingAttributes, MBeanServerConnection mBeanServerConnection, Set<ObjectName> beans,
                                      LinkedList<JMXConfiguration> configurationList) {
     for (ObjectName beanName : beans) {
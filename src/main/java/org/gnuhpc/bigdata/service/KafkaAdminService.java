@@ -9,26 +9,40 @@ import com.google.common.collect.ImmutableMap;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonObject;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Properties;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 import java.util.stream.Collectors;
 import javax.annotation.PostConstruct;
 import kafka.admin.AdminClient;
 import kafka.admin.AdminUtils;
+import kafka.admin.BrokerMetadata;
 import kafka.admin.RackAwareMode;
 import kafka.admin.ReassignPartitionsCommand;
 import kafka.admin.ReassignmentStatus;
@@ -43,12 +57,14 @@ import kafka.coordinator.GroupTopicPartition;
 import kafka.javaapi.OffsetRequest;
 import kafka.javaapi.OffsetResponse;
 import kafka.javaapi.consumer.SimpleConsumer;
+import kafka.log.LogConfig;
 import kafka.server.ConfigType;
 import kafka.utils.ZKGroupTopicDirs;
 import kafka.utils.ZkUtils;
 import lombok.extern.log4j.Log4j;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.CuratorEvent;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
@@ -59,32 +75,53 @@ import org.apache.kafka.common.Node;
 import org.apache.kafka.common.PartitionInfo;
 import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.errors.ApiException;
+import org.apache.kafka.common.errors.InvalidMetadataException;
 import org.apache.kafka.common.errors.InvalidTopicException;
+import org.apache.kafka.common.errors.LeaderNotAvailableException;
+import org.apache.kafka.common.errors.NotLeaderForPartitionException;
+import org.apache.kafka.common.protocol.Errors;
 import org.apache.kafka.common.requests.MetadataResponse;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
 import org.gnuhpc.bigdata.CollectionConvertor;
+import org.gnuhpc.bigdata.componet.DownstreamMetrics;
+import org.gnuhpc.bigdata.componet.MetadataCache;
 import org.gnuhpc.bigdata.componet.OffsetStorage;
 import org.gnuhpc.bigdata.config.KafkaConfig;
 import org.gnuhpc.bigdata.constant.ConsumerType;
 import org.gnuhpc.bigdata.constant.GeneralResponseState;
+import org.gnuhpc.bigdata.constant.TopicSortField;
+import org.gnuhpc.bigdata.decoder.DecoderRegistry;
+import org.gnuhpc.bigdata.exception.ServiceNotAvailableException;
 import org.gnuhpc.bigdata.model.AddPartition;
 import org.gnuhpc.bigdata.model.BrokerInfo;
+import org.gnuhpc.bigdata.model.BrowsedRecord;
+import org.gnuhpc.bigdata.model.ConsumerGroupBrief;
 import org.gnuhpc.bigdata.model.ConsumerGroupDesc;
 import org.gnuhpc.bigdata.model.ConsumerGroupDescFactory;
 import org.gnuhpc.bigdata.model.GeneralResponse;
 import org.gnuhpc.bigdata.model.HealthCheckResult;
+import org.gnuhpc.bigdata.model.Page;
 import org.gnuhpc.bigdata.model.ReassignWrapper;
 import org.gnuhpc.bigdata.model.TopicBrief;
+import org.gnuhpc.bigdata.model.TopicConfigChange;
+import org.gnuhpc.bigdata.model.TopicConfigPatch;
+import org.gnuhpc.bigdata.model.TopicConfigReport;
 import org.gnuhpc.bigdata.model.TopicDetail;
 import org.gnuhpc.bigdata.model.TopicMeta;
 import org.gnuhpc.bigdata.model.TopicPartitionInfo;
+import org.gnuhpc.bigdata.model.TopicState;
+import org.gnuhpc.bigdata.model.ZkTopicConfig;
 import org.gnuhpc.bigdata.task.FetchOffSetFromZKResult;
 import org.gnuhpc.bigdata.task.FetchOffsetFromZKTask;
 import org.gnuhpc.bigdata.utils.KafkaUtils;
+import org.gnuhpc.bigdata.utils.SortedIndex;
 import org.gnuhpc.bigdata.utils.ZookeeperUtils;
 import org.gnuhpc.bigdata.validator.ConsumerGroupExistConstraint;
 import org.gnuhpc.bigdata.validator.TopicExistConstraint;
 import org.joda.time.DateTime;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.validation.annotation.Validated;
 import scala.Option;
@@ -102,6 +139,11 @@ public class KafkaAdminService {
   private static final int channelRetryBackoffMs = 600;
   private static final String CONSUMERPATHPREFIX = "/consumers/";
   private static final String OFFSETSPATHPREFIX = "/offsets/";
+  private static final String TOPICCONFIGPATHPREFIX = "/config/topics/";
+  private static final String CONFIGCHANGEPATHPREFIX = "/config/changes/config_change_";
+  private static final int MAX_OFFSET_FETCH_THREADS = 16;
+  private static final int MAX_PAGE_SIZE = 1000;
+  private static final long TOPIC_READY_POLL_MS = 100;
   @Autowired private ZookeeperUtils zookeeperUtils;
 
   @Autowired private KafkaUtils kafkaUtils;
@@ -110,6 +152,22 @@ public class KafkaAdminService {
 
   @Autowired private OffsetStorage storage;
 
+  @Autowired private DownstreamMetrics downstreamMetrics;
+
+  @Autowired private MetadataCache metadataCache;
+
+  @Autowired private MessageBrowseService messageBrowseService;
+
+  @Autowired private DecoderRegistry decoderRegistry;
+
+  @Autowired private TimestampOffsetService timestampOffsetService;
+
+  @Value("${kafka.consumergroup.index.refresh-ms:30000}")
+  private long consumerGroupIndexRefreshMs;
+
+  @Value("${kafka.topic.ready-timeout-ms:30000}")
+  private long topicReadyTimeoutMs;
+
   // For AdminUtils use
   private ZkUtils zkUtils;
 
@@ -121,6 +179,18 @@ public class KafkaAdminService {
 
   private scala.Option<String> NONE = scala.Option.apply(null);
 
+  // Sorted snapshots for the paged listings, rebuilt when the metadata cache version changes
+  private final SortedIndex<String> topicNameIndex =
+      new SortedIndex<>(String.class, Comparator.naturalOrder());
+  private final Map<String, SortedIndex<TopicBrief>> topicBriefIndexes = new ConcurrentHashMap<>();
+  private final SortedIndex<ConsumerGroupBrief> consumerGroupIndex =
+      new SortedIndex<>(
+          ConsumerGroupBrief.class,
+          Comparator.comparing(ConsumerGroupBrief::getConsumerGroup)
+              .thenComparing(ConsumerGroupBrief::getType));
+  private volatile List<ConsumerGroupBrief> consumerGroups;
+  private volatile long consumerGroupsLoadedAt;
+
   @PostConstruct
   private void init() {
     this.zkUtils = zookeeperUtils.getZkUtils();
@@ -188,22 +258,198 @@ public class KafkaAdminService {
       }
     }
 
+    int partitionCount =
+        Strings.isNullOrEmpty(reassignStr) ? topic.getPartitions() : reassignStr.split(",").length;
+    awaitLeaders(topic.getName(), partitionCount);
+    return describeTopic(topic.getName());
+  }
+
+  private void awaitLeaders(String topic, int partitionCount) {
+    Set<String> notReady =
+        waitForLeaders(Collections.singletonMap(topic, partitionCount), topicReadyTimeoutMs);
+    if (!notReady.isEmpty()) {
+      throw new ApiException(
+          "Topic "
+              + topic
+              + " has been changed but not all of its "
+              + partitionCount
+              + " partitions have a leader after "
+              + topicReadyTimeoutMs
+              + " ms");
+    }
+  }
+
+  /**
+   * Waits until every partition of the given topics has a leader. The partition state znodes are
+   * waited on first, woken up by the watches of the metadata cache, then the broker metadata is
+   * polled until the brokers know the leaders too.
+   *
+   * @param partitionCounts expected number of partitions per topic
+   * @return the topics that are still not ready when the timeout expired
+   */
+  private Set<String> waitForLeaders(Map<String, Integer> partitionCounts, long timeoutMs) {
+    long deadline = System.currentTimeMillis() + timeoutMs;
+    Set<String> pending = new HashSet<>(partitionCounts.keySet());
     try {
-      // Wait for a second for metadata propergating
-      Thread.sleep(3000);
+      if (metadataCache.isInitialized()) {
+        Set<String> zkPending = new HashSet<>(pending);
+        metadataCache.await(
+            () -> {
+              zkPending.removeIf(
+                  topic ->
+                      hasLeaders(metadataCache.getTopicState(topic), partitionCounts.get(topic)));
+              return zkPending.isEmpty();
+            },
+            timeoutMs);
+      }
+
+      while (true) {
+        pending.removeIf(topic -> hasLeaders(fetchPartitions(topic), partitionCounts.get(topic)));
+        long remaining = deadline - System.currentTimeMillis();
+        if (pending.isEmpty() || remaining <= 0) {
+          break;
+        }
+        Thread.sleep(Math.min(TOPIC_READY_POLL_MS, remaining));
+      }
     } catch (InterruptedException e) {
-      e.printStackTrace();
+      Thread.currentThread().interrupt();
     }
-    return describeTopic(topic.getName());
+    return pending;
+  }
+
+  private boolean hasLeaders(TopicState state, int partitionCount) {
+    if (state == null || state.getPartitionCount() < partitionCount) {
+      return false;
+    }
+    return Arrays.stream(state.getLeaders()).noneMatch(leader -> leader == TopicState.NO_LEADER);
+  }
+
+  private boolean hasLeaders(List<PartitionInfo> partitions, int partitionCount) {
+    if (partitions == null || partitions.size() < partitionCount) {
+      return false;
+    }
+    return partitions.stream().allMatch(pi -> pi.leader() != null && pi.leader().id() >= 0);
+  }
+
+  private List<PartitionInfo> fetchPartitions(String topic) {
+    return kafkaUtils
+        .getMetadataConsumerPool()
+        .execute(
+            consumer ->
+                downstreamMetrics.record(
+                    DownstreamMetrics.BROKER_METADATA, () -> consumer.partitionsFor(topic)));
   }
 
   public List<String> listTopics() {
-    return CollectionConvertor.seqConvertJavaList(zkUtils.getAllTopics());
+    return downstreamMetrics.record(
+        DownstreamMetrics.ZOOKEEPER,
+        () -> CollectionConvertor.seqConvertJavaList(zkUtils.getAllTopics()));
+  }
+
+  public Page<String> listTopics(String prefix, String regex, String cursor, int limit) {
+    checkPageSize(limit);
+    checkMetadataCache();
+    Predicate<String> filter = nameFilter(prefix, regex);
+    return topicNameIndex.page(
+        metadataCache.getVersion(),
+        () -> metadataCache.getTopicStates().keySet(),
+        filter,
+        cursor,
+        limit);
+  }
+
+  public Page<TopicBrief> listTopicBrief(
+      String prefix,
+      String regex,
+      TopicSortField sort,
+      boolean desc,
+      String cursor,
+      int limit) {
+    checkPageSize(limit);
+    checkMetadataCache();
+    Predicate<String> nameFilter = nameFilter(prefix, regex);
+    TopicSortField sortField = sort == null ? TopicSortField.NAME : sort;
+    SortedIndex<TopicBrief> index =
+        topicBriefIndexes.computeIfAbsent(
+            sortField + (desc ? ":desc" : ":asc"),
+            key -> {
+              Comparator<TopicBrief> comparator = topicBriefComparator(sortField);
+              return new SortedIndex<>(
+                  TopicBrief.class, desc ? comparator.reversed() : comparator);
+            });
+    return index.page(
+        metadataCache.getVersion(),
+        () ->
+            metadataCache
+                .getTopicStates()
+                .values()
+                .stream()
+                .map(TopicState::toBrief)
+                .collect(toList()),
+        brief -> nameFilter.test(brief.getTopic()),
+        cursor,
+        limit);
+  }
+
+  private Comparator<TopicBrief> topicBriefComparator(TopicSortField sort) {
+    switch (sort) {
+      case PARTITIONS:
+        return Comparator.comparingInt(TopicBrief::getNumPartition)
+            .thenComparing(TopicBrief::getTopic);
+      case ISR_RATE:
+        return Comparator.comparingDouble(TopicBrief::getIsrRate)
+            .thenComparing(TopicBrief::getTopic);
+      default:
+        return Comparator.comparing(TopicBrief::getTopic);
+    }
+  }
+
+  private Predicate<String> nameFilter(String prefix, String regex) {
+    Predicate<String> filter = name -> true;
+    if (!StringUtils.isEmpty(prefix)) {
+      filter = filter.and(name -> name.startsWith(prefix));
+    }
+    if (!StringUtils.isEmpty(regex)) {
+      try {
+        Pattern pattern = Pattern.compile(regex);
+        filter = filter.and(name -> pattern.matcher(name).matches());
+      } catch (PatternSyntaxException e) {
+        throw new ApiException("Invalid regex " + regex + ": " + e.getDescription());
+      }
+    }
+    return filter;
+  }
+
+  private void checkPageSize(int limit) {
+    if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+      throw new ApiException("limit must be between 1 and " + MAX_PAGE_SIZE);
+    }
+  }
+
+  private void checkMetadataCache() {
+    if (!metadataCache.isInitialized()) {
+      throw new ServiceNotAvailableException(
+          "zookeeper", "loading", "Topic metadata is still being loaded from zookeeper");
+    }
   }
 
   public List<TopicBrief> listTopicBrief() {
-    KafkaConsumer consumer = kafkaUtils.createNewConsumer();
-    Map<String, List<PartitionInfo>> topicMap = consumer.listTopics();
+    if (metadataCache.isInitialized()) {
+      return metadataCache
+          .getTopicStates()
+          .values()
+          .stream()
+          .map(TopicState::toBrief)
+          .collect(toList());
+    }
+
+    Map<String, List<PartitionInfo>> topicMap =
+        kafkaUtils
+            .getMetadataConsumerPool()
+            .execute(
+                consumer ->
+                    downstreamMetrics.record(
+                        DownstreamMetrics.BROKER_METADATA, () -> consumer.listTopics()));
     List<TopicBrief> result =
         topicMap
             .entrySet()
@@ -230,13 +476,12 @@ public class KafkaAdminService {
                 })
             .collect(toList());
 
-    consumer.close();
-
     return result;
   }
 
   public boolean existTopic(String topicName) {
-    return AdminUtils.topicExists(zkUtils, topicName);
+    return downstreamMetrics.record(
+        DownstreamMetrics.ZOOKEEPER, () -> AdminUtils.topicExists(zkUtils, topicName));
   }
 
   public List<BrokerInfo> listBrokers() {
@@ -253,7 +498,12 @@ public class KafkaAdminService {
               try {
                 brokerInfoStr =
                     new String(
-                        zkClient.getData().forPath(ZkUtils.BrokerIdsPath() + "/" + entry.getKey()));
+                        downstreamMetrics.recordCall(
+                            DownstreamMetrics.ZOOKEEPER,
+                            () ->
+                                zkClient
+                                    .getData()
+                                    .forPath(ZkUtils.BrokerIdsPath() + "/" + entry.getKey())));
               } catch (Exception e) {
                 e.printStackTrace();
               }
@@ -269,9 +519,16 @@ public class KafkaAdminService {
   }
 
   public TopicMeta describeTopic(@TopicExistConstraint String topicName) {
-    KafkaConsumer consumer = kafkaUtils.createNewConsumer();
     TopicMeta topicMeta = new TopicMeta(topicName);
-    List<PartitionInfo> tmList = consumer.partitionsFor(topicName);
+    List<PartitionInfo> tmList =
+        kafkaUtils
+            .getMetadataConsumerPool()
+            .execute(
+                consumer ->
+                    downstreamMetrics.record(
+                        DownstreamMetrics.BROKER_METADATA,
+                        () -> consumer.partitionsFor(topicName)));
+    kafkaUtils.updateLeaders(tmList);
     topicMeta.setPartitionCount(tmList.size());
     topicMeta.setReplicationFactor(tmList.get(0).replicas().length);
     topicMeta.setTopicCustomConfigs(getTopicPropsFromZk(topicName));
@@ -279,33 +536,155 @@ public class KafkaAdminService {
         tmList
             .parallelStream()
             .map(
-                tm -> {
-                  TopicPartitionInfo topicPartitionInfo = new TopicPartitionInfo();
-                  topicPartitionInfo.setLeader(tm.leader().host());
-                  topicPartitionInfo.setIsr(
-                      Arrays.stream(tm.inSyncReplicas())
-                          .map(node -> node.host())
-                          .collect(toList()));
-                  topicPartitionInfo.setPartitionId(tm.partition());
-                  topicPartitionInfo.setReplicas(
-                      Arrays.stream(tm.replicas()).map(node -> node.host()).collect(toList()));
-                  topicPartitionInfo.setIn_sync();
-                  topicPartitionInfo.setStartOffset(
-                      getBeginningOffset(tm.leader(), tm.topic(), tm.partition()));
-                  topicPartitionInfo.setEndOffset(
-                      getEndOffset(tm.leader(), tm.topic(), tm.partition()));
-                  topicPartitionInfo.setMessageAvailable();
-                  return topicPartitionInfo;
-                })
+                tm ->
+                    toTopicPartitionInfo(
+                        tm,
+                        getBeginningOffset(tm.leader(), tm.topic(), tm.partition()),
+                        getEndOffset(tm.leader(), tm.topic(), tm.partition())))
             .collect(toList()));
 
     Collections.sort(topicMeta.getTopicPartitionInfos());
 
-    consumer.close();
+    return topicMeta;
+  }
 
+  /**
+   * Describes every topic accepted by the filter. All topics share one metadata fetch, one
+   * batched offset request per leader broker and one pipelined ZooKeeper read of their configs.
+   * Each topic is handed to the sink as soon as its offsets and config are in, either as a {@link
+   * TopicMeta} or as a failed {@link GeneralResponse}.
+   */
+  public void describeTopics(Predicate<String> topicFilter, Consumer<Object> sink) {
+    Map<String, List<PartitionInfo>> topicMap =
+        kafkaUtils
+            .getMetadataConsumerPool()
+            .execute(
+                consumer ->
+                    downstreamMetrics.record(
+                        DownstreamMetrics.BROKER_METADATA, () -> consumer.listTopics()));
+    List<String> topics =
+        topicMap.keySet().stream().filter(topicFilter).sorted().collect(toList());
+    if (topics.isEmpty()) {
+      return;
+    }
+
+    Map<Node, List<PartitionInfo>> partitionsByLeader = new HashMap<>();
+    for (String topic : topics) {
+      List<PartitionInfo> partitions = topicMap.get(topic);
+      kafkaUtils.updateLeaders(partitions);
+      partitions
+          .stream()
+          .filter(pi -> pi.leader() != null)
+          .forEach(
+              pi ->
+                  partitionsByLeader.computeIfAbsent(pi.leader(), n -> new ArrayList<>()).add(pi));
+    }
+
+    Map<String, CompletableFuture<Properties>> configs = getTopicPropsFromZk(topics);
+
+    ExecutorService executor =
+        Executors.newFixedThreadPool(
+            Math.max(1, Math.min(partitionsByLeader.size(), MAX_OFFSET_FETCH_THREADS)));
+    try {
+      Map<Node, CompletableFuture<Map<TopicAndPartition, long[]>>> offsetRanges = new HashMap<>();
+      partitionsByLeader.forEach(
+          (leader, partitions) ->
+              offsetRanges.put(
+                  leader,
+                  CompletableFuture.supplyAsync(
+                      () -> getOffsetRanges(leader, partitions), executor)));
+
+      BlockingQueue<Object> completed = new LinkedBlockingQueue<>();
+      for (String topic : topics) {
+        List<PartitionInfo> partitions = topicMap.get(topic);
+        List<CompletableFuture<?>> dependencies =
+            partitions
+                .stream()
+                .map(PartitionInfo::leader)
+                .filter(Objects::nonNull)
+                .distinct()
+                .map(offsetRanges::get)
+                .collect(toList());
+        dependencies.add(configs.get(topic));
+
+        CompletableFuture.allOf(dependencies.toArray(new CompletableFuture[0]))
+            .thenApplyAsync(
+                v -> buildTopicMeta(topic, partitions, configs.get(topic).join(), offsetRanges),
+                executor)
+            .whenComplete(
+                (topicMeta, e) ->
+                    completed.add(
+                        e == null
+                            ? topicMeta
+                            : new GeneralResponse(
+                                GeneralResponseState.failure,
+                                "Describe topic " + topic + " failed: " + e.getMessage())));
+      }
+
+      for (int i = 0; i < topics.size(); i++) {
+        sink.accept(completed.take());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ApiException("Interrupted while describing topics");
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private TopicMeta buildTopicMeta(
+      String topic,
+      List<PartitionInfo> partitions,
+      Properties configs,
+      Map<Node, CompletableFuture<Map<TopicAndPartition, long[]>>> offsetRanges) {
+    TopicMeta topicMeta = new TopicMeta(topic);
+    topicMeta.setPartitionCount(partitions.size());
+    topicMeta.setReplicationFactor(partitions.isEmpty() ? 0 : partitions.get(0).replicas().length);
+    topicMeta.setTopicCustomConfigs(configs);
+
+    List<TopicPartitionInfo> topicPartitionInfos = new ArrayList<>(partitions.size());
+    for (PartitionInfo pi : partitions) {
+      long[] range =
+          pi.leader() == null
+              ? null
+              : offsetRanges
+                  .get(pi.leader())
+                  .join()
+                  .get(new TopicAndPartition(pi.topic(), pi.partition()));
+      if (range == null && pi.leader() != null) {
+        // Not answered by the batched request, ask again with leader refresh
+        range =
+            new long[] {
+              getBeginningOffset(pi.topic(), pi.partition()),
+              getEndOffset(pi.topic(), pi.partition())
+            };
+      }
+      topicPartitionInfos.add(
+          range == null
+              ? toTopicPartitionInfo(pi, -1, -1)
+              : toTopicPartitionInfo(pi, range[0], range[1]));
+    }
+    Collections.sort(topicPartitionInfos);
+    topicMeta.setTopicPartitionInfos(topicPartitionInfos);
     return topicMeta;
   }
 
+  private TopicPartitionInfo toTopicPartitionInfo(
+      PartitionInfo tm, long startOffset, long endOffset) {
+    TopicPartitionInfo topicPartitionInfo = new TopicPartitionInfo();
+    topicPartitionInfo.setLeader(tm.leader() == null ? null : tm.leader().host());
+    topicPartitionInfo.setIsr(
+        Arrays.stream(tm.inSyncReplicas()).map(node -> node.host()).collect(toList()));
+    topicPartitionInfo.setPartitionId(tm.partition());
+    topicPartitionInfo.setReplicas(
+        Arrays.stream(tm.replicas()).map(node -> node.host()).collect(toList()));
+    topicPartitionInfo.setIn_sync();
+    topicPartitionInfo.setStartOffset(startOffset);
+    topicPartitionInfo.setEndOffset(endOffset);
+    topicPartitionInfo.setMessageAvailable();
+    return topicPartitionInfo;
+  }
+
   public GeneralResponse deleteTopic(@TopicExistConstraint String topic) {
     log.warn("Delete topic " + topic);
     AdminUtils.deleteTopic(zkUtils, topic);
@@ -313,6 +692,331 @@ public class KafkaAdminService {
     return new GeneralResponse(GeneralResponseState.success, topic + " has been deleted.");
   }
 
+  /**
+   * Creates all topics with two rounds of pipelined ZooKeeper writes, the configs first and then
+   * the replica assignments as kafka does, and one readiness wait for the whole batch. Topics are
+   * validated against the cached metadata, a topic failing validation does not stop the others.
+   */
+  public Map<String, GeneralResponse> createTopics(List<TopicDetail> topics) {
+    checkMetadataCache();
+    Map<String, GeneralResponse> results = new LinkedHashMap<>();
+    Set<String> collisionKeys =
+        metadataCache
+            .getTopicStates()
+            .keySet()
+            .stream()
+            .map(KafkaAdminService::collisionKey)
+            .collect(toSet());
+    Seq<BrokerMetadata> brokerMetadatas =
+        AdminUtils.getBrokerMetadatas(zkUtils, RackAwareMode.Enforced$.MODULE$, Option.empty());
+
+    Map<String, Map<String, List<Object>>> assignments = new LinkedHashMap<>();
+    for (TopicDetail topic : topics) {
+      String name = String.valueOf(topic.getName());
+      try {
+        validateNewTopic(topic, collisionKeys);
+        Map<String, List<Object>> assignment = new TreeMap<>();
+        CollectionConvertor.mapConvertJavaMap(
+                AdminUtils.assignReplicasToBrokers(
+                    brokerMetadatas, topic.getPartitions(), topic.getFactor(), -1, -1))
+            .forEach(
+                (partition, replicas) ->
+                    assignment.put(
+                        String.valueOf(partition),
+                        CollectionConvertor.seqConvertJavaList(replicas)));
+        assignments.put(name, assignment);
+        collisionKeys.add(collisionKey(name));
+        results.put(name, null);
+      } catch (RuntimeException e) {
+        results.put(name, new GeneralResponse(GeneralResponseState.failure, e.getMessage()));
+      }
+    }
+
+    Map<String, TopicDetail> details =
+        topics
+            .stream()
+            .filter(t -> assignments.containsKey(t.getName()))
+            .collect(Collectors.toMap(TopicDetail::getName, Function.identity(), (a, b) -> a));
+
+    // Round 1: configs, overwriting leftovers of an earlier topic with the same name
+    Map<String, CompletableFuture<CuratorEvent>> configWrites = new HashMap<>();
+    assignments
+        .keySet()
+        .forEach(
+            name -> {
+              Map<String, Object> config = new HashMap<>();
+              config.put("version", 1);
+              config.put("config", toStringMap(details.get(name).getProp()));
+              byte[] data = gson.toJson(config).getBytes(StandardCharsets.UTF_8);
+              configWrites.put(
+                  name,
+                  zookeeperUtils
+                      .createAsync(TOPICCONFIGPATHPREFIX + name, data)
+                      .thenCompose(
+                          event ->
+                              event.getResultCode() == KeeperException.Code.NODEEXISTS.intValue()
+                                  ? zookeeperUtils.setDataAsync(TOPICCONFIGPATHPREFIX + name, data)
+                                  : CompletableFuture.completedFuture(event)));
+            });
+    failOnError(configWrites, assignments.keySet(), results, "Write topic config failed: ");
+
+    // Round 2: replica assignments, which makes the controller create the partitions
+    Map<String, CompletableFuture<CuratorEvent>> assignmentWrites = new HashMap<>();
+    assignments.forEach(
+        (name, assignment) -> {
+          Map<String, Object> data = new HashMap<>();
+          data.put("version", 1);
+          data.put("partitions", assignment);
+          assignmentWrites.put(
+              name,
+              zookeeperUtils.createAsync(
+                  MetadataCache.TOPICS_PATH + "/" + name,
+                  gson.toJson(data).getBytes(StandardCharsets.UTF_8)));
+        });
+    failOnError(assignmentWrites, assignments.keySet(), results, "Write topic assignment failed: ");
+
+    Map<String, Integer> partitionCounts = new HashMap<>();
+    assignments.forEach((name, assignment) -> partitionCounts.put(name, assignment.size()));
+    Set<String> notReady = waitForLeaders(partitionCounts, topicReadyTimeoutMs);
+    partitionCounts.forEach(
+        (name, partitionCount) ->
+            results.put(
+                name,
+                notReady.contains(name)
+                    ? new GeneralResponse(
+                        GeneralResponseState.failure,
+                        name
+                            + " has been created but not all of its partitions have a leader after "
+                            + topicReadyTimeoutMs
+                            + " ms")
+                    : new GeneralResponse(
+                        GeneralResponseState.success,
+                        name + " has been created with " + partitionCount + " partitions.")));
+    return results;
+  }
+
+  /**
+   * Marks all topics for deletion with pipelined ZooKeeper writes. As for a single delete, the
+   * brokers must have topic deletion enabled.
+   */
+  public Map<String, GeneralResponse> deleteTopics(List<String> topics) {
+    checkMetadataCache();
+    Map<String, GeneralResponse> results = new LinkedHashMap<>();
+    Map<String, CompletableFuture<CuratorEvent>> deletes = new HashMap<>();
+    for (String topic : topics) {
+      if (metadataCache.getTopicState(topic) == null) {
+        results.put(
+            topic, new GeneralResponse(GeneralResponseState.failure, topic + " does not exist."));
+      } else if (!deletes.containsKey(topic)) {
+        log.warn("Delete topic " + topic);
+        results.put(topic, null);
+        deletes.put(
+            topic, zookeeperUtils.createAsync(ZkUtils.getDeleteTopicPath(topic), new byte[0]));
+      }
+    }
+
+    failOnError(deletes, deletes.keySet(), results, "Mark topic for deletion failed: ");
+    deletes
+        .keySet()
+        .forEach(
+            topic ->
+                results.put(
+                    topic,
+                    new GeneralResponse(
+                        GeneralResponseState.success, topic + " has been marked for deletion.")));
+    return results;
+  }
+
+  private void validateNewTopic(TopicDetail topic, Set<String> collisionKeys) {
+    if (StringUtils.isEmpty(topic.getName())) {
+      throw new InvalidTopicException("Empty topic name");
+    }
+    Topic.validate(topic.getName());
+    if (collisionKeys.contains(collisionKey(topic.getName()))) {
+      throw new InvalidTopicException(
+          "Topic " + topic.getName() + " already exists or collides with an existing topic.");
+    }
+    if (topic.getPartitions() <= 0) {
+      throw new InvalidTopicException("Number of partitions must be larger than 0");
+    }
+    if (topic.getFactor() <= 0) {
+      throw new InvalidTopicException("Replication factor must be larger than 0");
+    }
+    LogConfig.validate(topic.getProp());
+  }
+
+  /** Topic names differing only by '.' and '_' collide in the metric names. */
+  private static String collisionKey(String topic) {
+    return topic.replace('.', '_');
+  }
+
+  private static Map<String, String> toStringMap(Properties props) {
+    Map<String, String> map = new TreeMap<>();
+    if (props != null) {
+      props.stringPropertyNames().forEach(key -> map.put(key, props.getProperty(key)));
+    }
+    return map;
+  }
+
+  /**
+   * Waits for all writes, records a failure for each topic whose write did not succeed and removes
+   * it from the topics still in the batch.
+   */
+  private static void failOnError(
+      Map<String, CompletableFuture<CuratorEvent>> writes,
+      Set<String> batch,
+      Map<String, GeneralResponse> results,
+      String message) {
+    new HashMap<>(writes).forEach(
+        (topic, write) -> {
+          String error = resultError(write);
+          if (error != null) {
+            batch.remove(topic);
+            results.put(topic, new GeneralResponse(GeneralResponseState.failure, message + error));
+          }
+        });
+  }
+
+  /**
+   * Applies the patch to every selected topic. The new configs are diffed against the cached
+   * ones and only the topics that actually change are written, all config nodes in one pipelined
+   * round and all change notifications in a second one. A config node changed by someone else
+   * since it was cached is not overwritten, the topic is reported as failed instead.
+   */
+  public TopicConfigReport patchTopicConfigs(TopicConfigPatch patch) {
+    if (patch.getSelector() == null) {
+      throw new ApiException("A topic selector is required");
+    }
+    Predicate<String> topicFilter = patch.getSelector().toPredicate();
+    Map<String, String> set = patch.getSet() == null ? new HashMap<>() : patch.getSet();
+    List<String> delete = patch.getDelete() == null ? new ArrayList<>() : patch.getDelete();
+    if (set.isEmpty() && delete.isEmpty()) {
+      throw new ApiException("Nothing to set or delete");
+    }
+    checkMetadataCache();
+
+    List<String> topics =
+        metadataCache
+            .getTopicStates()
+            .keySet()
+            .stream()
+            .filter(topicFilter)
+            .sorted()
+            .collect(toList());
+    List<TopicConfigChange> changes = new ArrayList<>();
+    Map<String, Integer> expectedVersions = new HashMap<>();
+    for (String topic : topics) {
+      ZkTopicConfig current = metadataCache.getTopicConfig(topic);
+      Map<String, String> after = new TreeMap<>(current.getConfig());
+      after.putAll(set);
+      after.keySet().removeAll(delete);
+      if (after.equals(current.getConfig())) {
+        continue;
+      }
+
+      TopicConfigChange change =
+          new TopicConfigChange(topic, current.getConfig(), after, null, null);
+      changes.add(change);
+      try {
+        LogConfig.validate(toProperties(after));
+        expectedVersions.put(topic, current.getVersion());
+      } catch (RuntimeException e) {
+        change.setState(GeneralResponseState.failure);
+        change.setMsg("Invalid config: " + e.getMessage());
+      }
+    }
+    TopicConfigReport report =
+        new TopicConfigReport(topics.size(), topics.size() - changes.size(), changes);
+    if (patch.isDryRun()) {
+      changes
+          .stream()
+          .filter(change -> change.getState() == null)
+          .forEach(
+              change -> {
+                change.setState(GeneralResponseState.success);
+                change.setMsg("Dry run, not applied.");
+              });
+      return report;
+    }
+
+    // Round 1: config nodes, guarded by the version they were cached at
+    Map<String, CompletableFuture<CuratorEvent>> configWrites = new HashMap<>();
+    for (TopicConfigChange change : changes) {
+      Integer expectedVersion = expectedVersions.get(change.getTopic());
+      if (expectedVersion == null) {
+        continue;
+      }
+      Map<String, Object> config = new HashMap<>();
+      config.put("version", 1);
+      config.put("config", change.getAfter());
+      byte[] data = gson.toJson(config).getBytes(StandardCharsets.UTF_8);
+      String path = TOPICCONFIGPATHPREFIX + change.getTopic();
+      configWrites.put(
+          change.getTopic(),
+          expectedVersion < 0
+              ? zookeeperUtils.createAsync(path, data)
+              : zookeeperUtils.setDataAsync(path, data, expectedVersion));
+    }
+
+    // Round 2: change notifications, which make the brokers reload the configs
+    Map<String, CompletableFuture<CuratorEvent>> notifications = new HashMap<>();
+    for (TopicConfigChange change : changes) {
+      CompletableFuture<CuratorEvent> write = configWrites.get(change.getTopic());
+      if (write == null) {
+        continue;
+      }
+      String error = resultError(write);
+      if (error != null) {
+        change.setState(GeneralResponseState.failure);
+        change.setMsg("Write topic config failed: " + error);
+        continue;
+      }
+      Map<String, Object> notification = new HashMap<>();
+      notification.put("version", 1);
+      notification.put("entity_type", ConfigType.Topic());
+      notification.put("entity_name", change.getTopic());
+      notifications.put(
+          change.getTopic(),
+          zookeeperUtils.createAsync(
+              CONFIGCHANGEPATHPREFIX,
+              gson.toJson(notification).getBytes(StandardCharsets.UTF_8),
+              CreateMode.PERSISTENT_SEQUENTIAL));
+    }
+
+    for (TopicConfigChange change : changes) {
+      CompletableFuture<CuratorEvent> notification = notifications.get(change.getTopic());
+      if (notification == null) {
+        continue;
+      }
+      String error = resultError(notification);
+      if (error != null) {
+        change.setState(GeneralResponseState.failure);
+        change.setMsg("Config written but the brokers were not notified: " + error);
+      } else {
+        log.info("Patched config of topic " + change.getTopic() + ": " + change.getAfter());
+        change.setState(GeneralResponseState.success);
+        change.setMsg("Config has been changed.");
+      }
+    }
+    return report;
+  }
+
+  private static Properties toProperties(Map<String, String> map) {
+    Properties props = new Properties();
+    props.putAll(map);
+    return props;
+  }
+
+  /** Waits for the operation and returns why it failed, or null if it succeeded. */
+  private static String resultError(CompletableFuture<CuratorEvent> operation) {
+    try {
+      checkResultCode(operation.join());
+      return null;
+    } catch (RuntimeException e) {
+      return e.getCause() == null ? e.getMessage() : e.getCause().getMessage();
+    }
+  }
+
   public Properties createTopicConf(@TopicExistConstraint String topic, Properties prop) {
     Properties configs = getTopicPropsFromZk(topic);
     configs.putAll(prop);
@@ -428,6 +1132,7 @@ public class KafkaAdminService {
         true,
         RackAwareMode.Enforced$.MODULE$);
 
+    awaitLeaders(topic, addPartition.getNumPartitionsAdded() + numPartitions);
     return describeTopic(topic);
   }
 
@@ -467,6 +1172,11 @@ public class KafkaAdminService {
             .stream()
             .collect(Collectors.toMap(Map.Entry::getKey, data -> data.getValue().newReplicas()));
 
+    // Converted once, not for every partition
+    scala.collection.Map<TopicAndPartition, Seq<Object>> toBeReassigned =
+        JavaConverters.mapAsScalaMapConverter(partitionsToBeReassigned).asScala();
+    scala.collection.Map<TopicAndPartition, Seq<Object>> beingReassigned =
+        JavaConverters.mapAsScalaMapConverter(partitionsBeingReassigned).asScala();
     java.util.Map<TopicAndPartition, ReassignmentStatus> reassignedPartitionsStatus =
         partitionsToBeReassigned
             .entrySet()
@@ -476,13 +1186,8 @@ public class KafkaAdminService {
                     Map.Entry::getKey,
                     pbr ->
                         ReassignPartitionsCommand.checkIfPartitionReassignmentSucceeded(
-                            zkUtils,
-                            pbr.getKey(),
-                            pbr.getValue(),
-                            JavaConverters.mapAsScalaMapConverter(partitionsToBeReassigned)
-                                .asScala(),
-                            JavaConverters.mapAsScalaMapConverter(partitionsBeingReassigned)
-                                .asScala())));
+                            zkUtils, pbr.getKey(), pbr.getValue(), toBeReassigned,
+                            beingReassigned)));
 
     return reassignedPartitionsStatus
         .entrySet()
@@ -525,10 +1230,17 @@ public class KafkaAdminService {
   }
 
   private Set<String> listAllNewConsumerGroups() {
-    AdminClient adminClient = kafkaUtils.createAdminClient();
     log.info("Calling the listAllConsumerGroupsFlattened");
     Set activeGroups =
-        CollectionConvertor.seqConvertJavaList(adminClient.listAllConsumerGroupsFlattened())
+        kafkaUtils
+            .getAdminClientPool()
+            .execute(
+                adminClient ->
+                    downstreamMetrics.record(
+                        DownstreamMetrics.ADMIN_CLIENT,
+                        () ->
+                            CollectionConvertor.seqConvertJavaList(
+                                adminClient.listAllConsumerGroupsFlattened())))
             .stream()
             .map(GroupOverview::groupId)
             .collect(toSet());
@@ -537,7 +1249,6 @@ public class KafkaAdminService {
         storage.getMap().entrySet().stream().map(Map.Entry::getKey).collect(toSet());
     activeGroups.addAll(usedTobeGroups);
     log.info("Finish getting new consumers");
-    adminClient.close();
     return activeGroups;
   }
 
@@ -545,25 +1256,32 @@ public class KafkaAdminService {
     Set<String> result = new HashSet();
     Set<String> consumersList = listAllNewConsumerGroups();
 
-    for (String c : consumersList) {
-      AdminClient adminClient = kafkaUtils.createAdminClient();
+    AdminClient adminClient = kafkaUtils.getAdminClientPool().borrow();
+    try {
+      for (String c : consumersList) {
+        List<AdminClient.ConsumerSummary> consumerSummaryList =
+            downstreamMetrics.record(
+                DownstreamMetrics.ADMIN_CLIENT,
+                () ->
+                    CollectionConvertor.listConvertJavaList(adminClient.describeConsumerGroup(c)));
+        Set<String> topicSet =
+            consumerSummaryList
+                .stream()
+                .flatMap(cs -> CollectionConvertor.listConvertJavaList(cs.assignment()).stream())
+                .map(TopicPartition::topic)
+                .filter(t -> t.equals(topic))
+                .distinct()
+                .collect(toSet());
 
-      List<AdminClient.ConsumerSummary> consumerSummaryList =
-          CollectionConvertor.listConvertJavaList(adminClient.describeConsumerGroup(c));
-      Set<String> topicSet =
-          consumerSummaryList
-              .stream()
-              .flatMap(cs -> CollectionConvertor.listConvertJavaList(cs.assignment()).stream())
-              .map(TopicPartition::topic)
-              .filter(t -> t.equals(topic))
-              .distinct()
-              .collect(toSet());
-
-      if (topicSet.size() != 0) {
-        result.add(c);
+        if (topicSet.size() != 0) {
+          result.add(c);
+        }
       }
-      adminClient.close();
+    } catch (RuntimeException e) {
+      kafkaUtils.getAdminClientPool().invalidate(adminClient);
+      throw e;
     }
+    kafkaUtils.getAdminClientPool().giveBack(adminClient);
     return result;
   }
 
@@ -669,12 +1387,18 @@ public class KafkaAdminService {
 
   private List<ConsumerGroupDesc> setNewCGD(String consumerGroup, String topic) {
     List<ConsumerGroupDesc> cgdList = new ArrayList<>();
-    AdminClient adminClient = kafkaUtils.createAdminClient();
 
     List<AdminClient.ConsumerSummary> consumerSummaryList =
-        CollectionConvertor.listConvertJavaList(adminClient.describeConsumerGroup(consumerGroup));
+        kafkaUtils
+            .getAdminClientPool()
+            .execute(
+                adminClient ->
+                    downstreamMetrics.record(
+                        DownstreamMetrics.ADMIN_CLIENT,
+                        () ->
+                            CollectionConvertor.listConvertJavaList(
+                                adminClient.describeConsumerGroup(consumerGroup))));
     // Nothing about this consumer group obtained, return an empty map directly
-    adminClient.close();
 
     List<AdminClient.ConsumerSummary> filteredCSList =
         consumerSummaryList
@@ -756,51 +1480,10 @@ public class KafkaAdminService {
       long offset,
       String decoder,
       String avroSchema) {
-    KafkaConsumer consumer =
-        kafkaUtils.createNewConsumer(String.valueOf(System.currentTimeMillis()));
-    TopicPartition tp = new TopicPartition(topic, partition);
-    long beginningOffset = getBeginningOffset(topic, partition);
-    long endOffset = getEndOffset(topic, partition);
-    if (beginningOffset == endOffset) {
-      throw new ApiException("There is no message in this partition of this topic");
-    }
-    if (offset < beginningOffset || offset >= endOffset) {
-      log.error(offset + " error");
-      consumer.close();
-      throw new ApiException(
-          "offsets must be between " + String.valueOf(beginningOffset + " and " + (endOffset - 1)));
-    }
-    consumer.assign(Collections.singletonList(tp));
-    consumer.seek(tp, offset);
-
-    String last = null;
-
-    // ConsumerRecords<String, String> crs = consumer.poll(channelRetryBackoffMs);
-    ConsumerRecords<String, String> crs = consumer.poll(3000);
-    log.info(
-        "Seek to offset:"
-            + offset
-            + ", topic:"
-            + topic
-            + ", partition:"
-            + partition
-            + ", crs.count:"
-            + crs.count());
-    if (crs.count() != 0) {
-      Iterator<ConsumerRecord<String, String>> it = crs.iterator();
-      while (it.hasNext()) {
-        ConsumerRecord<String, String> initCr = it.next();
-        last = "Value: " + initCr.value() + ", Offset: " + String.valueOf(initCr.offset());
-        log.info(
-            "Value: " + initCr.value() + ", initCr.Offset: " + String.valueOf(initCr.offset()));
-        if (last != null && initCr.offset() == offset) {
-          break;
-        }
-      }
-    }
-    log.info("last:" + last);
-    consumer.close();
-    return last;
+    BrowsedRecord record =
+        messageBrowseService.getRecord(
+            topic, partition, offset, decoderRegistry.recordDecoder(null, decoder, avroSchema));
+    return "Value: " + record.getValue() + ", Offset: " + String.valueOf(record.getOffset());
   }
 
   public GeneralResponse resetOffset(
@@ -894,6 +1577,55 @@ public class KafkaAdminService {
     return new GeneralResponse(GeneralResponseState.success, "Reset the offset successfully!");
   }
 
+  /**
+   * Resets the offsets of the group on every partition of the topic to the first record at or
+   * after the timestamp, or to the end where there is none. Returns the offsets reset to.
+   */
+  public Map<Integer, Long> resetOffsetsToTime(
+      @TopicExistConstraint String topic, String consumerGroup, ConsumerType type, long timestamp) {
+    if (type == ConsumerType.NEW && !isNewConsumerGroup(consumerGroup)
+        || type == ConsumerType.OLD && !isOldConsumerGroup(consumerGroup)) {
+      throw new ApiException("Consumer group " + consumerGroup + " is non-exist!");
+    }
+    if (isConsumerGroupActive(consumerGroup, type)) {
+      throw new ApiException(
+          "Assignments can only be reset if the group " + consumerGroup + " is inactive");
+    }
+
+    Map<Integer, Long> offsets = timestampOffsetService.resolve(topic, timestamp);
+    log.info("Resetting the offsets of " + consumerGroup + " on " + topic + " to " + timestamp
+        + ": " + offsets);
+    if (type == ConsumerType.NEW) {
+      Map<TopicPartition, org.apache.kafka.clients.consumer.OffsetAndMetadata> commits =
+          new HashMap<>();
+      offsets.forEach(
+          (partition, offset) ->
+              commits.put(
+                  new TopicPartition(topic, partition),
+                  new org.apache.kafka.clients.consumer.OffsetAndMetadata(offset)));
+      KafkaConsumer consumer = kafkaUtils.createNewConsumer(consumerGroup);
+      try {
+        consumer.commitSync(commits);
+      } finally {
+        consumer.close();
+      }
+    } else {
+      try {
+        offsets.forEach(
+            (partition, offset) ->
+                zkUtils
+                    .zkClient()
+                    .writeData(
+                        CONSUMERPATHPREFIX + consumerGroup + OFFSETSPATHPREFIX + topic + "/"
+                            + partition,
+                        String.valueOf(offset)));
+      } catch (Exception e) {
+        throw new ApiException(e);
+      }
+    }
+    return offsets;
+  }
+
   public Map<String, Map<Integer, java.lang.Long>> getLastCommitTime(
       @ConsumerGroupExistConstraint String consumerGroup,
       @TopicExistConstraint String topic,
@@ -1009,6 +1741,39 @@ public class KafkaAdminService {
     return result;
   }
 
+  public Page<ConsumerGroupBrief> listAllConsumerGroups(
+      ConsumerType type, String prefix, String regex, String cursor, int limit) {
+    checkPageSize(limit);
+    Predicate<String> nameFilter = nameFilter(prefix, regex);
+    long version = loadConsumerGroups();
+    return consumerGroupIndex.page(
+        version,
+        () -> consumerGroups,
+        group ->
+            (type == null || group.getType() == type)
+                && nameFilter.test(group.getConsumerGroup()),
+        cursor,
+        limit);
+  }
+
+  /**
+   * Listing the new consumer groups asks every broker, so the group list is reloaded at most
+   * every kafka.consumergroup.index.refresh-ms. Returns the version of the loaded list.
+   */
+  private synchronized long loadConsumerGroups() {
+    long now = System.currentTimeMillis();
+    if (consumerGroups == null || now - consumerGroupsLoadedAt >= consumerGroupIndexRefreshMs) {
+      List<ConsumerGroupBrief> groups = new ArrayList<>();
+      listAllOldConsumerGroups()
+          .forEach(group -> groups.add(new ConsumerGroupBrief(group, ConsumerType.OLD)));
+      listAllNewConsumerGroups()
+          .forEach(group -> groups.add(new ConsumerGroupBrief(group, ConsumerType.NEW)));
+      consumerGroups = groups;
+      consumerGroupsLoadedAt = now;
+    }
+    return consumerGroupsLoadedAt;
+  }
+
   public Map<String, Set<String>> listConsumerGroupsByTopic(
       @TopicExistConstraint String topic, ConsumerType type) {
     Map<String, Set<String>> result = new HashMap<>();
@@ -1054,10 +1819,64 @@ public class KafkaAdminService {
   }
 
   private Properties getTopicPropsFromZk(String topic) {
-    return AdminUtils.fetchEntityConfig(zkUtils, ConfigType.Topic(), topic);
+    return downstreamMetrics.record(
+        DownstreamMetrics.ZOOKEEPER,
+        () -> AdminUtils.fetchEntityConfig(zkUtils, ConfigType.Topic(), topic));
+  }
+
+  /**
+   * Issues the config reads of all topics as asynchronous ZooKeeper requests, so they are
+   * pipelined on the session instead of paying one round trip each.
+   */
+  private Map<String, CompletableFuture<Properties>> getTopicPropsFromZk(List<String> topics) {
+    Map<String, CompletableFuture<Properties>> configs = new HashMap<>();
+    for (String topic : topics) {
+      configs.put(
+          topic,
+          zookeeperUtils
+              .getDataAsync(TOPICCONFIGPATHPREFIX + topic)
+              .thenApply(
+                  event -> {
+                    int rc = event.getResultCode();
+                    if (rc == KeeperException.Code.NONODE.intValue()) {
+                      return new Properties();
+                    }
+                    checkResultCode(event);
+                    return parseTopicConfig(event.getData());
+                  }));
+    }
+    return configs;
+  }
+
+  private static void checkResultCode(CuratorEvent event) {
+    int rc = event.getResultCode();
+    if (rc != KeeperException.Code.OK.intValue()) {
+      throw new ApiException(
+          KeeperException.create(KeeperException.Code.get(rc), event.getPath()).getMessage());
+    }
+  }
+
+  /** Parses the {"version":1,"config":{...}} node kafka keeps per topic. */
+  private Properties parseTopicConfig(byte[] data) {
+    Properties props = new Properties();
+    if (data == null) {
+      return props;
+    }
+    JsonObject config =
+        gson.fromJson(new String(data, StandardCharsets.UTF_8), JsonObject.class)
+            .getAsJsonObject("config");
+    if (config != null) {
+      config.entrySet().forEach(e -> props.setProperty(e.getKey(), e.getValue().getAsString()));
+    }
+    return props;
   }
 
   private long getOffsets(Node leader, String topic, int partitionId, long time) {
+    return downstreamMetrics.record(
+        DownstreamMetrics.BROKER_OFFSET, () -> fetchOffsets(leader, topic, partitionId, time));
+  }
+
+  private long fetchOffsets(Node leader, String topic, int partitionId, long time) {
     TopicAndPartition topicAndPartition = new TopicAndPartition(topic, partitionId);
 
     SimpleConsumer consumer =
@@ -1073,13 +1892,21 @@ public class KafkaAdminService {
     OffsetResponse offsetResponse = consumer.getOffsetsBefore(offsetRequest);
 
     if (offsetResponse.hasError()) {
+      consumer.close();
       short errorCode = offsetResponse.errorCode(topic, partitionId);
       log.warn(format("Offset response has error: %d", errorCode));
-      throw new ApiException(
+      String message =
           "could not fetch data from Kafka, error code is '"
               + errorCode
               + "'Exception Message:"
-              + offsetResponse.toString());
+              + offsetResponse.toString();
+      if (errorCode == Errors.NOT_LEADER_FOR_PARTITION.code()) {
+        throw new NotLeaderForPartitionException(message);
+      }
+      if (errorCode == Errors.LEADER_NOT_AVAILABLE.code()) {
+        throw new LeaderNotAvailableException(message);
+      }
+      throw new ApiException(message);
     }
 
     long[] offsets = offsetResponse.offsets(topic, partitionId);
@@ -1087,25 +1914,96 @@ public class KafkaAdminService {
     return offsets[0];
   }
 
+  private Map<TopicAndPartition, long[]> getOffsetRanges(
+      Node leader, List<PartitionInfo> partitions) {
+    return downstreamMetrics.record(
+        DownstreamMetrics.BROKER_OFFSET, () -> fetchOffsetRanges(leader, partitions));
+  }
+
+  /**
+   * Fetches the beginning and end offset of all given partitions led by one broker with two
+   * requests. Partitions the broker answered with an error are left out of the result.
+   */
+  private Map<TopicAndPartition, long[]> fetchOffsetRanges(
+      Node leader, List<PartitionInfo> partitions) {
+    SimpleConsumer consumer =
+        new SimpleConsumer(leader.host(), leader.port(), 10000, 1024, "Kafka-zk-simpleconsumer");
+    try {
+      Map<TopicAndPartition, Long> beginning =
+          fetchOffsets(consumer, partitions, kafka.api.OffsetRequest.EarliestTime());
+      Map<TopicAndPartition, Long> end =
+          fetchOffsets(consumer, partitions, kafka.api.OffsetRequest.LatestTime());
+      Map<TopicAndPartition, long[]> ranges = new HashMap<>();
+      beginning.forEach(
+          (tp, startOffset) -> {
+            Long endOffset = end.get(tp);
+            if (endOffset != null) {
+              ranges.put(tp, new long[] {startOffset, endOffset});
+            }
+          });
+      return ranges;
+    } catch (RuntimeException e) {
+      log.warn(
+          "Batched offset request to " + leader + " failed, falling back to single requests", e);
+      return Collections.emptyMap();
+    } finally {
+      consumer.close();
+    }
+  }
+
+  private Map<TopicAndPartition, Long> fetchOffsets(
+      SimpleConsumer consumer, List<PartitionInfo> partitions, long time) {
+    PartitionOffsetRequestInfo partitionOffsetRequestInfo = new PartitionOffsetRequestInfo(time, 1);
+    Map<TopicAndPartition, PartitionOffsetRequestInfo> requestInfo = new HashMap<>();
+    partitions.forEach(
+        pi ->
+            requestInfo.put(
+                new TopicAndPartition(pi.topic(), pi.partition()), partitionOffsetRequestInfo));
+    OffsetResponse offsetResponse =
+        consumer.getOffsetsBefore(
+            new OffsetRequest(
+                requestInfo, kafka.api.OffsetRequest.CurrentVersion(), consumer.clientId()));
+
+    Map<TopicAndPartition, Long> offsets = new HashMap<>();
+    for (TopicAndPartition tp : requestInfo.keySet()) {
+      short errorCode = offsetResponse.errorCode(tp.topic(), tp.partition());
+      if (errorCode == Errors.NONE.code()) {
+        long[] partitionOffsets = offsetResponse.offsets(tp.topic(), tp.partition());
+        if (partitionOffsets.length > 0) {
+          offsets.put(tp, partitionOffsets[0]);
+        }
+      } else if (errorCode == Errors.NOT_LEADER_FOR_PARTITION.code()) {
+        kafkaUtils.invalidateLeader(tp.topic(), tp.partition());
+      }
+    }
+    return offsets;
+  }
+
   private long getOffsets(PartitionInfo partitionInfo, long time) {
     return getOffsets(
         partitionInfo.leader(), partitionInfo.topic(), partitionInfo.partition(), time);
   }
 
+  /**
+   * Resolves the leader from the leader map. When the cached leader turned out to be stale, the
+   * entry is dropped and the request is retried once against the freshly fetched leader.
+   */
+  private long getOffsets(String topic, int partitionId, long time) {
+    try {
+      return getOffsets(kafkaUtils.getLeader(topic, partitionId), topic, partitionId, time);
+    } catch (InvalidMetadataException e) {
+      log.info("Stale leader of " + topic + "-" + partitionId + ", refreshing. " + e.getMessage());
+      kafkaUtils.invalidateLeader(topic, partitionId);
+      return getOffsets(kafkaUtils.getLeader(topic, partitionId), topic, partitionId, time);
+    }
+  }
+
   public long getBeginningOffset(String topic, int partitionId) {
-    return getOffsets(
-        kafkaUtils.getLeader(topic, partitionId),
-        topic,
-        partitionId,
-        kafka.api.OffsetRequest.EarliestTime());
+    return getOffsets(topic, partitionId, kafka.api.OffsetRequest.EarliestTime());
   }
 
   public long getEndOffset(String topic, int partitionId) {
-    return getOffsets(
-        kafkaUtils.getLeader(topic, partitionId),
-        topic,
-        partitionId,
-        kafka.api.OffsetRequest.LatestTime());
+    return getOffsets(topic, partitionId, kafka.api.OffsetRequest.LatestTime());
   }
 
   private long getBeginningOffset(Node leader, String topic, int partitionId) {
@@ -1146,12 +2044,17 @@ public class KafkaAdminService {
         throw new RuntimeException(consumerGroup + " non-exist!");
       }
 
-      AdminClient adminClient = kafkaUtils.createAdminClient();
-
       List<AdminClient.ConsumerSummary> consumerSummaryList =
-          CollectionConvertor.listConvertJavaList(adminClient.describeConsumerGroup(consumerGroup));
+          kafkaUtils
+              .getAdminClientPool()
+              .execute(
+                  adminClient ->
+                      downstreamMetrics.record(
+                          DownstreamMetrics.ADMIN_CLIENT,
+                          () ->
+                              CollectionConvertor.listConvertJavaList(
+                                  adminClient.describeConsumerGroup(consumerGroup))));
       // Nothing about this consumer group obtained, return an empty map directly
-      adminClient.close();
 
       if (isConsumerGroupActive(consumerGroup, ConsumerType.NEW)
           && consumerSummaryList.size() != 0) {
@@ -1211,8 +2114,13 @@ public class KafkaAdminService {
   }
 
   public Map<Integer, Long> countPartition(String topic) {
-    KafkaConsumer consumer = kafkaUtils.createNewConsumer();
-    List<PartitionInfo> piList = consumer.partitionsFor(topic);
+    List<PartitionInfo> piList =
+        kafkaUtils
+            .getMetadataConsumerPool()
+            .execute(
+                consumer ->
+                    downstreamMetrics.record(
+                        DownstreamMetrics.BROKER_METADATA, () -> consumer.partitionsFor(topic)));
     Map<Integer, Long> result =
         piList
             .stream()
@@ -1220,22 +2128,26 @@ public class KafkaAdminService {
             .map(node -> node.id())
             .collect(Collectors.groupingBy(Function.identity(), Collectors.counting()));
 
-    consumer.close();
-
     return result;
   }
 
   private boolean isConsumerGroupActive(String consumerGroup, ConsumerType type) {
     if (type == ConsumerType.NEW) {
-      AdminClient adminClient = kafkaUtils.createAdminClient();
       boolean isActive =
-          CollectionConvertor.seqConvertJavaList(adminClient.listAllConsumerGroupsFlattened())
+          kafkaUtils
+                  .getAdminClientPool()
+                  .execute(
+                      adminClient ->
+                          downstreamMetrics.record(
+                              DownstreamMetrics.ADMIN_CLIENT,
+                              () ->
+                                  CollectionConvertor.seqConvertJavaList(
+                                      adminClient.listAllConsumerGroupsFlattened())))
                   .stream()
                   .map(GroupOverview::groupId)
                   .filter(c -> c.equals(consumerGroup))
                   .count()
               == 1;
-      adminClient.close();
       return isActive;
     } else if (type == ConsumerType.OLD) {
       return AdminUtils.isConsumerGroupActive(zookeeperUtils.getZkUtils(), consumerGroup);
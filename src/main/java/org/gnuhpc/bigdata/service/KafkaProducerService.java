@@ -1,16 +1,179 @@
 package org.gnuhpc.bigdata.service;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.errors.ApiException;
+import org.gnuhpc.bigdata.constant.RecordEncoding;
+import org.gnuhpc.bigdata.model.ProduceBatchResult;
+import org.gnuhpc.bigdata.model.ProduceRecord;
+import org.gnuhpc.bigdata.model.ProduceResult;
+import org.gnuhpc.bigdata.model.TopicState;
+import org.gnuhpc.bigdata.utils.KafkaUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Writes messages to topics. Single messages go through the {@link KafkaTemplate}, batches through
+ * the bulk producer of {@link KafkaUtils}, which lingers so that the records of a batch share a few
+ * produce requests instead of costing one round trip each.
+ */
 @Service
 public class KafkaProducerService {
     @Autowired
     private KafkaTemplate<String, String> kafkaTemplate;
 
+    @Autowired
+    private KafkaUtils kafkaUtils;
+
+    @Autowired
+    private MessageBrowseService messageBrowseService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${kafka.produce.max-records:10000}")
+    private int maxRecords;
+
+    @Value("${kafka.produce.timeout-ms:30000}")
+    private long timeoutMs;
+
     public void send(String topic, String data) {
         kafkaTemplate.send(topic, data);
-        kafkaTemplate.flush();
+    }
+
+    /**
+     * A JSON array of records, read one record at a time so that a batch over the limit is refused
+     * before the rest of it is read.
+     */
+    public List<ProduceRecord> parseJsonArray(InputStream in) throws IOException {
+        List<ProduceRecord> records = new ArrayList<>();
+        try (JsonParser parser = objectMapper.getFactory().createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new ApiException("A batch must be a JSON array of records");
+            }
+            for (JsonToken token = parser.nextToken(); token != JsonToken.END_ARRAY; token = parser.nextToken()) {
+                if (records.size() == maxRecords) {
+                    throw new ApiException("A batch can hold at most " + maxRecords + " records");
+                }
+                if (token != JsonToken.START_OBJECT) {
+                    throw new ApiException("Invalid record " + records.size() + ": not a JSON object");
+                }
+                records.add(objectMapper.readValue(parser, ProduceRecord.class));
+            }
+        } catch (IOException e) {
+            throw new ApiException("Invalid record " + records.size() + ": " + e.getMessage());
+        }
+        return records;
+    }
+
+    /** One record per line, blank lines are skipped. Invalid records are reported by line number. */
+    public List<ProduceRecord> parseNdjson(InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        List<ProduceRecord> records = new ArrayList<>();
+        int lineNumber = 0;
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            lineNumber++;
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            if (records.size() == maxRecords) {
+                throw new ApiException("A batch can hold at most " + maxRecords + " records");
+            }
+            try {
+                records.add(objectMapper.readValue(line, ProduceRecord.class));
+            } catch (IOException e) {
+                throw new ApiException("Invalid record on line " + lineNumber + ": " + e.getMessage());
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Sends all records without waiting in between and waits for their acknowledgements at the end.
+     * The batch is validated as a whole first, so that an invalid record does not leave it written
+     * in part; records the brokers reject or the producer refuses fail on their own.
+     */
+    public ProduceBatchResult sendBatch(String topic, List<ProduceRecord> records, RecordEncoding encoding) {
+        TopicState state = messageBrowseService.checkTopic(topic);
+        if (records == null || records.isEmpty() || records.size() > maxRecords) {
+            throw new ApiException("A batch must hold between 1 and " + maxRecords + " records");
+        }
+        List<ProducerRecord<byte[], byte[]>> producerRecords = new ArrayList<>(records.size());
+        for (int i = 0; i < records.size(); i++) {
+            ProduceRecord record = records.get(i);
+            Integer partition = record.getPartition();
+            if (partition != null && (partition < 0 || partition >= state.getPartitionCount())) {
+                throw new ApiException("Record " + i + ": partition " + partition + " of topic " + topic
+                        + " does not exist");
+            }
+            try {
+                producerRecords.add(new ProducerRecord<>(topic, partition,
+                        RecordExportService.decode(record.getKey(), encoding),
+                        RecordExportService.decode(record.getValue(), encoding)));
+            } catch (ApiException e) {
+                throw new ApiException("Record " + i + ": " + e.getMessage());
+            }
+        }
+
+        long start = System.currentTimeMillis();
+        KafkaProducer<byte[], byte[]> producer = kafkaUtils.getBulkProducer();
+        List<Future<RecordMetadata>> futures = new ArrayList<>(producerRecords.size());
+        for (ProducerRecord<byte[], byte[]> producerRecord : producerRecords) {
+            try {
+                futures.add(producer.send(producerRecord));
+            } catch (RuntimeException e) {
+                // Thrown instead of handed to the future, e.g. once the buffer stayed full for max.block.ms
+                CompletableFuture<RecordMetadata> failed = new CompletableFuture<>();
+                failed.completeExceptionally(e);
+                futures.add(failed);
+            }
+        }
+
+        ProduceBatchResult batchResult = new ProduceBatchResult();
+        List<ProduceResult> results = new ArrayList<>(futures.size());
+        long deadline = start + timeoutMs;
+        for (Future<RecordMetadata> future : futures) {
+            ProduceResult result = new ProduceResult();
+            try {
+                RecordMetadata metadata =
+                        future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                result.setPartition(metadata.partition());
+                result.setOffset(metadata.offset());
+            } catch (ExecutionException e) {
+                result.setError(e.getCause().getMessage());
+            } catch (TimeoutException e) {
+                result.setError("Not acknowledged within " + timeoutMs + " ms");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ApiException("Interrupted while waiting for the batch to be written");
+            }
+            results.add(result);
+        }
+        long failed = results.stream().filter(result -> result.getError() != null).count();
+        batchResult.setTopic(topic);
+        batchResult.setWritten(results.size() - (int) failed);
+        batchResult.setFailed((int) failed);
+        batchResult.setElapsedMs(System.currentTimeMillis() - start);
+        batchResult.setResults(results);
+        return batchResult;
     }
 }
@@ -0,0 +1,680 @@
+package org.gnuhpc.bigdata.service;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.ApiException;
+import org.gnuhpc.bigdata.constant.TailOverflowPolicy;
+import org.gnuhpc.bigdata.decoder.RecordDecoder;
+import org.gnuhpc.bigdata.model.TailDropReport;
+import org.gnuhpc.bigdata.model.TailStreamInfo;
+import org.gnuhpc.bigdata.model.TopicState;
+import org.gnuhpc.bigdata.utils.BrowseConsumer;
+import org.gnuhpc.bigdata.utils.KafkaUtils;
+import org.gnuhpc.bigdata.utils.PartitionTailer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Follows partitions and pushes their new records to clients as server-sent events.
+ *
+ * <p>Every tailed partition is polled by one {@link PartitionTailer}, shared by all the streams
+ * that follow it and closed with the last of them. A stream keeps a bounded backlog of the
+ * records it did not send yet, filled by the tailers and drained by a pool of sender threads,
+ * so a slow client never holds up a tailer or the other clients. When the backlog is full the
+ * oldest records are dropped, and with the SAMPLE policy only every sampleRate-th record is kept
+ * once it is half full. The client is told about the records it missed with a {@code dropped}
+ * event.
+ *
+ * <p>A stream starting at an offset before the end first reads up to that end through the pooled
+ * browse consumers, at most {@code kafka.tail.max-catch-up} records per partition. Tailed records
+ * that overflow the backlog meanwhile are not lost, the catch-up reads on over them as long as it
+ * stays within that bound. Event ids hold the next offset of every partition, so a client
+ * reconnecting with Last-Event-ID continues where it stopped.
+ *
+ * <p>Streams are limited per user and in total, the partitions of a stream and the tailers, each
+ * a consumer with its own thread, by {@code kafka.tail.max-partitions-per-stream} and {@code
+ * kafka.tail.max-tailers}.
+ */
+@Log4j
+@Service
+public class LiveTailService {
+  private static final long LATEST = -1;
+  private static final int SEND_BATCH = 200;
+
+  @Autowired private KafkaUtils kafkaUtils;
+
+  @Autowired private MessageBrowseService messageBrowseService;
+
+  @Value("${kafka.tail.max-streams:200}")
+  private int maxStreams;
+
+  @Value("${kafka.tail.max-streams-per-user:5}")
+  private int maxStreamsPerUser;
+
+  @Value("${kafka.tail.max-partitions-per-stream:100}")
+  private int maxPartitionsPerStream;
+
+  @Value("${kafka.tail.max-tailers:500}")
+  private int maxTailers;
+
+  @Value("${kafka.tail.backlog-size:1000}")
+  private int backlogSize;
+
+  @Value("${kafka.tail.max-catch-up:100000}")
+  private long maxCatchUp;
+
+  @Value("${kafka.tail.sender-threads:8}")
+  private int senderThreads;
+
+  @Value("${kafka.tail.poll-timeout-ms:1000}")
+  private long tailPollTimeoutMs;
+
+  @Value("${kafka.tail.heartbeat-ms:15000}")
+  private long heartbeatMs;
+
+  @Value("${kafka.tail.sse-timeout-ms:1800000}")
+  private long sseTimeoutMs;
+
+  @Value("${kafka.browse.fetch-bytes:1048576}")
+  private int fetchBytes;
+
+  @Value("${kafka.browse.poll-timeout-ms:3000}")
+  private long pollTimeoutMs;
+
+  private final Map<TopicPartition, PartitionTailer> tailers = new HashMap<>();
+  private final Map<Long, TailStream> streams = new ConcurrentHashMap<>();
+  private final Map<String, Integer> streamsPerUser = new HashMap<>();
+  private final AtomicLong lastStreamId = new AtomicLong();
+  private int openStreams;
+  /** Tailers being created outside the lock, counted against the limit. */
+  private int startingTailers;
+  private ExecutorService tailerExecutor;
+  private ExecutorService senderExecutor;
+  private ScheduledExecutorService heartbeatExecutor;
+
+  /**
+   * Where a stream is in one partition. The offsets are set before the stream opens and then only
+   * moved by the draining thread, the counters are guarded by the stream.
+   */
+  private static class Cursor {
+    private final TopicPartition topicPartition;
+    /** The first offset delivered by the tailer, the records before it are caught up on. */
+    private long joinOffset;
+    private long catchUpOffset;
+    /** Tailed records dropped below it are read by the catch-up instead. */
+    private long catchUpLimit;
+    /** Tailed records below it are skipped, for streams starting after the end. */
+    private long skipBelow;
+    /** The offset after the last record sent. */
+    private long nextOffset;
+    private long pendingDropped;
+    private long pendingSampled;
+    private long sampleCounter;
+
+    Cursor(TopicPartition topicPartition) {
+      this.topicPartition = topicPartition;
+    }
+  }
+
+  /** One client connection. */
+  private class TailStream implements PartitionTailer.Subscriber {
+    private final long id = lastStreamId.incrementAndGet();
+    private final long startTime = System.currentTimeMillis();
+    private final String user;
+    private final String topic;
+    private final TailOverflowPolicy policy;
+    private final int sampleRate;
+    private final RecordDecoder decoder;
+    private final SseEmitter emitter = new SseEmitter(sseTimeoutMs);
+    private final Map<Integer, Cursor> cursors = new LinkedHashMap<>();
+    private final ArrayDeque<ConsumerRecord<byte[], byte[]>> backlog = new ArrayDeque<>();
+    /** Nothing is sent before all partitions are positioned. */
+    private boolean opened;
+    private boolean scheduled;
+    private boolean heartbeat;
+    private boolean closed;
+    private volatile long sent;
+    private long dropped;
+    private long sampled;
+
+    TailStream(
+        String user,
+        String topic,
+        List<Integer> partitions,
+        TailOverflowPolicy policy,
+        int sampleRate,
+        RecordDecoder decoder) {
+      this.user = user;
+      this.topic = topic;
+      this.policy = policy;
+      this.sampleRate = sampleRate;
+      this.decoder = decoder;
+      partitions.forEach(
+          partition -> cursors.put(partition, new Cursor(new TopicPartition(topic, partition))));
+    }
+
+    /** Called by the tailers, must not block. */
+    @Override
+    public synchronized void onRecord(ConsumerRecord<byte[], byte[]> record) {
+      Cursor cursor = cursors.get(record.partition());
+      if (closed || record.offset() < cursor.skipBelow) {
+        return;
+      }
+      if (policy == TailOverflowPolicy.SAMPLE
+          && backlog.size() >= backlogSize / 2
+          && cursor.sampleCounter++ % sampleRate != 0) {
+        cursor.pendingSampled++;
+        sampled++;
+        return;
+      }
+      if (backlog.size() >= backlogSize) {
+        ConsumerRecord<byte[], byte[]> oldest = backlog.pollFirst();
+        Cursor owner = cursors.get(oldest.partition());
+        if (owner.catchUpOffset < owner.joinOffset && oldest.offset() < owner.catchUpLimit) {
+          // The oldest tailed record of its partition, the catch-up reads it from the log instead
+          owner.joinOffset = oldest.offset() + 1;
+        } else {
+          owner.pendingDropped++;
+          dropped++;
+        }
+      }
+      backlog.addLast(record);
+      schedule();
+    }
+
+    @Override
+    public void onFailure(TopicPartition topicPartition, RuntimeException e) {
+      execute(
+          () -> {
+            try {
+              emitter.send(
+                  SseEmitter.event()
+                      .name("error")
+                      .data("Tailing " + topicPartition + " failed: " + e.getMessage()));
+            } catch (IOException | IllegalStateException ignored) {
+              // The client went away already
+            }
+            complete();
+          });
+    }
+
+    synchronized void beat() {
+      heartbeat = true;
+      schedule();
+    }
+
+    private void schedule() {
+      if (opened && !scheduled && !closed) {
+        scheduled = true;
+        execute(this::drain);
+      }
+    }
+
+    /** Sends a batch of records and reschedules itself while there is more to send. */
+    private void drain() {
+      try {
+        TailDropReport report;
+        synchronized (this) {
+          report = takeDropReport();
+        }
+        if (report != null) {
+          emitter.send(
+              SseEmitter.event()
+                  .id(eventId())
+                  .name("dropped")
+                  .data(report, MediaType.APPLICATION_JSON));
+        }
+        if (!catchUp()) {
+          List<ConsumerRecord<byte[], byte[]>> batch = new ArrayList<>();
+          boolean beat;
+          synchronized (this) {
+            while (batch.size() < SEND_BATCH && !backlog.isEmpty()) {
+              batch.add(backlog.pollFirst());
+            }
+            beat = heartbeat;
+            heartbeat = false;
+          }
+          for (ConsumerRecord<byte[], byte[]> record : batch) {
+            send(record);
+          }
+          if (beat && batch.isEmpty() && report == null) {
+            emitter.send(SseEmitter.event().comment("heartbeat"));
+          }
+        }
+      } catch (IOException | IllegalStateException e) {
+        log.debug("Closing live tail stream " + id + ": " + e.getMessage());
+        complete();
+        return;
+      }
+      synchronized (this) {
+        if (!closed && (isCatchingUp() || !backlog.isEmpty() || heartbeat)) {
+          execute(this::drain);
+        } else {
+          scheduled = false;
+        }
+      }
+    }
+
+    /** Reads one batch of a partition that is still catching up, false if none is. */
+    private boolean catchUp() throws IOException {
+      Cursor cursor;
+      long catchUpOffset;
+      long joinOffset;
+      synchronized (this) {
+        // joinOffset moves up while the tailer drops records the catch-up can read instead
+        cursor =
+            cursors
+                .values()
+                .stream()
+                .filter(c -> c.catchUpOffset < c.joinOffset)
+                .findFirst()
+                .orElse(null);
+        if (cursor == null) {
+          return false;
+        }
+        catchUpOffset = cursor.catchUpOffset;
+        joinOffset = cursor.joinOffset;
+      }
+      // Copied, so that the pooled consumer is not held while sending to a slow client
+      List<ConsumerRecord<byte[], byte[]>> records =
+          kafkaUtils
+              .getBrowseConsumerPool()
+              .execute(
+                  cursor.topicPartition,
+                  consumer -> new ArrayList<>(consumer.fetch(catchUpOffset, pollTimeoutMs)));
+      long next = joinOffset;
+      for (ConsumerRecord<byte[], byte[]> record : records) {
+        if (record.offset() >= joinOffset) {
+          next = joinOffset;
+          break;
+        }
+        send(record);
+        next = record.offset() + 1;
+      }
+      if (records.isEmpty()) {
+        log.warn("No records of " + cursor.topicPartition + " at offset " + catchUpOffset
+            + " within " + pollTimeoutMs + " ms, skipping to " + joinOffset);
+      }
+      synchronized (this) {
+        cursor.catchUpOffset = next;
+      }
+      return true;
+    }
+
+    private boolean isCatchingUp() {
+      return cursors.values().stream().anyMatch(c -> c.catchUpOffset < c.joinOffset);
+    }
+
+    private void send(ConsumerRecord<byte[], byte[]> record) throws IOException {
+      cursors.get(record.partition()).nextOffset = record.offset() + 1;
+      emitter.send(
+          SseEmitter.event()
+              .id(eventId())
+              .name("record")
+              .data(
+                  decoder.decode(record, MessageBrowseService.sizeOf(record)),
+                  MediaType.APPLICATION_JSON));
+      sent++;
+    }
+
+    private TailDropReport takeDropReport() {
+      Map<Integer, Long> droppedPerPartition = new HashMap<>();
+      Map<Integer, Long> sampledPerPartition = new HashMap<>();
+      cursors.forEach(
+          (partition, cursor) -> {
+            if (cursor.pendingDropped > 0) {
+              droppedPerPartition.put(partition, cursor.pendingDropped);
+              cursor.pendingDropped = 0;
+            }
+            if (cursor.pendingSampled > 0) {
+              sampledPerPartition.put(partition, cursor.pendingSampled);
+              cursor.pendingSampled = 0;
+            }
+          });
+      if (droppedPerPartition.isEmpty() && sampledPerPartition.isEmpty()) {
+        return null;
+      }
+      return new TailDropReport(
+          System.currentTimeMillis(), droppedPerPartition, sampledPerPartition);
+    }
+
+    /** The next offset of every partition, the Last-Event-ID to resume from. */
+    private String eventId() {
+      return cursors
+          .entrySet()
+          .stream()
+          .map(entry -> entry.getKey() + ":" + entry.getValue().nextOffset)
+          .collect(Collectors.joining(","));
+    }
+
+    /** Ends the response, which closes the stream through the completion callback. */
+    private void complete() {
+      try {
+        emitter.complete();
+      } catch (IllegalStateException ignored) {
+        // Completed already
+      }
+      close();
+    }
+
+    private void close() {
+      synchronized (this) {
+        if (closed) {
+          return;
+        }
+        closed = true;
+        backlog.clear();
+      }
+      cursors.values().forEach(cursor -> leave(cursor.topicPartition, this));
+      streams.remove(id);
+      releaseSlot(user);
+    }
+
+    private synchronized TailStreamInfo toInfo() {
+      TailStreamInfo info = new TailStreamInfo();
+      info.setId(id);
+      info.setUser(user);
+      info.setTopic(topic);
+      info.setPartitions(new ArrayList<>(cursors.keySet()));
+      info.setPolicy(policy);
+      info.setStartTime(startTime);
+      info.setSent(sent);
+      info.setDropped(dropped);
+      info.setSampled(sampled);
+      info.setBacklog(backlog.size());
+      return info;
+    }
+  }
+
+  @PostConstruct
+  public void start() {
+    tailerExecutor = Executors.newFixedThreadPool(maxTailers);
+    senderExecutor = Executors.newFixedThreadPool(senderThreads);
+    heartbeatExecutor = Executors.newSingleThreadScheduledExecutor();
+    heartbeatExecutor.scheduleWithFixedDelay(
+        () -> streams.values().forEach(TailStream::beat),
+        heartbeatMs,
+        heartbeatMs,
+        TimeUnit.MILLISECONDS);
+  }
+
+  @PreDestroy
+  public void stop() {
+    heartbeatExecutor.shutdownNow();
+    new ArrayList<>(streams.values()).forEach(TailStream::complete);
+    synchronized (tailers) {
+      tailers.values().forEach(PartitionTailer::stop);
+      tailers.clear();
+    }
+    senderExecutor.shutdownNow();
+    tailerExecutor.shutdown();
+  }
+
+  /**
+   * Opens a stream of the new records of the partitions, all partitions of the topic if none are
+   * given.
+   *
+   * @param offset "latest" to start at the end, or the offset to start every partition at
+   * @param lastEventId the id of the last event a reconnecting client got, overrides the offset
+   * @param user the stream is counted against the limit of this user
+   */
+  public SseEmitter subscribe(
+      String topic,
+      List<Integer> partitions,
+      String offset,
+      String lastEventId,
+      TailOverflowPolicy policy,
+      int sampleRate,
+      RecordDecoder decoder,
+      String user) {
+    TopicState state = messageBrowseService.checkTopic(topic);
+    List<Integer> tailed = new ArrayList<>();
+    if (partitions == null || partitions.isEmpty()) {
+      for (int partition = 0; partition < state.getPartitionCount(); partition++) {
+        tailed.add(partition);
+      }
+    } else {
+      for (int partition : partitions) {
+        if (partition < 0 || partition >= state.getPartitionCount()) {
+          throw new ApiException(
+              "Partition " + partition + " of topic " + topic + " does not exist");
+        }
+        if (!tailed.contains(partition)) {
+          tailed.add(partition);
+        }
+      }
+    }
+    if (tailed.size() > maxPartitionsPerStream) {
+      throw new ApiException(
+          "A stream can follow at most " + maxPartitionsPerStream + " partitions, not "
+              + tailed.size() + ", pick some with partitions");
+    }
+    if (sampleRate <= 0) {
+      throw new ApiException("sampleRate must be positive");
+    }
+    long startOffset = parseOffset(offset);
+    Map<Integer, Long> resumeOffsets = parseEventId(lastEventId);
+
+    acquireSlot(user);
+    TailStream stream =
+        new TailStream(
+            user,
+            topic,
+            tailed,
+            policy == null ? TailOverflowPolicy.DROP_OLDEST : policy,
+            sampleRate,
+            decoder);
+    try {
+      for (Cursor cursor : stream.cursors.values()) {
+        long requested =
+            resumeOffsets.getOrDefault(cursor.topicPartition.partition(), startOffset);
+        position(cursor, requested, stream);
+      }
+    } catch (RuntimeException e) {
+      stream.close();
+      throw e;
+    }
+    stream.emitter.onCompletion(stream::close);
+    stream.emitter.onTimeout(stream::close);
+    streams.put(stream.id, stream);
+    synchronized (stream) {
+      stream.opened = true;
+      stream.schedule();
+    }
+    return stream.emitter;
+  }
+
+  public List<TailStreamInfo> getStreams() {
+    return streams.values().stream().map(TailStream::toInfo).collect(Collectors.toList());
+  }
+
+  /**
+   * Joins the tailer of the partition and decides what to catch up on or skip. The stream lock is
+   * not held while joining, as the tailer calls into the stream with its own lock held.
+   */
+  private void position(Cursor cursor, long requested, TailStream stream) {
+    synchronized (stream) {
+      cursor.skipBelow = requested == LATEST ? 0 : requested;
+    }
+    long joinOffset = join(cursor.topicPartition, stream);
+    synchronized (stream) {
+      cursor.joinOffset = joinOffset;
+      cursor.catchUpOffset = joinOffset;
+      cursor.nextOffset = Math.max(joinOffset, cursor.skipBelow);
+    }
+    if (requested == LATEST || requested >= joinOffset) {
+      return;
+    }
+    if (joinOffset - requested > maxCatchUp) {
+      throw new ApiException(
+          "Offset " + requested + " of " + cursor.topicPartition + " is more than " + maxCatchUp
+              + " records behind the end " + joinOffset + ", browse the older records instead");
+    }
+    long beginningOffset =
+        kafkaUtils
+            .getBrowseConsumerPool()
+            .execute(cursor.topicPartition, BrowseConsumer::beginningOffset);
+    synchronized (stream) {
+      cursor.catchUpOffset = Math.min(Math.max(requested, beginningOffset), joinOffset);
+      cursor.catchUpLimit = cursor.catchUpOffset + maxCatchUp;
+      cursor.nextOffset = cursor.catchUpOffset;
+    }
+  }
+
+  /**
+   * Subscribes to the tailer of the partition, starting one if needed. A new tailer is positioned
+   * outside the lock, as that waits for the partition leader, and is thrown away if another stream
+   * started one for the partition meanwhile.
+   */
+  private long join(TopicPartition topicPartition, TailStream stream) {
+    while (true) {
+      synchronized (tailers) {
+        PartitionTailer tailer = tailers.get(topicPartition);
+        if (tailer != null) {
+          long position = tailer.subscribe(stream);
+          if (position >= 0) {
+            return position;
+          }
+          // Failed just now, replace it
+          tailers.remove(topicPartition, tailer);
+        }
+        if (tailers.size() + startingTailers >= maxTailers) {
+          throw new ApiException(
+              "There are " + maxTailers + " partitions tailed already, the limit");
+        }
+        startingTailers++;
+      }
+      PartitionTailer created;
+      try {
+        created = createTailer(topicPartition);
+      } catch (RuntimeException e) {
+        synchronized (tailers) {
+          startingTailers--;
+        }
+        throw e;
+      }
+      synchronized (tailers) {
+        startingTailers--;
+        if (!tailers.containsKey(topicPartition)) {
+          tailers.put(topicPartition, created);
+          long position = created.subscribe(stream);
+          tailerExecutor.execute(
+              () -> {
+                created.run();
+                synchronized (tailers) {
+                  tailers.remove(topicPartition, created);
+                }
+              });
+          return position;
+        }
+      }
+      created.close();
+    }
+  }
+
+  /** A tailer positioned at the end of the partition, which blocks until the leader answers. */
+  private PartitionTailer createTailer(TopicPartition topicPartition) {
+    KafkaConsumer<byte[], byte[]> consumer = kafkaUtils.createBrowseConsumer(fetchBytes);
+    try {
+      return new PartitionTailer(consumer, topicPartition, tailPollTimeoutMs);
+    } catch (RuntimeException e) {
+      consumer.close();
+      throw e;
+    }
+  }
+
+  private void leave(TopicPartition topicPartition, TailStream stream) {
+    synchronized (tailers) {
+      PartitionTailer tailer = tailers.get(topicPartition);
+      if (tailer != null && tailer.unsubscribe(stream)) {
+        tailers.remove(topicPartition);
+        tailer.stop();
+      }
+    }
+  }
+
+  private void acquireSlot(String user) {
+    synchronized (streamsPerUser) {
+      if (openStreams >= maxStreams) {
+        throw new ApiException("There are " + openStreams + " live tail streams open already");
+      }
+      int open = streamsPerUser.getOrDefault(user, 0);
+      if (open >= maxStreamsPerUser) {
+        throw new ApiException(
+            "User " + user + " has " + open + " live tail streams open already, the limit is "
+                + maxStreamsPerUser);
+      }
+      streamsPerUser.put(user, open + 1);
+      openStreams++;
+    }
+  }
+
+  private void releaseSlot(String user) {
+    synchronized (streamsPerUser) {
+      streamsPerUser.computeIfPresent(user, (key, open) -> open > 1 ? open - 1 : null);
+      openStreams--;
+    }
+  }
+
+  private void execute(Runnable task) {
+    try {
+      senderExecutor.execute(task);
+    } catch (RejectedExecutionException e) {
+      log.debug("Live tail is shutting down, dropping a send");
+    }
+  }
+
+  private static long parseOffset(String offset) {
+    if (offset == null || offset.isEmpty() || "latest".equals(offset)) {
+      return LATEST;
+    }
+    try {
+      long parsed = Long.parseLong(offset);
+      if (parsed >= 0) {
+        return parsed;
+      }
+    } catch (NumberFormatException e) {
+      // Reported below
+    }
+    throw new ApiException("offset must be latest or a non-negative offset, not " + offset);
+  }
+
+  /** Parses the partition:nextOffset pairs of an event id. */
+  private static Map<Integer, Long> parseEventId(String lastEventId) {
+    Map<Integer, Long> offsets = new HashMap<>();
+    if (lastEventId == null || lastEventId.isEmpty()) {
+      return offsets;
+    }
+    try {
+      for (String pair : lastEventId.split(",")) {
+        String[] parts = pair.split(":");
+        offsets.put(Integer.parseInt(parts[0].trim()), Long.parseLong(parts[1].trim()));
+      }
+    } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+      throw new ApiException("Invalid Last-Event-ID " + lastEventId);
+    }
+    return offsets;
+  }
+}
@@ -0,0 +1,215 @@
+package org.gnuhpc.bigdata.service;
+
+import java.util.List;
+import java.util.function.Consumer;
+import lombok.extern.log4j.Log4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.ApiException;
+import org.apache.kafka.common.errors.InvalidTopicException;
+import org.gnuhpc.bigdata.componet.MetadataCache;
+import org.gnuhpc.bigdata.decoder.RecordDecoder;
+import org.gnuhpc.bigdata.exception.ServiceNotAvailableException;
+import org.gnuhpc.bigdata.model.BrowseResult;
+import org.gnuhpc.bigdata.model.BrowsedRecord;
+import org.gnuhpc.bigdata.model.TopicState;
+import org.gnuhpc.bigdata.utils.BrowseConsumer;
+import org.gnuhpc.bigdata.utils.KafkaUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Reads single records and ranges of records from a partition. Ranges are handed to a sink while
+ * polling, so that a range of any size is streamed to the client instead of being collected first.
+ *
+ * <p>The range is bounded by a record count and by a byte budget on the serialized keys and
+ * values. The memory held at any time is one fetch of {@code kafka.browse.fetch-bytes}, whatever
+ * the size of the range. The result tells the offset to continue from.
+ *
+ * <p>Reads go through the pooled {@link BrowseConsumer}s of {@link KafkaUtils}, so a lookup on a
+ * partition read shortly before is a seek on a connected consumer, or no fetch at all when the
+ * record is in the batch that consumer fetched last.
+ */
+@Log4j
+@Service
+public class MessageBrowseService {
+  @Autowired private KafkaUtils kafkaUtils;
+
+  @Autowired private MetadataCache metadataCache;
+
+  @Value("${kafka.browse.poll-timeout-ms:3000}")
+  private long pollTimeoutMs;
+
+  @Value("${kafka.browse.max-count:10000}")
+  private int maxCount;
+
+  @Value("${kafka.browse.max-bytes:67108864}")
+  private long maxBytes;
+
+  /**
+   * Reads records from startOffset on, or from the beginning of the partition if those were
+   * deleted already.
+   *
+   * @param count the maximum number of records
+   * @param byteBudget the maximum serialized size of the records, the first record is always
+   *     read even if it is larger
+   * @param decoder renders the keys and values of the records
+   * @param sink receives every record as it is read
+   * @param flush called after the records of every poll were handed to the sink
+   */
+  public BrowseResult browse(
+      String topic,
+      int partition,
+      long startOffset,
+      int count,
+      long byteBudget,
+      RecordDecoder decoder,
+      Consumer<BrowsedRecord> sink,
+      Runnable flush) {
+    checkRange(topic, partition, count, byteBudget);
+    TopicPartition topicPartition = new TopicPartition(topic, partition);
+    BrowseResult result = new BrowseResult();
+    result.setTopic(topic);
+    result.setPartition(partition);
+    result.setStartOffset(startOffset);
+    // Errors thrown inside would close the pooled consumer, so a bad offset is only flagged there
+    boolean inRange =
+        kafkaUtils
+            .getBrowseConsumerPool()
+            .execute(
+                topicPartition,
+                consumer -> read(consumer, result, count, byteBudget, decoder, sink, flush));
+    if (!inRange) {
+      throw new ApiException(
+          "Offset must be between " + result.getBeginningOffset() + " and "
+              + result.getEndOffset() + " of " + topicPartition);
+    }
+    return result;
+  }
+
+  /**
+   * The record at the offset, read like {@link #browse}.
+   *
+   * @throws ApiException if there is no record at the offset
+   */
+  public BrowsedRecord getRecord(
+      String topic, int partition, long offset, RecordDecoder decoder) {
+    checkRange(topic, partition, 1, 1);
+    TopicPartition topicPartition = new TopicPartition(topic, partition);
+    BrowsedRecord record =
+        kafkaUtils
+            .getBrowseConsumerPool()
+            .execute(
+                topicPartition,
+                consumer -> {
+                  ConsumerRecord<byte[], byte[]> found = consumer.get(offset, pollTimeoutMs);
+                  return found == null ? null : decoder.decode(found, sizeOf(found));
+                });
+    if (record != null) {
+      return record;
+    }
+    // Only a miss pays for the offset lookups that explain it
+    long[] offsets =
+        kafkaUtils
+            .getBrowseConsumerPool()
+            .execute(
+                topicPartition,
+                consumer -> new long[] {consumer.beginningOffset(), consumer.endOffset()});
+    if (offsets[0] == offsets[1]) {
+      throw new ApiException("There is no message in this partition of this topic");
+    }
+    if (offset < offsets[0] || offset >= offsets[1]) {
+      throw new ApiException(
+          "offsets must be between " + offsets[0] + " and " + (offsets[1] - 1));
+    }
+    throw new ApiException(
+        "There is no message at offset " + offset + " of " + topicPartition
+            + ", it may have been compacted");
+  }
+
+  /** Reads from the start offset of the result on, false if it is beyond the end. */
+  private boolean read(
+      BrowseConsumer consumer,
+      BrowseResult result,
+      int count,
+      long byteBudget,
+      RecordDecoder decoder,
+      Consumer<BrowsedRecord> sink,
+      Runnable flush) {
+    result.setBeginningOffset(consumer.beginningOffset());
+    result.setEndOffset(consumer.endOffset());
+    if (result.getStartOffset() > result.getEndOffset()) {
+      return false;
+    }
+    result.setStartOffset(Math.max(result.getStartOffset(), result.getBeginningOffset()));
+    long nextOffset = result.getStartOffset();
+    int records = 0;
+    long bytes = 0;
+    read:
+    while (records < count && nextOffset < result.getEndOffset()) {
+      List<ConsumerRecord<byte[], byte[]>> fetched = consumer.fetch(nextOffset, pollTimeoutMs);
+      if (fetched.isEmpty()) {
+        log.warn("No records of " + consumer.getTopicPartition() + " at offset " + nextOffset
+            + " within " + pollTimeoutMs + " ms");
+        break;
+      }
+      for (ConsumerRecord<byte[], byte[]> record : fetched) {
+        int size = sizeOf(record);
+        if (records > 0 && bytes + size > byteBudget) {
+          break read;
+        }
+        sink.accept(decoder.decode(record, size));
+        records++;
+        bytes += size;
+        nextOffset = record.offset() + 1;
+        if (records == count) {
+          break read;
+        }
+      }
+      flush.run();
+    }
+    flush.run();
+
+    result.setNextOffset(nextOffset);
+    result.setRecords(records);
+    result.setBytes(bytes);
+    result.setEndReached(nextOffset >= result.getEndOffset());
+    return true;
+  }
+
+  /**
+   * Validates a range before {@link #browse}, so that a streamed response can still be failed
+   * with an error status. The consumer would wait forever for a partition that does not exist.
+   */
+  public void checkRange(String topic, int partition, int count, long byteBudget) {
+    if (count <= 0 || count > maxCount) {
+      throw new ApiException("Count must be between 1 and " + maxCount);
+    }
+    if (byteBudget <= 0 || byteBudget > maxBytes) {
+      throw new ApiException("Byte budget must be between 1 and " + maxBytes);
+    }
+    TopicState state = checkTopic(topic);
+    if (partition < 0 || partition >= state.getPartitionCount()) {
+      throw new ApiException("Partition " + partition + " of topic " + topic + " does not exist");
+    }
+  }
+
+  public TopicState checkTopic(String topic) {
+    if (!metadataCache.isInitialized()) {
+      throw new ServiceNotAvailableException(
+          "zookeeper", "loading", "Topic metadata is still being loaded from zookeeper");
+    }
+    TopicState state = metadataCache.getTopicState(topic);
+    if (state == null) {
+      throw new InvalidTopicException("Topic " + topic + " non-exist!");
+    }
+    return state;
+  }
+
+  /** Serialized size of the key and value. */
+  public static int sizeOf(ConsumerRecord<byte[], byte[]> record) {
+    return (record.key() == null ? 0 : record.key().length)
+        + (record.value() == null ? 0 : record.value().length);
+  }
+}
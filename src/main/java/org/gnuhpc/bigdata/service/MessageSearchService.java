@@ -0,0 +1,378 @@
+package org.gnuhpc.bigdata.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.ApiException;
+import org.gnuhpc.bigdata.constant.SearchStopReason;
+import org.gnuhpc.bigdata.decoder.DecoderRegistry;
+import org.gnuhpc.bigdata.decoder.RecordDecoder;
+import org.gnuhpc.bigdata.model.BrowsedRecord;
+import org.gnuhpc.bigdata.model.MessageSearchRequest;
+import org.gnuhpc.bigdata.model.MessageSearchResult;
+import org.gnuhpc.bigdata.model.PartitionScan;
+import org.gnuhpc.bigdata.model.TopicState;
+import org.gnuhpc.bigdata.utils.BrowseConsumer;
+import org.gnuhpc.bigdata.utils.BytesMatchers;
+import org.gnuhpc.bigdata.utils.KafkaUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Searches the records of a topic for a substring, a regex or a value at a JSON path, scanning
+ * several partitions in parallel and handing every match to a sink as soon as it is found.
+ *
+ * <p>A search stops early once it found maxMatches records, scanned maxBytes of keys and values
+ * or ran for timeoutMs, whichever comes first, so a broad search cannot keep the brokers busy.
+ * The partitions of one search are scanned by at most its parallelism tasks, on a thread pool of
+ * {@code kafka.search.threads} shared by all searches. Every partition reports the offset it got
+ * to, to continue a search that was stopped by a budget.
+ *
+ * <p>A timestamp range is turned into an offset range per partition by the {@link
+ * TimestampOffsetService} before the partition is read, so only the records around the range are
+ * scanned. Records whose timestamp is still outside the range, as producer timestamps need not
+ * grow with the offset, are skipped without being matched.
+ */
+@Log4j
+@Service
+public class MessageSearchService {
+  @Autowired private KafkaUtils kafkaUtils;
+
+  @Autowired private MessageBrowseService messageBrowseService;
+
+  @Autowired private ObjectMapper objectMapper;
+
+  @Autowired private DecoderRegistry decoderRegistry;
+
+  @Autowired private TimestampOffsetService timestampOffsetService;
+
+  @Value("${kafka.search.threads:8}")
+  private int threads;
+
+  @Value("${kafka.search.max-bytes:1073741824}")
+  private long maxBytes;
+
+  @Value("${kafka.search.max-time-ms:120000}")
+  private long maxTimeMs;
+
+  @Value("${kafka.search.max-matches:10000}")
+  private int maxMatches;
+
+  @Value("${kafka.browse.poll-timeout-ms:3000}")
+  private long pollTimeoutMs;
+
+  private ExecutorService executor;
+
+  /** The state shared by the partition tasks of one search. */
+  private static class Search {
+    private final MessageSearchRequest request;
+    private final Predicate<byte[]> matcher;
+    private final RecordDecoder decoder;
+    private final Consumer<BrowsedRecord> sink;
+    private final long deadline;
+    private final AtomicInteger matches = new AtomicInteger();
+    private final AtomicLong scannedBytes = new AtomicLong();
+    private final AtomicReference<SearchStopReason> stopReason = new AtomicReference<>();
+
+    Search(
+        MessageSearchRequest request,
+        Predicate<byte[]> matcher,
+        RecordDecoder decoder,
+        Consumer<BrowsedRecord> sink) {
+      this.request = request;
+      this.matcher = matcher;
+      this.decoder = decoder;
+      this.sink = sink;
+      this.deadline = System.currentTimeMillis() + request.getTimeoutMs();
+    }
+
+    boolean isRunning() {
+      if (stopReason.get() != null) {
+        return false;
+      }
+      if (System.currentTimeMillis() >= deadline) {
+        stop(SearchStopReason.TIME_BUDGET);
+        return false;
+      }
+      return true;
+    }
+
+    void stop(SearchStopReason reason) {
+      stopReason.compareAndSet(null, reason);
+    }
+
+    /** Charges the record to the byte budget, false if it does not fit anymore. */
+    boolean charge(int size) {
+      if (scannedBytes.addAndGet(size) > request.getMaxBytes()) {
+        scannedBytes.addAndGet(-size);
+        stop(SearchStopReason.BYTE_BUDGET);
+        return false;
+      }
+      return true;
+    }
+
+    boolean inTimeRange(long timestamp) {
+      return (request.getFromTimestamp() == null || timestamp >= request.getFromTimestamp())
+          && (request.getToTimestamp() == null || timestamp < request.getToTimestamp());
+    }
+
+    /** Emits the match unless enough were found already, false if it was not emitted. */
+    boolean emit(BrowsedRecord record) {
+      int found = matches.incrementAndGet();
+      if (found > request.getMaxMatches()) {
+        matches.decrementAndGet();
+        return false;
+      }
+      try {
+        sink.accept(record);
+      } catch (RuntimeException e) {
+        // The client went away
+        matches.decrementAndGet();
+        stop(SearchStopReason.CANCELLED);
+        return false;
+      }
+      if (found == request.getMaxMatches()) {
+        stop(SearchStopReason.MAX_MATCHES);
+      }
+      return true;
+    }
+  }
+
+  @PostConstruct
+  public void start() {
+    executor = Executors.newFixedThreadPool(threads);
+  }
+
+  @PreDestroy
+  public void stop() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * Validates the request before {@link #search}, so that a streamed response can still be
+   * failed with an error status. Returns the partitions to scan.
+   */
+  public List<Integer> checkRequest(String topic, MessageSearchRequest request) {
+    TopicState state = messageBrowseService.checkTopic(topic);
+    if (request.getMaxMatches() <= 0 || request.getMaxMatches() > maxMatches) {
+      throw new ApiException("maxMatches must be between 1 and " + maxMatches);
+    }
+    if (request.getMaxBytes() <= 0 || request.getMaxBytes() > maxBytes) {
+      throw new ApiException("maxBytes must be between 1 and " + maxBytes);
+    }
+    if (request.getTimeoutMs() <= 0 || request.getTimeoutMs() > maxTimeMs) {
+      throw new ApiException("timeoutMs must be between 1 and " + maxTimeMs);
+    }
+    if (request.getParallelism() <= 0) {
+      throw new ApiException("parallelism must be positive");
+    }
+    if ((request.getFromTimestamp() != null && request.getFromTimestamp() < 0)
+        || (request.getToTimestamp() != null && request.getToTimestamp() < 0)) {
+      throw new ApiException("Timestamps must be milliseconds since the epoch");
+    }
+    compileMatcher(request);
+    recordDecoder(request);
+
+    List<Integer> partitions = new ArrayList<>();
+    if (request.getPartitions() == null || request.getPartitions().isEmpty()) {
+      for (int partition = 0; partition < state.getPartitionCount(); partition++) {
+        partitions.add(partition);
+      }
+    } else {
+      for (int partition : request.getPartitions()) {
+        if (partition < 0 || partition >= state.getPartitionCount()) {
+          throw new ApiException(
+              "Partition " + partition + " of topic " + topic + " does not exist");
+        }
+        partitions.add(partition);
+      }
+    }
+    return partitions;
+  }
+
+  public MessageSearchResult search(
+      String topic, MessageSearchRequest request, Consumer<BrowsedRecord> sink) {
+    long start = System.currentTimeMillis();
+    List<Integer> partitions = checkRequest(topic, request);
+    Search search =
+        new Search(request, compileMatcher(request), recordDecoder(request), sink);
+
+    List<PartitionScan> scans = new ArrayList<>();
+    for (int partition : partitions) {
+      // Partitions not reached before the search stopped continue from where they were to start
+      PartitionScan scan = new PartitionScan();
+      scan.setPartition(partition);
+      scan.setStartOffset(requestedStart(request, partition));
+      scan.setNextOffset(scan.getStartOffset());
+      scans.add(scan);
+    }
+    AtomicInteger nextScan = new AtomicInteger();
+    int tasks = Math.min(Math.min(request.getParallelism(), threads), scans.size());
+    List<Future<?>> futures = new ArrayList<>();
+    for (int i = 0; i < tasks; i++) {
+      futures.add(
+          executor.submit(
+              () -> {
+                for (int next = nextScan.getAndIncrement();
+                    next < scans.size() && search.isRunning();
+                    next = nextScan.getAndIncrement()) {
+                  scan(topic, scans.get(next), search);
+                }
+              }));
+    }
+    try {
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      search.stop(SearchStopReason.CANCELLED);
+      futures.forEach(future -> future.cancel(true));
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      search.stop(SearchStopReason.CANCELLED);
+      futures.forEach(future -> future.cancel(true));
+      throw new ApiException("Search of topic " + topic + " failed: " + e.getCause().getMessage());
+    }
+    search.stop(SearchStopReason.COMPLETED);
+
+    MessageSearchResult result = new MessageSearchResult();
+    result.setTopic(topic);
+    result.setMatches(search.matches.get());
+    result.setScannedRecords(scans.stream().mapToLong(PartitionScan::getScannedRecords).sum());
+    result.setScannedBytes(search.scannedBytes.get());
+    result.setElapsedMs(System.currentTimeMillis() - start);
+    result.setStopReason(search.stopReason.get());
+    result.setPartitions(scans);
+    return result;
+  }
+
+  private void scan(String topic, PartitionScan scan, Search search) {
+    MessageSearchRequest request = search.request;
+    int partition = scan.getPartition();
+    long startOffset = scan.getStartOffset();
+    if (request.getFromTimestamp() != null && !hasStartOffset(request, partition)) {
+      startOffset =
+          Math.max(
+              startOffset,
+              timestampOffsetService.resolve(topic, partition, request.getFromTimestamp()));
+    }
+    long stopOffset = request.getToOffset() == null ? Long.MAX_VALUE : request.getToOffset();
+    if (request.getToTimestamp() != null && startOffset < stopOffset && search.isRunning()) {
+      stopOffset =
+          Math.min(
+              stopOffset,
+              timestampOffsetService.resolve(topic, partition, request.getToTimestamp()));
+    }
+    long fromOffset = startOffset;
+    long toOffset = stopOffset;
+    TopicPartition topicPartition = new TopicPartition(topic, partition);
+    kafkaUtils
+        .getBrowseConsumerPool()
+        .execute(
+            topicPartition,
+            consumer -> {
+              scan(consumer, scan, search, fromOffset, toOffset);
+              return null;
+            });
+  }
+
+  private void scan(
+      BrowseConsumer consumer, PartitionScan scan, Search search, long fromOffset, long toOffset) {
+    MessageSearchRequest request = search.request;
+    long beginningOffset = consumer.beginningOffset();
+    long endOffset = consumer.endOffset();
+    long startOffset = Math.max(fromOffset, beginningOffset);
+    long stopOffset = Math.min(toOffset, endOffset);
+    scan.setStartOffset(startOffset);
+    scan.setEndOffset(stopOffset);
+
+    long nextOffset = startOffset;
+    long scanned = 0;
+    int matches = 0;
+    read:
+    while (nextOffset < stopOffset && search.isRunning()) {
+      long remainingMs = search.deadline - System.currentTimeMillis();
+      long timeoutMs = Math.max(1, Math.min(pollTimeoutMs, remainingMs));
+      List<ConsumerRecord<byte[], byte[]>> fetched = consumer.fetch(nextOffset, timeoutMs);
+      if (fetched.isEmpty()) {
+        break;
+      }
+      for (ConsumerRecord<byte[], byte[]> record : fetched) {
+        if (record.offset() >= stopOffset) {
+          nextOffset = stopOffset;
+          break read;
+        }
+        int size = MessageBrowseService.sizeOf(record);
+        if (!search.charge(size)) {
+          break read;
+        }
+        boolean matched =
+            search.inTimeRange(record.timestamp())
+                && search.matcher.test(request.isSearchKey() ? record.key() : record.value());
+        if (matched) {
+          if (!search.emit(search.decoder.decode(record, size))) {
+            // Not emitted, a continued search starts at this record again
+            break read;
+          }
+          matches++;
+        }
+        scanned++;
+        nextOffset = record.offset() + 1;
+        if (matched && !search.isRunning()) {
+          break read;
+        }
+      }
+    }
+    scan.setNextOffset(nextOffset);
+    scan.setScannedRecords(scanned);
+    scan.setMatches(matches);
+    scan.setDone(nextOffset >= stopOffset);
+  }
+
+  private static long requestedStart(MessageSearchRequest request, int partition) {
+    Long from =
+        hasStartOffset(request, partition)
+            ? request.getStartOffsets().get(partition)
+            : request.getFromOffset();
+    return from == null ? 0 : from;
+  }
+
+  /** Whether a continued search gave the offset to start the partition at. */
+  private static boolean hasStartOffset(MessageSearchRequest request, int partition) {
+    return request.getStartOffsets() != null && request.getStartOffsets().containsKey(partition);
+  }
+
+  private RecordDecoder recordDecoder(MessageSearchRequest request) {
+    return decoderRegistry.recordDecoder(
+        request.getKeyDecoder(), request.getValueDecoder(), request.getAvroSchema());
+  }
+
+  private Predicate<byte[]> compileMatcher(MessageSearchRequest request) {
+    if (request.getMatchType() == null) {
+      throw new ApiException("matchType must be one of SUBSTRING, REGEX or JSON_PATH");
+    }
+    switch (request.getMatchType()) {
+      case SUBSTRING:
+        return BytesMatchers.substring(request.getPattern());
+      case REGEX:
+        return BytesMatchers.regex(request.getPattern());
+      default:
+        return BytesMatchers.jsonPath(objectMapper, request.getPath(), request.getPattern());
+    }
+  }
+}
@@ -0,0 +1,484 @@
+package org.gnuhpc.bigdata.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.ApiException;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.gnuhpc.bigdata.constant.MirrorCheckRange;
+import org.gnuhpc.bigdata.constant.MirrorPartitioning;
+import org.gnuhpc.bigdata.constant.ReassignmentState;
+import org.gnuhpc.bigdata.model.MirrorCheckJob;
+import org.gnuhpc.bigdata.model.MirrorCheckRequest;
+import org.gnuhpc.bigdata.model.MirrorRangeDiff;
+import org.gnuhpc.bigdata.model.RecordDigest;
+import org.gnuhpc.bigdata.model.TopicState;
+import org.gnuhpc.bigdata.utils.BrowseConsumer;
+import org.gnuhpc.bigdata.utils.KafkaUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Verifies that a mirrored topic holds the same records as its source, e.g. after a MirrorMaker
+ * migration, where the offsets of the two topics differ and the order of records may too.
+ *
+ * <p>Both topics are compared by {@link RecordDigest}s, which do not depend on the order of the
+ * records and merge over partitions, so nothing but the digests is held in memory. The ranges to
+ * compare are checked level by level: every range is read once per side and digested as its two
+ * halves, and the halves that differ are the ranges of the next level, until they are no wider
+ * than the minimum range. Timestamp ranges are read from the offsets the {@link
+ * TimestampOffsetService} resolves, and records are put into halves by their own timestamp, so
+ * both topics must carry the create times of the source. Offset ranges are only for copies that
+ * kept the offsets of the source, see {@link MirrorCheckRequest}.
+ *
+ * <p>All reads of a level run in parallel on the pooled browse consumers, a partition range in
+ * chunks of {@code kafka.mirror-check.chunk-records} so that a pooled consumer is not held for the
+ * whole range.
+ */
+@Log4j
+@Service
+public class MirrorCheckService {
+  @Autowired private KafkaUtils kafkaUtils;
+
+  @Autowired private MessageBrowseService messageBrowseService;
+
+  @Autowired private TimestampOffsetService timestampOffsetService;
+
+  @Value("${kafka.mirror-check.threads:8}")
+  private int threads;
+
+  @Value("${kafka.mirror-check.max-running:2}")
+  private int maxRunning;
+
+  @Value("${kafka.mirror-check.max-jobs:20}")
+  private int maxJobs;
+
+  @Value("${kafka.mirror-check.chunk-records:50000}")
+  private long chunkRecords;
+
+  @Value("${kafka.mirror-check.min-range-ms:60000}")
+  private long minRangeMs;
+
+  @Value("${kafka.mirror-check.min-range-offsets:1000}")
+  private long minRangeOffsets;
+
+  @Value("${kafka.browse.poll-timeout-ms:3000}")
+  private long pollTimeoutMs;
+
+  private ExecutorService scanners;
+  private ExecutorService runners;
+  /** The jobs by id, oldest first. */
+  private final Map<String, Check> checks = new LinkedHashMap<>();
+
+  private static class Check {
+    final MirrorCheckJob job;
+    final AtomicLong scanned = new AtomicLong();
+    volatile boolean cancelled;
+    Future<?> future;
+
+    Check(MirrorCheckJob job) {
+      this.job = job;
+    }
+  }
+
+  /** A range [from, to) of one partition, or of all partitions if partition is null. */
+  private static class Range {
+    final Integer partition;
+    final long from;
+    final long to;
+    /** The digests that differed when this range was a half of the level above. */
+    RecordDigest source;
+    RecordDigest target;
+
+    Range(Integer partition, long from, long to) {
+      this.partition = partition;
+      this.from = from;
+      this.to = to;
+    }
+
+    long mid() {
+      return from + (to - from) / 2;
+    }
+  }
+
+  @PostConstruct
+  public void start() {
+    scanners = Executors.newFixedThreadPool(threads);
+    runners = Executors.newCachedThreadPool();
+  }
+
+  @PreDestroy
+  public void stop() {
+    runners.shutdownNow();
+    scanners.shutdownNow();
+  }
+
+  public synchronized MirrorCheckJob submit(MirrorCheckRequest request) {
+    if (request.getSourceTopic() == null || request.getTargetTopic() == null) {
+      throw new ApiException("Both sourceTopic and targetTopic must be given");
+    }
+    if (request.getSourceTopic().equals(request.getTargetTopic())) {
+      throw new ApiException("The source and the target topic must differ");
+    }
+    TopicState source = messageBrowseService.checkTopic(request.getSourceTopic());
+    TopicState target = messageBrowseService.checkTopic(request.getTargetTopic());
+    if (request.getPartitioning() == MirrorPartitioning.ALIGNED
+        && source.getPartitionCount() != target.getPartitionCount()) {
+      throw new ApiException(
+          "ALIGNED partitioning needs topics with as many partitions, use TOPIC instead");
+    }
+    if (request.getRange() == MirrorCheckRange.OFFSET && !request.isOffsetsPreserved()) {
+      throw new ApiException(
+          "OFFSET ranges compare the same offsets in both topics, which mirrors do not keep. Use "
+              + "TIMESTAMP ranges, or set offsetsPreserved if the target is an offset-exact copy");
+    }
+    if (request.getRange() == MirrorCheckRange.OFFSET
+        && request.getPartitioning() == MirrorPartitioning.TOPIC) {
+      throw new ApiException("Offset ranges can only be compared with ALIGNED partitioning");
+    }
+    if (request.getFrom() != null && request.getFrom() < 0
+        || request.getTo() != null && request.getTo() < 0) {
+      throw new ApiException("from and to must not be negative");
+    }
+    if (request.getFrom() != null && request.getTo() != null
+        && request.getFrom() > request.getTo()) {
+      throw new ApiException("from must not be after to");
+    }
+    if (request.getMinRange() != null && request.getMinRange() < 1) {
+      throw new ApiException("minRange must be positive");
+    }
+    if (request.getMaxMismatches() < 1) {
+      throw new ApiException("maxMismatches must be positive");
+    }
+    long running =
+        checks.values().stream()
+            .filter(check -> check.job.getState() == ReassignmentState.RUNNING)
+            .count();
+    if (running >= maxRunning) {
+      throw new ApiException(running + " mirror checks are running already, the limit");
+    }
+
+    MirrorCheckJob job = new MirrorCheckJob();
+    job.setId(UUID.randomUUID().toString());
+    job.setState(ReassignmentState.RUNNING);
+    job.setRequest(request);
+    job.setStartTime(System.currentTimeMillis());
+    Check check = new Check(job);
+    checks.put(job.getId(), check);
+    evictFinished();
+    check.future = runners.submit(() -> run(check, source, target));
+    log.info("Mirror check " + job.getId() + " of " + request.getSourceTopic() + " and "
+        + request.getTargetTopic() + " started");
+    return job;
+  }
+
+  public synchronized MirrorCheckJob getJob(String id) {
+    Check check = checks.get(id);
+    if (check == null) {
+      throw new ApiException("Mirror check " + id + " does not exist");
+    }
+    check.job.setScannedRecords(check.scanned.get());
+    return check.job;
+  }
+
+  public synchronized List<MirrorCheckJob> getJobs() {
+    return checks.keySet().stream().map(this::getJob).collect(Collectors.toList());
+  }
+
+  public synchronized MirrorCheckJob cancel(String id) {
+    MirrorCheckJob job = getJob(id);
+    if (job.getState() != ReassignmentState.RUNNING) {
+      throw new ApiException("Mirror check " + id + " is not running");
+    }
+    Check check = checks.get(id);
+    check.cancelled = true;
+    check.future.cancel(true);
+    finish(check, ReassignmentState.CANCELLED, "Cancelled");
+    return job;
+  }
+
+  private void evictFinished() {
+    Iterator<Check> iterator = checks.values().iterator();
+    while (checks.size() > maxJobs && iterator.hasNext()) {
+      if (iterator.next().job.getState() != ReassignmentState.RUNNING) {
+        iterator.remove();
+      }
+    }
+  }
+
+  private void run(Check check, TopicState source, TopicState target) {
+    MirrorCheckRequest request = check.job.getRequest();
+    long minRange =
+        request.getMinRange() != null
+            ? request.getMinRange()
+            : request.getRange() == MirrorCheckRange.TIMESTAMP ? minRangeMs : minRangeOffsets;
+    try {
+      List<Range> level = ranges(check, source, target);
+      for (int depth = 0; !level.isEmpty(); depth++) {
+        List<RecordDigest[]> sourceDigests = new ArrayList<>();
+        List<RecordDigest[]> targetDigests = new ArrayList<>();
+        digest(check, source, target, level, sourceDigests, targetDigests);
+        List<Range> next = new ArrayList<>();
+        for (int i = 0; i < level.size(); i++) {
+          Range range = level.get(i);
+          RecordDigest[] sourceHalves = sourceDigests.get(i);
+          RecordDigest[] targetHalves = targetDigests.get(i);
+          if (depth == 0) {
+            check.job.getPartitions().add(
+                new MirrorRangeDiff(range.partition, range.from, range.to,
+                    merge(sourceHalves), merge(targetHalves)));
+          }
+          Range[] halves = {
+            new Range(range.partition, range.from, range.mid()),
+            new Range(range.partition, range.mid(), range.to)
+          };
+          for (int half = 0; half < 2; half++) {
+            if (sourceHalves[half].equals(targetHalves[half])) {
+              continue;
+            }
+            Range diff = halves[half];
+            diff.source = sourceHalves[half];
+            diff.target = targetHalves[half];
+            if (diff.to - diff.from <= Math.max(minRange, 1)) {
+              addMismatch(check, diff);
+            } else {
+              next.add(diff);
+            }
+          }
+        }
+        int capacity = request.getMaxMismatches() - check.job.getMismatches().size();
+        if (next.size() > capacity) {
+          // Every range of the next level holds a mismatch, there is no room to narrow them all
+          for (Range range : next) {
+            addMismatch(check, range);
+          }
+          next.clear();
+        }
+        log.debug("Mirror check " + check.job.getId() + " level " + depth + " compared "
+            + level.size() + " ranges, " + next.size() + " differ");
+        level = next;
+      }
+      finish(check, ReassignmentState.COMPLETED, check.job.getMismatches().isEmpty()
+          ? "The topics match"
+          : check.job.getMismatches().size() + " ranges differ"
+              + (check.job.isTruncated() ? ", more were not narrowed" : ""));
+      log.info("Mirror check " + check.job.getId() + " completed: " + check.job.getMsg());
+    } catch (InterruptedException | CancellationException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      if (check.cancelled) {
+        return;
+      }
+      log.error("Mirror check " + check.job.getId() + " failed", e.getCause());
+      finish(check, ReassignmentState.FAILED, e.getCause().getMessage());
+    } catch (Exception e) {
+      log.error("Mirror check " + check.job.getId() + " failed", e);
+      finish(check, ReassignmentState.FAILED, e.getMessage());
+    }
+  }
+
+  private synchronized void addMismatch(Check check, Range range) {
+    MirrorCheckJob job = check.job;
+    if (job.getMismatches().size() >= job.getRequest().getMaxMismatches()) {
+      job.setTruncated(true);
+      return;
+    }
+    job.getMismatches().add(
+        new MirrorRangeDiff(range.partition, range.from, range.to, range.source, range.target));
+  }
+
+  private synchronized void finish(Check check, ReassignmentState state, String msg) {
+    if (check.job.getState() == ReassignmentState.RUNNING) {
+      check.job.setState(state);
+      check.job.setMsg(msg);
+      check.job.setEndTime(System.currentTimeMillis());
+      check.job.setScannedRecords(check.scanned.get());
+    }
+  }
+
+  /** The ranges of the first level, one per compared partition. */
+  private List<Range> ranges(Check check, TopicState source, TopicState target)
+      throws InterruptedException, ExecutionException {
+    MirrorCheckRequest request = check.job.getRequest();
+    List<Range> ranges = new ArrayList<>();
+    if (request.getRange() == MirrorCheckRange.TIMESTAMP) {
+      long from = request.getFrom() != null ? request.getFrom() : 0;
+      long to = request.getTo() != null ? request.getTo() : check.job.getStartTime();
+      if (request.getPartitioning() == MirrorPartitioning.TOPIC) {
+        ranges.add(new Range(null, from, to));
+      } else {
+        for (int partition = 0; partition < source.getPartitionCount(); partition++) {
+          ranges.add(new Range(partition, from, to));
+        }
+      }
+      return ranges;
+    }
+    // The offsets both partitions still have, unless given
+    List<Future<long[]>> sourceBounds = bounds(source);
+    List<Future<long[]>> targetBounds = bounds(target);
+    for (int partition = 0; partition < source.getPartitionCount(); partition++) {
+      long[] sourceRange = sourceBounds.get(partition).get();
+      long[] targetRange = targetBounds.get(partition).get();
+      long from =
+          request.getFrom() != null
+              ? request.getFrom()
+              : Math.max(sourceRange[0], targetRange[0]);
+      long to =
+          request.getTo() != null ? request.getTo() : Math.min(sourceRange[1], targetRange[1]);
+      ranges.add(new Range(partition, from, Math.max(from, to)));
+    }
+    return ranges;
+  }
+
+  private List<Future<long[]>> bounds(TopicState state) {
+    List<Future<long[]>> futures = new ArrayList<>();
+    for (int partition = 0; partition < state.getPartitionCount(); partition++) {
+      TopicPartition topicPartition = new TopicPartition(state.getTopic(), partition);
+      futures.add(scanners.submit(() -> kafkaUtils.getBrowseConsumerPool().execute(
+          topicPartition,
+          consumer -> new long[] {consumer.beginningOffset(), consumer.endOffset()})));
+    }
+    return futures;
+  }
+
+  /** Digests both halves of every range on both sides, all partitions in parallel. */
+  private void digest(
+      Check check,
+      TopicState source,
+      TopicState target,
+      List<Range> ranges,
+      List<RecordDigest[]> sourceDigests,
+      List<RecordDigest[]> targetDigests)
+      throws InterruptedException, ExecutionException {
+    List<List<Future<RecordDigest[]>>> sourceFutures = new ArrayList<>();
+    List<List<Future<RecordDigest[]>>> targetFutures = new ArrayList<>();
+    for (Range range : ranges) {
+      sourceFutures.add(scanAll(check, source, range));
+      targetFutures.add(scanAll(check, target, range));
+    }
+    try {
+      for (int i = 0; i < ranges.size(); i++) {
+        sourceDigests.add(mergeHalves(sourceFutures.get(i)));
+        targetDigests.add(mergeHalves(targetFutures.get(i)));
+      }
+    } finally {
+      sourceFutures.forEach(futures -> futures.forEach(future -> future.cancel(true)));
+      targetFutures.forEach(futures -> futures.forEach(future -> future.cancel(true)));
+    }
+  }
+
+  private List<Future<RecordDigest[]>> scanAll(Check check, TopicState state, Range range) {
+    List<Future<RecordDigest[]>> futures = new ArrayList<>();
+    for (int partition = 0; partition < state.getPartitionCount(); partition++) {
+      if (range.partition == null || range.partition == partition) {
+        TopicPartition topicPartition = new TopicPartition(state.getTopic(), partition);
+        futures.add(scanners.submit(() -> scan(check, topicPartition, range)));
+      }
+    }
+    return futures;
+  }
+
+  /** The digests of both halves of the range in one partition. */
+  private RecordDigest[] scan(Check check, TopicPartition topicPartition, Range range) {
+    boolean byTimestamp = check.job.getRequest().getRange() == MirrorCheckRange.TIMESTAMP;
+    RecordDigest[] halves = {new RecordDigest(), new RecordDigest()};
+    long startOffset;
+    long endOffset;
+    if (byTimestamp) {
+      startOffset =
+          timestampOffsetService.resolve(
+              topicPartition.topic(), topicPartition.partition(), range.from);
+      endOffset =
+          timestampOffsetService.resolve(
+              topicPartition.topic(), topicPartition.partition(), range.to);
+    } else {
+      startOffset = range.from;
+      endOffset = range.to;
+    }
+    long offset = startOffset;
+    while (offset < endOffset) {
+      if (check.cancelled) {
+        throw new CancellationException();
+      }
+      long chunkStart = offset;
+      long chunkEnd = Math.min(endOffset, offset + chunkRecords);
+      offset =
+          kafkaUtils
+              .getBrowseConsumerPool()
+              .execute(
+                  topicPartition,
+                  consumer ->
+                      scanChunk(check, consumer, chunkStart, chunkEnd, range, byTimestamp, halves));
+    }
+    return halves;
+  }
+
+  /** Adds the records of [startOffset, endOffset) to the halves, returns endOffset. */
+  private long scanChunk(
+      Check check,
+      BrowseConsumer consumer,
+      long startOffset,
+      long endOffset,
+      Range range,
+      boolean byTimestamp,
+      RecordDigest[] halves) {
+    long offset = Math.max(startOffset, consumer.beginningOffset());
+    long mid = range.mid();
+    while (offset < endOffset) {
+      List<ConsumerRecord<byte[], byte[]>> batch = consumer.fetch(offset, pollTimeoutMs);
+      if (batch.isEmpty()) {
+        throw new TimeoutException("No records of " + consumer.getTopicPartition()
+            + " at offset " + offset + " within " + pollTimeoutMs + " ms");
+      }
+      for (ConsumerRecord<byte[], byte[]> record : batch) {
+        if (record.offset() >= endOffset) {
+          // Compacted away up to the end of the chunk
+          return endOffset;
+        }
+        offset = record.offset() + 1;
+        long position = byTimestamp ? record.timestamp() : record.offset();
+        if (position < range.from || position >= range.to) {
+          continue;
+        }
+        halves[position < mid ? 0 : 1].add(record.key(), record.value());
+        check.scanned.incrementAndGet();
+      }
+    }
+    return endOffset;
+  }
+
+  private static RecordDigest[] mergeHalves(Collection<Future<RecordDigest[]>> futures)
+      throws InterruptedException, ExecutionException {
+    RecordDigest[] halves = {new RecordDigest(), new RecordDigest()};
+    for (Future<RecordDigest[]> future : futures) {
+      RecordDigest[] digests = future.get();
+      halves[0].merge(digests[0]);
+      halves[1].merge(digests[1]);
+    }
+    return halves;
+  }
+
+  private static RecordDigest merge(RecordDigest[] halves) {
+    RecordDigest digest = new RecordDigest();
+    digest.merge(halves[0]);
+    digest.merge(halves[1]);
+    return digest;
+  }
+}
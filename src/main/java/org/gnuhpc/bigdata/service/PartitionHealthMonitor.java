@@ -0,0 +1,386 @@
+package org.gnuhpc.bigdata.service;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j;
+import org.apache.kafka.common.TopicPartition;
+import org.gnuhpc.bigdata.componet.MetadataCache;
+import org.gnuhpc.bigdata.constant.PartitionHealthEventType;
+import org.gnuhpc.bigdata.exception.ServiceNotAvailableException;
+import org.gnuhpc.bigdata.model.PartitionHealth;
+import org.gnuhpc.bigdata.model.PartitionHealthEvent;
+import org.gnuhpc.bigdata.model.PartitionHealthReport;
+import org.gnuhpc.bigdata.model.TopicState;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Keeps the under-replicated, under-min-ISR and offline partition sets of the whole cluster up to
+ * date from the partition state watches of the {@link MetadataCache}, instead of describing every
+ * topic on request.
+ *
+ * <p>Only the partitions named by a change notification are re-evaluated. ISR shrinks and expands
+ * and partitions entering or leaving one of the sets are recorded in a bounded event log, which is
+ * also pushed to the server-sent event subscribers from a separate thread.
+ */
+@Log4j
+@Service
+public class PartitionHealthMonitor implements MetadataCache.TopicChangeListener {
+  private static final String MIN_ISR_CONFIG = "min.insync.replicas";
+  private static final int UNDER_REPLICATED = 1;
+  private static final int UNDER_MIN_ISR = 2;
+  private static final int OFFLINE = 4;
+  private static final Comparator<PartitionHealth> PARTITION_ORDER =
+      Comparator.comparing(PartitionHealth::getTopic).thenComparing(PartitionHealth::getPartition);
+
+  @Autowired
+  private MetadataCache metadataCache;
+
+  /** The min.insync.replicas of the brokers, used for topics without an override. */
+  @Value("${kafka.min-insync-replicas:1}")
+  private int defaultMinIsr;
+
+  @Value("${kafka.partition-health.event-log-size:10000}")
+  private int eventLogSize;
+
+  @Value("${kafka.partition-health.sse-timeout-ms:1800000}")
+  private long sseTimeoutMs;
+
+  private final Map<String, PartitionStatus[]> statuses = new HashMap<>();
+  private final Set<TopicPartition> underReplicated = new HashSet<>();
+  private final Set<TopicPartition> underMinIsr = new HashSet<>();
+  private final Set<TopicPartition> offline = new HashSet<>();
+  private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+  private ArrayDeque<PartitionHealthEvent> events;
+  private ThreadPoolExecutor sseExecutor;
+  private long lastSeq;
+  private boolean loaded;
+
+  /** Last seen state of one partition. */
+  private static class PartitionStatus {
+    private int leader;
+    private int[] replicas;
+    private int[] isr;
+    private int minIsr;
+    private int flags;
+    private final long[] since = new long[3];
+  }
+
+  @PostConstruct
+  public void start() {
+    events = new ArrayDeque<>(Math.min(eventLogSize, 1024));
+    // Slow subscribers must not hold up the event log: when the queue is full the oldest pushes
+    // are dropped and the subscriber catches up from the log with Last-Event-ID on reconnect.
+    sseExecutor =
+        new ThreadPoolExecutor(
+            1,
+            1,
+            0,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(eventLogSize),
+            new ThreadPoolExecutor.DiscardOldestPolicy());
+    metadataCache.addListener(this);
+    if (metadataCache.isInitialized()) {
+      topicChanged(null, MetadataCache.ALL_PARTITIONS);
+    }
+  }
+
+  @PreDestroy
+  public void stop() {
+    sseExecutor.shutdownNow();
+    emitters.forEach(SseEmitter::complete);
+  }
+
+  /** Runs on the ZooKeeper event thread. */
+  @Override
+  public synchronized void topicChanged(String topic, int partition) {
+    long now = System.currentTimeMillis();
+    if (topic == null) {
+      Map<String, TopicState> topicStates = metadataCache.getTopicStates();
+      new ArrayList<>(statuses.keySet())
+          .stream()
+          .filter(t -> !topicStates.containsKey(t))
+          .forEach(this::removeTopic);
+      topicStates.values().forEach(state -> updateTopic(state, now));
+      loaded = true;
+      return;
+    }
+
+    TopicState state = metadataCache.getTopicState(topic);
+    PartitionStatus[] topicStatuses = statuses.get(topic);
+    if (state == null) {
+      removeTopic(topic);
+    } else if (partition == MetadataCache.ALL_PARTITIONS
+        || topicStatuses == null
+        || topicStatuses.length != state.getPartitionCount()) {
+      updateTopic(state, now);
+    } else {
+      PartitionStatus status = topicStatuses[partition];
+      int minIsr = status == null ? minIsr(topic) : status.minIsr;
+      updatePartition(state, topicStatuses, partition, minIsr, now);
+    }
+  }
+
+  public PartitionHealthReport getReport(boolean details) {
+    if (!metadataCache.isInitialized()) {
+      throw new ServiceNotAvailableException(
+          "zookeeper", "loading", "Topic metadata is still being loaded from zookeeper");
+    }
+    PartitionHealthReport report = new PartitionHealthReport();
+    synchronized (this) {
+      report.setTopicCount(statuses.size());
+      report.setPartitionCount(statuses.values().stream().mapToInt(s -> s.length).sum());
+      report.setUnderReplicatedCount(underReplicated.size());
+      report.setUnderMinIsrCount(underMinIsr.size());
+      report.setOfflineCount(offline.size());
+      report.setLastEventSeq(lastSeq);
+      if (details) {
+        report.setUnderReplicated(toHealth(underReplicated, 0));
+        report.setUnderMinIsr(toHealth(underMinIsr, 1));
+        report.setOffline(toHealth(offline, 2));
+      }
+    }
+    return report;
+  }
+
+  /** Events with a sequence number above since, oldest first. */
+  public synchronized List<PartitionHealthEvent> getEvents(long since, int limit) {
+    return events
+        .stream()
+        .filter(event -> event.getSeq() > since)
+        .limit(limit)
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Subscribes to the health events. With a lastEventId the events after it that are still in the
+   * log are sent first.
+   */
+  public SseEmitter subscribe(Long lastEventId) {
+    SseEmitter emitter = new SseEmitter(sseTimeoutMs);
+    emitter.onCompletion(() -> emitters.remove(emitter));
+    emitter.onTimeout(() -> emitters.remove(emitter));
+    synchronized (this) {
+      // Queued before any later event, so the replay and the live events stay in order
+      if (lastEventId != null) {
+        List<PartitionHealthEvent> missed = getEvents(lastEventId, eventLogSize);
+        sseExecutor.execute(() -> missed.forEach(event -> send(emitter, event)));
+      }
+      emitters.add(emitter);
+    }
+    return emitter;
+  }
+
+  private void updateTopic(TopicState state, long now) {
+    String topic = state.getTopic();
+    PartitionStatus[] topicStatuses = statuses.get(topic);
+    if (topicStatuses == null || topicStatuses.length != state.getPartitionCount()) {
+      topicStatuses =
+          topicStatuses == null
+              ? new PartitionStatus[state.getPartitionCount()]
+              : Arrays.copyOf(topicStatuses, state.getPartitionCount());
+      statuses.put(topic, topicStatuses);
+    }
+    int minIsr = minIsr(topic);
+    for (int partition = 0; partition < topicStatuses.length; partition++) {
+      updatePartition(state, topicStatuses, partition, minIsr, now);
+    }
+  }
+
+  private void updatePartition(
+      TopicState state, PartitionStatus[] topicStatuses, int partition, int minIsr, long now) {
+    int leader = state.getLeaders()[partition];
+    int[] isr = state.getIsr()[partition];
+    if (leader == TopicState.NO_LEADER && isr.length == 0) {
+      // The state node of a new partition is not written yet, kafka keeps the last ISR member
+      // of a partition that went offline.
+      return;
+    }
+    PartitionStatus status = topicStatuses[partition];
+    if (status == null) {
+      status = new PartitionStatus();
+      topicStatuses[partition] = status;
+    } else if (loaded) {
+      recordIsrChange(state.getTopic(), partition, leader, status.isr, isr, now);
+    }
+    status.leader = leader;
+    status.replicas = state.getReplicas()[partition];
+    status.isr = isr;
+    status.minIsr = minIsr;
+
+    int flags = 0;
+    if (isr.length < status.replicas.length) {
+      flags |= UNDER_REPLICATED;
+    }
+    if (isr.length < minIsr) {
+      flags |= UNDER_MIN_ISR;
+    }
+    if (leader == TopicState.NO_LEADER) {
+      flags |= OFFLINE;
+    }
+    int changed = flags ^ status.flags;
+    status.flags = flags;
+    if (changed == 0) {
+      return;
+    }
+    TopicPartition topicPartition = new TopicPartition(state.getTopic(), partition);
+    updateSet(status, topicPartition, changed, UNDER_REPLICATED, underReplicated, 0,
+        PartitionHealthEventType.UNDER_REPLICATED, PartitionHealthEventType.FULLY_REPLICATED, now);
+    updateSet(status, topicPartition, changed, UNDER_MIN_ISR, underMinIsr, 1,
+        PartitionHealthEventType.UNDER_MIN_ISR, PartitionHealthEventType.MIN_ISR_RESTORED, now);
+    updateSet(status, topicPartition, changed, OFFLINE, offline, 2,
+        PartitionHealthEventType.OFFLINE, PartitionHealthEventType.ONLINE, now);
+  }
+
+  private void updateSet(
+      PartitionStatus status,
+      TopicPartition topicPartition,
+      int changed,
+      int flag,
+      Set<TopicPartition> set,
+      int sinceIndex,
+      PartitionHealthEventType enterType,
+      PartitionHealthEventType leaveType,
+      long now) {
+    if ((changed & flag) == 0) {
+      return;
+    }
+    boolean entered = (status.flags & flag) != 0;
+    if (entered) {
+      set.add(topicPartition);
+      status.since[sinceIndex] = now;
+    } else {
+      set.remove(topicPartition);
+    }
+    if (loaded) {
+      addEvent(entered ? enterType : leaveType, topicPartition.topic(),
+          topicPartition.partition(), status.leader, status.isr, status.isr, now);
+    }
+  }
+
+  private void recordIsrChange(
+      String topic, int partition, int leader, int[] previousIsr, int[] isr, long now) {
+    if (!containsAll(isr, previousIsr)) {
+      addEvent(
+          PartitionHealthEventType.ISR_SHRINK, topic, partition, leader, previousIsr, isr, now);
+    }
+    if (!containsAll(previousIsr, isr)) {
+      addEvent(
+          PartitionHealthEventType.ISR_EXPAND, topic, partition, leader, previousIsr, isr, now);
+    }
+  }
+
+  private void removeTopic(String topic) {
+    PartitionStatus[] topicStatuses = statuses.remove(topic);
+    if (topicStatuses == null) {
+      return;
+    }
+    for (int partition = 0; partition < topicStatuses.length; partition++) {
+      TopicPartition topicPartition = new TopicPartition(topic, partition);
+      underReplicated.remove(topicPartition);
+      underMinIsr.remove(topicPartition);
+      offline.remove(topicPartition);
+    }
+  }
+
+  private void addEvent(
+      PartitionHealthEventType type,
+      String topic,
+      int partition,
+      int leader,
+      int[] previousIsr,
+      int[] isr,
+      long now) {
+    PartitionHealthEvent event =
+        new PartitionHealthEvent(
+            ++lastSeq, now, type, topic, partition, leader, toList(previousIsr), toList(isr));
+    if (events.size() >= eventLogSize) {
+      events.pollFirst();
+    }
+    events.addLast(event);
+    if (!emitters.isEmpty()) {
+      sseExecutor.execute(() -> emitters.forEach(emitter -> send(emitter, event)));
+    }
+  }
+
+  private void send(SseEmitter emitter, PartitionHealthEvent event) {
+    try {
+      emitter.send(
+          SseEmitter.event()
+              .id(String.valueOf(event.getSeq()))
+              .name(event.getType().name())
+              .data(event, MediaType.APPLICATION_JSON));
+    } catch (IOException | IllegalStateException e) {
+      log.debug("Dropping partition health subscriber: " + e.getMessage());
+      emitters.remove(emitter);
+    }
+  }
+
+  private int minIsr(String topic) {
+    String override = metadataCache.getTopicConfig(topic).getConfig().get(MIN_ISR_CONFIG);
+    if (override != null) {
+      try {
+        return Integer.parseInt(override);
+      } catch (NumberFormatException e) {
+        log.warn("Invalid " + MIN_ISR_CONFIG + " " + override + " of topic " + topic);
+      }
+    }
+    return defaultMinIsr;
+  }
+
+  private List<PartitionHealth> toHealth(Set<TopicPartition> set, int sinceIndex) {
+    List<PartitionHealth> result = new ArrayList<>(set.size());
+    for (TopicPartition topicPartition : set) {
+      PartitionStatus status = statuses.get(topicPartition.topic())[topicPartition.partition()];
+      result.add(
+          new PartitionHealth(
+              topicPartition.topic(),
+              topicPartition.partition(),
+              status.leader,
+              toList(status.replicas),
+              toList(status.isr),
+              status.minIsr,
+              status.since[sinceIndex]));
+    }
+    result.sort(PARTITION_ORDER);
+    return result;
+  }
+
+  private static boolean containsAll(int[] values, int[] required) {
+    for (int r : required) {
+      boolean found = false;
+      for (int v : values) {
+        if (v == r) {
+          found = true;
+          break;
+        }
+      }
+      if (!found) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static List<Integer> toList(int[] values) {
+    return Arrays.stream(values).boxed().collect(Collectors.toList());
+  }
+}
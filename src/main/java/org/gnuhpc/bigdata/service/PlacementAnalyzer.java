@@ -0,0 +1,328 @@
+package org.gnuhpc.bigdata.service;
+
+import static java.util.stream.Collectors.toList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.log4j.Log4j;
+import org.apache.kafka.common.errors.ApiException;
+import org.gnuhpc.bigdata.componet.MetadataCache;
+import org.gnuhpc.bigdata.exception.ServiceNotAvailableException;
+import org.gnuhpc.bigdata.model.BrokerInfo;
+import org.gnuhpc.bigdata.model.BrokerPlacement;
+import org.gnuhpc.bigdata.model.PlacementSummary;
+import org.gnuhpc.bigdata.model.RackPlacement;
+import org.gnuhpc.bigdata.model.RackViolation;
+import org.gnuhpc.bigdata.model.TopicConcentration;
+import org.gnuhpc.bigdata.model.TopicState;
+import org.gnuhpc.bigdata.utils.IntIntMap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Replica placement analytics of the whole cluster: replicas, leaders and topics per broker,
+ * replicas, leaders and partitions per rack, topics concentrated on few brokers and partitions
+ * that are not spread over racks.
+ *
+ * <p>Everything is counted in one pass over the {@link MetadataCache} with broker ids mapped to
+ * dense indexes by an {@link IntIntMap}, so the counters are plain int arrays and no object is
+ * allocated per replica. The summary is cached until the metadata version changes, or for {@code
+ * kafka.placement.cache-ms} at most since brokers joining or leaving do not change that version.
+ */
+@Log4j
+@Service
+public class PlacementAnalyzer {
+  private static final String NO_RACK = "";
+
+  @Autowired private KafkaAdminService kafkaAdminService;
+
+  @Autowired private MetadataCache metadataCache;
+
+  @Value("${kafka.placement.cache-ms:10000}")
+  private long cacheMs;
+
+  private PlacementSummary cached;
+  private double cachedRatio;
+  private int cachedLimit;
+  private long cachedAt;
+
+  /** Broker counters indexed by dense broker index, grown when an unknown broker id shows up. */
+  private static class Tally {
+    private final IntIntMap indexes = new IntIntMap();
+    private int count;
+    private int[] ids;
+    private int[] racks;
+    private boolean[] alive;
+    private int[] replicas;
+    private int[] leaders;
+    private int[] topics;
+    private int[] topicReplicas;
+    private int[] touched;
+    private final int noRack;
+
+    Tally(int capacity, int noRack) {
+      this.noRack = noRack;
+      ids = new int[Math.max(1, capacity)];
+      racks = new int[ids.length];
+      alive = new boolean[ids.length];
+      replicas = new int[ids.length];
+      leaders = new int[ids.length];
+      topics = new int[ids.length];
+      topicReplicas = new int[ids.length];
+      touched = new int[ids.length];
+    }
+
+    int add(int id, int rack, boolean live) {
+      if (count == ids.length) {
+        int capacity = count * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        racks = Arrays.copyOf(racks, capacity);
+        alive = Arrays.copyOf(alive, capacity);
+        replicas = Arrays.copyOf(replicas, capacity);
+        leaders = Arrays.copyOf(leaders, capacity);
+        topics = Arrays.copyOf(topics, capacity);
+        topicReplicas = Arrays.copyOf(topicReplicas, capacity);
+        touched = Arrays.copyOf(touched, capacity);
+      }
+      ids[count] = id;
+      racks[count] = rack;
+      alive[count] = live;
+      indexes.put(id, count);
+      return count++;
+    }
+
+    int indexOf(int id) {
+      int index = indexes.get(id, -1);
+      return index >= 0 ? index : add(id, noRack, false);
+    }
+  }
+
+  /**
+   * @param concentrationRatio report topics whose fullest broker holds at least this many times
+   *     its share of an even spread
+   * @param limit the maximum number of concentrated topics and rack violations listed, the counts
+   *     cover all of them
+   */
+  public PlacementSummary getSummary(double concentrationRatio, int limit) {
+    if (!metadataCache.isInitialized()) {
+      throw new ServiceNotAvailableException(
+          "zookeeper", "loading", "Topic metadata is still being loaded from zookeeper");
+    }
+    if (concentrationRatio < 1 || limit < 0) {
+      throw new ApiException("Concentration ratio must be at least 1 and limit not negative");
+    }
+    long version = metadataCache.getVersion();
+    synchronized (this) {
+      if (cached != null
+          && cached.getMetadataVersion() == version
+          && cachedRatio == concentrationRatio
+          && cachedLimit == limit
+          && System.currentTimeMillis() - cachedAt < cacheMs) {
+        return cached;
+      }
+    }
+    PlacementSummary summary = compute(version, concentrationRatio, limit);
+    synchronized (this) {
+      cached = summary;
+      cachedRatio = concentrationRatio;
+      cachedLimit = limit;
+      cachedAt = System.currentTimeMillis();
+    }
+    return summary;
+  }
+
+  private PlacementSummary compute(long version, double concentrationRatio, int limit) {
+    long start = System.nanoTime();
+    List<BrokerInfo> liveBrokers = kafkaAdminService.listBrokers();
+    Map<String, Integer> rackIndexes = new HashMap<>();
+    List<String> rackNames = new ArrayList<>();
+    boolean rackAware = false;
+    for (BrokerInfo broker : liveBrokers) {
+      String rack = Objects.toString(broker.getRack(), NO_RACK);
+      rackAware |= !rack.isEmpty();
+      rackIndexes.computeIfAbsent(rack, key -> addRack(rackNames, key));
+    }
+    int liveRacks = rackNames.size();
+    int noRack = rackIndexes.computeIfAbsent(NO_RACK, key -> addRack(rackNames, key));
+
+    Tally tally = new Tally(liveBrokers.size(), noRack);
+    for (BrokerInfo broker : liveBrokers) {
+      int rack = rackIndexes.get(Objects.toString(broker.getRack(), NO_RACK));
+      tally.add(broker.getId(), rack, true);
+    }
+    int[] rackBrokers = new int[rackNames.size()];
+    int[] rackReplicas = new int[rackNames.size()];
+    int[] rackLeaders = new int[rackNames.size()];
+    int[] rackPartitions = new int[rackNames.size()];
+    int[] rackStamps = new int[rackNames.size()];
+    int stamp = 0;
+
+    PlacementSummary summary = new PlacementSummary();
+    List<TopicConcentration> concentrated = new ArrayList<>();
+    int topicCount = 0;
+    int partitionCount = 0;
+    int replicaCount = 0;
+    int leaderless = 0;
+    int rackViolations = 0;
+    for (TopicState state : metadataCache.getTopicStates().values()) {
+      int touchedCount = 0;
+      int topicReplicaCount = 0;
+      for (int partition = 0; partition < state.getPartitionCount(); partition++) {
+        int[] replicas = state.getReplicas()[partition];
+        int distinctRacks = 0;
+        stamp++;
+        for (int replica : replicas) {
+          int broker = tally.indexOf(replica);
+          int rack = tally.racks[broker];
+          tally.replicas[broker]++;
+          rackReplicas[rack]++;
+          if (rackStamps[rack] != stamp) {
+            rackStamps[rack] = stamp;
+            rackPartitions[rack]++;
+            distinctRacks++;
+          }
+          if (tally.topicReplicas[broker]++ == 0) {
+            tally.touched[touchedCount++] = broker;
+          }
+        }
+        topicReplicaCount += replicas.length;
+
+        int leader = state.getLeaders()[partition];
+        if (leader == TopicState.NO_LEADER) {
+          leaderless++;
+        } else {
+          int broker = tally.indexOf(leader);
+          tally.leaders[broker]++;
+          rackLeaders[tally.racks[broker]]++;
+        }
+
+        if (rackAware && distinctRacks < Math.min(replicas.length, liveRacks)) {
+          if (rackViolations++ < limit) {
+            summary
+                .getRackViolations()
+                .add(
+                    new RackViolation(
+                        state.getTopic(),
+                        partition,
+                        Arrays.stream(replicas).boxed().collect(toList()),
+                        distinctRacks));
+          }
+        }
+      }
+      topicCount++;
+      partitionCount += state.getPartitionCount();
+      replicaCount += topicReplicaCount;
+
+      int maxBroker = -1;
+      int maxReplicas = 0;
+      for (int i = 0; i < touchedCount; i++) {
+        int broker = tally.touched[i];
+        tally.topics[broker]++;
+        if (tally.topicReplicas[broker] > maxReplicas) {
+          maxReplicas = tally.topicReplicas[broker];
+          maxBroker = broker;
+        }
+        tally.topicReplicas[broker] = 0;
+      }
+      if (topicReplicaCount > 0) {
+        int spread = Math.max(1, Math.min(liveBrokers.size(), topicReplicaCount));
+        double ratio = maxReplicas / Math.ceil((double) topicReplicaCount / spread);
+        if (ratio >= concentrationRatio) {
+          TopicConcentration concentration = new TopicConcentration();
+          concentration.setTopic(state.getTopic());
+          concentration.setPartitions(state.getPartitionCount());
+          concentration.setReplicas(topicReplicaCount);
+          concentration.setBrokers(touchedCount);
+          concentration.setMaxBroker(tally.ids[maxBroker]);
+          concentration.setMaxBrokerReplicas(maxReplicas);
+          concentration.setRatio(ratio);
+          concentrated.add(concentration);
+        }
+      }
+    }
+
+    for (int broker = 0; broker < tally.count; broker++) {
+      BrokerPlacement placement = new BrokerPlacement();
+      placement.setId(tally.ids[broker]);
+      placement.setRack(rackNames.get(tally.racks[broker]));
+      placement.setAlive(tally.alive[broker]);
+      placement.setReplicas(tally.replicas[broker]);
+      placement.setLeaders(tally.leaders[broker]);
+      placement.setTopics(tally.topics[broker]);
+      summary.getBrokers().add(placement);
+      if (tally.alive[broker]) {
+        rackBrokers[tally.racks[broker]]++;
+      }
+    }
+    summary.getBrokers().sort(Comparator.comparingInt(BrokerPlacement::getId));
+    for (int rack = 0; rack < rackNames.size(); rack++) {
+      if (rackBrokers[rack] == 0 && rackReplicas[rack] == 0) {
+        continue;
+      }
+      RackPlacement placement = new RackPlacement();
+      placement.setRack(rackNames.get(rack));
+      placement.setBrokers(rackBrokers[rack]);
+      placement.setReplicas(rackReplicas[rack]);
+      placement.setLeaders(rackLeaders[rack]);
+      placement.setPartitions(rackPartitions[rack]);
+      summary.getRacks().add(placement);
+    }
+    summary.getRacks().sort(Comparator.comparing(RackPlacement::getRack));
+
+    concentrated.sort(
+        Comparator.comparingDouble(TopicConcentration::getRatio)
+            .reversed()
+            .thenComparing(TopicConcentration::getTopic));
+    summary.setConcentratedTopicCount(concentrated.size());
+    summary.setConcentratedTopics(
+        new ArrayList<>(concentrated.subList(0, Math.min(limit, concentrated.size()))));
+    summary.setRackViolationCount(rackViolations);
+    summary.getRackViolations().sort(
+        Comparator.comparing(RackViolation::getTopic).thenComparing(RackViolation::getPartition));
+
+    summary.setMetadataVersion(version);
+    summary.setTopics(topicCount);
+    summary.setPartitions(partitionCount);
+    summary.setReplicas(replicaCount);
+    summary.setLeaderless(leaderless);
+    summary.setRackAware(rackAware);
+    summary.setReplicaSkew(skew(tally.replicas, tally.alive, tally.count));
+    summary.setLeaderSkew(skew(tally.leaders, tally.alive, tally.count));
+    summary.setComputeTimeMs(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    log.debug(
+        "Placement of " + partitionCount + " partitions computed in "
+            + summary.getComputeTimeMs() + " ms");
+    return summary;
+  }
+
+  private static int addRack(List<String> rackNames, String rack) {
+    rackNames.add(rack);
+    return rackNames.size() - 1;
+  }
+
+  /** How far the fullest live broker is above the live average, relative to the average. */
+  private static double skew(int[] counts, boolean[] alive, int brokerCount) {
+    long total = 0;
+    int live = 0;
+    int max = 0;
+    for (int broker = 0; broker < brokerCount; broker++) {
+      if (alive[broker]) {
+        total += counts[broker];
+        live++;
+        max = Math.max(max, counts[broker]);
+      }
+    }
+    if (live == 0 || total == 0) {
+      return 0;
+    }
+    double average = (double) total / live;
+    return (max - average) / average;
+  }
+}
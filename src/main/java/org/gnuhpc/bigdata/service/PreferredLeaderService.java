@@ -0,0 +1,359 @@
+package org.gnuhpc.bigdata.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import kafka.admin.PreferredReplicaLeaderElectionCommand;
+import kafka.common.TopicAndPartition;
+import kafka.utils.ZkUtils;
+import lombok.extern.log4j.Log4j;
+import org.apache.kafka.common.errors.ApiException;
+import org.gnuhpc.bigdata.componet.DownstreamMetrics;
+import org.gnuhpc.bigdata.componet.MetadataCache;
+import org.gnuhpc.bigdata.constant.ReassignmentState;
+import org.gnuhpc.bigdata.exception.ServiceNotAvailableException;
+import org.gnuhpc.bigdata.model.BrokerInfo;
+import org.gnuhpc.bigdata.model.BrokerLeaders;
+import org.gnuhpc.bigdata.model.LeaderSkewReport;
+import org.gnuhpc.bigdata.model.PreferredElectionJob;
+import org.gnuhpc.bigdata.model.PreferredElectionRequest;
+import org.gnuhpc.bigdata.model.TopicState;
+import org.gnuhpc.bigdata.utils.ZookeeperUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import scala.collection.JavaConverters;
+
+/**
+ * Reports how leaders are spread over the brokers and moves leadership back to the preferred
+ * replicas.
+ *
+ * <p>Both work on the {@link MetadataCache}. A partition is electable when its leader is not its
+ * preferred replica and the preferred replica is in sync. Elections are written to {@code
+ * /admin/preferred_replica_election} in batches, partitions led by the brokers with the most
+ * leaders first, and the next batch waits until the controller deleted the node plus the batch
+ * interval, so that a large election does not move all leaders at once.
+ */
+@Service
+@Log4j
+public class PreferredLeaderService {
+  private static final long ELECTION_POLL_MS = 200;
+
+  @Autowired private ZookeeperUtils zookeeperUtils;
+
+  @Autowired private MetadataCache metadataCache;
+
+  @Autowired private DownstreamMetrics downstreamMetrics;
+
+  @Autowired private KafkaAdminService kafkaAdminService;
+
+  @Value("${kafka.preferred-election.batch-timeout-ms:60000}")
+  private long batchTimeoutMs;
+
+  private ExecutorService executor;
+  private PreferredElectionJob job;
+  private Future<?> running;
+
+  @PostConstruct
+  public void start() {
+    executor = Executors.newSingleThreadExecutor();
+  }
+
+  @PreDestroy
+  public void stop() {
+    executor.shutdownNow();
+  }
+
+  public LeaderSkewReport getLeaderSkew() {
+    checkMetadataCache();
+    return buildReport(topic -> true);
+  }
+
+  public synchronized PreferredElectionJob getJob() {
+    return job;
+  }
+
+  public synchronized PreferredElectionJob elect(PreferredElectionRequest request) {
+    checkMetadataCache();
+    if (request.getBatchSize() <= 0 || request.getBatchIntervalMs() < 0) {
+      throw new ApiException("Batch size must be positive and the batch interval not negative");
+    }
+    if (!request.isDryRun() && job != null && job.getState() == ReassignmentState.RUNNING) {
+      throw new ApiException("A preferred replica election is already running");
+    }
+    Predicate<String> topicFilter =
+        request.getSelector() == null ? topic -> true : request.getSelector().toPredicate();
+    LeaderSkewReport report = buildReport(topicFilter);
+    List<TopicAndPartition> candidates = electable(topicFilter);
+
+    PreferredElectionJob newJob = new PreferredElectionJob();
+    newJob.setDryRun(request.isDryRun());
+    newJob.setPartitions(candidates.size());
+    newJob.setBatches((candidates.size() + request.getBatchSize() - 1) / request.getBatchSize());
+    newJob.setReport(report);
+    newJob.setStartTime(System.currentTimeMillis());
+    if (request.isDryRun() || candidates.isEmpty()) {
+      newJob.setState(ReassignmentState.COMPLETED);
+      newJob.setEndTime(newJob.getStartTime());
+      return newJob;
+    }
+
+    newJob.setState(ReassignmentState.RUNNING);
+    job = newJob;
+    List<List<TopicAndPartition>> batches = new ArrayList<>();
+    for (int i = 0; i < candidates.size(); i += request.getBatchSize()) {
+      batches.add(
+          candidates.subList(i, Math.min(candidates.size(), i + request.getBatchSize())));
+    }
+    running = executor.submit(() -> run(newJob, batches, request.getBatchIntervalMs()));
+    log.info(
+        "Preferred replica election of "
+            + candidates.size()
+            + " partitions started in "
+            + batches.size()
+            + " batches");
+    return newJob;
+  }
+
+  public synchronized PreferredElectionJob cancel() {
+    if (job == null || job.getState() != ReassignmentState.RUNNING) {
+      throw new ApiException("No preferred replica election is running");
+    }
+    job.setState(ReassignmentState.CANCELLED);
+    job.setEndTime(System.currentTimeMillis());
+    job.setMsg("Cancelled after " + job.getCompletedBatches() + " batches");
+    running.cancel(true);
+    return job;
+  }
+
+  private void run(
+      PreferredElectionJob job, List<List<TopicAndPartition>> batches, long intervalMs) {
+    try {
+      for (int i = 0; i < batches.size(); i++) {
+        if (i > 0) {
+          Thread.sleep(intervalMs);
+        }
+        if (!awaitNoElection()) {
+          finish(job, ReassignmentState.FAILED, "An election started elsewhere did not complete");
+          return;
+        }
+        // Leaders may have moved since the batch was planned
+        Set<TopicAndPartition> batch = new HashSet<>();
+        for (TopicAndPartition partition : batches.get(i)) {
+          if (isElectable(partition)) {
+            batch.add(partition);
+          }
+        }
+        synchronized (this) {
+          if (job.getState() != ReassignmentState.RUNNING) {
+            return;
+          }
+          if (!batch.isEmpty()) {
+            downstreamMetrics.record(
+                DownstreamMetrics.ZOOKEEPER,
+                () -> {
+                  PreferredReplicaLeaderElectionCommand.writePreferredReplicaElectionData(
+                      zookeeperUtils.getZkUtils(),
+                      JavaConverters.asScalaSetConverter(batch).asScala());
+                  return null;
+                });
+          }
+        }
+        if (!awaitNoElection()) {
+          finish(job, ReassignmentState.FAILED, "Batch " + (i + 1) + " did not complete in time");
+          return;
+        }
+        synchronized (this) {
+          job.setCompletedBatches(i + 1);
+        }
+      }
+      finish(job, ReassignmentState.COMPLETED, null);
+      log.info("Preferred replica election completed");
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (Exception e) {
+      log.error("Preferred replica election failed", e);
+      finish(job, ReassignmentState.FAILED, e.getMessage());
+    }
+  }
+
+  private synchronized void finish(PreferredElectionJob job, ReassignmentState state, String msg) {
+    if (job.getState() == ReassignmentState.RUNNING) {
+      job.setState(state);
+      job.setMsg(msg);
+      job.setEndTime(System.currentTimeMillis());
+    }
+  }
+
+  /** Waits until the controller deleted the election node, false on timeout. */
+  private boolean awaitNoElection() throws Exception {
+    long deadline = System.currentTimeMillis() + batchTimeoutMs;
+    while (electionInProgress()) {
+      if (System.currentTimeMillis() >= deadline) {
+        return false;
+      }
+      Thread.sleep(ELECTION_POLL_MS);
+    }
+    return true;
+  }
+
+  private boolean electionInProgress() throws Exception {
+    return downstreamMetrics.recordCall(
+            DownstreamMetrics.ZOOKEEPER,
+            () ->
+                zookeeperUtils
+                    .getCuratorClient()
+                    .checkExists()
+                    .forPath(ZkUtils.PreferredReplicaLeaderElectionPath()))
+        != null;
+  }
+
+  /** The electable partitions, those led by the brokers with the most leaders first. */
+  private List<TopicAndPartition> electable(Predicate<String> topicFilter) {
+    Map<Integer, Integer> leaderCounts = new TreeMap<>();
+    List<TopicAndPartition> candidates = new ArrayList<>();
+    List<Integer> currentLeaders = new ArrayList<>();
+    for (TopicState state : metadataCache.getTopicStates().values()) {
+      int[] leaders = state.getLeaders();
+      for (int p = 0; p < state.getPartitionCount(); p++) {
+        if (leaders[p] != TopicState.NO_LEADER) {
+          leaderCounts.merge(leaders[p], 1, Integer::sum);
+        }
+        if (topicFilter.test(state.getTopic()) && isElectable(state, p)) {
+          candidates.add(new TopicAndPartition(state.getTopic(), p));
+          currentLeaders.add(leaders[p]);
+        }
+      }
+    }
+    Integer[] order = new Integer[candidates.size()];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(
+        order,
+        Comparator.comparingInt(
+                (Integer i) -> -leaderCounts.getOrDefault(currentLeaders.get(i), 0))
+            .thenComparing(i -> candidates.get(i).topic())
+            .thenComparingInt(i -> candidates.get(i).partition()));
+    List<TopicAndPartition> sorted = new ArrayList<>();
+    for (int i : order) {
+      sorted.add(candidates.get(i));
+    }
+    return sorted;
+  }
+
+  private boolean isElectable(TopicAndPartition partition) {
+    TopicState state = metadataCache.getTopicState(partition.topic());
+    return state != null
+        && partition.partition() < state.getPartitionCount()
+        && isElectable(state, partition.partition());
+  }
+
+  private static boolean isElectable(TopicState state, int p) {
+    int[] replicas = state.getReplicas()[p];
+    if (replicas.length == 0 || state.getLeaders()[p] == replicas[0]) {
+      return false;
+    }
+    for (int replica : state.getIsr()[p]) {
+      if (replica == replicas[0]) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Counts replicas, leaders and preferred leaders per broker over all topics, and projects the
+   * leaders after electing the electable partitions of the selected topics.
+   */
+  private LeaderSkewReport buildReport(Predicate<String> topicFilter) {
+    Map<Integer, BrokerLeaders> brokers = new TreeMap<>();
+    for (BrokerInfo broker : kafkaAdminService.listBrokers()) {
+      brokerLeaders(brokers, broker.getId());
+    }
+    LeaderSkewReport report = new LeaderSkewReport();
+    for (TopicState state : metadataCache.getTopicStates().values()) {
+      boolean selected = topicFilter.test(state.getTopic());
+      for (int p = 0; p < state.getPartitionCount(); p++) {
+        int[] replicas = state.getReplicas()[p];
+        int leader = state.getLeaders()[p];
+        report.setPartitions(report.getPartitions() + 1);
+        for (int replica : replicas) {
+          BrokerLeaders broker = brokerLeaders(brokers, replica);
+          broker.setReplicas(broker.getReplicas() + 1);
+        }
+        if (replicas.length > 0) {
+          BrokerLeaders preferred = brokerLeaders(brokers, replicas[0]);
+          preferred.setPreferredLeaders(preferred.getPreferredLeaders() + 1);
+        }
+
+        int projected = leader;
+        if (leader == TopicState.NO_LEADER) {
+          report.setLeaderless(report.getLeaderless() + 1);
+        } else {
+          BrokerLeaders current = brokerLeaders(brokers, leader);
+          current.setLeaders(current.getLeaders() + 1);
+          if (replicas.length > 0 && leader != replicas[0]) {
+            report.setNotOnPreferred(report.getNotOnPreferred() + 1);
+          }
+        }
+        if (selected && isElectable(state, p)) {
+          report.setElectable(report.getElectable() + 1);
+          projected = replicas[0];
+        }
+        if (projected != TopicState.NO_LEADER) {
+          BrokerLeaders broker = brokerLeaders(brokers, projected);
+          broker.setProjectedLeaders(broker.getProjectedLeaders() + 1);
+        }
+      }
+    }
+    List<BrokerLeaders> list = new ArrayList<>(brokers.values());
+    report.setBrokers(list);
+    report.setSkew(skew(list.stream().mapToInt(BrokerLeaders::getLeaders).toArray()));
+    report.setProjectedSkew(
+        skew(list.stream().mapToInt(BrokerLeaders::getProjectedLeaders).toArray()));
+    return report;
+  }
+
+  private static BrokerLeaders brokerLeaders(Map<Integer, BrokerLeaders> brokers, int id) {
+    return brokers.computeIfAbsent(
+        id,
+        key -> {
+          BrokerLeaders broker = new BrokerLeaders();
+          broker.setId(key);
+          return broker;
+        });
+  }
+
+  private static double skew(int[] leaders) {
+    if (leaders.length == 0) {
+      return 0;
+    }
+    long total = 0;
+    int max = 0;
+    for (int count : leaders) {
+      total += count;
+      max = Math.max(max, count);
+    }
+    double average = (double) total / leaders.length;
+    return average == 0 ? 0 : (max - average) / average;
+  }
+
+  private void checkMetadataCache() {
+    if (!metadataCache.isInitialized()) {
+      throw new ServiceNotAvailableException(
+          "zookeeper", "loading", "Topic metadata is still being loaded from zookeeper");
+    }
+  }
+}
@@ -0,0 +1,429 @@
+package org.gnuhpc.bigdata.service;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import kafka.admin.ReassignPartitionsCommand;
+import kafka.utils.ZkUtils;
+import lombok.extern.log4j.Log4j;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.ApiException;
+import org.gnuhpc.bigdata.componet.DownstreamMetrics;
+import org.gnuhpc.bigdata.componet.MetadataCache;
+import org.gnuhpc.bigdata.constant.ReassignmentState;
+import org.gnuhpc.bigdata.exception.ServiceNotAvailableException;
+import org.gnuhpc.bigdata.model.BrokerInfo;
+import org.gnuhpc.bigdata.model.PartitionMove;
+import org.gnuhpc.bigdata.model.ReassignWavesRequest;
+import org.gnuhpc.bigdata.model.ReassignmentJob;
+import org.gnuhpc.bigdata.model.ReassignmentWave;
+import org.gnuhpc.bigdata.model.TopicState;
+import org.gnuhpc.bigdata.utils.CommonUtils;
+import org.gnuhpc.bigdata.utils.ZookeeperUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Executes a reassignment plan in waves instead of handing all of it to the kafka controller at
+ * once, so that the replication traffic of a big move does not starve producers.
+ *
+ * <p>A wave is bounded by the number of partitions and by the bytes its new replicas have to copy.
+ * The next wave is written to {@code /admin/reassign_partitions} once the controller removed that
+ * node and all partitions of the previous wave reached their target replicas. Pausing or
+ * cancelling stops further waves, the wave in flight always runs to its end because kafka cannot
+ * abort a reassignment.
+ *
+ * <p>The job is written to {@link #STATE_FILE_PATH} on every change, and a running job is picked
+ * up again when this service restarts.
+ */
+@Service
+@Log4j
+public class ReassignmentExecutor {
+  public static final String STATE_FILE_PATH =
+      CommonUtils.PROJECT_ROOT_FOLDER + File.separator + "reassignment.yml";
+  private static final long WAVE_SETTLE_MS = 10000;
+
+  @Autowired private ZookeeperUtils zookeeperUtils;
+
+  @Autowired private MetadataCache metadataCache;
+
+  @Autowired private DownstreamMetrics downstreamMetrics;
+
+  @Autowired private KafkaAdminService kafkaAdminService;
+
+  @Autowired private ReassignmentPlanner reassignmentPlanner;
+
+  @Value("${kafka.reassign.wave-check-ms:2000}")
+  private long waveCheckMs;
+
+  private ScheduledExecutorService scheduler;
+  private ReassignmentJob job;
+  /**
+   * When the wave in flight must be at its targets by, set once the controller removed the admin
+   * node, 0 before.
+   */
+  private long settleDeadline;
+
+  @PostConstruct
+  public void start() {
+    File stateFile = new File(STATE_FILE_PATH);
+    if (stateFile.exists()) {
+      try {
+        job = CommonUtils.yamlParse(stateFile, ReassignmentJob.class);
+        log.info("Loaded reassignment job " + job.getId() + " in state " + job.getState());
+      } catch (IOException e) {
+        log.error("Failed to load the reassignment job from " + STATE_FILE_PATH, e);
+      }
+    }
+    scheduler = Executors.newSingleThreadScheduledExecutor();
+    scheduler.scheduleWithFixedDelay(this::check, waveCheckMs, waveCheckMs, TimeUnit.MILLISECONDS);
+  }
+
+  @PreDestroy
+  public void stop() {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+    }
+  }
+
+  public synchronized ReassignmentJob getJob() {
+    return job;
+  }
+
+  public synchronized ReassignmentJob submit(ReassignWavesRequest request) {
+    if (job != null && isActive(job)) {
+      throw new ApiException(
+          "Reassignment job " + job.getId() + " is " + job.getState() + ", cancel it first");
+    }
+    if (request.getMaxWavePartitions() <= 0 || request.getMaxWaveBytes() <= 0) {
+      throw new ApiException("Wave limits must be positive");
+    }
+    if (!metadataCache.isInitialized()) {
+      throw new ServiceNotAvailableException(
+          "zookeeper", "loading", "Topic metadata is still being loaded from zookeeper");
+    }
+
+    List<PartitionMove> moves = parsePlan(request.getPlan());
+    if (moves.isEmpty()) {
+      throw new ApiException("All partitions of the plan are already at their target replicas");
+    }
+    Map<TopicPartition, Long> sizes = reassignmentPlanner.partitionSizes();
+    for (PartitionMove move : moves) {
+      int[] current =
+          metadataCache.getTopicState(move.getTopic()).getReplicas()[move.getPartition()];
+      long added = move.getReplicas().stream().filter(id -> !contains(current, id)).count();
+      move.setBytes(
+          added * sizes.getOrDefault(new TopicPartition(move.getTopic(), move.getPartition()), 0L));
+    }
+
+    ReassignmentJob newJob = new ReassignmentJob();
+    newJob.setId(UUID.randomUUID().toString());
+    newJob.setState(ReassignmentState.RUNNING);
+    newJob.setMaxWaveBytes(request.getMaxWaveBytes());
+    newJob.setMaxWavePartitions(request.getMaxWavePartitions());
+    newJob.setCreateTime(System.currentTimeMillis());
+    ReassignmentWave wave = null;
+    for (PartitionMove move : moves) {
+      if (wave == null
+          || wave.getPartitions().size() >= request.getMaxWavePartitions()
+          || (!wave.getPartitions().isEmpty()
+              && wave.getBytes() + move.getBytes() > request.getMaxWaveBytes())) {
+        wave = new ReassignmentWave();
+        wave.setIndex(newJob.getWaves().size());
+        newJob.getWaves().add(wave);
+      }
+      wave.getPartitions().add(move);
+      wave.setBytes(wave.getBytes() + move.getBytes());
+      newJob.setTotalBytes(newJob.getTotalBytes() + move.getBytes());
+    }
+    job = newJob;
+    settleDeadline = 0;
+    log.info(
+        String.format(
+            "Reassignment job %s: %d partitions, %d bytes in %d waves",
+            job.getId(), moves.size(), job.getTotalBytes(), job.getWaves().size()));
+    save();
+    scheduler.execute(this::check);
+    return job;
+  }
+
+  public synchronized ReassignmentJob pause() {
+    return transition(ReassignmentState.RUNNING, ReassignmentState.PAUSED);
+  }
+
+  public synchronized ReassignmentJob resume() {
+    ReassignmentJob resumed = transition(ReassignmentState.PAUSED, ReassignmentState.RUNNING);
+    scheduler.execute(this::check);
+    return resumed;
+  }
+
+  public synchronized ReassignmentJob cancel() {
+    if (job == null || !isActive(job)) {
+      throw new ApiException("No reassignment job to cancel");
+    }
+    job.setState(ReassignmentState.CANCELLED);
+    job.setMsg(
+        runningWave() == null
+            ? "Cancelled"
+            : "Cancelled, the wave in flight still completes because kafka cannot abort it");
+    save();
+    return job;
+  }
+
+  private ReassignmentJob transition(ReassignmentState from, ReassignmentState to) {
+    if (job == null || job.getState() != from) {
+      throw new ApiException("No " + from + " reassignment job");
+    }
+    job.setState(to);
+    job.setMsg(null);
+    save();
+    return job;
+  }
+
+  /** Runs on the scheduler: finishes the wave in flight and starts the next one. */
+  private synchronized void check() {
+    if (job == null) {
+      return;
+    }
+    try {
+      ReassignmentWave running = runningWave();
+      if (running != null) {
+        if (reassignmentInProgress()) {
+          return;
+        }
+        // The controller writes the new assignment before it clears the admin node, the metadata
+        // cache gets until the deadline to see it. Later ticks check again instead of waiting here
+        // with the lock held.
+        long now = System.currentTimeMillis();
+        if (settleDeadline == 0) {
+          settleDeadline = now + WAVE_SETTLE_MS;
+        }
+        if (now < settleDeadline
+            && !running.getPartitions().stream().allMatch(this::atTarget)) {
+          return;
+        }
+        settleDeadline = 0;
+        finish(running);
+        save();
+      }
+      if (job.getState() != ReassignmentState.RUNNING) {
+        return;
+      }
+
+      ReassignmentWave next =
+          job.getWaves()
+              .stream()
+              .filter(wave -> wave.getState() == ReassignmentState.PENDING)
+              .findFirst()
+              .orElse(null);
+      if (next == null) {
+        job.setState(ReassignmentState.COMPLETED);
+        job.setMsg(null);
+        save();
+        log.info("Reassignment job " + job.getId() + " completed");
+        return;
+      }
+      if (reassignmentInProgress()) {
+        job.setMsg("Waiting for a reassignment that was not started by this job");
+        return;
+      }
+      start(next);
+      save();
+    } catch (Exception e) {
+      log.error("Reassignment job " + job.getId() + " check failed, retrying", e);
+    }
+  }
+
+  private void start(ReassignmentWave wave) {
+    // Partitions done before a restart, or moved by someone else, are not submitted again
+    List<PartitionMove> pending =
+        wave.getPartitions().stream().filter(move -> !atTarget(move)).collect(Collectors.toList());
+    wave.setStartTime(System.currentTimeMillis());
+    if (pending.isEmpty()) {
+      wave.setState(ReassignmentState.COMPLETED);
+      wave.setEndTime(wave.getStartTime());
+      return;
+    }
+    ReassignPartitionsCommand.executeAssignment(
+        zookeeperUtils.getZkUtils(), toReassignmentJson(pending));
+    wave.setState(ReassignmentState.RUNNING);
+    job.setMsg(null);
+    log.info(
+        String.format(
+            "Reassignment job %s: started wave %d/%d with %d partitions, %d bytes",
+            job.getId(), wave.getIndex() + 1, job.getWaves().size(), pending.size(),
+            wave.getBytes()));
+  }
+
+  private void finish(ReassignmentWave wave) {
+    wave.setEndTime(System.currentTimeMillis());
+    List<String> failed =
+        wave.getPartitions()
+            .stream()
+            .filter(move -> !atTarget(move))
+            .map(move -> move.getTopic() + "-" + move.getPartition())
+            .collect(Collectors.toList());
+    if (failed.isEmpty()) {
+      wave.setState(ReassignmentState.COMPLETED);
+      log.info(
+          String.format(
+              "Reassignment job %s: wave %d done in %d ms",
+              job.getId(), wave.getIndex() + 1, wave.getEndTime() - wave.getStartTime()));
+    } else {
+      wave.setState(ReassignmentState.FAILED);
+      job.setState(ReassignmentState.FAILED);
+      job.setMsg("Partitions not at their target replicas after wave " + wave.getIndex() + ": "
+          + failed);
+      log.warn("Reassignment job " + job.getId() + " failed: " + job.getMsg());
+    }
+  }
+
+  private ReassignmentWave runningWave() {
+    return job.getWaves()
+        .stream()
+        .filter(wave -> wave.getState() == ReassignmentState.RUNNING)
+        .findFirst()
+        .orElse(null);
+  }
+
+  private boolean reassignmentInProgress() throws Exception {
+    return downstreamMetrics.recordCall(
+            DownstreamMetrics.ZOOKEEPER,
+            () ->
+                zookeeperUtils
+                    .getCuratorClient()
+                    .checkExists()
+                    .forPath(ZkUtils.ReassignPartitionsPath()))
+        != null;
+  }
+
+  private boolean atTarget(PartitionMove move) {
+    TopicState state = metadataCache.getTopicState(move.getTopic());
+    if (state == null || move.getPartition() >= state.getPartitionCount()) {
+      return false;
+    }
+    int[] current = state.getReplicas()[move.getPartition()];
+    if (current.length != move.getReplicas().size()) {
+      return false;
+    }
+    for (int i = 0; i < current.length; i++) {
+      if (current[i] != move.getReplicas().get(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private List<PartitionMove> parsePlan(String plan) {
+    JsonArray partitions;
+    try {
+      JsonElement json = new JsonParser().parse(plan == null ? "" : plan);
+      partitions = json.getAsJsonObject().getAsJsonArray("partitions");
+    } catch (JsonParseException | IllegalStateException | ClassCastException e) {
+      throw new ApiException("Invalid reassignment plan: " + e.getMessage());
+    }
+    if (partitions == null) {
+      throw new ApiException("Invalid reassignment plan: no partitions");
+    }
+
+    Set<Integer> liveBrokers =
+        kafkaAdminService.listBrokers().stream().map(BrokerInfo::getId).collect(Collectors.toSet());
+    Set<TopicPartition> seen = new HashSet<>();
+    List<PartitionMove> moves = new ArrayList<>();
+    for (JsonElement element : partitions) {
+      JsonObject partition = element.getAsJsonObject();
+      String topic = partition.get("topic").getAsString();
+      int id = partition.get("partition").getAsInt();
+      List<Integer> replicas = new ArrayList<>();
+      partition.getAsJsonArray("replicas").forEach(replica -> replicas.add(replica.getAsInt()));
+
+      TopicState state = metadataCache.getTopicState(topic);
+      if (state == null || id < 0 || id >= state.getPartitionCount()) {
+        throw new ApiException("Unknown partition " + topic + "-" + id);
+      }
+      if (!seen.add(new TopicPartition(topic, id))) {
+        throw new ApiException("Partition " + topic + "-" + id + " is listed twice");
+      }
+      if (replicas.isEmpty() || new HashSet<>(replicas).size() != replicas.size()) {
+        throw new ApiException(
+            "Partition " + topic + "-" + id + " has invalid replicas " + replicas);
+      }
+      for (int broker : replicas) {
+        if (!liveBrokers.contains(broker)) {
+          throw new ApiException("Broker " + broker + " of " + topic + "-" + id + " is not alive");
+        }
+      }
+      PartitionMove move = new PartitionMove(topic, id, replicas, 0);
+      if (!atTarget(move)) {
+        moves.add(move);
+      }
+    }
+    return moves;
+  }
+
+  private static String toReassignmentJson(List<PartitionMove> moves) {
+    JsonArray partitions = new JsonArray();
+    for (PartitionMove move : moves) {
+      JsonArray replicas = new JsonArray();
+      move.getReplicas().forEach(replicas::add);
+      JsonObject partition = new JsonObject();
+      partition.addProperty("topic", move.getTopic());
+      partition.addProperty("partition", move.getPartition());
+      partition.add("replicas", replicas);
+      partitions.add(partition);
+    }
+    JsonObject json = new JsonObject();
+    json.addProperty("version", 1);
+    json.add("partitions", partitions);
+    return json.toString();
+  }
+
+  private void save() {
+    job.setUpdateTime(System.currentTimeMillis());
+    File stateFile = new File(STATE_FILE_PATH);
+    File tmpFile = new File(STATE_FILE_PATH + ".tmp");
+    try {
+      CommonUtils.yamlWrite(tmpFile, job);
+      Files.move(
+          tmpFile.toPath(),
+          stateFile.toPath(),
+          StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      log.error("Failed to save the reassignment job to " + STATE_FILE_PATH, e);
+    }
+  }
+
+  private static boolean isActive(ReassignmentJob job) {
+    return job.getState() == ReassignmentState.RUNNING
+        || job.getState() == ReassignmentState.PAUSED;
+  }
+
+  private static boolean contains(int[] replicas, int id) {
+    for (int replica : replicas) {
+      if (replica == id) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
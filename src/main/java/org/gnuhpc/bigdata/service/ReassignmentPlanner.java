@@ -0,0 +1,325 @@
+package org.gnuhpc.bigdata.service;
+
+import static java.util.stream.Collectors.toList;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import lombok.extern.log4j.Log4j;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.ApiException;
+import org.gnuhpc.bigdata.componet.MetadataCache;
+import org.gnuhpc.bigdata.exception.ServiceNotAvailableException;
+import org.gnuhpc.bigdata.model.BrokerInfo;
+import org.gnuhpc.bigdata.model.BrokerLoad;
+import org.gnuhpc.bigdata.model.BrokerLoadSample;
+import org.gnuhpc.bigdata.model.ReassignPlan;
+import org.gnuhpc.bigdata.model.ReassignPlanRequest;
+import org.gnuhpc.bigdata.model.TopicState;
+import org.gnuhpc.bigdata.utils.ReplicaBalancer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Plans partition reassignments from the measured load of the brokers instead of shuffling
+ * replicas at random.
+ *
+ * <p>The replica assignment comes from the {@link MetadataCache}. Partition sizes and topic
+ * bytes-in rates are read from the JMX beans of every live broker through the {@link
+ * CollectorService} and cached for {@code kafka.reassign.load-sample-ttl-ms}. The size of a
+ * partition is the largest log size reported by its replicas. Brokers only report bytes-in per
+ * topic, so the rate of a topic on its leader is split evenly over the partitions that broker
+ * leads; every replica takes the same bytes in, from producers or by replication. The assignment
+ * itself is computed by the {@link ReplicaBalancer}.
+ */
+@Service
+@Log4j
+public class ReassignmentPlanner {
+  private static final int NO_RACK = -1;
+
+  @Autowired private KafkaAdminService kafkaAdminService;
+
+  @Autowired private CollectorService collectorService;
+
+  @Autowired private MetadataCache metadataCache;
+
+  @Value("${kafka.reassign.load-sample-ttl-ms:60000}")
+  private long loadSampleTtlMs;
+
+  private final Map<Integer, BrokerLoadSample> loadSamples = new ConcurrentHashMap<>();
+
+  public ReassignPlan plan(ReassignPlanRequest request) {
+    if (!metadataCache.isInitialized()) {
+      throw new ServiceNotAvailableException(
+          "zookeeper", "loading", "Topic metadata is still being loaded from zookeeper");
+    }
+    if (request.getTolerance() < 0) {
+      throw new ApiException("Tolerance must not be negative");
+    }
+    Predicate<String> topicFilter =
+        request.getSelector() == null ? topic -> true : request.getSelector().toPredicate();
+    List<TopicState> states =
+        metadataCache
+            .getTopicStates()
+            .values()
+            .stream()
+            .filter(state -> topicFilter.test(state.getTopic()))
+            .sorted(Comparator.comparing(TopicState::getTopic))
+            .collect(toList());
+    if (states.isEmpty()) {
+      throw new ApiException("No topic matched");
+    }
+
+    List<BrokerInfo> liveBrokers = kafkaAdminService.listBrokers();
+    Map<Integer, Integer> brokerIndexes = new LinkedHashMap<>();
+    List<String> brokerRacks = new ArrayList<>();
+    for (BrokerInfo broker : liveBrokers) {
+      brokerIndexes.put(broker.getId(), brokerIndexes.size());
+      brokerRacks.add(broker.getRack());
+    }
+    Set<Integer> targetIds =
+        request.getBrokers() == null || request.getBrokers().isEmpty()
+            ? new HashSet<>(brokerIndexes.keySet())
+            : new HashSet<>(request.getBrokers());
+    for (int id : targetIds) {
+      if (!brokerIndexes.containsKey(id)) {
+        throw new ApiException("Broker " + id + " is not alive");
+      }
+    }
+    // Replicas on dead brokers are indexed too, they are moved off like any non target broker
+    for (TopicState state : states) {
+      for (int[] row : state.getReplicas()) {
+        for (int id : row) {
+          if (!brokerIndexes.containsKey(id)) {
+            brokerIndexes.put(id, brokerIndexes.size());
+            brokerRacks.add("");
+          }
+        }
+      }
+    }
+
+    int brokerCount = brokerIndexes.size();
+    int[] brokerIds = new int[brokerCount];
+    int[] rackIndexes = new int[brokerCount];
+    boolean[] targets = new boolean[brokerCount];
+    Map<String, Integer> racks = new HashMap<>();
+    for (Map.Entry<Integer, Integer> entry : brokerIndexes.entrySet()) {
+      int b = entry.getValue();
+      String rack = brokerRacks.get(b);
+      brokerIds[b] = entry.getKey();
+      rackIndexes[b] =
+          rack == null || rack.isEmpty() ? NO_RACK : racks.computeIfAbsent(rack, r -> racks.size());
+      targets[b] = targetIds.contains(entry.getKey());
+    }
+
+    List<String> warnings = new ArrayList<>();
+    Map<Integer, BrokerLoadSample> samples = loadSamples(liveBrokers, warnings);
+
+    int partitionCount = states.stream().mapToInt(TopicState::getPartitionCount).sum();
+    int[][] replicas = new int[partitionCount][];
+    long[] sizes = new long[partitionCount];
+    double[] rates = new double[partitionCount];
+    String[] topics = new String[partitionCount];
+    int[] partitionIds = new int[partitionCount];
+    int p = 0;
+    for (TopicState state : states) {
+      String topic = state.getTopic();
+      Map<Integer, Integer> ledCounts = new HashMap<>();
+      for (int leader : state.getLeaders()) {
+        ledCounts.merge(leader, 1, Integer::sum);
+      }
+      for (int partition = 0; partition < state.getPartitionCount(); partition++, p++) {
+        int[] row = state.getReplicas()[partition];
+        if (row.length > targetIds.size()) {
+          throw new ApiException(
+              String.format(
+                  "Topic %s partition %d has %d replicas but only %d target brokers",
+                  topic, partition, row.length, targetIds.size()));
+        }
+        TopicPartition topicPartition = new TopicPartition(topic, partition);
+        replicas[p] = new int[row.length];
+        for (int i = 0; i < row.length; i++) {
+          replicas[p][i] = brokerIndexes.get(row[i]);
+          BrokerLoadSample sample = samples.get(row[i]);
+          Long size = sample == null ? null : sample.getLogSizes().get(topicPartition);
+          if (size != null) {
+            sizes[p] = Math.max(sizes[p], size);
+          }
+        }
+        int leader = state.getLeaders()[partition];
+        BrokerLoadSample leaderSample = samples.get(leader);
+        Double topicRate =
+            leaderSample == null ? null : leaderSample.getTopicBytesInRates().get(topic);
+        if (topicRate != null) {
+          rates[p] = topicRate / ledCounts.get(leader);
+        }
+        topics[p] = topic;
+        partitionIds[p] = partition;
+      }
+    }
+
+    long start = System.currentTimeMillis();
+    ReplicaBalancer balancer;
+    try {
+      balancer =
+          new ReplicaBalancer(replicas, sizes, rates, rackIndexes, targets)
+              .weights(
+                  request.getSizeWeight(), request.getBytesInWeight(), request.getReplicaWeight())
+              .tolerance(request.getTolerance())
+              .maxMoves(request.getMaxMoves())
+              .plan();
+    } catch (IllegalArgumentException e) {
+      throw new ApiException(e.getMessage());
+    }
+    long planMs = System.currentTimeMillis() - start;
+    int[][] assignment = balancer.getAssignment();
+    log.info(
+        String.format(
+            "Planned %d partitions on %d brokers in %d ms, %d replicas to move",
+            partitionCount, brokerCount, planMs, balancer.getMovedReplicas()));
+
+    ReassignPlan plan = new ReassignPlan();
+    plan.setPartitions(partitionCount);
+    plan.setMovedReplicas(balancer.getMovedReplicas());
+    plan.setMovedBytes(balancer.getMovedBytes());
+    plan.setPlanMs(planMs);
+    plan.setBefore(
+        brokerLoads(replicas, sizes, rates, balancer.getLoadBefore(), brokerIds, brokerRacks));
+    plan.setAfter(
+        brokerLoads(assignment, sizes, rates, balancer.getLoadAfter(), brokerIds, brokerRacks));
+    plan.setCurrent(
+        toReassignmentJson(replicas, assignment, replicas, topics, partitionIds, brokerIds));
+    plan.setProposed(
+        toReassignmentJson(assignment, assignment, replicas, topics, partitionIds, brokerIds));
+    plan.setWarnings(warnings);
+    return plan;
+  }
+
+  /** The largest log size reported by the replicas of each partition. */
+  public Map<TopicPartition, Long> partitionSizes() {
+    return mergeLogSizes(loadSamples(kafkaAdminService.listBrokers(), new ArrayList<>()).values());
+  }
+
+  /** Like {@link #partitionSizes()}, but only from the samples at hand, however old. */
+  public Map<TopicPartition, Long> cachedPartitionSizes() {
+    return mergeLogSizes(loadSamples.values());
+  }
+
+  private static Map<TopicPartition, Long> mergeLogSizes(Collection<BrokerLoadSample> samples) {
+    Map<TopicPartition, Long> sizes = new HashMap<>();
+    for (BrokerLoadSample sample : samples) {
+      sample.getLogSizes().forEach((partition, size) -> sizes.merge(partition, size, Math::max));
+    }
+    return sizes;
+  }
+
+  /** Returns the load sample of every live broker, collecting the missing and stale ones. */
+  private Map<Integer, BrokerLoadSample> loadSamples(
+      List<BrokerInfo> brokers, List<String> warnings) {
+    long now = System.currentTimeMillis();
+    brokers
+        .parallelStream()
+        .filter(
+            broker -> {
+              BrokerLoadSample cached = loadSamples.get(broker.getId());
+              return cached == null || now - cached.getTimestamp() > loadSampleTtlMs;
+            })
+        .forEach(
+            broker -> {
+              BrokerLoadSample sample;
+              if (broker.getJmxPort() <= 0) {
+                sample = new BrokerLoadSample(broker.getId(), broker.getHost());
+                sample.setMsg("JMX is not enabled on the broker");
+              } else {
+                sample =
+                    collectorService.collectBrokerLoad(
+                        broker.getId(), broker.getHost() + ":" + broker.getJmxPort());
+              }
+              loadSamples.put(broker.getId(), sample);
+            });
+
+    Map<Integer, BrokerLoadSample> samples = new HashMap<>();
+    for (BrokerInfo broker : brokers) {
+      BrokerLoadSample sample = loadSamples.get(broker.getId());
+      if (sample.isCollected()) {
+        samples.put(broker.getId(), sample);
+      } else {
+        warnings.add(
+            "No load figures from broker " + broker.getId() + ", sizes and rates count as 0: "
+                + sample.getMsg());
+      }
+    }
+    return samples;
+  }
+
+  private List<BrokerLoad> brokerLoads(
+      int[][] assignment,
+      long[] sizes,
+      double[] rates,
+      double[] scores,
+      int[] brokerIds,
+      List<String> brokerRacks) {
+    List<BrokerLoad> loads = new ArrayList<>();
+    for (int b = 0; b < brokerIds.length; b++) {
+      BrokerLoad load = new BrokerLoad();
+      load.setId(brokerIds[b]);
+      load.setRack(brokerRacks.get(b));
+      load.setScore(scores[b]);
+      loads.add(load);
+    }
+    for (int p = 0; p < assignment.length; p++) {
+      int[] row = assignment[p];
+      for (int i = 0; i < row.length; i++) {
+        BrokerLoad load = loads.get(row[i]);
+        load.setReplicas(load.getReplicas() + 1);
+        load.setSizeBytes(load.getSizeBytes() + sizes[p]);
+        load.setBytesInRate(load.getBytesInRate() + rates[p]);
+        if (i == 0) {
+          load.setPreferredLeaders(load.getPreferredLeaders() + 1);
+        }
+      }
+    }
+    loads.sort(Comparator.comparingInt(BrokerLoad::getId));
+    return loads;
+  }
+
+  /** Lists the rows of the moved partitions in the json format of the reassign commands. */
+  private static String toReassignmentJson(
+      int[][] rows,
+      int[][] assignment,
+      int[][] replicas,
+      String[] topics,
+      int[] partitionIds,
+      int[] brokerIds) {
+    JsonArray partitions = new JsonArray();
+    for (int p = 0; p < rows.length; p++) {
+      if (assignment[p] == replicas[p]) {
+        continue;
+      }
+      JsonArray ids = new JsonArray();
+      for (int b : rows[p]) {
+        ids.add(brokerIds[b]);
+      }
+      JsonObject partition = new JsonObject();
+      partition.addProperty("topic", topics[p]);
+      partition.addProperty("partition", partitionIds[p]);
+      partition.add("replicas", ids);
+      partitions.add(partition);
+    }
+    JsonObject json = new JsonObject();
+    json.addProperty("version", 1);
+    json.add("partitions", partitions);
+    return json.toString();
+  }
+}
@@ -0,0 +1,529 @@
+package org.gnuhpc.bigdata.service;
+
+import static java.util.stream.Collectors.toList;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import kafka.api.PartitionOffsetRequestInfo;
+import kafka.api.Request;
+import kafka.common.TopicAndPartition;
+import kafka.javaapi.OffsetRequest;
+import kafka.javaapi.OffsetResponse;
+import kafka.utils.ZkUtils;
+import lombok.extern.log4j.Log4j;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.NodeCache;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.protocol.Errors;
+import org.gnuhpc.bigdata.componet.DownstreamMetrics;
+import org.gnuhpc.bigdata.componet.MetadataCache;
+import org.gnuhpc.bigdata.constant.ReassignmentState;
+import org.gnuhpc.bigdata.model.BrokerInfo;
+import org.gnuhpc.bigdata.model.PartitionProgress;
+import org.gnuhpc.bigdata.model.ReassignmentProgress;
+import org.gnuhpc.bigdata.model.TopicState;
+import org.gnuhpc.bigdata.utils.ZookeeperUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Tracks the partition reassignment in {@code /admin/reassign_partitions}.
+ *
+ * <p>The set of partitions comes from a watch on that node: a partition appears when the
+ * reassignment starts and the controller removes it once it completed. Which new replicas are
+ * still catching up follows the ISR changes seen by the {@link MetadataCache}. Both are applied as
+ * they happen, nothing is recomputed per request.
+ *
+ * <p>Only the copied bytes need the brokers. When progress is read and the last refresh is older
+ * than {@code kafka.reassign.progress-refresh-ms}, the log end offsets of the catching up replicas
+ * and the offset range of their leaders are fetched with one request per broker, on a pool of
+ * {@code kafka.reassign.offset-threads} threads since the requests block. The share of the leader
+ * log a replica has, times the partition size from the JMX load samples, gives its copied bytes.
+ * The ETA divides the bytes left by a moving average of the copy rate.
+ */
+@Service
+@Log4j
+public class ReassignmentTracker implements MetadataCache.TopicChangeListener {
+  private static final String CLIENT_ID = "kafka-rest-reassignment-tracker";
+  private static final double RATE_SMOOTHING = 0.3;
+
+  @Autowired private ZookeeperUtils zookeeperUtils;
+
+  @Autowired private MetadataCache metadataCache;
+
+  @Autowired private DownstreamMetrics downstreamMetrics;
+
+  @Autowired private KafkaAdminService kafkaAdminService;
+
+  @Autowired private ReassignmentPlanner reassignmentPlanner;
+
+  @Value("${kafka.reassign.progress-refresh-ms:5000}")
+  private long progressRefreshMs;
+
+  @Value("${kafka.reassign.offset-threads:8}")
+  private int offsetThreads;
+
+  private final JsonParser jsonParser = new JsonParser();
+  private final Map<String, Map<Integer, PartitionProgress>> partitions = new HashMap<>();
+  private NodeCache reassignCache;
+  private ExecutorService offsetExecutor;
+  private boolean inProgress;
+  private long startTime;
+  private long lastRefresh;
+  private long lastSampleTime;
+  private long lastCopiedBytes;
+  private double bytesPerSec;
+
+  @PostConstruct
+  public void start() throws Exception {
+    offsetExecutor = Executors.newFixedThreadPool(offsetThreads);
+    reassignCache =
+        new NodeCache(zookeeperUtils.getCuratorClient(), ZkUtils.ReassignPartitionsPath());
+    reassignCache.getListenable().addListener(() -> onReassignmentChanged());
+    reassignCache.start(true);
+    metadataCache.addListener(this);
+    onReassignmentChanged();
+  }
+
+  @PreDestroy
+  public void close() throws Exception {
+    if (reassignCache != null) {
+      reassignCache.close();
+    }
+    if (offsetExecutor != null) {
+      offsetExecutor.shutdownNow();
+    }
+  }
+
+  /** Applies an update of the reassignment node, runs on the ZooKeeper event thread. */
+  private synchronized void onReassignmentChanged() {
+    ChildData data = reassignCache.getCurrentData();
+    Map<TopicPartition, List<Integer>> targets =
+        data == null || data.getData() == null ? new HashMap<>() : parseTargets(data.getData());
+    long now = System.currentTimeMillis();
+
+    if (!targets.isEmpty() && !inProgress) {
+      // A new reassignment, forget the previous one
+      partitions.clear();
+      inProgress = true;
+      startTime = now;
+      lastRefresh = 0;
+      lastSampleTime = 0;
+      lastCopiedBytes = 0;
+      bytesPerSec = 0;
+    }
+    Map<TopicPartition, Long> sizes = null;
+    for (Map.Entry<TopicPartition, List<Integer>> entry : targets.entrySet()) {
+      TopicPartition topicPartition = entry.getKey();
+      PartitionProgress progress = get(topicPartition);
+      if (progress != null && progress.getState() == ReassignmentState.RUNNING) {
+        continue;
+      }
+      if (sizes == null) {
+        sizes = reassignmentPlanner.cachedPartitionSizes();
+      }
+      progress = new PartitionProgress();
+      progress.setTopic(topicPartition.topic());
+      progress.setPartition(topicPartition.partition());
+      progress.setState(ReassignmentState.RUNNING);
+      progress.setTargetReplicas(entry.getValue());
+      progress.setStartTime(now);
+      int[] isr = isr(topicPartition);
+      List<Integer> newReplicas =
+          entry.getValue().stream().filter(id -> !contains(isr, id)).collect(toList());
+      progress.setNewReplicas(newReplicas);
+      progress.setCatchingUp(new ArrayList<>(newReplicas));
+      progress.setBytesToCopy(newReplicas.size() * sizes.getOrDefault(topicPartition, 0L));
+      partitions
+          .computeIfAbsent(topicPartition.topic(), topic -> new HashMap<>())
+          .put(topicPartition.partition(), progress);
+    }
+    for (Map<Integer, PartitionProgress> topicPartitions : partitions.values()) {
+      for (PartitionProgress progress : topicPartitions.values()) {
+        TopicPartition topicPartition =
+            new TopicPartition(progress.getTopic(), progress.getPartition());
+        if (progress.getState() == ReassignmentState.RUNNING
+            && !targets.containsKey(topicPartition)) {
+          complete(progress, now);
+        }
+      }
+    }
+    inProgress = !targets.isEmpty();
+  }
+
+  /** Follows the ISR of the partitions being reassigned, runs on the ZooKeeper event thread. */
+  @Override
+  public synchronized void topicChanged(String topic, int partition) {
+    if (topic == null) {
+      partitions.values().forEach(byPartition -> byPartition.values().forEach(this::updateIsr));
+      return;
+    }
+    Map<Integer, PartitionProgress> topicPartitions = partitions.get(topic);
+    if (topicPartitions == null) {
+      return;
+    }
+    if (partition == MetadataCache.ALL_PARTITIONS) {
+      topicPartitions.values().forEach(this::updateIsr);
+    } else if (topicPartitions.containsKey(partition)) {
+      updateIsr(topicPartitions.get(partition));
+    }
+  }
+
+  public ReassignmentProgress getProgress(boolean withPartitions) {
+    boolean refresh;
+    synchronized (this) {
+      refresh = inProgress && System.currentTimeMillis() - lastRefresh >= progressRefreshMs;
+      if (refresh) {
+        lastRefresh = System.currentTimeMillis();
+      }
+    }
+    if (refresh) {
+      refreshCopiedBytes();
+    }
+
+    synchronized (this) {
+      ReassignmentProgress report = new ReassignmentProgress();
+      report.setInProgress(inProgress);
+      report.setStartTime(startTime);
+      List<PartitionProgress> all = new ArrayList<>();
+      partitions.values().forEach(topicPartitions -> all.addAll(topicPartitions.values()));
+      long bytesToCopy = 0;
+      long copiedBytes = 0;
+      int completed = 0;
+      for (PartitionProgress progress : all) {
+        bytesToCopy += progress.getBytesToCopy();
+        copiedBytes += progress.getCopiedBytes();
+        if (progress.getState() == ReassignmentState.COMPLETED) {
+          completed++;
+        }
+      }
+      report.setCompleted(completed);
+      report.setRemaining(all.size() - completed);
+      report.setBytesToCopy(bytesToCopy);
+      report.setCopiedBytes(copiedBytes);
+      report.setBytesPerSec(bytesPerSec);
+      report.setEtaMs(
+          !inProgress ? 0
+              : bytesPerSec > 0 ? (long) ((bytesToCopy - copiedBytes) / bytesPerSec * 1000) : -1);
+      if (withPartitions) {
+        all.sort(
+            Comparator.comparing(PartitionProgress::getState)
+                .thenComparing(PartitionProgress::getTopic)
+                .thenComparingInt(PartitionProgress::getPartition));
+        report.setPartitions(all);
+      }
+      return report;
+    }
+  }
+
+  /**
+   * Fetches the log end offsets of the replicas still catching up and the offset range of their
+   * leaders, without holding the lock during the requests. Partition sizes the planner has no
+   * sample of are sampled from the brokers here, off the ZooKeeper event thread.
+   */
+  private void refreshCopiedBytes() {
+    List<PartitionProgress> catchingUp = new ArrayList<>();
+    synchronized (this) {
+      partitions.values().forEach(
+          topicPartitions ->
+              topicPartitions
+                  .values()
+                  .stream()
+                  .filter(progress -> !progress.getCatchingUp().isEmpty())
+                  .forEach(catchingUp::add));
+    }
+    Map<Integer, List<TopicAndPartition>> byFollower = new HashMap<>();
+    Map<Integer, List<TopicAndPartition>> byLeader = new HashMap<>();
+    for (PartitionProgress progress : catchingUp) {
+      TopicAndPartition topicAndPartition =
+          new TopicAndPartition(progress.getTopic(), progress.getPartition());
+      TopicState state = metadataCache.getTopicState(progress.getTopic());
+      if (state == null || progress.getPartition() >= state.getPartitionCount()) {
+        continue;
+      }
+      int leader = state.getLeaders()[progress.getPartition()];
+      if (leader == TopicState.NO_LEADER) {
+        continue;
+      }
+      byLeader.computeIfAbsent(leader, id -> new ArrayList<>()).add(topicAndPartition);
+      for (int follower : progress.getCatchingUp()) {
+        byFollower.computeIfAbsent(follower, id -> new ArrayList<>()).add(topicAndPartition);
+      }
+    }
+
+    Map<Integer, BrokerInfo> brokers = new HashMap<>();
+    if (!catchingUp.isEmpty()) {
+      kafkaAdminService.listBrokers().forEach(broker -> brokers.put(broker.getId(), broker));
+    }
+    Map<Integer, Map<TopicAndPartition, long[]>> leaderRanges =
+        fetchPerBroker(byLeader, brokers, true);
+    Map<Integer, Map<TopicAndPartition, long[]>> followerEnds =
+        fetchPerBroker(byFollower, brokers, false);
+    Map<TopicPartition, Long> sizes = reassignmentPlanner.cachedPartitionSizes();
+    boolean sizesMissing =
+        catchingUp
+            .stream()
+            .anyMatch(
+                progress ->
+                    !sizes.containsKey(
+                        new TopicPartition(progress.getTopic(), progress.getPartition())));
+    if (sizesMissing) {
+      // Nothing sampled the brokers lately, e.g. for a reassignment not planned here
+      try {
+        sizes.putAll(reassignmentPlanner.partitionSizes());
+      } catch (Exception e) {
+        log.warn("Could not sample the partition sizes of the reassignment", e);
+      }
+    }
+
+    synchronized (this) {
+      long now = System.currentTimeMillis();
+      for (PartitionProgress progress : catchingUp) {
+        TopicAndPartition topicAndPartition =
+            new TopicAndPartition(progress.getTopic(), progress.getPartition());
+        TopicState state = metadataCache.getTopicState(progress.getTopic());
+        long[] range =
+            state == null || progress.getPartition() >= state.getPartitionCount()
+                ? null
+                : leaderRanges
+                    .getOrDefault(state.getLeaders()[progress.getPartition()], new HashMap<>())
+                    .get(topicAndPartition);
+        if (range == null) {
+          continue;
+        }
+        for (int follower : progress.getCatchingUp()) {
+          long[] end = followerEnds.getOrDefault(follower, new HashMap<>()).get(topicAndPartition);
+          if (end != null) {
+            double share =
+                range[1] <= range[0] ? 1 : (double) (end[1] - range[0]) / (range[1] - range[0]);
+            progress.getReplicaProgress().put(follower, Math.max(0, Math.min(1, share)));
+          }
+        }
+        TopicPartition topicPartition =
+            new TopicPartition(progress.getTopic(), progress.getPartition());
+        long size = sizes.getOrDefault(topicPartition, 0L);
+        if (size > 0) {
+          progress.setBytesToCopy(progress.getNewReplicas().size() * size);
+        }
+        updateCopiedBytes(progress);
+      }
+
+      long copiedBytes = 0;
+      for (Map<Integer, PartitionProgress> topicPartitions : partitions.values()) {
+        for (PartitionProgress progress : topicPartitions.values()) {
+          copiedBytes += progress.getCopiedBytes();
+        }
+      }
+      if (lastSampleTime > 0 && now > lastSampleTime) {
+        double rate = (copiedBytes - lastCopiedBytes) * 1000.0 / (now - lastSampleTime);
+        bytesPerSec =
+            bytesPerSec == 0 ? rate : RATE_SMOOTHING * rate + (1 - RATE_SMOOTHING) * bytesPerSec;
+      }
+      lastCopiedBytes = copiedBytes;
+      lastSampleTime = now;
+    }
+  }
+
+  /**
+   * Fetches from every broker the offsets of the given partitions, the log start and end offset
+   * when withStart is set and the log end offset only otherwise. Brokers that fail are left out.
+   */
+  private Map<Integer, Map<TopicAndPartition, long[]>> fetchPerBroker(
+      Map<Integer, List<TopicAndPartition>> requests,
+      Map<Integer, BrokerInfo> brokers,
+      boolean withStart) {
+    Map<Integer, Map<TopicAndPartition, long[]>> result = new ConcurrentHashMap<>();
+    List<Future<?>> futures = new ArrayList<>();
+    for (Map.Entry<Integer, List<TopicAndPartition>> entry : requests.entrySet()) {
+      BrokerInfo broker = brokers.get(entry.getKey());
+      if (broker == null) {
+        continue;
+      }
+      futures.add(
+          offsetExecutor.submit(
+              () -> {
+                try {
+                  result.put(
+                      entry.getKey(),
+                      downstreamMetrics.recordCall(
+                          DownstreamMetrics.BROKER_OFFSET,
+                          () -> fetchOffsets(broker, entry.getValue(), withStart)));
+                } catch (Exception e) {
+                  log.warn("Could not fetch log end offsets from broker " + broker.getId(), e);
+                }
+              }));
+    }
+    for (Future<?> future : futures) {
+      try {
+        future.get();
+      } catch (InterruptedException e) {
+        futures.forEach(pending -> pending.cancel(true));
+        Thread.currentThread().interrupt();
+        break;
+      } catch (ExecutionException e) {
+        log.warn("Could not fetch log end offsets", e.getCause());
+      }
+    }
+    return result;
+  }
+
+  private Map<TopicAndPartition, long[]> fetchOffsets(
+      BrokerInfo broker, Collection<TopicAndPartition> partitions, boolean withStart) {
+    kafka.consumer.SimpleConsumer consumer =
+        new kafka.consumer.SimpleConsumer(
+            broker.getHost(), broker.getPort(), 10000, 1024, CLIENT_ID);
+    try {
+      Map<TopicAndPartition, Long> end =
+          fetchOffsets(consumer, partitions, kafka.api.OffsetRequest.LatestTime());
+      Map<TopicAndPartition, Long> start =
+          withStart
+              ? fetchOffsets(consumer, partitions, kafka.api.OffsetRequest.EarliestTime())
+              : end;
+      Map<TopicAndPartition, long[]> offsets = new HashMap<>();
+      end.forEach(
+          (topicAndPartition, endOffset) -> {
+            Long startOffset = start.get(topicAndPartition);
+            if (startOffset != null) {
+              offsets.put(topicAndPartition, new long[] {startOffset, endOffset});
+            }
+          });
+      return offsets;
+    } finally {
+      consumer.close();
+    }
+  }
+
+  private Map<TopicAndPartition, Long> fetchOffsets(
+      kafka.consumer.SimpleConsumer consumer, Collection<TopicAndPartition> partitions, long time) {
+    PartitionOffsetRequestInfo requestInfo = new PartitionOffsetRequestInfo(time, 1);
+    Map<TopicAndPartition, PartitionOffsetRequestInfo> requestInfos = new HashMap<>();
+    partitions.forEach(topicAndPartition -> requestInfos.put(topicAndPartition, requestInfo));
+    kafka.api.OffsetRequest request =
+        new OffsetRequest(requestInfos, kafka.api.OffsetRequest.CurrentVersion(), CLIENT_ID)
+            .underlying();
+    // Brokers only answer offset requests for follower replicas to debugging clients
+    OffsetResponse response =
+        new OffsetResponse(
+            consumer.getOffsetsBefore(
+                new kafka.api.OffsetRequest(
+                    request.requestInfo(),
+                    request.versionId(),
+                    request.correlationId(),
+                    request.clientId(),
+                    Request.DebuggingConsumerId())));
+
+    Map<TopicAndPartition, Long> offsets = new HashMap<>();
+    for (TopicAndPartition topicAndPartition : partitions) {
+      short errorCode =
+          response.errorCode(topicAndPartition.topic(), topicAndPartition.partition());
+      long[] partitionOffsets =
+          response.offsets(topicAndPartition.topic(), topicAndPartition.partition());
+      if (errorCode == Errors.NONE.code() && partitionOffsets.length > 0) {
+        offsets.put(topicAndPartition, partitionOffsets[0]);
+      }
+    }
+    return offsets;
+  }
+
+  private void updateIsr(PartitionProgress progress) {
+    if (progress.getState() != ReassignmentState.RUNNING) {
+      return;
+    }
+    int[] isr = isr(new TopicPartition(progress.getTopic(), progress.getPartition()));
+    List<Integer> catchingUp =
+        progress.getNewReplicas().stream().filter(id -> !contains(isr, id)).collect(toList());
+    progress.setCatchingUp(catchingUp);
+    for (int replica : progress.getNewReplicas()) {
+      if (!catchingUp.contains(replica)) {
+        progress.getReplicaProgress().put(replica, 1.0);
+      }
+    }
+    updateCopiedBytes(progress);
+  }
+
+  private void complete(PartitionProgress progress, long now) {
+    progress.setState(ReassignmentState.COMPLETED);
+    progress.setEndTime(now);
+    progress.setCatchingUp(new ArrayList<>());
+    progress.getNewReplicas().forEach(replica -> progress.getReplicaProgress().put(replica, 1.0));
+    progress.setCopiedBytes(progress.getBytesToCopy());
+  }
+
+  private static void updateCopiedBytes(PartitionProgress progress) {
+    if (progress.getNewReplicas().isEmpty()) {
+      return;
+    }
+    long replicaBytes = progress.getBytesToCopy() / progress.getNewReplicas().size();
+    double copied = 0;
+    for (int replica : progress.getNewReplicas()) {
+      copied += progress.getReplicaProgress().getOrDefault(replica, 0.0) * replicaBytes;
+    }
+    progress.setCopiedBytes((long) copied);
+  }
+
+  private PartitionProgress get(TopicPartition topicPartition) {
+    Map<Integer, PartitionProgress> topicPartitions = partitions.get(topicPartition.topic());
+    return topicPartitions == null ? null : topicPartitions.get(topicPartition.partition());
+  }
+
+  private int[] isr(TopicPartition topicPartition) {
+    TopicState state = metadataCache.getTopicState(topicPartition.topic());
+    if (state == null || topicPartition.partition() >= state.getPartitionCount()) {
+      return new int[0];
+    }
+    return state.getIsr()[topicPartition.partition()];
+  }
+
+  private Map<TopicPartition, List<Integer>> parseTargets(byte[] data) {
+    Map<TopicPartition, List<Integer>> targets = new HashMap<>();
+    try {
+      // {"version":1,"partitions":[{"topic":"t","partition":0,"replicas":[1,2]}]}
+      JsonArray array =
+          jsonParser
+              .parse(new String(data, StandardCharsets.UTF_8))
+              .getAsJsonObject()
+              .getAsJsonArray("partitions");
+      if (array == null) {
+        return targets;
+      }
+      for (JsonElement element : array) {
+        JsonObject partition = element.getAsJsonObject();
+        List<Integer> replicas = new ArrayList<>();
+        partition.getAsJsonArray("replicas").forEach(replica -> replicas.add(replica.getAsInt()));
+        targets.put(
+            new TopicPartition(
+                partition.get("topic").getAsString(), partition.get("partition").getAsInt()),
+            replicas);
+      }
+    } catch (RuntimeException e) {
+      log.warn("Could not parse " + ZkUtils.ReassignPartitionsPath(), e);
+    }
+    return targets;
+  }
+
+  private static boolean contains(int[] replicas, int id) {
+    for (int replica : replicas) {
+      if (replica == id) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
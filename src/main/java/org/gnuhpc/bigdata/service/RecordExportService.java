@@ -0,0 +1,430 @@
+package org.gnuhpc.bigdata.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import lombok.extern.log4j.Log4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.ApiException;
+import org.apache.kafka.common.record.KafkaLZ4BlockInputStream;
+import org.apache.kafka.common.record.KafkaLZ4BlockOutputStream;
+import org.gnuhpc.bigdata.constant.ExportCompression;
+import org.gnuhpc.bigdata.constant.ExportFormat;
+import org.gnuhpc.bigdata.constant.RecordEncoding;
+import org.gnuhpc.bigdata.model.ExportedRecord;
+import org.gnuhpc.bigdata.model.ImportResult;
+import org.gnuhpc.bigdata.model.TopicState;
+import org.gnuhpc.bigdata.utils.BrowseConsumer;
+import org.gnuhpc.bigdata.utils.KafkaUtils;
+import org.gnuhpc.bigdata.utils.NdjsonWriter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Exports offset ranges of a partition to a stream and imports such exports into a topic.
+ *
+ * <p>An export is NDJSON of {@link ExportedRecord}s, or a binary file of the {@link #MAGIC}
+ * header followed by records of partition (int), offset (long), timestamp (long) and key and
+ * value as a length (int, -1 for null) and the bytes. Either can be compressed with gzip or with
+ * LZ4 frames. Records are written as they are fetched, so the memory an export holds is one fetch
+ * and the stream buffers, whatever the size of the range. An export reads with its own consumer,
+ * so a long download neither holds a pooled browse consumer nor evicts its cached batch.
+ *
+ * <p>An import sends the records through the shared bulk producer of {@link KafkaUtils}, whose
+ * buffer bounds the records in flight and blocks the reader while the brokers catch up.
+ */
+@Log4j
+@Service
+public class RecordExportService {
+  /** The first bytes of a binary export, the last one is the format version. */
+  public static final byte[] MAGIC = {'K', 'R', 'X', 1};
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  @Autowired private KafkaUtils kafkaUtils;
+
+  @Autowired private MessageBrowseService messageBrowseService;
+
+  @Autowired private ObjectMapper objectMapper;
+
+  @Value("${kafka.export.fetch-bytes:4194304}")
+  private int fetchBytes;
+
+  @Value("${kafka.export.max-records:100000000}")
+  private long maxRecords;
+
+  @Value("${kafka.import.ack-timeout-ms:120000}")
+  private long ackTimeoutMs;
+
+  @Value("${kafka.browse.poll-timeout-ms:3000}")
+  private long pollTimeoutMs;
+
+  /** Writes one record of an export. */
+  private interface RecordWriter {
+    void write(ConsumerRecord<byte[], byte[]> record) throws IOException;
+  }
+
+  /**
+   * Validates an export before {@link #export}, so that a streamed response can still be failed
+   * with an error status.
+   */
+  public void checkExport(String topic, int partition, long count) {
+    if (count <= 0 || count > maxRecords) {
+      throw new ApiException("count must be between 1 and " + maxRecords);
+    }
+    messageBrowseService.checkRange(topic, partition, 1, 1);
+  }
+
+  /**
+   * Writes the records from startOffset, or the beginning of the partition, up to endOffset
+   * exclusive, or the end seen when the export started, at most count records. Closes out.
+   *
+   * @return the number of records written
+   */
+  public long export(
+      String topic,
+      int partition,
+      long startOffset,
+      Long endOffset,
+      long count,
+      ExportFormat format,
+      ExportCompression compression,
+      RecordEncoding encoding,
+      OutputStream out)
+      throws IOException {
+    checkExport(topic, partition, count);
+    TopicPartition topicPartition = new TopicPartition(topic, partition);
+    BrowseConsumer consumer =
+        new BrowseConsumer(kafkaUtils.createBrowseConsumer(fetchBytes), topicPartition);
+    long written = 0;
+    try (OutputStream compressed = compress(out, compression)) {
+      long nextOffset = Math.max(startOffset, consumer.beginningOffset());
+      long stopOffset =
+          endOffset == null ? consumer.endOffset() : Math.min(endOffset, consumer.endOffset());
+      RecordWriter writer;
+      Runnable flush;
+      if (format == ExportFormat.BINARY) {
+        DataOutputStream data = new DataOutputStream(compressed);
+        data.write(MAGIC);
+        writer = record -> writeBinary(data, record);
+        flush = () -> {};
+      } else {
+        NdjsonWriter ndjson = new NdjsonWriter(objectMapper, compressed);
+        writer = record -> ndjson.append(toExported(record, encoding));
+        flush = ndjson::flush;
+      }
+      read:
+      while (nextOffset < stopOffset && written < count) {
+        List<ConsumerRecord<byte[], byte[]>> batch = consumer.fetch(nextOffset, pollTimeoutMs);
+        if (batch.isEmpty()) {
+          log.warn("No records of " + topicPartition + " at offset " + nextOffset + " within "
+              + pollTimeoutMs + " ms, ending the export");
+          break;
+        }
+        for (ConsumerRecord<byte[], byte[]> record : batch) {
+          if (record.offset() >= stopOffset || written == count) {
+            break read;
+          }
+          writer.write(record);
+          written++;
+          nextOffset = record.offset() + 1;
+        }
+        flush.run();
+      }
+      log.info("Exported " + written + " records of " + topicPartition + " up to offset "
+          + nextOffset);
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    } finally {
+      consumer.close();
+    }
+    return written;
+  }
+
+  /**
+   * Replays an export into the topic. Records that cannot be parsed or decoded count as failed and
+   * the import goes on with the next one, except in a binary export, which cannot be read past a
+   * broken record. The result always tells how many records were written.
+   *
+   * @param keepPartitions write every record to the partition it was exported from, instead of
+   *     leaving the partition to the partitioner
+   * @param keepTimestamps write the exported timestamps instead of the time of the import
+   */
+  public ImportResult importRecords(
+      String topic,
+      InputStream in,
+      ExportFormat format,
+      ExportCompression compression,
+      RecordEncoding encoding,
+      boolean keepPartitions,
+      boolean keepTimestamps)
+      throws IOException {
+    TopicState state = messageBrowseService.checkTopic(topic);
+    long start = System.currentTimeMillis();
+    Progress progress = new Progress();
+
+    try (InputStream decompressed = decompress(in, compression)) {
+      if (format == ExportFormat.BINARY) {
+        DataInputStream data = new DataInputStream(decompressed);
+        byte[] magic = new byte[MAGIC.length];
+        try {
+          data.readFully(magic);
+        } catch (EOFException e) {
+          throw new ApiException("The file is not a binary export, it is too short");
+        }
+        if (!Arrays.equals(magic, MAGIC)) {
+          throw new ApiException("The file is not a binary export of a supported version");
+        }
+        ExportedRecord exported = new ExportedRecord();
+        while (true) {
+          int partition;
+          try {
+            partition = data.readInt();
+          } catch (EOFException e) {
+            break;
+          }
+          progress.read++;
+          try {
+            exported.setPartition(partition);
+            exported.setOffset(data.readLong());
+            exported.setTimestamp(data.readLong());
+            byte[] key = readBytes(data);
+            byte[] value = readBytes(data);
+            send(topic, state, exported, key, value, keepPartitions, keepTimestamps, progress);
+          } catch (EOFException e) {
+            progress.fail("Record " + progress.read + " is cut off, the export is incomplete");
+            break;
+          }
+        }
+      } else {
+        BufferedReader reader =
+            new BufferedReader(new InputStreamReader(decompressed, StandardCharsets.UTF_8));
+        int lineNumber = 0;
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+          lineNumber++;
+          if (line.trim().isEmpty()) {
+            continue;
+          }
+          progress.read++;
+          try {
+            ExportedRecord exported = objectMapper.readValue(line, ExportedRecord.class);
+            byte[] key = decode(exported.getKey(), encoding);
+            byte[] value = decode(exported.getValue(), encoding);
+            send(topic, state, exported, key, value, keepPartitions, keepTimestamps, progress);
+          } catch (IOException | ApiException e) {
+            progress.fail("Invalid record on line " + lineNumber + ": " + e.getMessage());
+          }
+        }
+      }
+    } catch (IOException e) {
+      // The upload broke off or is not compressed as stated, report what was written
+      progress.fail("Reading the import failed: " + e.getMessage());
+    }
+    progress.awaitAcks(ackTimeoutMs);
+
+    ImportResult result = new ImportResult();
+    result.setTopic(topic);
+    result.setRead(progress.read);
+    result.setWritten(progress.written);
+    result.setFailed(progress.failed);
+    result.setBytes(progress.bytes);
+    result.setFirstError(progress.firstError);
+    result.setElapsedMs(System.currentTimeMillis() - start);
+    log.info("Imported " + result);
+    return result;
+  }
+
+  /**
+   * Counts the records of one import. The shared producer is not flushed at the end, as that
+   * would wait for the records of everyone else too; the import waits for its own acks instead.
+   */
+  private static class Progress {
+    /** Only touched by the reading thread. */
+    private long read;
+    private long bytes;
+    private long sent;
+    private long acked;
+    private long written;
+    private long failed;
+    private String firstError;
+
+    synchronized void fail(String error) {
+      failed++;
+      if (firstError == null) {
+        firstError = error;
+      }
+    }
+
+    synchronized void sent() {
+      sent++;
+    }
+
+    synchronized void acked(Exception exception) {
+      acked++;
+      if (exception == null) {
+        written++;
+      } else {
+        fail(exception.getMessage());
+      }
+      notifyAll();
+    }
+
+    /** Waits for the acks of all records sent, those missing at the deadline count as failed. */
+    synchronized void awaitAcks(long timeoutMs) {
+      long deadline = System.currentTimeMillis() + timeoutMs;
+      try {
+        while (acked < sent) {
+          long left = deadline - System.currentTimeMillis();
+          if (left <= 0) {
+            long missing = sent - acked;
+            failed += missing;
+            if (firstError == null) {
+              firstError = missing + " records were not acknowledged within " + timeoutMs + " ms";
+            }
+            return;
+          }
+          wait(left);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new ApiException("Interrupted while waiting for the import to be written");
+      }
+    }
+  }
+
+  private void send(
+      String topic,
+      TopicState state,
+      ExportedRecord exported,
+      byte[] key,
+      byte[] value,
+      boolean keepPartitions,
+      boolean keepTimestamps,
+      Progress progress) {
+    progress.bytes += (key == null ? 0 : key.length) + (value == null ? 0 : value.length);
+    Integer partition = keepPartitions ? exported.getPartition() : null;
+    if (partition != null && (partition < 0 || partition >= state.getPartitionCount())) {
+      progress.fail("Partition " + partition + " does not exist in topic " + topic);
+      return;
+    }
+    Long timestamp = keepTimestamps ? exported.getTimestamp() : null;
+    if (timestamp != null && timestamp < 0) {
+      // Exported from message format 0, which has no timestamps
+      timestamp = null;
+    }
+    progress.sent();
+    try {
+      kafkaUtils
+          .getBulkProducer()
+          .send(
+              new ProducerRecord<>(topic, partition, timestamp, key, value),
+              (metadata, exception) -> progress.acked(exception));
+    } catch (RuntimeException e) {
+      // Thrown instead of handed to the callback, e.g. once the producer is closed
+      progress.acked(e);
+    }
+  }
+
+  private static void writeBinary(DataOutputStream data, ConsumerRecord<byte[], byte[]> record)
+      throws IOException {
+    data.writeInt(record.partition());
+    data.writeLong(record.offset());
+    data.writeLong(record.timestamp());
+    writeBytes(data, record.key());
+    writeBytes(data, record.value());
+  }
+
+  private static void writeBytes(DataOutputStream data, byte[] bytes) throws IOException {
+    if (bytes == null) {
+      data.writeInt(-1);
+    } else {
+      data.writeInt(bytes.length);
+      data.write(bytes);
+    }
+  }
+
+  private static byte[] readBytes(DataInputStream data) throws IOException {
+    int length = data.readInt();
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    data.readFully(bytes);
+    return bytes;
+  }
+
+  private static ExportedRecord toExported(
+      ConsumerRecord<byte[], byte[]> record, RecordEncoding encoding) {
+    return new ExportedRecord(
+        record.partition(),
+        record.offset(),
+        record.timestamp(),
+        encode(record.key(), encoding),
+        encode(record.value(), encoding));
+  }
+
+  private static String encode(byte[] bytes, RecordEncoding encoding) {
+    if (bytes == null) {
+      return null;
+    }
+    return encoding == RecordEncoding.UTF8
+        ? new String(bytes, StandardCharsets.UTF_8)
+        : Base64.getEncoder().encodeToString(bytes);
+  }
+
+  /** The bytes of a key or value given as text in the encoding. */
+  static byte[] decode(String text, RecordEncoding encoding) {
+    if (text == null) {
+      return null;
+    }
+    if (encoding == RecordEncoding.UTF8) {
+      return text.getBytes(StandardCharsets.UTF_8);
+    }
+    try {
+      return Base64.getDecoder().decode(text);
+    } catch (IllegalArgumentException e) {
+      throw new ApiException("Invalid base64: " + e.getMessage());
+    }
+  }
+
+  private static OutputStream compress(OutputStream out, ExportCompression compression)
+      throws IOException {
+    switch (compression) {
+      case GZIP:
+        return new GZIPOutputStream(out, BUFFER_SIZE);
+      case LZ4:
+        return new BufferedOutputStream(new KafkaLZ4BlockOutputStream(out), BUFFER_SIZE);
+      default:
+        return new BufferedOutputStream(out, BUFFER_SIZE);
+    }
+  }
+
+  private static InputStream decompress(InputStream in, ExportCompression compression)
+      throws IOException {
+    switch (compression) {
+      case GZIP:
+        return new GZIPInputStream(in, BUFFER_SIZE);
+      case LZ4:
+        return new KafkaLZ4BlockInputStream(in);
+      default:
+        return in;
+    }
+  }
+}
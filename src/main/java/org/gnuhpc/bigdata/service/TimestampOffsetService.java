@@ -0,0 +1,198 @@
+package org.gnuhpc.bigdata.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.ApiException;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.gnuhpc.bigdata.model.TopicState;
+import org.gnuhpc.bigdata.utils.BrowseConsumer;
+import org.gnuhpc.bigdata.utils.KafkaUtils;
+import org.gnuhpc.bigdata.utils.SparseTimeIndex;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Finds the first offset of a partition whose record has a timestamp at or after a given time.
+ * The brokers of 0.10.0 have no time index to ask, so the offset is found by a binary search over
+ * the records: every probe is one fetch through the pooled browse consumers, and the records of
+ * that fetch narrow the range on both sides. Once the range is down to
+ * {@code kafka.time-index.scan-records} it is read through.
+ *
+ * <p>The probed records are kept in a {@link SparseTimeIndex} per partition, so later lookups
+ * start from a range the earlier ones narrowed already, and the index follows the partition as
+ * it grows and as retention deletes from its start. The partitions of a topic are resolved in
+ * parallel.
+ */
+@Log4j
+@Service
+public class TimestampOffsetService {
+  @Autowired private KafkaUtils kafkaUtils;
+
+  @Autowired private MessageBrowseService messageBrowseService;
+
+  @Value("${kafka.time-index.max-partitions:10000}")
+  private int maxPartitions;
+
+  @Value("${kafka.time-index.max-entries:1024}")
+  private int maxEntries;
+
+  @Value("${kafka.time-index.scan-records:500}")
+  private int scanRecords;
+
+  @Value("${kafka.time-index.threads:8}")
+  private int threads;
+
+  @Value("${kafka.browse.poll-timeout-ms:3000}")
+  private long pollTimeoutMs;
+
+  private Cache<TopicPartition, SparseTimeIndex> indexes;
+  private ExecutorService executor;
+
+  @PostConstruct
+  public void start() {
+    indexes = CacheBuilder.newBuilder().maximumSize(maxPartitions).build();
+    executor = Executors.newFixedThreadPool(threads);
+  }
+
+  @PreDestroy
+  public void stop() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * The offset of the first record at or after the timestamp, the end offset of the partition if
+   * there is none.
+   */
+  public long resolve(String topic, int partition, long timestamp) {
+    TopicState state = messageBrowseService.checkTopic(topic);
+    if (partition < 0 || partition >= state.getPartitionCount()) {
+      throw new ApiException("Partition " + partition + " of topic " + topic + " does not exist");
+    }
+    checkTimestamp(timestamp);
+    return search(new TopicPartition(topic, partition), timestamp);
+  }
+
+  /** {@link #resolve(String, int, long)} for every partition of the topic. */
+  public Map<Integer, Long> resolve(String topic, long timestamp) {
+    TopicState state = messageBrowseService.checkTopic(topic);
+    checkTimestamp(timestamp);
+    List<Future<Long>> futures = new ArrayList<>();
+    for (int partition = 0; partition < state.getPartitionCount(); partition++) {
+      TopicPartition topicPartition = new TopicPartition(topic, partition);
+      futures.add(executor.submit(() -> search(topicPartition, timestamp)));
+    }
+    Map<Integer, Long> offsets = new LinkedHashMap<>();
+    try {
+      for (int partition = 0; partition < futures.size(); partition++) {
+        offsets.put(partition, futures.get(partition).get());
+      }
+    } catch (InterruptedException e) {
+      futures.forEach(future -> future.cancel(true));
+      Thread.currentThread().interrupt();
+      throw new ApiException("Interrupted while resolving the offsets of " + topic);
+    } catch (ExecutionException e) {
+      futures.forEach(future -> future.cancel(true));
+      if (e.getCause() instanceof ApiException) {
+        throw (ApiException) e.getCause();
+      }
+      throw new ApiException(
+          "Resolving the offsets of " + topic + " failed: " + e.getCause().getMessage());
+    }
+    return offsets;
+  }
+
+  private long search(TopicPartition topicPartition, long timestamp) {
+    SparseTimeIndex index;
+    try {
+      index = indexes.get(topicPartition, () -> new SparseTimeIndex(maxEntries));
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    }
+    return kafkaUtils
+        .getBrowseConsumerPool()
+        .execute(topicPartition, consumer -> search(consumer, index, timestamp));
+  }
+
+  private long search(BrowseConsumer consumer, SparseTimeIndex index, long timestamp) {
+    long beginningOffset = consumer.beginningOffset();
+    long endOffset = consumer.endOffset();
+    index.truncate(beginningOffset);
+    long[] bounds = index.bounds(timestamp, beginningOffset, endOffset);
+    // The first record at or after the timestamp is in [lo, hi), or there is none before hi
+    long lo = bounds[0];
+    long hi = bounds[1];
+    int probes = 0;
+    while (hi - lo > scanRecords) {
+      long mid = lo + (hi - lo) / 2;
+      List<ConsumerRecord<byte[], byte[]>> batch = fetch(consumer, mid);
+      probes++;
+      index.add(batch.get(0).offset(), batch.get(0).timestamp());
+      index.add(batch.get(batch.size() - 1).offset(), batch.get(batch.size() - 1).timestamp());
+      long before = lo;
+      boolean reached = false;
+      for (ConsumerRecord<byte[], byte[]> record : batch) {
+        if (record.offset() >= hi) {
+          break;
+        }
+        if (record.timestamp() >= timestamp) {
+          hi = record.offset();
+          reached = true;
+          break;
+        }
+        before = record.offset() + 1;
+      }
+      if (!reached && before == lo) {
+        // No record in [mid, hi), reading from mid is the same as reading from hi
+        hi = mid;
+      } else {
+        lo = before;
+      }
+    }
+    while (lo < hi) {
+      for (ConsumerRecord<byte[], byte[]> record : fetch(consumer, lo)) {
+        if (record.offset() >= hi) {
+          return hi;
+        }
+        if (record.timestamp() >= timestamp) {
+          index.add(record.offset(), record.timestamp());
+          log.debug("Resolved " + timestamp + " to offset " + record.offset() + " of "
+              + consumer.getTopicPartition() + " after " + probes + " probes");
+          return record.offset();
+        }
+        lo = record.offset() + 1;
+      }
+    }
+    return hi;
+  }
+
+  /** Records from offset on, which exist below the end offset unless the fetch timed out. */
+  private List<ConsumerRecord<byte[], byte[]>> fetch(BrowseConsumer consumer, long offset) {
+    List<ConsumerRecord<byte[], byte[]>> batch = consumer.fetch(offset, pollTimeoutMs);
+    if (batch.isEmpty()) {
+      throw new TimeoutException(
+          "No records of " + consumer.getTopicPartition() + " at offset " + offset + " within "
+              + pollTimeoutMs + " ms");
+    }
+    return batch;
+  }
+
+  private static void checkTimestamp(long timestamp) {
+    if (timestamp < 0) {
+      throw new ApiException("timestamp must be milliseconds since the epoch");
+    }
+  }
+}
@@ -0,0 +1,363 @@
+package org.gnuhpc.bigdata.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.ApiException;
+import org.gnuhpc.bigdata.decoder.DecoderRegistry;
+import org.gnuhpc.bigdata.model.HeavyKey;
+import org.gnuhpc.bigdata.model.PartitionSample;
+import org.gnuhpc.bigdata.model.SizeBucket;
+import org.gnuhpc.bigdata.model.SizeHistogram;
+import org.gnuhpc.bigdata.model.TopicSample;
+import org.gnuhpc.bigdata.model.TopicState;
+import org.gnuhpc.bigdata.utils.BrowseConsumer;
+import org.gnuhpc.bigdata.utils.HeavyHitters;
+import org.gnuhpc.bigdata.utils.HyperLogLog;
+import org.gnuhpc.bigdata.utils.KafkaUtils;
+import org.gnuhpc.bigdata.utils.LogLinearHistogram;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Samples a fraction of the records of every partition of a topic to find hot partitions, hot
+ * keys and oversized records without reading the whole topic.
+ *
+ * <p>The sample of a partition is read in chunks of {@code kafka.sampling.chunk-records} spread
+ * evenly over it, at most {@code kafka.sampling.max-records-per-partition} records. Sizes go into
+ * a {@link LogLinearHistogram}, keys into a {@link HyperLogLog} for the distinct count and into
+ * {@link HeavyHitters} for the most frequent ones, so the memory of a sample does not depend on
+ * the number of records or keys. The partition sketches are merged into the sketches of the
+ * topic as partitions finish.
+ *
+ * <p>Samples are cached per topic for {@code kafka.sampling.cache-ms}. Concurrent requests for a
+ * topic being sampled wait for that sample instead of starting another.
+ */
+@Log4j
+@Service
+public class TopicSamplingService {
+  private static final HashFunction KEY_HASH = Hashing.murmur3_128();
+
+  @Autowired private KafkaUtils kafkaUtils;
+
+  @Autowired private MessageBrowseService messageBrowseService;
+
+  @Value("${kafka.sampling.threads:4}")
+  private int threads;
+
+  @Value("${kafka.sampling.max-records-per-partition:100000}")
+  private long maxRecordsPerPartition;
+
+  @Value("${kafka.sampling.chunk-records:500}")
+  private int chunkRecords;
+
+  @Value("${kafka.sampling.max-time-ms:60000}")
+  private long maxTimeMs;
+
+  @Value("${kafka.sampling.cache-size:500}")
+  private int cacheSize;
+
+  @Value("${kafka.sampling.cache-ms:600000}")
+  private long cacheMs;
+
+  @Value("${kafka.sampling.heavy-keys:20}")
+  private int heavyKeys;
+
+  @Value("${kafka.sampling.hll-precision:12}")
+  private int hllPrecision;
+
+  @Value("${kafka.sampling.cms-depth:4}")
+  private int cmsDepth;
+
+  @Value("${kafka.sampling.cms-width:2048}")
+  private int cmsWidth;
+
+  @Value("${kafka.browse.poll-timeout-ms:3000}")
+  private long pollTimeoutMs;
+
+  private final Map<String, CompletableFuture<TopicSample>> running = new ConcurrentHashMap<>();
+  private Cache<String, TopicSample> samples;
+  private ExecutorService executor;
+
+  /** The sketches of the whole topic, the partition sketches are merged into. */
+  private class TopicSketches {
+    private final HyperLogLog keys = new HyperLogLog(hllPrecision);
+    private final HeavyHitters heavy = new HeavyHitters(heavyKeys, cmsDepth, cmsWidth);
+    private final LogLinearHistogram sizes = new LogLinearHistogram();
+
+    synchronized void merge(HyperLogLog partitionKeys, HeavyHitters partitionHeavy) {
+      keys.merge(partitionKeys);
+      heavy.merge(partitionHeavy);
+    }
+  }
+
+  @PostConstruct
+  public void start() {
+    samples =
+        CacheBuilder.newBuilder()
+            .maximumSize(cacheSize)
+            .expireAfterWrite(cacheMs, TimeUnit.MILLISECONDS)
+            .build();
+    executor = Executors.newFixedThreadPool(threads);
+  }
+
+  @PreDestroy
+  public void stop() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * The sample of the topic, from the cache unless refresh is set or the cached one was taken
+   * with another fraction.
+   *
+   * @param fraction the part of the records of every partition to read, in (0, 1]
+   */
+  public TopicSample sample(String topic, double fraction, boolean refresh) {
+    TopicState state = messageBrowseService.checkTopic(topic);
+    if (!(fraction > 0 && fraction <= 1)) {
+      throw new ApiException("fraction must be above 0 and at most 1");
+    }
+    if (!refresh) {
+      TopicSample cached = samples.getIfPresent(topic);
+      if (cached != null && cached.getFraction() == fraction) {
+        return cached;
+      }
+    }
+
+    CompletableFuture<TopicSample> mine = new CompletableFuture<>();
+    CompletableFuture<TopicSample> other = running.putIfAbsent(topic, mine);
+    if (other != null) {
+      try {
+        return other.join();
+      } catch (CompletionException e) {
+        throw e.getCause() instanceof RuntimeException
+            ? (RuntimeException) e.getCause()
+            : new ApiException("Sampling " + topic + " failed: " + e.getCause().getMessage());
+      }
+    }
+    try {
+      TopicSample sample = sample(state, fraction);
+      samples.put(topic, sample);
+      mine.complete(sample);
+      return sample;
+    } catch (RuntimeException e) {
+      mine.completeExceptionally(e);
+      throw e;
+    } finally {
+      running.remove(topic, mine);
+    }
+  }
+
+  private TopicSample sample(TopicState state, double fraction) {
+    String topic = state.getTopic();
+    long start = System.currentTimeMillis();
+    long deadline = start + maxTimeMs;
+    TopicSketches sketches = new TopicSketches();
+    List<Future<PartitionSample>> futures = new ArrayList<>();
+    for (int partition = 0; partition < state.getPartitionCount(); partition++) {
+      TopicPartition topicPartition = new TopicPartition(topic, partition);
+      futures.add(
+          executor.submit(() -> samplePartition(topicPartition, fraction, deadline, sketches)));
+    }
+    List<PartitionSample> partitions = new ArrayList<>();
+    try {
+      for (Future<PartitionSample> future : futures) {
+        partitions.add(future.get());
+      }
+    } catch (InterruptedException e) {
+      futures.forEach(future -> future.cancel(true));
+      Thread.currentThread().interrupt();
+      throw new ApiException("Interrupted while sampling " + topic);
+    } catch (ExecutionException e) {
+      futures.forEach(future -> future.cancel(true));
+      throw new ApiException("Sampling " + topic + " failed: " + e.getCause().getMessage());
+    }
+
+    TopicSample sample = new TopicSample();
+    sample.setTopic(topic);
+    sample.setSampledAt(start);
+    sample.setFraction(fraction);
+    sample.setSampledRecords(
+        partitions.stream().mapToLong(PartitionSample::getSampledRecords).sum());
+    sample.setSampledBytes(partitions.stream().mapToLong(PartitionSample::getSampledBytes).sum());
+    long[] estimatedBytes =
+        partitions.stream().mapToLong(PartitionSample::getEstimatedBytes).toArray();
+    long totalBytes = 0;
+    long maxBytes = 0;
+    for (long bytes : estimatedBytes) {
+      totalBytes += bytes;
+      maxBytes = Math.max(maxBytes, bytes);
+    }
+    sample.setEstimatedBytes(totalBytes);
+    double average = estimatedBytes.length == 0 ? 0 : (double) totalBytes / estimatedBytes.length;
+    sample.setSkew(average == 0 ? 0 : (maxBytes - average) / average);
+    sample.setDistinctKeys(sketches.keys.estimate());
+    sample.setSizes(toHistogram(sketches.sizes));
+    sample.setHeavyKeys(toHeavyKeys(sketches.heavy));
+    sample.setPartitions(partitions);
+    sample.setElapsedMs(System.currentTimeMillis() - start);
+    return sample;
+  }
+
+  private PartitionSample samplePartition(
+      TopicPartition topicPartition, double fraction, long deadline, TopicSketches sketches) {
+    PartitionSample sample = new PartitionSample();
+    sample.setPartition(topicPartition.partition());
+    HyperLogLog keys = new HyperLogLog(hllPrecision);
+    HeavyHitters heavy = new HeavyHitters(heavyKeys, cmsDepth, cmsWidth);
+    LogLinearHistogram sizes = new LogLinearHistogram();
+    kafkaUtils
+        .getBrowseConsumerPool()
+        .execute(
+            topicPartition,
+            consumer -> {
+              read(consumer, sample, fraction, deadline, keys, heavy, sizes, sketches.sizes);
+              return null;
+            });
+    sample.setDistinctKeys(keys.estimate());
+    sample.setSizes(toHistogram(sizes));
+    sample.setHeavyKeys(toHeavyKeys(heavy));
+    sample.setEstimatedBytes(
+        Math.round(sizes.getMean() * (sample.getEndOffset() - sample.getBeginningOffset())));
+    sketches.merge(keys, heavy);
+    return sample;
+  }
+
+  private void read(
+      BrowseConsumer consumer,
+      PartitionSample sample,
+      double fraction,
+      long deadline,
+      HyperLogLog keys,
+      HeavyHitters heavy,
+      LogLinearHistogram sizes,
+      LogLinearHistogram topicSizes) {
+    long beginningOffset = consumer.beginningOffset();
+    long endOffset = consumer.endOffset();
+    sample.setBeginningOffset(beginningOffset);
+    sample.setEndOffset(endOffset);
+    long records = endOffset - beginningOffset;
+    long target = Math.min(maxRecordsPerPartition, (long) Math.ceil(records * fraction));
+    if (target == 0) {
+      sample.setComplete(true);
+      return;
+    }
+    long chunks = (target + chunkRecords - 1) / chunkRecords;
+    long stride = records / chunks;
+    long sampled = 0;
+    long bytes = 0;
+    long nullKeys = 0;
+    for (long chunk = 0; chunk < chunks; chunk++) {
+      long offset = beginningOffset + chunk * stride;
+      long limit = chunk == chunks - 1 ? endOffset : offset + stride;
+      int taken = 0;
+      read:
+      while (taken < chunkRecords && offset < limit) {
+        if (System.currentTimeMillis() >= deadline) {
+          sample.setSampledRecords(sampled);
+          sample.setSampledBytes(bytes);
+          sample.setNullKeys(nullKeys);
+          return;
+        }
+        List<ConsumerRecord<byte[], byte[]>> batch = consumer.fetch(offset, pollTimeoutMs);
+        if (batch.isEmpty()) {
+          log.warn("No records of " + consumer.getTopicPartition() + " at offset " + offset
+              + " within " + pollTimeoutMs + " ms, skipping the chunk");
+          break;
+        }
+        for (ConsumerRecord<byte[], byte[]> record : batch) {
+          if (record.offset() >= limit) {
+            break read;
+          }
+          int size = MessageBrowseService.sizeOf(record);
+          sizes.record(size);
+          topicSizes.record(size);
+          bytes += size;
+          if (record.key() == null) {
+            nullKeys++;
+          } else {
+            long hash = KEY_HASH.hashBytes(record.key()).asLong();
+            keys.addHash(hash);
+            heavy.add(record.key(), hash);
+          }
+          sampled++;
+          offset = record.offset() + 1;
+          if (++taken == chunkRecords) {
+            break read;
+          }
+        }
+      }
+    }
+    sample.setSampledRecords(sampled);
+    sample.setSampledBytes(bytes);
+    sample.setNullKeys(nullKeys);
+    sample.setComplete(true);
+  }
+
+  private static List<HeavyKey> toHeavyKeys(HeavyHitters heavy) {
+    long total = heavy.getTotal();
+    return heavy
+        .top()
+        .stream()
+        .map(
+            candidate ->
+                new HeavyKey(
+                    DecoderRegistry.utf8OrHex(candidate.getKey()),
+                    candidate.getCount(),
+                    total == 0 ? 0 : (double) candidate.getCount() / total))
+        .collect(Collectors.toList());
+  }
+
+  private static SizeHistogram toHistogram(LogLinearHistogram sizes) {
+    SizeHistogram histogram = new SizeHistogram();
+    histogram.setCount(sizes.getCount());
+    histogram.setMin(sizes.getMin());
+    histogram.setMean(sizes.getMean());
+    histogram.setP50(sizes.getValueAtPercentile(50));
+    histogram.setP90(sizes.getValueAtPercentile(90));
+    histogram.setP99(sizes.getValueAtPercentile(99));
+    histogram.setMax(sizes.getMax());
+    // The fine buckets folded into powers of two, which is what a size distribution is read in
+    Map<Integer, Long> counts = new TreeMap<>();
+    long[] snapshot = sizes.snapshotCounts();
+    for (int i = 0; i < snapshot.length; i++) {
+      if (snapshot[i] > 0) {
+        int magnitude =
+            Long.SIZE - Long.numberOfLeadingZeros(LogLinearHistogram.lowestEquivalentValue(i));
+        counts.merge(magnitude, snapshot[i], Long::sum);
+      }
+    }
+    histogram.setBuckets(
+        counts
+            .entrySet()
+            .stream()
+            .map(
+                entry ->
+                    new SizeBucket(
+                        entry.getKey() == 0 ? 0 : 1L << (entry.getKey() - 1),
+                        1L << entry.getKey(),
+                        entry.getValue()))
+            .collect(Collectors.toList()));
+    return histogram;
+  }
+}
@@ -0,0 +1,105 @@
+package org.gnuhpc.bigdata.utils;
+
+import java.util.Collections;
+import java.util.List;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.TopicPartition;
+
+/**
+ * A group-less consumer assigned to one partition for its whole life, which keeps the records of
+ * its last poll. Reads of an offset inside that batch are served from memory, and the consumer
+ * only seeks when the next read does not continue where the last poll stopped, so that repeated
+ * lookups on a hot partition cost neither a new connection nor a new fetch.
+ *
+ * <p>Not thread safe, it is used by one caller at a time through the {@link BrowseConsumerPool}.
+ */
+public class BrowseConsumer {
+  private final KafkaConsumer<byte[], byte[]> consumer;
+  private final TopicPartition topicPartition;
+  private final List<TopicPartition> assignment;
+  private List<ConsumerRecord<byte[], byte[]>> batch = Collections.emptyList();
+  /** The offset the consumer fetches from on the next poll, -1 when not known. */
+  private long position = -1;
+
+  public BrowseConsumer(KafkaConsumer<byte[], byte[]> consumer, TopicPartition topicPartition) {
+    this.consumer = consumer;
+    this.topicPartition = topicPartition;
+    this.assignment = Collections.singletonList(topicPartition);
+    consumer.assign(assignment);
+  }
+
+  public TopicPartition getTopicPartition() {
+    return topicPartition;
+  }
+
+  public long beginningOffset() {
+    consumer.seekToBeginning(assignment);
+    position = consumer.position(topicPartition);
+    return position;
+  }
+
+  public long endOffset() {
+    consumer.seekToEnd(assignment);
+    position = consumer.position(topicPartition);
+    return position;
+  }
+
+  /**
+   * The records from offset on, at least one unless none arrived within the timeout. Records
+   * below offset are skipped, the first record is above offset if offset was compacted away.
+   */
+  public List<ConsumerRecord<byte[], byte[]>> fetch(long offset, long timeoutMs) {
+    if (!covers(offset)) {
+      if (position != offset) {
+        consumer.seek(topicPartition, offset);
+      }
+      batch = consumer.poll(timeoutMs).records(topicPartition);
+      position = batch.isEmpty() ? offset : batch.get(batch.size() - 1).offset() + 1;
+    }
+    int index = indexOf(offset);
+    return index < 0 ? Collections.emptyList() : batch.subList(index, batch.size());
+  }
+
+  /** The record at offset, or null if it does not exist or did not arrive within the timeout. */
+  public ConsumerRecord<byte[], byte[]> get(long offset, long timeoutMs) {
+    List<ConsumerRecord<byte[], byte[]>> records = fetch(offset, timeoutMs);
+    return records.isEmpty() || records.get(0).offset() != offset ? null : records.get(0);
+  }
+
+  /** Drops the cached batch, done by the {@link BrowseConsumerPool} for idle consumers. */
+  public void clearBatch() {
+    batch = Collections.emptyList();
+  }
+
+  public void close() {
+    consumer.close();
+  }
+
+  private boolean covers(long offset) {
+    return !batch.isEmpty()
+        && batch.get(0).offset() <= offset
+        && offset <= batch.get(batch.size() - 1).offset();
+  }
+
+  /**
+   * Index of the first cached record at or above offset, -1 if there is none. Offsets in a batch
+   * increase but may have gaps, hence the binary search.
+   */
+  private int indexOf(long offset) {
+    if (batch.isEmpty() || offset > batch.get(batch.size() - 1).offset()) {
+      return -1;
+    }
+    int low = 0;
+    int high = batch.size() - 1;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (batch.get(mid).offset() < offset) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+}
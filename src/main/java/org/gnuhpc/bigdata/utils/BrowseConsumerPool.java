@@ -0,0 +1,139 @@
+package org.gnuhpc.bigdata.utils;
+
+import java.util.function.Function;
+import java.util.function.Supplier;
+import lombok.extern.log4j.Log4j;
+import org.apache.commons.pool2.BaseKeyedPooledObjectFactory;
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.PooledObjectState;
+import org.apache.commons.pool2.impl.DefaultPooledObject;
+import org.apache.commons.pool2.impl.GenericKeyedObjectPool;
+import org.apache.commons.pool2.impl.GenericKeyedObjectPoolConfig;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.ApiException;
+import org.gnuhpc.bigdata.model.PoolStats;
+
+/**
+ * A pool of {@link BrowseConsumer}s keyed by partition. A consumer stays assigned to its
+ * partition, so a request on a partition read shortly before gets a connected consumer with the
+ * last fetched batch still in memory. A consumer idle for an idle check interval drops its batch,
+ * so that the idle part of the pool holds connections but no records, and it is closed after five
+ * intervals. When the pool is full, the consumer idle for the longest time is closed to make room
+ * for another partition.
+ */
+@Log4j
+public class BrowseConsumerPool {
+  private final GenericKeyedObjectPool<TopicPartition, BrowseConsumer> pool;
+
+  public BrowseConsumerPool(
+      int maxTotal,
+      int maxPerPartition,
+      long maxWaitMs,
+      long idleCheckIntervalMs,
+      Supplier<KafkaConsumer<byte[], byte[]>> creator) {
+    GenericKeyedObjectPoolConfig config = new GenericKeyedObjectPoolConfig();
+    config.setMaxTotal(maxTotal);
+    config.setMaxTotalPerKey(maxPerPartition);
+    config.setMaxIdlePerKey(maxPerPartition);
+    config.setMinIdlePerKey(0);
+    config.setMaxWaitMillis(maxWaitMs);
+    config.setBlockWhenExhausted(true);
+    config.setTimeBetweenEvictionRunsMillis(idleCheckIntervalMs);
+    config.setMinEvictableIdleTimeMillis(idleCheckIntervalMs * 5);
+    // Every idle consumer is checked on each run, not the default of three
+    config.setNumTestsPerEvictionRun(-1);
+    // The idle test passivates the consumers the evictor keeps, which drops their batches
+    config.setTestWhileIdle(true);
+    config.setJmxEnabled(false);
+    this.pool = new GenericKeyedObjectPool<>(new BrowseConsumerFactory(creator), config);
+  }
+
+  /**
+   * Runs the action with a consumer of the partition. The consumer is returned on success and
+   * closed if the action threw, as its position is unknown then.
+   */
+  public <R> R execute(TopicPartition topicPartition, Function<BrowseConsumer, R> action) {
+    BrowseConsumer consumer;
+    try {
+      consumer = pool.borrowObject(topicPartition);
+    } catch (RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new ApiException("Could not borrow a browse consumer of " + topicPartition, e);
+    }
+    R result;
+    try {
+      result = action.apply(consumer);
+    } catch (RuntimeException e) {
+      invalidate(topicPartition, consumer);
+      throw e;
+    }
+    pool.returnObject(topicPartition, consumer);
+    return result;
+  }
+
+  public PoolStats stats() {
+    PoolStats stats = new PoolStats();
+    stats.setName("browse-consumer");
+    stats.setActive(pool.getNumActive());
+    stats.setIdle(pool.getNumIdle());
+    stats.setMaxTotal(pool.getMaxTotal());
+    stats.setCreated(pool.getCreatedCount());
+    stats.setDestroyed(pool.getDestroyedCount());
+    stats.setDestroyedByEvictor(pool.getDestroyedByEvictorCount());
+    stats.setBorrowed(pool.getBorrowedCount());
+    stats.setReturned(pool.getReturnedCount());
+    stats.setMeanBorrowWaitMs(pool.getMeanBorrowWaitTimeMillis());
+    stats.setMaxBorrowWaitMs(pool.getMaxBorrowWaitTimeMillis());
+    return stats;
+  }
+
+  public void close() {
+    pool.close();
+  }
+
+  private void invalidate(TopicPartition topicPartition, BrowseConsumer consumer) {
+    try {
+      pool.invalidateObject(topicPartition, consumer);
+    } catch (Exception e) {
+      log.warn("Failed to invalidate the browse consumer of " + topicPartition, e);
+    }
+  }
+
+  private static class BrowseConsumerFactory
+      extends BaseKeyedPooledObjectFactory<TopicPartition, BrowseConsumer> {
+    private final Supplier<KafkaConsumer<byte[], byte[]>> creator;
+
+    BrowseConsumerFactory(Supplier<KafkaConsumer<byte[], byte[]>> creator) {
+      this.creator = creator;
+    }
+
+    @Override
+    public BrowseConsumer create(TopicPartition topicPartition) {
+      return new BrowseConsumer(creator.get(), topicPartition);
+    }
+
+    @Override
+    public PooledObject<BrowseConsumer> wrap(BrowseConsumer consumer) {
+      return new DefaultPooledObject<>(consumer);
+    }
+
+    /**
+     * Drops the batch of a consumer the evictor found idle. Not on every return, the batch is what
+     * makes the next read of the partition cheap.
+     */
+    @Override
+    public void passivateObject(
+        TopicPartition topicPartition, PooledObject<BrowseConsumer> pooled) {
+      if (pooled.getState() == PooledObjectState.EVICTION) {
+        pooled.getObject().clearBatch();
+      }
+    }
+
+    @Override
+    public void destroyObject(TopicPartition topicPartition, PooledObject<BrowseConsumer> pooled) {
+      pooled.getObject().close();
+    }
+  }
+}
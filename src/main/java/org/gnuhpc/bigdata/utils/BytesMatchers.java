@@ -0,0 +1,130 @@
+package org.gnuhpc.bigdata.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import org.apache.kafka.common.errors.ApiException;
+
+/**
+ * Predicates on serialized record keys or values, compiled once per search and tested on every
+ * record. A null key or value never matches.
+ */
+public final class BytesMatchers {
+  private BytesMatchers() {}
+
+  /**
+   * Matches the UTF-8 bytes of the text directly, without decoding the record, which is what
+   * makes substring search cheap enough to scan whole partitions.
+   */
+  public static Predicate<byte[]> substring(String text) {
+    if (text == null || text.isEmpty()) {
+      throw new ApiException("The substring to search must not be empty");
+    }
+    byte[] needle = text.getBytes(StandardCharsets.UTF_8);
+    return bytes -> bytes != null && indexOf(bytes, needle) >= 0;
+  }
+
+  /** Finds the regex anywhere in the record decoded as UTF-8. */
+  public static Predicate<byte[]> regex(String regex) {
+    Pattern pattern;
+    try {
+      pattern = Pattern.compile(regex);
+    } catch (PatternSyntaxException | NullPointerException e) {
+      throw new ApiException("Invalid regex " + regex);
+    }
+    return bytes -> bytes != null
+        && pattern.matcher(new String(bytes, StandardCharsets.UTF_8)).find();
+  }
+
+  /**
+   * Parses the record as JSON and matches when the node at the path exists and, if an expected
+   * value is given, its text equals it. Paths are dotted field names with optional array indexes,
+   * e.g. {@code $.order.items[0].id}. Records that are not JSON do not match.
+   */
+  public static Predicate<byte[]> jsonPath(ObjectMapper mapper, String path, String expected) {
+    List<Object> steps = parsePath(path);
+    return bytes -> {
+      if (bytes == null) {
+        return false;
+      }
+      JsonNode node;
+      try {
+        node = mapper.readTree(bytes);
+      } catch (IOException e) {
+        return false;
+      }
+      for (Object step : steps) {
+        if (node == null) {
+          return false;
+        }
+        node = step instanceof Integer ? node.get((Integer) step) : node.get((String) step);
+      }
+      if (node == null || node.isMissingNode()) {
+        return false;
+      }
+      return expected == null || (node.isValueNode() && expected.equals(node.asText()));
+    };
+  }
+
+  /** Splits {@code $.a.b[0].c} into the field names and array indexes to follow. */
+  private static List<Object> parsePath(String path) {
+    if (path == null || path.isEmpty()) {
+      throw new ApiException("The JSON path must not be empty");
+    }
+    String rest = path.startsWith("$") ? path.substring(1) : "." + path;
+    List<Object> steps = new ArrayList<>();
+    int i = 0;
+    while (i < rest.length()) {
+      char c = rest.charAt(i);
+      if (c == '.') {
+        int end = i + 1;
+        while (end < rest.length() && rest.charAt(end) != '.' && rest.charAt(end) != '[') {
+          end++;
+        }
+        if (end == i + 1) {
+          throw new ApiException("Empty field name in JSON path " + path);
+        }
+        steps.add(rest.substring(i + 1, end));
+        i = end;
+      } else if (c == '[') {
+        int end = rest.indexOf(']', i);
+        if (end < 0) {
+          throw new ApiException("Unclosed index in JSON path " + path);
+        }
+        try {
+          steps.add(Integer.parseInt(rest.substring(i + 1, end).trim()));
+        } catch (NumberFormatException e) {
+          throw new ApiException("Invalid index in JSON path " + path);
+        }
+        i = end + 1;
+      } else {
+        throw new ApiException("Invalid JSON path " + path + " at position " + i);
+      }
+    }
+    return steps;
+  }
+
+  private static int indexOf(byte[] haystack, byte[] needle) {
+    byte first = needle[0];
+    int last = haystack.length - needle.length;
+    for (int i = 0; i <= last; i++) {
+      if (haystack[i] != first) {
+        continue;
+      }
+      int j = 1;
+      while (j < needle.length && haystack[i + j] == needle[j]) {
+        j++;
+      }
+      if (j == needle.length) {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
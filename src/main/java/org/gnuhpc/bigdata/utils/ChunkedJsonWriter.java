@@ -0,0 +1,57 @@
+package org.gnuhpc.bigdata.utils;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Streams one JSON object holding an array to a response body, element by element, so a large
+ * result never has to be held in memory. {@link #finish} closes the array and appends a field
+ * with the summary that is only known at the end, e.g. {@code {"records":[...],"result":{...}}}.
+ * Writes throw {@link UncheckedIOException} once the client went away.
+ */
+public class ChunkedJsonWriter {
+  public static final String CONTENT_TYPE = "application/json";
+
+  private final JsonGenerator generator;
+
+  public ChunkedJsonWriter(ObjectMapper mapper, OutputStream out, String arrayField) {
+    try {
+      generator = mapper.getFactory().createGenerator(out);
+      generator.writeStartObject();
+      generator.writeArrayFieldStart(arrayField);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** Writes an element without flushing it. */
+  public synchronized void append(Object value) {
+    try {
+      generator.writeObject(value);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  public synchronized void flush() {
+    try {
+      generator.flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  public synchronized void finish(String summaryField, Object summary) {
+    try {
+      generator.writeEndArray();
+      generator.writeObjectField(summaryField, summary);
+      generator.writeEndObject();
+      generator.flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
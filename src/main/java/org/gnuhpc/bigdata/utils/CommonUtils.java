@@ -44,6 +44,11 @@ public class CommonUtils {
     return yamlHash;
   }
 
+  public static <T> T yamlParse(File file, Class<T> type) throws IOException {
+    ObjectMapper mapperForYAML = new ObjectMapper(new YAMLFactory());
+    return mapperForYAML.readValue(file, type);
+  }
+
   public static void yamlWrite(String filePath, Object object) throws IOException {
     File file = new File(filePath);
     ObjectMapper mapperForYAML = new ObjectMapper(new YAMLFactory());
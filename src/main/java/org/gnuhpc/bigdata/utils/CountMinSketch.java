@@ -0,0 +1,54 @@
+package org.gnuhpc.bigdata.utils;
+
+/**
+ * Counts of values in depth x width counters. An estimate is never below the real count and is
+ * above it by at most 2 / width of the total count with probability 1 - 2^-depth. The rows are
+ * indexed by double hashing of one 64 bit hash of the value.
+ */
+public class CountMinSketch {
+  private final int depth;
+  private final int width;
+  private final long[] counts;
+  private long total;
+
+  public CountMinSketch(int depth, int width) {
+    this.depth = depth;
+    this.width = width;
+    this.counts = new long[depth * width];
+  }
+
+  public void add(long hash, long count) {
+    for (int row = 0; row < depth; row++) {
+      counts[row * width + column(hash, row)] += count;
+    }
+    total += count;
+  }
+
+  public long estimate(long hash) {
+    long min = Long.MAX_VALUE;
+    for (int row = 0; row < depth; row++) {
+      min = Math.min(min, counts[row * width + column(hash, row)]);
+    }
+    return min;
+  }
+
+  /** Adds the counts of the other sketch, which must have the same dimensions. */
+  public void merge(CountMinSketch other) {
+    if (other.depth != depth || other.width != width) {
+      throw new IllegalArgumentException("Cannot merge sketches of different dimensions");
+    }
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] += other.counts[i];
+    }
+    total += other.total;
+  }
+
+  public long getTotal() {
+    return total;
+  }
+
+  private int column(long hash, int row) {
+    int combined = (int) hash + row * (int) (hash >>> 32);
+    return (combined & Integer.MAX_VALUE) % width;
+  }
+}
@@ -0,0 +1,107 @@
+package org.gnuhpc.bigdata.utils;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * The most frequent keys of a stream, in fixed memory: every key is counted in a
+ * {@link CountMinSketch}, and the capacity keys with the highest estimates are kept as
+ * candidates. A key replaces the weakest candidate once its estimate is higher.
+ */
+public class HeavyHitters {
+  private final CountMinSketch sketch;
+  private final int capacity;
+  private final Map<ByteBuffer, Candidate> candidates = new HashMap<>();
+  /** At most the lowest candidate count, so most keys are rejected without a scan. */
+  private long floor;
+
+  /** A frequent key with its estimated count. */
+  public static class Candidate {
+    private final byte[] key;
+    private final long hash;
+    private long count;
+
+    Candidate(byte[] key, long hash, long count) {
+      this.key = key;
+      this.hash = hash;
+      this.count = count;
+    }
+
+    public byte[] getKey() {
+      return key;
+    }
+
+    public long getCount() {
+      return count;
+    }
+  }
+
+  public HeavyHitters(int capacity, int depth, int width) {
+    this.capacity = capacity;
+    this.sketch = new CountMinSketch(depth, width);
+  }
+
+  public void add(byte[] key, long hash) {
+    sketch.add(hash, 1);
+    long estimate = sketch.estimate(hash);
+    Candidate candidate = candidates.get(ByteBuffer.wrap(key));
+    if (candidate != null) {
+      candidate.count = estimate;
+    } else if (candidates.size() < capacity) {
+      offer(new Candidate(key.clone(), hash, estimate));
+    } else if (estimate > floor) {
+      Candidate weakest = weakest();
+      floor = weakest.count;
+      if (estimate > weakest.count) {
+        candidates.remove(ByteBuffer.wrap(weakest.key));
+        offer(new Candidate(key.clone(), hash, estimate));
+        floor = weakest().count;
+      }
+    }
+  }
+
+  /** Adds the counts and candidates of the other tracker, which must have the same sketch. */
+  public void merge(HeavyHitters other) {
+    sketch.merge(other.sketch);
+    List<Candidate> all = new ArrayList<>(candidates.values());
+    for (Candidate candidate : other.candidates.values()) {
+      if (!candidates.containsKey(ByteBuffer.wrap(candidate.key))) {
+        all.add(candidate);
+      }
+    }
+    candidates.clear();
+    all.stream()
+        .map(c -> new Candidate(c.key, c.hash, sketch.estimate(c.hash)))
+        .sorted(Comparator.comparingLong(Candidate::getCount).reversed())
+        .limit(capacity)
+        .forEach(this::offer);
+    floor = candidates.isEmpty() ? 0 : weakest().count;
+  }
+
+  /** The candidates, most frequent first. */
+  public List<Candidate> top() {
+    return candidates
+        .values()
+        .stream()
+        .sorted(Comparator.comparingLong(Candidate::getCount).reversed())
+        .collect(Collectors.toList());
+  }
+
+  /** The number of keys added. */
+  public long getTotal() {
+    return sketch.getTotal();
+  }
+
+  private void offer(Candidate candidate) {
+    candidates.put(ByteBuffer.wrap(candidate.key), candidate);
+  }
+
+  private Candidate weakest() {
+    return candidates.values().stream().min(Comparator.comparingLong(Candidate::getCount)).get();
+  }
+}
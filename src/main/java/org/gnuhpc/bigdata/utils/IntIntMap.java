@@ -0,0 +1,74 @@
+package org.gnuhpc.bigdata.utils;
+
+/**
+ * An open addressing hash map from int to int without boxing, for lookups done once per replica
+ * over large numbers of partitions. Keys are probed linearly and the table doubles once it is half
+ * full. Removal is not supported.
+ */
+public class IntIntMap {
+  private static final int MIN_CAPACITY = 16;
+
+  private int[] keys;
+  private int[] values;
+  private boolean[] used;
+  private int size;
+  private int mask;
+
+  public IntIntMap() {
+    allocate(MIN_CAPACITY);
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /** The value of the key, or defaultValue when it is absent. */
+  public int get(int key, int defaultValue) {
+    int slot = slot(key);
+    return used[slot] ? values[slot] : defaultValue;
+  }
+
+  public void put(int key, int value) {
+    int slot = slot(key);
+    values[slot] = value;
+    if (!used[slot]) {
+      used[slot] = true;
+      keys[slot] = key;
+      if (++size * 2 > keys.length) {
+        rehash();
+      }
+    }
+  }
+
+  private int slot(int key) {
+    // Fibonacci hashing spreads sequential ids such as broker ids over the table
+    int hash = key * 0x9E3779B9;
+    int slot = (hash ^ hash >>> 16) & mask;
+    while (used[slot] && keys[slot] != key) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  private void rehash() {
+    int[] oldKeys = keys;
+    int[] oldValues = values;
+    boolean[] oldUsed = used;
+    allocate(oldKeys.length * 2);
+    for (int slot = 0; slot < oldKeys.length; slot++) {
+      if (oldUsed[slot]) {
+        int newSlot = slot(oldKeys[slot]);
+        used[newSlot] = true;
+        keys[newSlot] = oldKeys[slot];
+        values[newSlot] = oldValues[slot];
+      }
+    }
+  }
+
+  private void allocate(int capacity) {
+    keys = new int[capacity];
+    values = new int[capacity];
+    used = new boolean[capacity];
+    mask = capacity - 1;
+  }
+}
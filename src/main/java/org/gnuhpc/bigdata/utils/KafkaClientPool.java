@@ -0,0 +1,148 @@
+package org.gnuhpc.bigdata.utils;
+
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import lombok.extern.log4j.Log4j;
+import org.apache.commons.pool2.BasePooledObjectFactory;
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.impl.DefaultPooledObject;
+import org.apache.commons.pool2.impl.GenericObjectPool;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.apache.kafka.common.errors.ApiException;
+import org.gnuhpc.bigdata.model.PoolStats;
+
+/**
+ * A bounded pool of Kafka clients that are expensive to bootstrap (AdminClient, metadata
+ * KafkaConsumer). Neither client is thread safe, so a client is used by one caller between
+ * {@link #borrow()} and {@link #giveBack(Object)}. Idle clients are health checked by the evictor
+ * thread, and a client that threw while borrowed is dropped instead of being returned.
+ */
+@Log4j
+public class KafkaClientPool<T> {
+  private final String name;
+  private final GenericObjectPool<T> pool;
+
+  public KafkaClientPool(
+      String name,
+      int maxTotal,
+      long maxWaitMs,
+      long idleCheckIntervalMs,
+      Supplier<T> creator,
+      Predicate<T> validator,
+      Consumer<T> destroyer) {
+    this.name = name;
+
+    GenericObjectPoolConfig config = new GenericObjectPoolConfig();
+    config.setMaxTotal(maxTotal);
+    config.setMaxIdle(maxTotal);
+    config.setMinIdle(0);
+    config.setMaxWaitMillis(maxWaitMs);
+    config.setBlockWhenExhausted(true);
+    config.setTestOnCreate(false);
+    config.setTestOnBorrow(false);
+    config.setTestWhileIdle(true);
+    config.setTimeBetweenEvictionRunsMillis(idleCheckIntervalMs);
+    config.setMinEvictableIdleTimeMillis(idleCheckIntervalMs * 5);
+    config.setJmxEnabled(false);
+
+    this.pool = new GenericObjectPool<>(new ClientFactory<>(creator, validator, destroyer), config);
+  }
+
+  public T borrow() {
+    try {
+      return pool.borrowObject();
+    } catch (RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new ApiException("Could not borrow a client from pool " + name, e);
+    }
+  }
+
+  public void giveBack(T client) {
+    pool.returnObject(client);
+  }
+
+  public void invalidate(T client) {
+    try {
+      pool.invalidateObject(client);
+    } catch (Exception e) {
+      log.warn("Failed to invalidate client of pool " + name, e);
+    }
+  }
+
+  /**
+   * Runs the action with a borrowed client. The client is returned on success and dropped if the
+   * action threw.
+   */
+  public <R> R execute(Function<T, R> action) {
+    T client = borrow();
+    R result;
+    try {
+      result = action.apply(client);
+    } catch (RuntimeException e) {
+      invalidate(client);
+      throw e;
+    }
+    giveBack(client);
+    return result;
+  }
+
+  public PoolStats stats() {
+    PoolStats stats = new PoolStats();
+    stats.setName(name);
+    stats.setActive(pool.getNumActive());
+    stats.setIdle(pool.getNumIdle());
+    stats.setMaxTotal(pool.getMaxTotal());
+    stats.setCreated(pool.getCreatedCount());
+    stats.setDestroyed(pool.getDestroyedCount());
+    stats.setDestroyedByEvictor(pool.getDestroyedByEvictorCount());
+    stats.setBorrowed(pool.getBorrowedCount());
+    stats.setReturned(pool.getReturnedCount());
+    stats.setMeanBorrowWaitMs(pool.getMeanBorrowWaitTimeMillis());
+    stats.setMaxBorrowWaitMs(pool.getMaxBorrowWaitTimeMillis());
+    return stats;
+  }
+
+  public void close() {
+    pool.close();
+  }
+
+  private static class ClientFactory<T> extends BasePooledObjectFactory<T> {
+    private final Supplier<T> creator;
+    private final Predicate<T> validator;
+    private final Consumer<T> destroyer;
+
+    ClientFactory(Supplier<T> creator, Predicate<T> validator, Consumer<T> destroyer) {
+      this.creator = creator;
+      this.validator = validator;
+      this.destroyer = destroyer;
+    }
+
+    @Override
+    public T create() {
+      return creator.get();
+    }
+
+    @Override
+    public PooledObject<T> wrap(T client) {
+      return new DefaultPooledObject<>(client);
+    }
+
+    @Override
+    public boolean validateObject(PooledObject<T> pooledObject) {
+      try {
+        return validator.test(pooledObject.getObject());
+      } catch (Exception e) {
+        log.warn("Pooled kafka client failed the health check", e);
+        return false;
+      }
+    }
+
+    @Override
+    public void destroyObject(PooledObject<T> pooledObject) {
+      destroyer.accept(pooledObject.getObject());
+    }
+  }
+}
@@ -13,17 +13,24 @@ import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.common.Node;
 import org.apache.kafka.common.PartitionInfo;
 import org.apache.kafka.common.errors.ApiException;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.gnuhpc.bigdata.CollectionConvertor;
+import org.gnuhpc.bigdata.componet.DownstreamMetrics;
+import org.gnuhpc.bigdata.componet.MetadataCache;
 import org.gnuhpc.bigdata.config.KafkaConfig;
 import org.gnuhpc.bigdata.config.ZookeeperConfig;
 import org.gnuhpc.bigdata.constant.ConsumerType;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Created by gnuhpc on 2017/7/12.
@@ -37,8 +44,42 @@ public class KafkaUtils {
     private KafkaConfig kafkaConfig;
     @Autowired
     private ZookeeperConfig zookeeperConfig;
+    @Autowired
+    private DownstreamMetrics downstreamMetrics;
+    @Autowired
+    private MetadataCache metadataCache;
+
+    @Value("${kafka.pool.adminclient.max-total:4}")
+    private int adminClientPoolSize;
+    @Value("${kafka.pool.consumer.max-total:8}")
+    private int metadataConsumerPoolSize;
+    @Value("${kafka.pool.browse-consumer.max-total:16}")
+    private int browseConsumerPoolSize;
+    @Value("${kafka.pool.browse-consumer.max-per-partition:2}")
+    private int browseConsumersPerPartition;
+    @Value("${kafka.browse.fetch-bytes:1048576}")
+    private int browseFetchBytes;
+    @Value("${kafka.pool.max-wait-ms:10000}")
+    private long poolMaxWaitMs;
+    @Value("${kafka.pool.idle-check-interval-ms:60000}")
+    private long poolIdleCheckIntervalMs;
+    @Value("${kafka.bulk-producer.linger-ms:20}")
+    private int bulkProducerLingerMs;
+    @Value("${kafka.bulk-producer.batch-size:262144}")
+    private int bulkProducerBatchSize;
+    @Value("${kafka.bulk-producer.acks:all}")
+    private String bulkProducerAcks;
+    @Value("${kafka.bulk-producer.compression-type:none}")
+    private String bulkProducerCompressionType;
 
-    private AdminClient kafkaAdminClient;
+    private KafkaClientPool<AdminClient> adminClientPool;
+    private KafkaClientPool<KafkaConsumer> metadataConsumerPool;
+    private BrowseConsumerPool browseConsumerPool;
+    //shared by all bulk writes, batching is what makes them fast
+    private KafkaProducer<byte[], byte[]> bulkProducer;
+
+    //topic -> partition -> leader, dropped on NotLeaderForPartition errors or zk state changes
+    private final Map<String, Map<Integer, Node>> leaderCache = new ConcurrentHashMap<>();
 
     private KafkaProducer producer;
     private Properties prop;
@@ -55,12 +96,27 @@ public class KafkaUtils {
         producer = new KafkaProducer(prop);
         log.info("Kafka initing...");
 
-        kafkaAdminClient = AdminClient.create(prop);
+        adminClientPool = new KafkaClientPool<>("adminclient", adminClientPoolSize, poolMaxWaitMs,
+                poolIdleCheckIntervalMs, this::createAdminClient,
+                adminClient -> !adminClient.findAllBrokers().isEmpty(),
+                AdminClient::close);
+        metadataConsumerPool = new KafkaClientPool<>("metadata-consumer", metadataConsumerPoolSize,
+                poolMaxWaitMs, poolIdleCheckIntervalMs, this::createNewConsumer,
+                consumer -> !consumer.partitionsFor(kafkaConfig.getInternalTopic()).isEmpty(),
+                KafkaConsumer::close);
+        browseConsumerPool = new BrowseConsumerPool(browseConsumerPoolSize, browseConsumersPerPartition,
+                poolMaxWaitMs, poolIdleCheckIntervalMs, () -> createBrowseConsumer(browseFetchBytes));
+        bulkProducer = createBulkProducer();
+        metadataCache.addListener(this::onTopicChanged);
     }
 
   
     public void destroy(){
         log.info("Kafka destorying...");
+        adminClientPool.close();
+        metadataConsumerPool.close();
+        browseConsumerPool.close();
+        bulkProducer.close();
     }
 
     public KafkaConsumer createNewConsumer(){
@@ -83,6 +139,24 @@ public class KafkaUtils {
         return new KafkaConsumer(properties);
     }
 
+    /**
+     * A consumer for reading partitions by assign and seek. It has no group, so it never joins a
+     * group or commits, and hands out the raw bytes so that callers can measure and decode them.
+     * The memory of one poll is bounded by maxPartitionFetchBytes per assigned partition.
+     */
+    public KafkaConsumer<byte[], byte[]> createBrowseConsumer(int maxPartitionFetchBytes) {
+        Properties properties = new Properties();
+        properties.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, getKafkaConfig().getBrokers());
+        properties.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+        properties.put(ConsumerConfig.MAX_PARTITION_FETCH_BYTES_CONFIG, String.valueOf(maxPartitionFetchBytes));
+        properties.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG,
+                ByteArrayDeserializer.class.getCanonicalName());
+        properties.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG,
+                ByteArrayDeserializer.class.getCanonicalName());
+
+        return new KafkaConsumer<>(properties);
+    }
+
     public KafkaConsumer createNewConsumerByTopic(String topic){
         Properties properties = new Properties();
         properties.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, getKafkaConfig().getBrokers());
@@ -97,6 +171,29 @@ public class KafkaUtils {
         return kafkaConsumer;
     }
 
+    /**
+     * A producer of raw keys and values that lingers to fill large batches, for writing many
+     * records at once. Thread safe, callers share {@link #getBulkProducer()}. One request is in flight
+     * per broker, so a retried batch cannot land behind a later one and records keep their order
+     * within a partition.
+     */
+    public KafkaProducer<byte[], byte[]> createBulkProducer() {
+        Properties properties = new Properties();
+        properties.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, getKafkaConfig().getBrokers());
+        properties.put(ProducerConfig.LINGER_MS_CONFIG, String.valueOf(bulkProducerLingerMs));
+        properties.put(ProducerConfig.BATCH_SIZE_CONFIG, String.valueOf(bulkProducerBatchSize));
+        properties.put(ProducerConfig.ACKS_CONFIG, bulkProducerAcks);
+        properties.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, bulkProducerCompressionType);
+        properties.put(ProducerConfig.RETRIES_CONFIG, "3");
+        properties.put(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, "1");
+        properties.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG,
+                ByteArraySerializer.class.getCanonicalName());
+        properties.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG,
+                ByteArraySerializer.class.getCanonicalName());
+
+        return new KafkaProducer<>(properties);
+    }
+
     public KafkaProducer createProducer() {
         Properties prop = new Properties();
         prop.setProperty(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, kafkaConfig.getBrokers());
@@ -111,15 +208,62 @@ public class KafkaUtils {
         return producer;
     }
 
+    /**
+     * Leader lookup is a map read. The metadata of the whole topic is fetched only when the
+     * partition is not in the leader map yet.
+     */
     public Node getLeader(String topic, int partitionId) {
-        KafkaConsumer consumer = createNewConsumer(DEFAULTCP);
-        List<PartitionInfo> tmList = consumer.partitionsFor(topic);
+        Map<Integer, Node> leaders = leaderCache.get(topic);
+        Node leader = leaders == null ? null : leaders.get(partitionId);
+        if (leader != null) {
+            return leader;
+        }
+
+        List<PartitionInfo> tmList = metadataConsumerPool.execute(consumer ->
+                downstreamMetrics.record(DownstreamMetrics.BROKER_METADATA, () -> consumer.partitionsFor(topic)));
+        if (tmList == null) {
+            throw new ApiException("Topic " + topic + " does not exist");
+        }
+        updateLeaders(tmList);
 
-        PartitionInfo partitionInfo = tmList.stream().filter(pi -> pi.partition() == partitionId).findFirst().get();
-        consumer.close();
+        PartitionInfo partitionInfo = tmList.stream().filter(pi -> pi.partition() == partitionId).findFirst()
+                .orElseThrow(() -> new ApiException("Partition " + partitionId + " of topic " + topic
+                        + " does not exist"));
+        if (partitionInfo.leader() == null) {
+            throw new ApiException("Partition " + partitionId + " of topic " + topic + " has no leader");
+        }
         return partitionInfo.leader();
     }
 
+    /**
+     * Refreshes the leader map from metadata fetched elsewhere.
+     */
+    public void updateLeaders(List<PartitionInfo> partitionInfos) {
+        for (PartitionInfo pi : partitionInfos) {
+            if (pi.leader() != null) {
+                leaderCache.computeIfAbsent(pi.topic(), t -> new ConcurrentHashMap<>())
+                        .put(pi.partition(), pi.leader());
+            }
+        }
+    }
+
+    public void invalidateLeader(String topic, int partitionId) {
+        Map<Integer, Node> leaders = leaderCache.get(topic);
+        if (leaders != null) {
+            leaders.remove(partitionId);
+        }
+    }
+
+    private void onTopicChanged(String topic, int partitionId) {
+        if (topic == null) {
+            leaderCache.clear();
+        } else if (partitionId == MetadataCache.ALL_PARTITIONS) {
+            leaderCache.remove(topic);
+        } else {
+            invalidateLeader(topic, partitionId);
+        }
+    }
+
     public AdminClient createAdminClient() {
         return AdminClient.createSimplePlaintext(getKafkaConfig().getBrokers());
     }
@@ -0,0 +1,121 @@
+package org.gnuhpc.bigdata.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-size, lock-free histogram in the spirit of HdrHistogram.
+ *
+ * <p>Values are grouped by their power-of-two magnitude and every magnitude is split into linear
+ * sub buckets, so any recorded value is reported with a relative error below 1/16 while the whole
+ * range of a long fits in 960 counters. Negative values are recorded as 0.
+ */
+public class LogLinearHistogram {
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+  private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKET_HALF_COUNT;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+  private final LongAdder totalCount = new LongAdder();
+  private final LongAdder totalSum = new LongAdder();
+  private final LongAccumulator minValue = new LongAccumulator(Long::min, Long.MAX_VALUE);
+  private final LongAccumulator maxValue = new LongAccumulator(Long::max, Long.MIN_VALUE);
+
+  public void record(long value) {
+    long v = Math.max(0, value);
+    counts.incrementAndGet(indexOf(v));
+    totalCount.increment();
+    totalSum.add(v);
+    minValue.accumulate(v);
+    maxValue.accumulate(v);
+  }
+
+  public long getCount() {
+    return totalCount.sum();
+  }
+
+  public long getSum() {
+    return totalSum.sum();
+  }
+
+  public long getMin() {
+    return getCount() == 0 ? 0 : minValue.get();
+  }
+
+  public long getMax() {
+    return getCount() == 0 ? 0 : maxValue.get();
+  }
+
+  public double getMean() {
+    long count = getCount();
+    return count == 0 ? 0 : (double) getSum() / count;
+  }
+
+  /**
+   * Returns the highest value that is equivalent (same bucket) to the value at the given
+   * percentile, capped by the real maximum recorded.
+   */
+  public long getValueAtPercentile(double percentile) {
+    long[] snapshot = snapshotCounts();
+    long count = 0;
+    for (long c : snapshot) {
+      count += c;
+    }
+    if (count == 0) {
+      return 0;
+    }
+
+    double p = Math.min(Math.max(percentile, 0), 100);
+    long target = Math.max(1, (long) Math.ceil(p / 100 * count));
+    long cumulative = 0;
+    for (int i = 0; i < snapshot.length; i++) {
+      cumulative += snapshot[i];
+      if (cumulative >= target) {
+        return Math.min(highestEquivalentValue(i), getMax());
+      }
+    }
+    return getMax();
+  }
+
+  public long[] snapshotCounts() {
+    long[] snapshot = new long[BUCKET_COUNT];
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      snapshot[i] = counts.get(i);
+    }
+    return snapshot;
+  }
+
+  public void reset() {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      counts.set(i, 0);
+    }
+    totalCount.reset();
+    totalSum.reset();
+    minValue.reset();
+    maxValue.reset();
+  }
+
+  public static int bucketCount() {
+    return BUCKET_COUNT;
+  }
+
+  public static long lowestEquivalentValue(int index) {
+    int shift = Math.max(0, index / SUB_BUCKET_HALF_COUNT - 1);
+    long subBucket = index - (long) shift * SUB_BUCKET_HALF_COUNT;
+    return subBucket << shift;
+  }
+
+  public static long highestEquivalentValue(int index) {
+    if (index == BUCKET_COUNT - 1) {
+      return Long.MAX_VALUE;
+    }
+    return lowestEquivalentValue(index + 1) - 1;
+  }
+
+  private static int indexOf(long value) {
+    int shift = Math.max(0, Long.SIZE - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+    return shift * SUB_BUCKET_HALF_COUNT + (int) (value >>> shift);
+  }
+}
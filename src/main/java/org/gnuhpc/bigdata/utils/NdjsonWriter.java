@@ -0,0 +1,47 @@
+package org.gnuhpc.bigdata.utils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Writes one JSON document per line to a streamed response body and flushes every line, so that
+ * the client sees each result as soon as it is ready. Callers writing many small lines at once can
+ * {@link #append} them and flush once per batch instead.
+ */
+public class NdjsonWriter {
+  public static final String CONTENT_TYPE = "application/x-ndjson";
+
+  private final ObjectMapper mapper;
+  private final OutputStream out;
+
+  public NdjsonWriter(ObjectMapper mapper, OutputStream out) {
+    this.mapper = mapper;
+    this.out = out;
+  }
+
+  /** Thread safe. Throws {@link UncheckedIOException} once the client went away. */
+  public synchronized void write(Object value) {
+    append(value);
+    flush();
+  }
+
+  /** Writes a line without flushing it. */
+  public synchronized void append(Object value) {
+    try {
+      out.write(mapper.writeValueAsBytes(value));
+      out.write('\n');
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  public synchronized void flush() {
+    try {
+      out.flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
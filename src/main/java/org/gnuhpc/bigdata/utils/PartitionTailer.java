@@ -0,0 +1,116 @@
+package org.gnuhpc.bigdata.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import lombok.extern.log4j.Log4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+
+/**
+ * Follows the end of one partition with a single group-less consumer and hands every new record
+ * to all its subscribers, so that any number of clients tailing the same partition cost one
+ * fetch. Subscribers must not block, they are called on the polling thread.
+ */
+@Log4j
+public class PartitionTailer implements Runnable {
+  /** Receives the records of the partition, in offset order. */
+  public interface Subscriber {
+    void onRecord(ConsumerRecord<byte[], byte[]> record);
+
+    /** The tailer failed and will not deliver any more records. */
+    void onFailure(TopicPartition topicPartition, RuntimeException e);
+  }
+
+  private final KafkaConsumer<byte[], byte[]> consumer;
+  private final TopicPartition topicPartition;
+  private final long pollTimeoutMs;
+  private final List<Subscriber> subscribers = new ArrayList<>();
+  /** The offset of the next record handed to the subscribers. */
+  private long position;
+  private volatile boolean running = true;
+
+  /** Starts at the current end of the partition. */
+  public PartitionTailer(
+      KafkaConsumer<byte[], byte[]> consumer, TopicPartition topicPartition, long pollTimeoutMs) {
+    this.consumer = consumer;
+    this.topicPartition = topicPartition;
+    this.pollTimeoutMs = pollTimeoutMs;
+    List<TopicPartition> assignment = Collections.singletonList(topicPartition);
+    consumer.assign(assignment);
+    consumer.seekToEnd(assignment);
+    this.position = consumer.position(topicPartition);
+  }
+
+  public TopicPartition getTopicPartition() {
+    return topicPartition;
+  }
+
+  /**
+   * Adds the subscriber and returns the offset of the first record it will get, the records
+   * before it are up to the subscriber to read. Returns -1 if the tailer stopped already.
+   */
+  public synchronized long subscribe(Subscriber subscriber) {
+    if (!running) {
+      return -1;
+    }
+    subscribers.add(subscriber);
+    return position;
+  }
+
+  /** Removes the subscriber, true if it was the last one. */
+  public synchronized boolean unsubscribe(Subscriber subscriber) {
+    subscribers.remove(subscriber);
+    return subscribers.isEmpty();
+  }
+
+  public synchronized int getSubscriberCount() {
+    return subscribers.size();
+  }
+
+  /** Closes the consumer of a tailer that was never run. */
+  public void close() {
+    consumer.close();
+  }
+
+  /** Stops polling and closes the consumer, from any thread. */
+  public void stop() {
+    running = false;
+    consumer.wakeup();
+  }
+
+  @Override
+  public void run() {
+    try {
+      while (running) {
+        List<ConsumerRecord<byte[], byte[]>> records =
+            consumer.poll(pollTimeoutMs).records(topicPartition);
+        if (records.isEmpty()) {
+          continue;
+        }
+        synchronized (this) {
+          for (ConsumerRecord<byte[], byte[]> record : records) {
+            for (Subscriber subscriber : subscribers) {
+              subscriber.onRecord(record);
+            }
+          }
+          position = records.get(records.size() - 1).offset() + 1;
+        }
+      }
+    } catch (WakeupException e) {
+      // Stopped
+    } catch (RuntimeException e) {
+      log.error("Tailing " + topicPartition + " failed", e);
+      List<Subscriber> failed;
+      synchronized (this) {
+        running = false;
+        failed = new ArrayList<>(subscribers);
+      }
+      failed.forEach(subscriber -> subscriber.onFailure(topicPartition, e));
+    } finally {
+      consumer.close();
+    }
+  }
+}
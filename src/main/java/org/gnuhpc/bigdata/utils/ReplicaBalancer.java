@@ -0,0 +1,409 @@
+package org.gnuhpc.bigdata.utils;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+import lombok.Getter;
+
+/**
+ * Computes a replica assignment that evens out the load of the brokers while moving as little
+ * data as possible.
+ *
+ * <p>Partitions and brokers are addressed by their index in the input arrays. Every replica is
+ * weighted by a score that sums its size, its bytes-in rate and a constant per replica, each
+ * relative to the fair share of one broker, so that all dimensions count alike. Planning runs in
+ * two phases:
+ *
+ * <ol>
+ *   <li>Replicas on brokers that are not targets, and replicas sharing a rack with another replica
+ *       of the same partition, are moved to the least loaded broker that may take them.
+ *   <li>While a broker deviates from the average by more than the tolerance, the replica of the
+ *       most loaded broker whose score fits the gap to the average best is moved to the least
+ *       loaded broker that may take it, provided the destination does not end up above the
+ *       source.
+ * </ol>
+ *
+ * <p>A partition is moved at most once, which bounds the number of moves and keeps replicas from
+ * bouncing between brokers. The replaced replica keeps its position in the replica list, so the
+ * preferred leader moves along with it. The input arrays are never modified.
+ */
+public class ReplicaBalancer {
+  private static final int MAX_CANDIDATES_PER_ROUND = 256;
+  // Loads are in units of one broker's fair share, this absorbs the rounding of their sums
+  private static final double EPSILON = 1e-9;
+
+  private final int[][] replicas;
+  private final long[] sizes;
+  private final double[] rates;
+  private final int[] brokerRacks;
+  private final boolean[] targets;
+  private final int targetCount;
+  private final int rackCount;
+
+  private double sizeWeight = 1;
+  private double rateWeight = 1;
+  private double replicaWeight = 0.1;
+  private double tolerance = 0.05;
+  private int maxMoves = Integer.MAX_VALUE;
+
+  @Getter private int[][] assignment;
+  @Getter private double[] loadBefore;
+  @Getter private double[] loadAfter;
+  @Getter private int movedReplicas;
+  @Getter private long movedBytes;
+
+  private double[] scores;
+  private double[] load;
+  private boolean[] moved;
+
+  /**
+   * @param replicas the broker indexes hosting each partition, preferred leader first
+   * @param sizes the size in bytes of each partition
+   * @param rates the bytes-in rate of each partition
+   * @param brokerRacks the rack index of each broker, -1 when the broker has no rack
+   * @param targets which brokers may host replicas after the reassignment
+   */
+  public ReplicaBalancer(
+      int[][] replicas, long[] sizes, double[] rates, int[] brokerRacks, boolean[] targets) {
+    this.replicas = replicas;
+    this.sizes = sizes;
+    this.rates = rates;
+    this.brokerRacks = brokerRacks;
+    this.targets = targets;
+
+    int count = 0;
+    boolean[] seenRacks = new boolean[brokerRacks.length];
+    int racks = 0;
+    for (int b = 0; b < targets.length; b++) {
+      if (!targets[b]) {
+        continue;
+      }
+      count++;
+      int rack = brokerRacks[b];
+      if (rack >= 0 && !seenRacks[rack]) {
+        seenRacks[rack] = true;
+        racks++;
+      }
+    }
+    this.targetCount = count;
+    this.rackCount = racks;
+  }
+
+  public ReplicaBalancer weights(double sizeWeight, double rateWeight, double replicaWeight) {
+    this.sizeWeight = sizeWeight;
+    this.rateWeight = rateWeight;
+    this.replicaWeight = replicaWeight;
+    return this;
+  }
+
+  /** Relative deviation from the average load that is accepted as balanced. */
+  public ReplicaBalancer tolerance(double tolerance) {
+    this.tolerance = tolerance;
+    return this;
+  }
+
+  /** Upper bound of balancing moves, on top of the moves off non target brokers. */
+  public ReplicaBalancer maxMoves(int maxMoves) {
+    this.maxMoves = maxMoves <= 0 ? Integer.MAX_VALUE : maxMoves;
+    return this;
+  }
+
+  /**
+   * Runs the planner. The result is available from {@link #getAssignment()}, where the rows of
+   * unmoved partitions are the input rows themselves.
+   *
+   * @throws IllegalArgumentException if a partition has more replicas than there are target
+   *     brokers
+   */
+  public ReplicaBalancer plan() {
+    int partitionCount = replicas.length;
+    int brokerCount = targets.length;
+    assignment = Arrays.copyOf(replicas, partitionCount);
+    moved = new boolean[partitionCount];
+    movedReplicas = 0;
+    movedBytes = 0;
+    computeScores();
+
+    load = new double[brokerCount];
+    for (int p = 0; p < partitionCount; p++) {
+      if (replicas[p].length > targetCount) {
+        throw new IllegalArgumentException(
+            "Partition #"
+                + p
+                + " has "
+                + replicas[p].length
+                + " replicas but only "
+                + targetCount
+                + " target brokers");
+      }
+      for (int b : replicas[p]) {
+        load[b] += scores[p];
+      }
+    }
+    loadBefore = load.clone();
+
+    relocateMisplaced();
+    balance();
+    loadAfter = load;
+    return this;
+  }
+
+  private void computeScores() {
+    int partitionCount = replicas.length;
+    double totalSize = 0;
+    double totalRate = 0;
+    long totalReplicas = 0;
+    for (int p = 0; p < partitionCount; p++) {
+      int replicaCount = replicas[p].length;
+      totalSize += (double) sizes[p] * replicaCount;
+      totalRate += rates[p] * replicaCount;
+      totalReplicas += replicaCount;
+    }
+    double shareCount = Math.max(1, targetCount);
+    double sizeUnit = totalSize > 0 ? sizeWeight * shareCount / totalSize : 0;
+    double rateUnit = totalRate > 0 ? rateWeight * shareCount / totalRate : 0;
+    double replicaUnit = totalReplicas > 0 ? replicaWeight * shareCount / totalReplicas : 0;
+
+    scores = new double[partitionCount];
+    for (int p = 0; p < partitionCount; p++) {
+      scores[p] = sizes[p] * sizeUnit + rates[p] * rateUnit + replicaUnit;
+    }
+  }
+
+  /** Phase one: drains non target brokers and spreads replicas sharing a rack. */
+  private void relocateMisplaced() {
+    Integer[] order = IntStream.range(0, replicas.length).boxed().toArray(Integer[]::new);
+    // Big partitions first, the small ones fill up the remaining gaps better
+    Arrays.sort(order, Comparator.comparingDouble((Integer p) -> scores[p]).reversed());
+    int[] brokerOrder = targetsByLoad();
+    for (int p : order) {
+      // Last slot first, so that of two replicas sharing a rack the preferred leader stays
+      for (int slot = replicas[p].length - 1; slot >= 0; slot--) {
+        int b = assignment[p][slot];
+        if (targets[b] && !sharesRack(p, slot, brokerRacks[b])) {
+          continue;
+        }
+        sortByLoad(brokerOrder);
+        int dst = lightestEligible(p, slot, brokerOrder, Double.MAX_VALUE, true);
+        if (dst < 0 && !targets[b]) {
+          dst = lightestEligible(p, slot, brokerOrder, Double.MAX_VALUE, false);
+          if (dst < 0) {
+            throw new IllegalArgumentException(
+                "No target broker can take partition #" + p + " from broker #" + b);
+          }
+        }
+        if (dst >= 0) {
+          move(p, slot, dst);
+        }
+      }
+    }
+  }
+
+  /** Phase two: moves replicas off the most loaded brokers until all are within tolerance. */
+  private void balance() {
+    int brokerCount = targets.length;
+    double average = 0;
+    for (int b = 0; b < brokerCount; b++) {
+      if (targets[b]) {
+        average += load[b];
+      }
+    }
+    average /= Math.max(1, targetCount);
+    double upper = average * (1 + tolerance);
+    double lower = average * (1 - tolerance);
+
+    int[][] byScore = replicasByScore();
+    boolean[] stuck = new boolean[brokerCount];
+    int[] brokerOrder = targetsByLoad();
+    int moves = 0;
+    while (moves < maxMoves && brokerOrder.length > 0) {
+      sortByLoad(brokerOrder);
+      double lightest = load[brokerOrder[0]];
+      int src = -1;
+      for (int i = brokerOrder.length - 1; i >= 0; i--) {
+        if (!stuck[brokerOrder[i]]) {
+          src = brokerOrder[i];
+          break;
+        }
+      }
+      if (src < 0 || load[src] <= average || (load[src] <= upper && lightest >= lower)) {
+        break;
+      }
+      double ideal = Math.min(load[src] - average, average - lightest);
+      double bound = (load[src] - lightest) / 2;
+      if (tryMove(src, byScore[src], ideal, bound, brokerOrder)
+          || tryMove(src, byScore[src], bound, bound, brokerOrder)) {
+        moves++;
+      } else {
+        stuck[src] = true;
+      }
+    }
+  }
+
+  /**
+   * Walks the replicas of the source down from the largest score not above the limit and moves
+   * the first that a lighter broker can take without ending up above the source.
+   */
+  private boolean tryMove(int src, int[] candidates, double limit, double bound, int[] order) {
+    int i = upperBound(candidates, limit) - 1;
+    for (int tried = 0; i >= 0 && tried < MAX_CANDIDATES_PER_ROUND; i--) {
+      int p = candidates[i];
+      if (moved[p]) {
+        continue;
+      }
+      tried++;
+      double score = scores[p];
+      if (score > bound + EPSILON) {
+        continue;
+      }
+      int slot = slotOf(p, src);
+      if (slot < 0) {
+        continue;
+      }
+      int dst = lightestEligible(p, slot, order, load[src] - 2 * score, true);
+      if (dst >= 0) {
+        move(p, slot, dst);
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the least loaded broker of the order whose load is at most maxLoad and that may take
+   * the replica in the given slot of the partition, or -1.
+   */
+  private int lightestEligible(int p, int slot, int[] order, double maxLoad, boolean rackAware) {
+    int[] row = assignment[p];
+    for (int b : order) {
+      if (load[b] > maxLoad + EPSILON) {
+        return -1;
+      }
+      if (contains(row, b)) {
+        continue;
+      }
+      if (rackAware && sharesRack(p, slot, brokerRacks[b])) {
+        continue;
+      }
+      return b;
+    }
+    return -1;
+  }
+
+  /** Whether another replica of the partition than the one in the slot is in the rack. */
+  private boolean sharesRack(int p, int slot, int rack) {
+    int[] row = assignment[p];
+    if (rack < 0 || rackCount < row.length) {
+      return false;
+    }
+    for (int i = 0; i < row.length; i++) {
+      if (i != slot && brokerRacks[row[i]] == rack) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void move(int p, int slot, int dst) {
+    int[] row = assignment[p];
+    if (row == replicas[p]) {
+      row = row.clone();
+      assignment[p] = row;
+    }
+    int src = row[slot];
+    row[slot] = dst;
+    load[src] -= scores[p];
+    load[dst] += scores[p];
+    moved[p] = true;
+    movedReplicas++;
+    movedBytes += sizes[p];
+  }
+
+  /** The partitions hosted by each broker, in ascending score order. */
+  private int[][] replicasByScore() {
+    int brokerCount = targets.length;
+    int[] counts = new int[brokerCount];
+    for (int[] row : assignment) {
+      for (int b : row) {
+        counts[b]++;
+      }
+    }
+    int[][] hosted = new int[brokerCount][];
+    for (int b = 0; b < brokerCount; b++) {
+      hosted[b] = new int[counts[b]];
+      counts[b] = 0;
+    }
+    for (int p = 0; p < assignment.length; p++) {
+      for (int b : assignment[p]) {
+        hosted[b][counts[b]++] = p;
+      }
+    }
+    for (int b = 0; b < brokerCount; b++) {
+      hosted[b] =
+          Arrays.stream(hosted[b])
+              .boxed()
+              .sorted(Comparator.comparingDouble(p -> scores[p]))
+              .mapToInt(Integer::intValue)
+              .toArray();
+    }
+    return hosted;
+  }
+
+  private int upperBound(int[] byScore, double limit) {
+    int low = 0;
+    int high = byScore.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (scores[byScore[mid]] <= limit + EPSILON) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  private int[] targetsByLoad() {
+    int[] order = new int[targetCount];
+    int i = 0;
+    for (int b = 0; b < targets.length; b++) {
+      if (targets[b]) {
+        order[i++] = b;
+      }
+    }
+    sortByLoad(order);
+    return order;
+  }
+
+  /** Insertion sort, the order barely changes between two moves. */
+  private void sortByLoad(int[] order) {
+    for (int i = 1; i < order.length; i++) {
+      int b = order[i];
+      int j = i - 1;
+      while (j >= 0 && load[order[j]] > load[b]) {
+        order[j + 1] = order[j];
+        j--;
+      }
+      order[j + 1] = b;
+    }
+  }
+
+  private int slotOf(int p, int b) {
+    int[] row = assignment[p];
+    for (int i = 0; i < row.length; i++) {
+      if (row[i] == b) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean contains(int[] row, int b) {
+    for (int r : row) {
+      if (r == b) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,111 @@
+package org.gnuhpc.bigdata.utils;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.kafka.common.errors.ApiException;
+import org.gnuhpc.bigdata.model.Page;
+
+/**
+ * A sorted snapshot of a collection, rebuilt only when the version of its source changed, with
+ * cursor pagination on top.
+ *
+ * <p>The cursor is the last item of the previous page, so the next page starts at the first item
+ * sorting after it. Pages therefore stay consistent while items are added or removed between
+ * calls, and a page costs a binary search plus a scan of the page, not a pass over the whole set.
+ */
+public class SortedIndex<T> {
+  private static final Gson GSON = new Gson();
+
+  private final Class<T> type;
+  private final Comparator<T> comparator;
+  private volatile Snapshot<T> snapshot;
+
+  private static class Snapshot<T> {
+    private final long version;
+    private final List<T> items;
+
+    Snapshot(long version, List<T> items) {
+      this.version = version;
+      this.items = items;
+    }
+  }
+
+  public SortedIndex(Class<T> type, Comparator<T> comparator) {
+    this.type = type;
+    this.comparator = comparator;
+  }
+
+  public List<T> sorted(long version, Supplier<? extends Collection<T>> source) {
+    Snapshot<T> current = snapshot;
+    if (current == null || current.version != version) {
+      synchronized (this) {
+        current = snapshot;
+        if (current == null || current.version != version) {
+          List<T> items = new ArrayList<>(source.get());
+          items.sort(comparator);
+          current = new Snapshot<>(version, Collections.unmodifiableList(items));
+          snapshot = current;
+        }
+      }
+    }
+    return current.items;
+  }
+
+  public Page<T> page(
+      long version,
+      Supplier<? extends Collection<T>> source,
+      Predicate<T> filter,
+      String cursor,
+      int limit) {
+    List<T> items = sorted(version, source);
+    int start = 0;
+    if (!StringUtils.isEmpty(cursor)) {
+      int position = Collections.binarySearch(items, decodeCursor(cursor), comparator);
+      start = position >= 0 ? position + 1 : -position - 1;
+    }
+
+    List<T> page = new ArrayList<>(Math.min(limit, items.size()));
+    int i = start;
+    for (; i < items.size() && page.size() < limit; i++) {
+      if (filter.test(items.get(i))) {
+        page.add(items.get(i));
+      }
+    }
+    // Look ahead, so that the last page comes without a cursor
+    for (; i < items.size(); i++) {
+      if (filter.test(items.get(i))) {
+        return new Page<>(page, encodeCursor(page.get(page.size() - 1)));
+      }
+    }
+    return new Page<>(page, null);
+  }
+
+  private String encodeCursor(T item) {
+    return Base64.getUrlEncoder()
+        .encodeToString(GSON.toJson(item).getBytes(StandardCharsets.UTF_8));
+  }
+
+  private T decodeCursor(String cursor) {
+    try {
+      T item =
+          GSON.fromJson(
+              new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8), type);
+      if (item == null) {
+        throw new ApiException("Invalid cursor " + cursor);
+      }
+      return item;
+    } catch (IllegalArgumentException | JsonParseException e) {
+      throw new ApiException("Invalid cursor " + cursor);
+    }
+  }
+}
@@ -0,0 +1,68 @@
+package org.gnuhpc.bigdata.utils;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Timestamps of sampled offsets of one partition, which narrow a timestamp lookup down to the
+ * offsets between two samples before any record is read. Samples are added by every lookup, so
+ * the index gets finer where lookups go. Like the time index of the brokers, it assumes that
+ * timestamps increase with the offset, which holds for LogAppendTime and roughly for CreateTime.
+ *
+ * <p>When full, every other sample is dropped, which keeps the remaining samples spread over the
+ * partition.
+ */
+public class SparseTimeIndex {
+  private final int maxEntries;
+  private final TreeMap<Long, Long> timestamps = new TreeMap<>();
+
+  public SparseTimeIndex(int maxEntries) {
+    this.maxEntries = maxEntries;
+  }
+
+  /** Records without a timestamp (message format 0) are not indexed. */
+  public synchronized void add(long offset, long timestamp) {
+    if (timestamp < 0) {
+      return;
+    }
+    timestamps.put(offset, timestamp);
+    if (timestamps.size() > maxEntries) {
+      Iterator<Long> offsets = timestamps.keySet().iterator();
+      for (boolean drop = false; offsets.hasNext(); drop = !drop) {
+        offsets.next();
+        if (drop) {
+          offsets.remove();
+        }
+      }
+    }
+  }
+
+  /** Forgets the samples deleted by retention. */
+  public synchronized void truncate(long beginningOffset) {
+    timestamps.headMap(beginningOffset).clear();
+  }
+
+  /**
+   * The offsets {lo, hi} between which the first record at or after the timestamp is, as far as
+   * the samples in [beginningOffset, endOffset) tell. hi is endOffset if no sample reached the
+   * timestamp.
+   */
+  public synchronized long[] bounds(long timestamp, long beginningOffset, long endOffset) {
+    long lo = beginningOffset;
+    long hi = endOffset;
+    for (Map.Entry<Long, Long> entry :
+        timestamps.subMap(beginningOffset, endOffset).entrySet()) {
+      if (entry.getValue() >= timestamp) {
+        hi = entry.getKey();
+        break;
+      }
+      lo = entry.getKey() + 1;
+    }
+    return new long[] {lo, hi};
+  }
+
+  public synchronized int size() {
+    return timestamps.size();
+  }
+}
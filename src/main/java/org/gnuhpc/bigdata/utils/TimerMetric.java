@@ -0,0 +1,54 @@
+package org.gnuhpc.bigdata.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.gnuhpc.bigdata.model.LatencyStats;
+
+/**
+ * Latency distribution, in-flight gauge and error counter of one timed operation. Latencies are
+ * recorded in microseconds.
+ */
+public class TimerMetric {
+  private static final double MICROS_PER_MILLI = 1000.0;
+
+  private final LogLinearHistogram histogram = new LogLinearHistogram();
+  private final AtomicLong inFlight = new AtomicLong();
+  private final LongAdder errors = new LongAdder();
+
+  public long start() {
+    inFlight.incrementAndGet();
+    return System.nanoTime();
+  }
+
+  /** Returns the elapsed nanos since {@code startNanos}. */
+  public long stop(long startNanos, boolean failed) {
+    long elapsed = System.nanoTime() - startNanos;
+    inFlight.decrementAndGet();
+    histogram.record(TimeUnit.NANOSECONDS.toMicros(elapsed));
+    if (failed) {
+      errors.increment();
+    }
+    return elapsed;
+  }
+
+  public void reset() {
+    histogram.reset();
+    errors.reset();
+  }
+
+  public LatencyStats toStats() {
+    LatencyStats stats = new LatencyStats();
+    stats.setCount(histogram.getCount());
+    stats.setErrors(errors.sum());
+    stats.setInFlight(inFlight.get());
+    stats.setMinMs(histogram.getMin() / MICROS_PER_MILLI);
+    stats.setMeanMs(histogram.getMean() / MICROS_PER_MILLI);
+    stats.setP50Ms(histogram.getValueAtPercentile(50) / MICROS_PER_MILLI);
+    stats.setP90Ms(histogram.getValueAtPercentile(90) / MICROS_PER_MILLI);
+    stats.setP99Ms(histogram.getValueAtPercentile(99) / MICROS_PER_MILLI);
+    stats.setP999Ms(histogram.getValueAtPercentile(99.9) / MICROS_PER_MILLI);
+    stats.setMaxMs(histogram.getMax() / MICROS_PER_MILLI);
+    return stats;
+  }
+}
@@ -13,10 +13,14 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.curator.RetryPolicy;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.api.BackgroundCallback;
+import org.apache.curator.framework.api.CuratorEvent;
 import org.apache.curator.framework.api.GetDataBuilder;
 import org.apache.curator.retry.ExponentialBackoffRetry;
 import org.apache.curator.utils.ZKPaths;
+import org.apache.zookeeper.CreateMode;
 import org.apache.zookeeper.data.Stat;
+import org.gnuhpc.bigdata.componet.DownstreamMetrics;
 import org.gnuhpc.bigdata.config.ZookeeperConfig;
 import org.gnuhpc.bigdata.constant.ZkServerMode;
 import org.gnuhpc.bigdata.exception.ServiceNotAvailableException;
@@ -31,6 +35,7 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.Socket;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -55,6 +60,9 @@ public class ZookeeperUtils {
     @Autowired
     private ZookeeperConfig zookeeperConfig;
 
+    @Autowired
+    private DownstreamMetrics downstreamMetrics;
+
     /**
      * 初始sleep时间(毫秒)
      */
@@ -112,6 +120,10 @@ public class ZookeeperUtils {
 
 
     public List<String> executeCommand(String host, Integer port, String command) throws ServiceNotAvailableException {
+        return downstreamMetrics.record(DownstreamMetrics.ZOOKEEPER, () -> doExecuteCommand(host, port, command));
+    }
+
+    private List<String> doExecuteCommand(String host, Integer port, String command) throws ServiceNotAvailableException {
         Socket socket;
         try {
             socket = new Socket(InetAddress.getByName(host), port);
@@ -238,7 +250,8 @@ public class ZookeeperUtils {
 
     public List<String> lsPath(@ZKNodePathExistConstraint String path) {
         try {
-            return curatorClient.getChildren().forPath(path);
+            return downstreamMetrics.recordCall(DownstreamMetrics.ZOOKEEPER,
+                    () -> curatorClient.getChildren().forPath(path));
         } catch (Exception e) {
             log.error("ls path fail! path: " + path + ", error: {}" + e);
             return null;
@@ -248,6 +261,8 @@ public class ZookeeperUtils {
     public Map<String, String> getNodeData(@ZKNodePathExistConstraint String path) {
         Map<String, String> map = new HashMap<>();
 
+        long start = downstreamMetrics.startCall(DownstreamMetrics.ZOOKEEPER);
+        boolean failed = true;
         try {
             List<String> childrens = curatorClient.getChildren().forPath(path);
             GetDataBuilder dataBuilder = curatorClient.getData();
@@ -262,9 +277,11 @@ public class ZookeeperUtils {
                 byte[] bytes = dataBuilder.forPath(path);
                 map.put(path, (bytes!=null)?(new String(bytes, Charsets.UTF_8)):(null));
             }
-
+            failed = false;
         } catch (Exception e) {
             log.error("get node data fail! path: " + path + ", error: {}" + e);
+        } finally {
+            downstreamMetrics.stopCall(DownstreamMetrics.ZOOKEEPER, start, failed);
         }
 
         return map;
@@ -272,11 +289,64 @@ public class ZookeeperUtils {
 
     public Stat getNodePathStat(String path) {
         try {
-            return curatorClient.checkExists().forPath(path);
+            return downstreamMetrics.recordCall(DownstreamMetrics.ZOOKEEPER,
+                    () -> curatorClient.checkExists().forPath(path));
         } catch (Exception e) {
             log.error("get node data fail! path: " + path + ", error: {}" + e);
         }
         return null;
     }
+
+    /*
+     * Asynchronous operations. Many of them issued in a row are pipelined on the zookeeper session
+     * instead of paying one round trip each. The future completes with the event of the operation
+     * whatever its result code is, callers check event.getResultCode().
+     */
+
+    public CompletableFuture<CuratorEvent> getDataAsync(String path) {
+        return inBackground(callback -> curatorClient.getData().inBackground(callback).forPath(path));
+    }
+
+    public CompletableFuture<CuratorEvent> createAsync(String path, byte[] data) {
+        return inBackground(callback -> curatorClient.create().creatingParentsIfNeeded()
+                .inBackground(callback).forPath(path, data));
+    }
+
+    public CompletableFuture<CuratorEvent> createAsync(String path, byte[] data, CreateMode mode) {
+        return inBackground(callback -> curatorClient.create().creatingParentsIfNeeded().withMode(mode)
+                .inBackground(callback).forPath(path, data));
+    }
+
+    public CompletableFuture<CuratorEvent> setDataAsync(String path, byte[] data) {
+        return inBackground(callback -> curatorClient.setData().inBackground(callback)
+                .forPath(path, data));
+    }
+
+    /**
+     * Fails with BADVERSION if the node is no longer at the expected version.
+     */
+    public CompletableFuture<CuratorEvent> setDataAsync(String path, byte[] data, int expectedVersion) {
+        return inBackground(callback -> curatorClient.setData().withVersion(expectedVersion)
+                .inBackground(callback).forPath(path, data));
+    }
+
+    private interface BackgroundCall {
+        void issue(BackgroundCallback callback) throws Exception;
+    }
+
+    private CompletableFuture<CuratorEvent> inBackground(BackgroundCall call) {
+        CompletableFuture<CuratorEvent> result = new CompletableFuture<>();
+        long start = downstreamMetrics.startCall(DownstreamMetrics.ZOOKEEPER);
+        try {
+            call.issue((client, event) -> {
+                downstreamMetrics.stopCall(DownstreamMetrics.ZOOKEEPER, start, false);
+                result.complete(event);
+            });
+        } catch (Exception e) {
+            downstreamMetrics.stopCall(DownstreamMetrics.ZOOKEEPER, start, true);
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
 }
 
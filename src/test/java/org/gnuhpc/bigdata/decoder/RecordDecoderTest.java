@@ -0,0 +1,79 @@
+package org.gnuhpc.bigdata.decoder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.charset.StandardCharsets;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.record.TimestampType;
+import org.gnuhpc.bigdata.model.BrowsedRecord;
+import org.junit.Test;
+
+public class RecordDecoderTest {
+  private static final MessageDecoder UTF8 = bytes -> new String(bytes, StandardCharsets.UTF_8);
+  private static final MessageDecoder FAILING =
+      bytes -> {
+        throw new IllegalArgumentException("bad " + bytes.length);
+      };
+
+  @Test
+  public void keyAndValueUseTheirOwnDecoders() {
+    RecordDecoder decoder = new RecordDecoder(bytes -> bytes.length, UTF8);
+    BrowsedRecord browsed = decoder.decode(record(bytes("abc"), bytes("value")), 8);
+
+    assertEquals(3, browsed.getKey());
+    assertEquals("value", browsed.getValue());
+    assertEquals(7, browsed.getPartition());
+    assertEquals(42, browsed.getOffset());
+    assertEquals(1000, browsed.getTimestamp());
+    assertEquals("CreateTime", browsed.getTimestampType());
+    assertEquals(8, browsed.getSize());
+    assertNull(browsed.getDecodeError());
+  }
+
+  @Test
+  public void nullKeyAndValueAreNotDecoded() {
+    BrowsedRecord browsed = new RecordDecoder(FAILING, FAILING).decode(record(null, null), 0);
+
+    assertNull(browsed.getKey());
+    assertNull(browsed.getValue());
+    assertNull(browsed.getDecodeError());
+  }
+
+  @Test
+  public void valueErrorKeepsTheKey() {
+    BrowsedRecord browsed =
+        new RecordDecoder(UTF8, FAILING).decode(record(bytes("key"), bytes("ab")), 5);
+
+    assertEquals("key", browsed.getKey());
+    assertNull(browsed.getValue());
+    assertEquals("value: bad 2", browsed.getDecodeError());
+  }
+
+  @Test
+  public void keyErrorKeepsTheValue() {
+    BrowsedRecord browsed =
+        new RecordDecoder(FAILING, UTF8).decode(record(bytes("k"), bytes("value")), 6);
+
+    assertNull(browsed.getKey());
+    assertEquals("value", browsed.getValue());
+    assertEquals("key: bad 1", browsed.getDecodeError());
+  }
+
+  @Test
+  public void bothErrorsAreReported() {
+    BrowsedRecord browsed =
+        new RecordDecoder(FAILING, FAILING).decode(record(bytes("k"), bytes("ab")), 3);
+
+    assertEquals("key: bad 1; value: bad 2", browsed.getDecodeError());
+  }
+
+  private static ConsumerRecord<byte[], byte[]> record(byte[] key, byte[] value) {
+    return new ConsumerRecord<>(
+        "topic", 7, 42, 1000, TimestampType.CREATE_TIME, 0, -1, -1, key, value);
+  }
+
+  private static byte[] bytes(String text) {
+    return text.getBytes(StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,74 @@
+package org.gnuhpc.bigdata.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+
+public class RecordDigestTest {
+
+  @Test
+  public void orderDoesNotMatter() {
+    RecordDigest forward = new RecordDigest();
+    RecordDigest backward = new RecordDigest();
+    for (int i = 0; i < 100; i++) {
+      forward.add(bytes("k" + i), bytes("v" + i));
+      backward.add(bytes("k" + (99 - i)), bytes("v" + (99 - i)));
+    }
+
+    assertEquals(forward, backward);
+    assertEquals(100, forward.getCount());
+  }
+
+  @Test
+  public void mergeEqualsTheDigestOfTheUnion() {
+    RecordDigest all = new RecordDigest();
+    RecordDigest first = new RecordDigest();
+    RecordDigest second = new RecordDigest();
+    for (int i = 0; i < 100; i++) {
+      all.add(bytes("k" + i), bytes("v" + i));
+      (i % 3 == 0 ? first : second).add(bytes("k" + i), bytes("v" + i));
+    }
+    first.merge(second);
+
+    assertEquals(all, first);
+  }
+
+  @Test
+  public void nullAndEmptyDiffer() {
+    assertNotEquals(digest(null, bytes("v")), digest(new byte[0], bytes("v")));
+    assertNotEquals(digest(bytes("k"), null), digest(bytes("k"), new byte[0]));
+    assertEquals(0, digest(null, null).getBytes());
+  }
+
+  @Test
+  public void bytesCannotMoveBetweenKeyAndValue() {
+    assertNotEquals(digest(bytes("ab"), bytes("c")), digest(bytes("a"), bytes("bc")));
+  }
+
+  @Test
+  public void changedValueChangesTheDigest() {
+    assertNotEquals(digest(bytes("k"), bytes("v1")), digest(bytes("k"), bytes("v2")));
+  }
+
+  @Test
+  public void duplicatesAreCounted() {
+    RecordDigest once = digest(bytes("k"), bytes("v"));
+    RecordDigest twice = digest(bytes("k"), bytes("v"));
+    twice.add(bytes("k"), bytes("v"));
+
+    assertNotEquals(once, twice);
+    assertEquals(2, twice.getCount());
+  }
+
+  private static RecordDigest digest(byte[] key, byte[] value) {
+    RecordDigest digest = new RecordDigest();
+    digest.add(key, value);
+    return digest;
+  }
+
+  private static byte[] bytes(String text) {
+    return text.getBytes(StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,97 @@
+package org.gnuhpc.bigdata.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.apache.kafka.common.errors.ApiException;
+import org.gnuhpc.bigdata.model.ProduceRecord;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class KafkaProducerServiceTest {
+  private final KafkaProducerService service = new KafkaProducerService();
+
+  @Before
+  public void setUp() {
+    ReflectionTestUtils.setField(service, "objectMapper", new ObjectMapper());
+    ReflectionTestUtils.setField(service, "maxRecords", 3);
+  }
+
+  @Test
+  public void ndjsonSkipsBlankLines() throws IOException {
+    List<ProduceRecord> records =
+        service.parseNdjson(
+            stream("{\"key\":\"k\",\"value\":\"v\",\"partition\":2}\n\n  \n{\"value\":\"w\"}\n"));
+
+    assertEquals(2, records.size());
+    assertEquals("k", records.get(0).getKey());
+    assertEquals("v", records.get(0).getValue());
+    assertEquals(Integer.valueOf(2), records.get(0).getPartition());
+    assertNull(records.get(1).getKey());
+    assertEquals("w", records.get(1).getValue());
+  }
+
+  @Test
+  public void ndjsonReportsTheLineOfAnInvalidRecord() throws IOException {
+    try {
+      service.parseNdjson(stream("{\"value\":\"a\"}\n\n\n{\"value\":\n"));
+      fail("Invalid record accepted");
+    } catch (ApiException e) {
+      assertTrue(e.getMessage(), e.getMessage().startsWith("Invalid record on line 4: "));
+    }
+  }
+
+  @Test(expected = ApiException.class)
+  public void ndjsonRefusesMoreThanMaxRecords() throws IOException {
+    service.parseNdjson(stream("{}\n{}\n{}\n{}\n"));
+  }
+
+  @Test
+  public void jsonArrayIsReadRecordByRecord() throws IOException {
+    List<ProduceRecord> records =
+        service.parseJsonArray(stream("[{\"key\":\"k\",\"value\":\"v\"}, {\"value\":\"w\"}]"));
+
+    assertEquals(2, records.size());
+    assertEquals("k", records.get(0).getKey());
+    assertEquals("w", records.get(1).getValue());
+  }
+
+  @Test
+  public void jsonArrayOverTheLimitIsRefusedBeforeTheRestIsRead() throws IOException {
+    try {
+      // The record after the limit is not even valid JSON
+      service.parseJsonArray(stream("[{}, {}, {}, {\"value\":"));
+      fail("Batch over the limit accepted");
+    } catch (ApiException e) {
+      assertEquals("A batch can hold at most 3 records", e.getMessage());
+    }
+  }
+
+  @Test
+  public void jsonArrayReportsTheIndexOfAnInvalidRecord() throws IOException {
+    try {
+      service.parseJsonArray(stream("[{\"value\":\"a\"}, 7]"));
+      fail("Invalid record accepted");
+    } catch (ApiException e) {
+      assertEquals("Invalid record 1: not a JSON object", e.getMessage());
+    }
+  }
+
+  @Test(expected = ApiException.class)
+  public void jsonObjectIsNotABatch() throws IOException {
+    service.parseJsonArray(stream("{\"value\":\"a\"}"));
+  }
+
+  private static InputStream stream(String text) {
+    return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,98 @@
+package org.gnuhpc.bigdata.utils;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Predicate;
+import org.apache.kafka.common.errors.ApiException;
+import org.junit.Test;
+
+public class BytesMatchersTest {
+  private final ObjectMapper mapper = new ObjectMapper();
+
+  @Test
+  public void substringMatchesAnywhereInTheBytes() {
+    Predicate<byte[]> matcher = BytesMatchers.substring("needle");
+
+    assertTrue(matcher.test(bytes("needle")));
+    assertTrue(matcher.test(bytes("a needle in a haystack")));
+    assertTrue(matcher.test(bytes("haystack needle")));
+    assertFalse(matcher.test(bytes("needl")));
+    assertFalse(matcher.test(bytes("neeneedl needlf")));
+    assertFalse(matcher.test(new byte[0]));
+    assertFalse(matcher.test(null));
+  }
+
+  @Test
+  public void substringMatchesMultiByteCharacters() {
+    Predicate<byte[]> matcher = BytesMatchers.substring("\u00fc");
+
+    assertTrue(matcher.test(bytes("gr\u00fc\u00dfe")));
+    assertFalse(matcher.test(bytes("gruesse")));
+  }
+
+  @Test(expected = ApiException.class)
+  public void emptySubstringIsRejected() {
+    BytesMatchers.substring("");
+  }
+
+  @Test
+  public void regexIsFoundAnywhere() {
+    Predicate<byte[]> matcher = BytesMatchers.regex("id=\\d+");
+
+    assertTrue(matcher.test(bytes("user id=42 logged in")));
+    assertFalse(matcher.test(bytes("user id=abc")));
+    assertFalse(matcher.test(null));
+  }
+
+  @Test(expected = ApiException.class)
+  public void invalidRegexIsRejected() {
+    BytesMatchers.regex("(unclosed");
+  }
+
+  @Test
+  public void jsonPathFollowsFieldsAndIndexes() {
+    Predicate<byte[]> matcher = BytesMatchers.jsonPath(mapper, "$.order.items[1].id", "b");
+
+    assertTrue(matcher.test(bytes("{\"order\":{\"items\":[{\"id\":\"a\"},{\"id\":\"b\"}]}}")));
+    assertFalse(matcher.test(bytes("{\"order\":{\"items\":[{\"id\":\"b\"}]}}")));
+    assertFalse(matcher.test(bytes("{\"order\":{\"items\":[{\"id\":\"a\"},{\"id\":{}}]}}")));
+    assertFalse(matcher.test(bytes("not json")));
+    assertFalse(matcher.test(null));
+  }
+
+  @Test
+  public void jsonPathWithoutValueMatchesWhenThePathExists() {
+    Predicate<byte[]> matcher = BytesMatchers.jsonPath(mapper, "user.id", null);
+
+    assertTrue(matcher.test(bytes("{\"user\":{\"id\":7}}")));
+    assertTrue(matcher.test(bytes("{\"user\":{\"id\":null}}")));
+    assertFalse(matcher.test(bytes("{\"user\":{\"name\":\"x\"}}")));
+    assertFalse(matcher.test(bytes("{\"user\":7}")));
+  }
+
+  @Test
+  public void jsonPathComparesTheTextOfNumbers() {
+    Predicate<byte[]> matcher = BytesMatchers.jsonPath(mapper, "$.count", "3");
+
+    assertTrue(matcher.test(bytes("{\"count\":3}")));
+    assertTrue(matcher.test(bytes("{\"count\":\"3\"}")));
+    assertFalse(matcher.test(bytes("{\"count\":4}")));
+  }
+
+  @Test(expected = ApiException.class)
+  public void jsonPathWithEmptyFieldIsRejected() {
+    BytesMatchers.jsonPath(mapper, "$.a..b", null);
+  }
+
+  @Test(expected = ApiException.class)
+  public void jsonPathWithInvalidIndexIsRejected() {
+    BytesMatchers.jsonPath(mapper, "$.a[x]", null);
+  }
+
+  private static byte[] bytes(String text) {
+    return text.getBytes(StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,71 @@
+package org.gnuhpc.bigdata.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import org.junit.Test;
+
+public class CountMinSketchTest {
+  private static final HashFunction HASH = Hashing.murmur3_128();
+
+  @Test
+  public void singleValueIsCountedExactly() {
+    CountMinSketch sketch = new CountMinSketch(4, 64);
+    sketch.add(hash(1), 5);
+    sketch.add(hash(1), 2);
+
+    assertEquals(7, sketch.estimate(hash(1)));
+    assertEquals(0, sketch.estimate(hash(2)));
+    assertEquals(7, sketch.getTotal());
+  }
+
+  @Test
+  public void estimatesAreNeverBelowTheCount() {
+    CountMinSketch sketch = new CountMinSketch(4, 32);
+    for (int i = 0; i < 1000; i++) {
+      sketch.add(hash(i), i % 7 + 1);
+    }
+
+    for (int i = 0; i < 1000; i++) {
+      assertTrue(sketch.estimate(hash(i)) >= i % 7 + 1);
+    }
+  }
+
+  @Test
+  public void heavyHittersStandOut() {
+    CountMinSketch sketch = new CountMinSketch(5, 512);
+    for (int i = 0; i < 10_000; i++) {
+      sketch.add(hash(i), 1);
+    }
+    sketch.add(hash(-1), 5_000);
+
+    long estimate = sketch.estimate(hash(-1));
+    assertTrue(estimate >= 5_000);
+    // 2 / width of the total count
+    assertTrue(estimate <= 5_000 + 2 * sketch.getTotal() / 512);
+  }
+
+  @Test
+  public void mergeAddsTheCounts() {
+    CountMinSketch left = new CountMinSketch(4, 64);
+    CountMinSketch right = new CountMinSketch(4, 64);
+    left.add(hash(1), 3);
+    right.add(hash(1), 4);
+    right.add(hash(2), 1);
+    left.merge(right);
+
+    assertEquals(7, left.estimate(hash(1)));
+    assertEquals(8, left.getTotal());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void mergeOfDifferentDimensionsIsRejected() {
+    new CountMinSketch(4, 64).merge(new CountMinSketch(4, 32));
+  }
+
+  private static long hash(int value) {
+    return HASH.hashInt(value).asLong();
+  }
+}
@@ -0,0 +1,80 @@
+package org.gnuhpc.bigdata.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import org.junit.Test;
+
+public class HyperLogLogTest {
+  private static final HashFunction HASH = Hashing.murmur3_128();
+
+  @Test
+  public void emptySketchEstimatesZero() {
+    assertEquals(0, new HyperLogLog(12).estimate());
+  }
+
+  @Test
+  public void smallCountsAreNearlyExact() {
+    HyperLogLog sketch = new HyperLogLog(12);
+    addRange(sketch, 0, 100);
+
+    assertEquals(100, sketch.estimate(), 2);
+  }
+
+  @Test
+  public void largeCountsAreWithinTheStandardError() {
+    HyperLogLog sketch = new HyperLogLog(12);
+    addRange(sketch, 0, 1_000_000);
+
+    // Four standard errors of 1.6%
+    assertEquals(1_000_000, sketch.estimate(), 65_000);
+  }
+
+  @Test
+  public void duplicatesAreNotCounted() {
+    HyperLogLog sketch = new HyperLogLog(12);
+    for (int i = 0; i < 10; i++) {
+      addRange(sketch, 0, 1000);
+    }
+
+    assertEquals(1000, sketch.estimate(), 30);
+  }
+
+  @Test
+  public void mergeEstimatesTheUnion() {
+    HyperLogLog left = new HyperLogLog(10);
+    HyperLogLog right = new HyperLogLog(10);
+    addRange(left, 0, 30_000);
+    addRange(right, 20_000, 50_000);
+    left.merge(right);
+
+    // Four standard errors of 3.25%
+    assertEquals(50_000, left.estimate(), 6_500);
+  }
+
+  @Test
+  public void rankIsCappedForHashesWithManyZeros() {
+    HyperLogLog sketch = new HyperLogLog(4);
+    sketch.addHash(0);
+
+    assertTrue(sketch.estimate() >= 1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void mergeOfDifferentPrecisionIsRejected() {
+    new HyperLogLog(10).merge(new HyperLogLog(12));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void precisionOutOfRangeIsRejected() {
+    new HyperLogLog(3);
+  }
+
+  private static void addRange(HyperLogLog sketch, int from, int to) {
+    for (int i = from; i < to; i++) {
+      sketch.addHash(HASH.hashInt(i).asLong());
+    }
+  }
+}
@@ -0,0 +1,52 @@
+package org.gnuhpc.bigdata.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class IntIntMapTest {
+
+  @Test
+  public void absentKeysGiveTheDefault() {
+    IntIntMap map = new IntIntMap();
+
+    assertEquals(-1, map.get(1001, -1));
+    assertEquals(0, map.size());
+  }
+
+  @Test
+  public void putReplacesTheValue() {
+    IntIntMap map = new IntIntMap();
+    map.put(1001, 1);
+    map.put(1001, 2);
+
+    assertEquals(2, map.get(1001, -1));
+    assertEquals(1, map.size());
+  }
+
+  @Test
+  public void keysSurviveGrowing() {
+    IntIntMap map = new IntIntMap();
+    for (int i = 0; i < 1000; i++) {
+      map.put(1000 + i * 7, i);
+    }
+
+    assertEquals(1000, map.size());
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(i, map.get(1000 + i * 7, -1));
+    }
+    assertEquals(-1, map.get(1001, -1));
+  }
+
+  @Test
+  public void negativeAndZeroKeysAreKept() {
+    IntIntMap map = new IntIntMap();
+    map.put(0, 5);
+    map.put(-1, 6);
+    map.put(Integer.MIN_VALUE, 7);
+
+    assertEquals(5, map.get(0, -1));
+    assertEquals(6, map.get(-1, -1));
+    assertEquals(7, map.get(Integer.MIN_VALUE, -1));
+  }
+}
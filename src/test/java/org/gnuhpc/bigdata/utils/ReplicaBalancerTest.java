@@ -0,0 +1,125 @@
+package org.gnuhpc.bigdata.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Test;
+
+public class ReplicaBalancerTest {
+
+  @Test
+  public void balancedClusterIsLeftAlone() {
+    int[][] replicas = {{0, 1}, {1, 2}, {2, 0}};
+    ReplicaBalancer balancer =
+        new ReplicaBalancer(
+                replicas,
+                new long[] {100, 100, 100},
+                new double[] {10, 10, 10},
+                new int[] {-1, -1, -1},
+                new boolean[] {true, true, true})
+            .plan();
+
+    assertEquals(0, balancer.getMovedReplicas());
+    for (int p = 0; p < replicas.length; p++) {
+      assertSame(replicas[p], balancer.getAssignment()[p]);
+    }
+  }
+
+  @Test
+  public void newBrokerTakesItsShareWithoutOvershooting() {
+    int[][] replicas = new int[30][];
+    long[] sizes = new long[30];
+    for (int p = 0; p < replicas.length; p++) {
+      replicas[p] = new int[] {p % 3, (p + 1) % 3};
+      sizes[p] = 1000;
+    }
+    ReplicaBalancer balancer =
+        new ReplicaBalancer(
+                replicas, sizes, new double[30], new int[] {-1, -1, -1, -1}, allTargets(4))
+            .tolerance(0)
+            .plan();
+
+    // 60 replicas over 4 brokers, the new one gets 15 moved to it and nothing else moves
+    assertEquals(15, balancer.getMovedReplicas());
+    assertEquals(15000, balancer.getMovedBytes());
+    assertEquals(15, countOn(balancer.getAssignment(), 3));
+    assertEquals(balancer.getLoadAfter()[0], balancer.getLoadAfter()[3], 1e-9);
+  }
+
+  @Test
+  public void replicasAreDrainedFromNonTargetBrokers() {
+    int[][] replicas = {{0, 1}, {1, 2}, {2, 0}, {0, 2}};
+    boolean[] targets = {false, true, true, true};
+    ReplicaBalancer balancer =
+        new ReplicaBalancer(
+                replicas, new long[] {5, 6, 7, 8}, new double[4], new int[] {-1, -1, -1, -1},
+                targets)
+            .plan();
+
+    assertEquals(0, countOn(balancer.getAssignment(), 0));
+    for (int[] row : balancer.getAssignment()) {
+      assertEquals(row.length, new HashSet<>(Arrays.asList(row[0], row[1])).size());
+    }
+    assertArrayEquals(new int[] {1, 2}, balancer.getAssignment()[1]);
+  }
+
+  @Test
+  public void replicasSharingARackAreSpread() {
+    // brokers 0 and 1 are in rack 0, broker 2 in rack 1
+    int[][] replicas = {{0, 1}};
+    ReplicaBalancer balancer =
+        new ReplicaBalancer(
+                replicas, new long[] {1}, new double[1], new int[] {0, 0, 1}, allTargets(3))
+            .plan();
+
+    int[] row = balancer.getAssignment()[0];
+    assertEquals(0, row[0]);
+    assertEquals(2, row[1]);
+  }
+
+  @Test
+  public void bytesInRateCountsLikeSize() {
+    // same sizes everywhere, but all the traffic goes to the partitions on broker 0
+    int[][] replicas = {{0}, {0}, {1}, {1}};
+    ReplicaBalancer balancer =
+        new ReplicaBalancer(
+                replicas,
+                new long[] {10, 10, 10, 10},
+                new double[] {50, 50, 0, 0},
+                new int[] {-1, -1},
+                allTargets(2))
+            .weights(0, 1, 0)
+            .plan();
+
+    Set<Integer> hosts = new HashSet<>();
+    hosts.add(balancer.getAssignment()[0][0]);
+    hosts.add(balancer.getAssignment()[1][0]);
+    assertEquals(2, hosts.size());
+    assertNotEquals(balancer.getLoadBefore()[0], balancer.getLoadAfter()[0], 1e-9);
+    assertTrue(balancer.getMovedReplicas() <= 2);
+  }
+
+  private static boolean[] allTargets(int brokers) {
+    boolean[] targets = new boolean[brokers];
+    Arrays.fill(targets, true);
+    return targets;
+  }
+
+  private static int countOn(int[][] assignment, int broker) {
+    int count = 0;
+    for (int[] row : assignment) {
+      for (int b : row) {
+        if (b == broker) {
+          count++;
+        }
+      }
+    }
+    return count;
+  }
+}
@@ -0,0 +1,71 @@
+package org.gnuhpc.bigdata.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class SparseTimeIndexTest {
+
+  @Test
+  public void emptyIndexBoundsTheWholeRange() {
+    SparseTimeIndex index = new SparseTimeIndex(16);
+
+    assertArrayEquals(new long[] {5, 100}, index.bounds(1000, 5, 100));
+  }
+
+  @Test
+  public void samplesNarrowTheBounds() {
+    SparseTimeIndex index = new SparseTimeIndex(16);
+    index.add(10, 100);
+    index.add(20, 200);
+    index.add(30, 300);
+
+    assertArrayEquals(new long[] {21, 30}, index.bounds(250, 0, 50));
+    assertArrayEquals(new long[] {11, 20}, index.bounds(200, 0, 50));
+    assertArrayEquals(new long[] {0, 10}, index.bounds(50, 0, 50));
+    assertArrayEquals(new long[] {31, 50}, index.bounds(400, 0, 50));
+  }
+
+  @Test
+  public void samplesOutsideTheRangeAreIgnored() {
+    SparseTimeIndex index = new SparseTimeIndex(16);
+    index.add(10, 100);
+    index.add(20, 200);
+    index.add(60, 600);
+
+    assertArrayEquals(new long[] {21, 50}, index.bounds(500, 15, 50));
+  }
+
+  @Test
+  public void recordsWithoutTimestampAreNotIndexed() {
+    SparseTimeIndex index = new SparseTimeIndex(16);
+    index.add(10, -1);
+
+    assertEquals(0, index.size());
+  }
+
+  @Test
+  public void truncateForgetsDeletedOffsets() {
+    SparseTimeIndex index = new SparseTimeIndex(16);
+    index.add(10, 100);
+    index.add(20, 200);
+    index.add(30, 300);
+    index.truncate(20);
+
+    assertEquals(2, index.size());
+    assertArrayEquals(new long[] {20, 20}, index.bounds(150, 20, 50));
+  }
+
+  @Test
+  public void fullIndexDropsEveryOtherSample() {
+    SparseTimeIndex index = new SparseTimeIndex(4);
+    for (int i = 0; i < 5; i++) {
+      index.add(i * 10, i * 100);
+    }
+
+    assertEquals(3, index.size());
+    // Offsets 0, 20 and 40 are kept
+    assertArrayEquals(new long[] {21, 40}, index.bounds(250, 0, 100));
+  }
+}